@@ -0,0 +1,70 @@
+package com.study.hc.net.benchmark;
+
+import com.study.hc.net.nio.BufferPool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 缓冲区申请的开销：堆内、堆外、以及{@link BufferPool}池化的堆外缓冲区
+ * <p>
+ * 每次都会往缓冲区写满数据再读出来，模拟一次read/write的实际使用，避免只比较了分配本身
+ *
+ * @author chensicong
+ * @date 2026-10-18 14:00
+ **/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BufferAllocationBenchmark {
+
+    @Param({"512", "4096", "65536"})
+    public int size;
+
+    private byte[] payload;
+
+    @Setup
+    public void setup() {
+        payload = new byte[size];
+    }
+
+    @Benchmark
+    public int heap() {
+        return use(ByteBuffer.allocate(size));
+    }
+
+    @Benchmark
+    public int direct() {
+        return use(ByteBuffer.allocateDirect(size));
+    }
+
+    @Benchmark
+    public int pooled() {
+        ByteBuffer buffer = BufferPool.DEFAULT.acquire(size);
+        try {
+            return use(buffer);
+        } finally {
+            BufferPool.DEFAULT.release(buffer);
+        }
+    }
+
+    private int use(ByteBuffer buffer) {
+        buffer.put(payload);
+        buffer.flip();
+        return buffer.get(buffer.limit() - 1) + buffer.remaining();
+    }
+}
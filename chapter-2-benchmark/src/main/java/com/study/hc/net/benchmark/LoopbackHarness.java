@@ -0,0 +1,315 @@
+package com.study.hc.net.benchmark;
+
+import com.study.hc.net.nio.Histogram;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 端到端回环压测：在本进程中启动一个服务端，用固定数量的客户端线程（闭环，每个线程收到响应后才发下一个请求）
+ * 压测指定时间，输出吞吐量和延迟分位数
+ * <p>
+ * 用法：LoopbackHarness [variant] [concurrency] [seconds] [warmupSeconds]
+ * <ul>
+ * <li>variant：NIOServer、NIOServerV1、NIOServerV2、NIOServerV3、NettyServer、netty（Netty自带的HTTP编解码，作为基准），或者all（默认）依次测试全部</li>
+ * <li>NIOServer、NIOServerV1每个连接只处理一个请求，客户端每次请求都新建连接；其他服务端使用长连接</li>
+ * </ul>
+ * 这几个服务端都固定监听8089端口，而且没有停止的方法，所以all模式下每个服务端在单独的子进程中启动（服务端和压测客户端仍在同一进程），
+ * 互不影响。服务端打印到标准输出的日志会被丢弃，避免终端输出拖慢测试，但格式化日志的开销仍然计算在内。
+ *
+ * @author chensicong
+ * @date 2026-10-18 14:00
+ **/
+public class LoopbackHarness {
+
+    private static final String[] VARIANTS = {"NIOServer", "NIOServerV1", "NIOServerV2", "NIOServerV3", "NettyServer", "netty"};
+
+    private static final int PORT = 8089;
+
+    private static final byte[] REQUEST = ("GET / HTTP/1.1\r\nHost: localhost\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] CLOSE_REQUEST = ("GET / HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n")
+            .getBytes(StandardCharsets.US_ASCII);
+
+    public static void main(String[] args) throws Exception {
+        String variant = args.length > 0 ? args[0] : "all";
+        int concurrency = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        int warmupSeconds = args.length > 3 ? Integer.parseInt(args[3]) : 3;
+
+        if ("all".equals(variant)) {
+            System.out.println(Result.HEADER);
+            for (String name : VARIANTS) {
+                fork(name, concurrency, seconds, warmupSeconds);
+            }
+            return;
+        }
+
+        PrintStream out = System.out;
+        // 丢弃服务端的日志输出
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        }));
+        startServer(variant);
+        waitForPort();
+        boolean keepAlive = !"NIOServer".equals(variant) && !"NIOServerV1".equals(variant);
+        Result result = run(variant, keepAlive, concurrency, seconds, warmupSeconds);
+        if (args.length > 4 && "--no-header".equals(args[4])) {
+            out.println(result);
+        } else {
+            out.println(Result.HEADER);
+            out.println(result);
+        }
+        out.flush();
+        // 服务端线程不会退出
+        System.exit(0);
+    }
+
+    private static void fork(String variant, int concurrency, int seconds, int warmupSeconds) throws Exception {
+        String java = System.getProperty("java.home") + "/bin/java";
+        Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                LoopbackHarness.class.getName(), variant, String.valueOf(concurrency), String.valueOf(seconds),
+                String.valueOf(warmupSeconds), "--no-header")
+                .inheritIO()
+                .start();
+        if (!process.waitFor(seconds + warmupSeconds + 60, TimeUnit.SECONDS)) {
+            process.destroyForcibly();
+            System.out.println(variant + " timed out");
+        }
+    }
+
+    private static void startServer(String variant) throws Exception {
+        String className = "netty".equals(variant) ? NettyBaselineServer.class.getName() : "com.study.hc.net.nio." + variant;
+        Method main = Class.forName(className).getMethod("main", String[].class);
+        Thread server = new Thread(() -> {
+            try {
+                main.invoke(null, (Object) new String[0]);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }, "server-main");
+        server.setDaemon(true);
+        server.start();
+    }
+
+    /**
+     * 等服务端能正常响应请求。探测时也发送一个完整请求：NIOServer、NIOServerV1收到空连接会一直等数据或者出错
+     */
+    private static void waitForPort() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (System.nanoTime() < deadline) {
+            Client probe = new Client(false, new Histogram(), new LongAdder(), 0, 0);
+            try {
+                probe.connect();
+                probe.out.write(CLOSE_REQUEST);
+                probe.readResponse();
+                return;
+            } catch (IOException e) {
+                Thread.sleep(50);
+            } finally {
+                probe.close();
+            }
+        }
+        throw new IllegalStateException("server did not start on port " + PORT);
+    }
+
+    private static Result run(String variant, boolean keepAlive, int concurrency, int seconds, int warmupSeconds)
+            throws InterruptedException {
+        Histogram latency = new Histogram();
+        LongAdder errors = new LongAdder();
+        long warmupEnd = System.nanoTime() + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        long end = warmupEnd + TimeUnit.SECONDS.toNanos(seconds);
+        CountDownLatch done = new CountDownLatch(concurrency);
+        List<Thread> clients = new ArrayList<>();
+        for (int i = 0; i < concurrency; i++) {
+            Thread client = new Thread(() -> {
+                try {
+                    new Client(keepAlive, latency, errors, warmupEnd, end).run();
+                } finally {
+                    done.countDown();
+                }
+            }, "client-" + i);
+            client.setDaemon(true);
+            clients.add(client);
+        }
+        clients.forEach(Thread::start);
+        done.await(seconds + warmupSeconds + 30, TimeUnit.SECONDS);
+        return new Result(variant, concurrency, seconds, latency, errors.sum());
+    }
+
+    /**
+     * 一个闭环客户端：发请求、读完整个响应、记录耗时，再发下一个
+     */
+    private static final class Client {
+
+        private final boolean keepAlive;
+
+        private final Histogram latency;
+
+        private final LongAdder errors;
+
+        private final long warmupEnd;
+
+        private final long end;
+
+        private final byte[] buffer = new byte[8192];
+
+        private Socket socket;
+
+        private InputStream in;
+
+        private OutputStream out;
+
+        Client(boolean keepAlive, Histogram latency, LongAdder errors, long warmupEnd, long end) {
+            this.keepAlive = keepAlive;
+            this.latency = latency;
+            this.errors = errors;
+            this.warmupEnd = warmupEnd;
+            this.end = end;
+        }
+
+        void run() {
+            long now;
+            while ((now = System.nanoTime()) < end) {
+                try {
+                    if (socket == null) {
+                        connect();
+                    }
+                    out.write(keepAlive ? REQUEST : CLOSE_REQUEST);
+                    readResponse();
+                    if (!keepAlive) {
+                        close();
+                    }
+                    if (now >= warmupEnd) {
+                        latency.record(System.nanoTime() - now);
+                    }
+                } catch (IOException e) {
+                    if (now >= warmupEnd) {
+                        errors.increment();
+                    }
+                    close();
+                }
+            }
+            close();
+        }
+
+        private void connect() throws IOException {
+            socket = new Socket();
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(5000);
+            socket.connect(new InetSocketAddress("localhost", PORT), 5000);
+            in = socket.getInputStream();
+            out = socket.getOutputStream();
+        }
+
+        /**
+         * 读到响应头结束，按Content-Length读完响应体
+         */
+        private void readResponse() throws IOException {
+            int length = 0;
+            int headerEnd = -1;
+            while (headerEnd < 0) {
+                int n = in.read(buffer, length, buffer.length - length);
+                if (n < 0) {
+                    throw new IOException("connection closed by server");
+                }
+                int from = Math.max(0, length - 3);
+                length += n;
+                for (int i = from; i + 3 < length; i++) {
+                    if (buffer[i] == '\r' && buffer[i + 1] == '\n' && buffer[i + 2] == '\r' && buffer[i + 3] == '\n') {
+                        headerEnd = i + 4;
+                        break;
+                    }
+                }
+                if (headerEnd < 0 && length == buffer.length) {
+                    throw new IOException("response header too large");
+                }
+            }
+            String header = new String(buffer, 0, headerEnd, StandardCharsets.US_ASCII);
+            if (!header.startsWith("HTTP/1.1 200")) {
+                throw new IOException("unexpected response: " + header);
+            }
+            long remaining = contentLength(header) - (length - headerEnd);
+            while (remaining > 0) {
+                int n = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (n < 0) {
+                    throw new IOException("connection closed by server");
+                }
+                remaining -= n;
+            }
+        }
+
+        private static long contentLength(String header) throws IOException {
+            for (String line : header.split("\r\n")) {
+                int colon = line.indexOf(':');
+                if (colon > 0 && line.substring(0, colon).trim().equalsIgnoreCase("content-length")) {
+                    return Long.parseLong(line.substring(colon + 1).trim());
+                }
+            }
+            throw new IOException("response without Content-Length");
+        }
+
+        private void close() {
+            if (socket != null) {
+                try {
+                    socket.close();
+                } catch (IOException ignored) {
+                }
+                socket = null;
+            }
+        }
+    }
+
+    private static final class Result {
+
+        static final String HEADER = String.format(Locale.ROOT, "%-12s %6s %12s %10s %10s %10s %10s %8s",
+                "server", "conc", "req/s", "p50(us)", "p99(us)", "p999(us)", "max(us)", "errors");
+
+        private final String variant;
+
+        private final int concurrency;
+
+        private final double throughput;
+
+        private final Histogram latency;
+
+        private final long errors;
+
+        Result(String variant, int concurrency, int seconds, Histogram latency, long errors) {
+            this.variant = variant;
+            this.concurrency = concurrency;
+            this.throughput = (double) latency.count() / seconds;
+            this.latency = latency;
+            this.errors = errors;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%-12s %6d %12.0f %10d %10d %10d %10d %8d", variant, concurrency,
+                    throughput, micros(latency.percentile(0.5)), micros(latency.percentile(0.99)),
+                    micros(latency.percentile(0.999)), micros(latency.max()), errors);
+        }
+
+        private static long micros(long nanos) {
+            return TimeUnit.NANOSECONDS.toMicros(nanos);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.study.hc.net.benchmark;
+
+import com.study.hc.net.nio.HttpRequest;
+import com.study.hc.net.nio.HttpRequestDecoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link HttpRequestDecoder}的解码开销，输入放在堆外缓冲区中，和reactor线程读到的数据一致
+ * <p>
+ * split=true时把请求从中间切成两次到达（半包），衡量跨read继续解码的代价
+ *
+ * @author chensicong
+ * @date 2026-10-18 14:00
+ **/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RequestDecodeBenchmark {
+
+    private static final String SIMPLE_GET = "GET /index.html HTTP/1.1\r\nHost: localhost\r\n\r\n";
+
+    private static final String BROWSER_GET = "GET /static/js/app.3f9c1e.js?v=20261018 HTTP/1.1\r\n"
+            + "Host: www.example.com\r\n"
+            + "Connection: keep-alive\r\n"
+            + "User-Agent: Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/120.0 Safari/537.36\r\n"
+            + "Accept: */*\r\n"
+            + "Referer: https://www.example.com/\r\n"
+            + "Accept-Encoding: gzip, deflate, br\r\n"
+            + "Accept-Language: zh-CN,zh;q=0.9,en;q=0.8\r\n"
+            + "Cookie: session=4f1c2a9b8e7d6c5b4a39281706f5e4d3; theme=dark; lang=zh-CN\r\n"
+            + "\r\n";
+
+    private static final String POST = "POST /api/orders HTTP/1.1\r\n"
+            + "Host: localhost\r\n"
+            + "Content-Type: application/json\r\n"
+            + "Content-Length: 64\r\n"
+            + "\r\n"
+            + "{\"id\":1024,\"item\":\"book\",\"count\":2,\"price\":39.9,\"note\":\"none\"}";
+
+    private static final String CHUNKED = "POST /upload HTTP/1.1\r\n"
+            + "Host: localhost\r\n"
+            + "Transfer-Encoding: chunked\r\n"
+            + "\r\n"
+            + "10\r\n0123456789abcdef\r\n"
+            + "10\r\n0123456789abcdef\r\n"
+            + "0\r\n\r\n";
+
+    @Param({"simple", "browser", "post", "chunked"})
+    public String request;
+
+    @Param({"false", "true"})
+    public boolean split;
+
+    private final HttpRequestDecoder decoder = new HttpRequestDecoder();
+
+    private ByteBuffer first;
+
+    private ByteBuffer second;
+
+    @Setup
+    public void setup() {
+        String raw;
+        switch (request) {
+            case "browser":
+                raw = BROWSER_GET;
+                break;
+            case "post":
+                raw = POST;
+                break;
+            case "chunked":
+                raw = CHUNKED;
+                break;
+            default:
+                raw = SIMPLE_GET;
+        }
+        byte[] bytes = raw.getBytes(StandardCharsets.US_ASCII);
+        int cut = split ? bytes.length / 2 : bytes.length;
+        first = ByteBuffer.allocateDirect(cut);
+        first.put(bytes, 0, cut).flip();
+        second = ByteBuffer.allocateDirect(bytes.length - cut);
+        second.put(bytes, cut, bytes.length - cut).flip();
+    }
+
+    @Benchmark
+    public void decode(Blackhole blackhole) throws IOException {
+        first.rewind();
+        HttpRequest decoded = decoder.decode(first);
+        if (decoded == null) {
+            second.rewind();
+            decoded = decoder.decode(second);
+        }
+        if (decoded == null) {
+            throw new IllegalStateException("incomplete request");
+        }
+        blackhole.consume(decoded);
+    }
+}
@@ -0,0 +1,70 @@
+package com.study.hc.net.benchmark;
+
+import com.study.hc.net.nio.BufferPool;
+import com.study.hc.net.nio.HttpResponse;
+import com.study.hc.net.nio.HttpResponseEncoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 响应编码的开销：{@link HttpResponseEncoder}直接编码到池化堆外缓冲区，
+ * 对比NIOServer~NIOServerV2中拼接String再getBytes、wrap成堆内缓冲区的写法
+ *
+ * @author chensicong
+ * @date 2026-10-18 14:00
+ **/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ResponseEncodeBenchmark {
+
+    @Param({"11", "1024", "16384"})
+    public int bodySize;
+
+    private String body;
+
+    @Setup
+    public void setup() {
+        char[] chars = new char[bodySize];
+        Arrays.fill(chars, 'x');
+        body = new String(chars);
+    }
+
+    @Benchmark
+    public int encoder() {
+        HttpResponse response = HttpResponse.ok(body).header("Server", "nio");
+        ByteBuffer buffer = HttpResponseEncoder.encode(response, true);
+        int length = buffer.remaining();
+        BufferPool.DEFAULT.release(buffer);
+        return length;
+    }
+
+    @Benchmark
+    public int stringConcat() {
+        byte[] content = body.getBytes(StandardCharsets.UTF_8);
+        String response = "HTTP/1.1 200 OK\r\n"
+                + "Content-Type: text/plain; charset=utf-8\r\n"
+                + "Server: nio\r\n"
+                + "Content-Length: " + content.length + "\r\n\r\n"
+                + body;
+        ByteBuffer buffer = ByteBuffer.wrap(response.getBytes(StandardCharsets.UTF_8));
+        return buffer.remaining();
+    }
+}
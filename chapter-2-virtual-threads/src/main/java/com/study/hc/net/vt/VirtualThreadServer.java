@@ -0,0 +1,457 @@
+package com.study.hc.net.vt;
+
+import com.study.hc.net.nio.AccessLog;
+import com.study.hc.net.nio.BufferPool;
+import com.study.hc.net.nio.FileRegion;
+import com.study.hc.net.nio.HttpDecodeException;
+import com.study.hc.net.nio.HttpHandler;
+import com.study.hc.net.nio.HttpRequest;
+import com.study.hc.net.nio.HttpRequestDecoder;
+import com.study.hc.net.nio.HttpResponse;
+import com.study.hc.net.nio.HttpResponseEncoder;
+import com.study.hc.net.nio.NIOServerV3;
+import com.study.hc.net.nio.ServerConfig;
+import com.study.hc.net.nio.StaticFileHandler;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 虚拟线程版本的服务端：每个连接一个虚拟线程，用阻塞的SocketChannel读写，代码就是最直白的“读请求-处理-写响应”循环
+ * <p>
+ * 和{@link NIOServerV3}共用{@link HttpHandler}、{@link HttpRequestDecoder}、{@link HttpResponseEncoder}，
+ * 同一个handler可以在两种模型下跑同样的压测再决定用哪个。区别在于：
+ * <ul>
+ * <li>handler直接在连接自己的虚拟线程中执行，阻塞（JDBC、远程调用）时虚拟线程让出载体线程，不需要再转交给业务线程池</li>
+ * <li>同一连接上流水线发来的多个请求按顺序逐个处理，响应攒到本次读到的请求都处理完（或达到maxPipelinedRequests）再一次聚集写出</li>
+ * <li>阻塞的SocketChannel没有读写超时，由一个巡检线程定期检查各连接的空闲、读、写超时（和{@link ServerConfig}中的配置含义一致），
+ * 空闲和写超时直接关闭连接；读超时关闭连接的输入方向，让阻塞中的read返回-1，再由连接线程响应408</li>
+ * </ul>
+ *
+ * @author chensicong
+ * @date 2026-10-18 17:00
+ **/
+public class VirtualThreadServer {
+
+    private static final int INITIAL_BUFFER_SIZE = 1024;
+
+    /**
+     * 一个请求行或请求头最长8KB，缓冲区最大16KB足够装下任意一行
+     */
+    private static final int MAX_BUFFER_SIZE = 16 * 1024;
+
+    /**
+     * 超时巡检的间隔，和reactor的时间轮精度一致
+     */
+    private static final long CHECK_INTERVAL_MILLIS = 100;
+
+    private final ServerConfig config;
+
+    private final HttpHandler handler;
+
+    private final Set<VirtualConnection> connections = ConcurrentHashMap.newKeySet();
+
+    private final Thread.Builder connectionThreads = Thread.ofVirtual().name("vt-connection-", 1);
+
+    private final List<ServerSocketChannel> serverSocketChannels = new ArrayList<>();
+
+    private volatile boolean running;
+
+    public VirtualThreadServer() {
+        this(new ServerConfig(), request -> HttpResponse.ok("Hello World"));
+    }
+
+    public VirtualThreadServer(ServerConfig config, HttpHandler handler) {
+        this.config = config;
+        this.handler = handler;
+    }
+
+    /**
+     * 绑定{@link ServerConfig#getListenAddresses()}中的所有地址，每个地址一个acceptor线程，再启动超时巡检线程
+     */
+    public void bind() throws IOException {
+        StringJoiner ports = new StringJoiner(",");
+        try {
+            for (InetSocketAddress address : config.getListenAddresses()) {
+                ServerSocketChannel serverSocketChannel = ServerSocketChannel.open();
+                serverSocketChannels.add(serverSocketChannel);
+                // 新连接继承监听socket的接收缓冲区，必须在listen之前设置，握手时才能协商出足够大的窗口扩大因子
+                if (config.getSocketReceiveBufferSize() > 0) {
+                    serverSocketChannel.setOption(StandardSocketOptions.SO_RCVBUF, config.getSocketReceiveBufferSize());
+                }
+                serverSocketChannel.bind(address, config.getAcceptBacklog());
+                ports.add(String.valueOf(((InetSocketAddress) serverSocketChannel.getLocalAddress()).getPort()));
+            }
+        } catch (IOException ex) {
+            // 有一个地址绑定失败时，已经绑定的也关掉，不留下半启动的服务
+            for (ServerSocketChannel serverSocketChannel : serverSocketChannels) {
+                closeQuietly(serverSocketChannel);
+            }
+            serverSocketChannels.clear();
+            throw ex;
+        }
+        running = true;
+        for (int i = 0; i < serverSocketChannels.size(); i++) {
+            ServerSocketChannel serverSocketChannel = serverSocketChannels.get(i);
+            Thread.ofPlatform().name("vt-acceptor-" + i).start(() -> acceptLoop(serverSocketChannel));
+        }
+        Thread.ofPlatform().name("vt-timeout").daemon().start(this::checkTimeoutsLoop);
+        System.out.println("启动完成，端口" + ports);
+    }
+
+    /**
+     * 停止接收新连接并关闭所有连接
+     */
+    public void close() {
+        running = false;
+        for (ServerSocketChannel serverSocketChannel : serverSocketChannels) {
+            closeQuietly(serverSocketChannel);
+        }
+        for (VirtualConnection connection : connections) {
+            connection.abort();
+        }
+    }
+
+    public int activeConnections() {
+        return connections.size();
+    }
+
+    private void acceptLoop(ServerSocketChannel serverSocketChannel) {
+        while (running) {
+            SocketChannel channel;
+            try {
+                channel = serverSocketChannel.accept();
+            } catch (ClosedChannelException ex) {
+                return;
+            } catch (IOException ex) {
+                // 文件句柄耗尽等错误，稍后重试
+                ex.printStackTrace();
+                sleep(CHECK_INTERVAL_MILLIS);
+                continue;
+            }
+            try {
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, config.isTcpNoDelay());
+                // SO_RCVBUF已经从监听socket继承
+                if (config.getSocketSendBufferSize() > 0) {
+                    channel.setOption(StandardSocketOptions.SO_SNDBUF, config.getSocketSendBufferSize());
+                }
+                VirtualConnection connection = new VirtualConnection(channel);
+                AccessLog.DEFAULT.connect(connection.remoteAddress);
+                connections.add(connection);
+                connectionThreads.start(connection);
+            } catch (IOException ex) {
+                closeQuietly(channel);
+            }
+        }
+    }
+
+    private void checkTimeoutsLoop() {
+        while (running) {
+            sleep(CHECK_INTERVAL_MILLIS);
+            long now = System.nanoTime();
+            for (VirtualConnection connection : connections) {
+                connection.checkTimeouts(now);
+            }
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * 一个连接，run方法在该连接独占的虚拟线程中执行；checkTimeouts、abort由其他线程调用，只会关闭channel，不碰缓冲区
+     */
+    private final class VirtualConnection implements Runnable {
+
+        /**
+         * 等待新请求
+         */
+        private static final int STATE_IDLE = 0;
+
+        /**
+         * 已经收到请求的一部分，等待剩余数据
+         */
+        private static final int STATE_READING = 1;
+
+        /**
+         * handler处理中，不计超时（handler自己的阻塞调用应当有各自的超时）
+         */
+        private static final int STATE_HANDLING = 2;
+
+        /**
+         * 写响应中
+         */
+        private static final int STATE_WRITING = 3;
+
+        private final SocketChannel channel;
+
+        private final SocketAddress remoteAddress;
+
+        private final HttpRequestDecoder decoder = new HttpRequestDecoder();
+
+        /**
+         * 待写出的响应头和响应体，只读缓冲区是响应共享的内容，写完不归还
+         */
+        private final List<ByteBuffer> outbound = new ArrayList<>();
+
+        private ByteBuffer inbound;
+
+        private int pendingResponses;
+
+        private volatile int state = STATE_IDLE;
+
+        /**
+         * 进入当前状态或者上一次读写有进展的时间
+         */
+        private volatile long lastActivityNanos = System.nanoTime();
+
+        private volatile boolean readTimedOut;
+
+        VirtualConnection(SocketChannel channel) throws IOException {
+            this.channel = channel;
+            this.remoteAddress = channel.getRemoteAddress();
+        }
+
+        @Override
+        public void run() {
+            try {
+                inbound = BufferPool.DEFAULT.acquire(INITIAL_BUFFER_SIZE);
+                while (true) {
+                    if (!inbound.hasRemaining()) {
+                        grow();
+                    }
+                    int readBytes = channel.read(inbound);
+                    if (readBytes < 0) {
+                        if (readTimedOut) {
+                            respond(null, HttpResponse.error(408, "request timeout"), false, System.nanoTime());
+                            flush();
+                        }
+                        return;
+                    }
+                    lastActivityNanos = System.nanoTime();
+                    inbound.flip();
+                    boolean keepAlive = decodeAndHandle();
+                    flush();
+                    if (!keepAlive) {
+                        return;
+                    }
+                    inbound.compact();
+                    setState(decoder.isDecoding() || inbound.position() > 0 ? STATE_READING : STATE_IDLE);
+                }
+            } catch (IOException ex) {
+                // 对端关闭、超时被关闭或者写失败，直接关闭连接
+            } finally {
+                connections.remove(this);
+                closeQuietly(channel);
+                release();
+            }
+        }
+
+        /**
+         * 解码本次读到的所有完整请求，逐个交给handler处理
+         *
+         * @return 处理完后连接是否继续保持
+         */
+        private boolean decodeAndHandle() throws IOException {
+            try {
+                HttpRequest request;
+                while ((request = decoder.decode(inbound)) != null) {
+                    long start = System.nanoTime();
+                    setState(STATE_HANDLING);
+                    boolean keepAlive = request.isKeepAlive();
+                    respond(request, handle(request), keepAlive, start);
+                    if (!keepAlive) {
+                        return false;
+                    }
+                    if (pendingResponses >= config.getMaxPipelinedRequests()) {
+                        flush();
+                    }
+                }
+                return true;
+            } catch (HttpDecodeException ex) {
+                // 请求不合法，响应错误码后关闭连接
+                respond(null, HttpResponse.error(ex.status(), ex.getMessage()), false, System.nanoTime());
+                return false;
+            }
+        }
+
+        private HttpResponse handle(HttpRequest request) {
+            try {
+                HttpResponse response = handler.handle(request);
+                return response != null ? response : HttpResponse.error(500, "handler returned no response");
+            } catch (Throwable ex) {
+                ex.printStackTrace();
+                return HttpResponse.error(500, String.valueOf(ex.getMessage()));
+            }
+        }
+
+        /**
+         * 编码响应放入待写出列表；文件响应体不经过缓冲区，先写出前面的数据再直接transferTo
+         */
+        private void respond(HttpRequest request, HttpResponse response, boolean keepAlive, long startNanos)
+                throws IOException {
+            long latency = System.nanoTime() - startNanos;
+            AccessLog.DEFAULT.request(remoteAddress, request == null ? null : request.method(),
+                    request == null ? null : request.uri(), response.status(), response.contentLength(), latency);
+            boolean head = request != null && "HEAD".equals(request.method());
+            outbound.add(HttpResponseEncoder.encode(response, keepAlive, head));
+            pendingResponses++;
+            if (head) {
+                return;
+            }
+            if (response.bodyBuffer() != null) {
+                outbound.add(response.bodyBuffer().asReadOnlyBuffer());
+            } else if (response.bodyFile() != null) {
+                flush();
+                FileRegion file = response.bodyFile();
+                setState(STATE_WRITING);
+                try {
+                    while (!file.isDone()) {
+                        file.transferTo(channel);
+                        lastActivityNanos = System.nanoTime();
+                    }
+                } finally {
+                    file.close();
+                }
+            }
+        }
+
+        /**
+         * 聚集写出所有待写出的数据，阻塞直到写完
+         */
+        private void flush() throws IOException {
+            if (outbound.isEmpty()) {
+                return;
+            }
+            setState(STATE_WRITING);
+            ByteBuffer[] buffers = outbound.toArray(new ByteBuffer[0]);
+            int offset = 0;
+            while (offset < buffers.length) {
+                channel.write(buffers, offset, buffers.length - offset);
+                lastActivityNanos = System.nanoTime();
+                while (offset < buffers.length && !buffers[offset].hasRemaining()) {
+                    offset++;
+                }
+            }
+            releaseOutbound();
+            pendingResponses = 0;
+        }
+
+        /**
+         * 缓冲区被一个未完成的请求占满，扩容；已经最大时说明解码器没有消费数据，不会发生（单行超过8KB会解码失败）
+         */
+        private void grow() throws IOException {
+            if (inbound.capacity() >= MAX_BUFFER_SIZE) {
+                throw new IOException("request buffer overflow");
+            }
+            ByteBuffer bigger = BufferPool.DEFAULT.acquire(inbound.capacity() << 1);
+            inbound.flip();
+            bigger.put(inbound);
+            BufferPool.DEFAULT.release(inbound);
+            inbound = bigger;
+        }
+
+        private void setState(int state) {
+            lastActivityNanos = System.nanoTime();
+            this.state = state;
+        }
+
+        /**
+         * 在巡检线程中执行
+         */
+        void checkTimeouts(long now) {
+            long elapsed = now - lastActivityNanos;
+            switch (state) {
+                case STATE_IDLE:
+                    if (expired(elapsed, config.getIdleTimeoutMillis())) {
+                        abort();
+                    }
+                    break;
+                case STATE_READING:
+                    if (!readTimedOut && expired(elapsed, config.getReadTimeoutMillis())) {
+                        // 关闭输入方向，连接线程阻塞中的read会返回-1，由它写出408
+                        readTimedOut = true;
+                        try {
+                            channel.shutdownInput();
+                        } catch (IOException ex) {
+                            abort();
+                        }
+                    }
+                    break;
+                case STATE_WRITING:
+                    if (expired(elapsed, config.getWriteTimeoutMillis())) {
+                        // 对端一直不读数据
+                        abort();
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private boolean expired(long elapsedNanos, long timeoutMillis) {
+            return timeoutMillis > 0 && elapsedNanos >= TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        }
+
+        /**
+         * 关闭channel，阻塞在读写上的连接线程会抛出异常退出，由它自己归还缓冲区
+         */
+        void abort() {
+            closeQuietly(channel);
+        }
+
+        private void release() {
+            if (inbound != null) {
+                BufferPool.DEFAULT.release(inbound);
+                inbound = null;
+            }
+            releaseOutbound();
+        }
+
+        private void releaseOutbound() {
+            for (ByteBuffer buffer : outbound) {
+                if (!buffer.isReadOnly()) {
+                    BufferPool.DEFAULT.release(buffer);
+                }
+            }
+            outbound.clear();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        // -Dnio.staticRoot=目录 时作为静态文件服务器
+        String staticRoot = System.getProperty("nio.staticRoot");
+        HttpHandler handler = staticRoot == null ? request -> HttpResponse.ok("Hello World")
+                : new StaticFileHandler(Paths.get(staticRoot));
+        new VirtualThreadServer(new ServerConfig(), handler).bind();
+    }
+}
@@ -0,0 +1,529 @@
+package com.study.hc.net.nio;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 异步访问日志，替代在reactor线程中直接System.out.println（加锁、阻塞、拼接字符串）
+ * <p>
+ * 每个线程第一次记日志时创建自己的环形缓冲区，之后记一条日志只是把定长的二进制记录写进缓冲区，不加锁；
+ * 虚拟线程数量太多，共用一个多生产者的环形缓冲区，用CAS抢占位置。线程结束后，它的缓冲区在写完剩余记录后移除。
+ * 后台写线程轮询所有环形缓冲区，批量格式化成文本，通过FileChannel写入日志文件，文件超过大小上限后滚动。
+ * 写线程跟不上时直接丢弃新的记录并计数，记日志的线程永远不会阻塞。
+ * <p>
+ * 启动参数：-Dnio.accessLog.enabled=false 关闭；-Dnio.accessLog.file 日志文件（默认logs/access.log）；
+ * -Dnio.accessLog.maxFileSize 单个文件大小上限；-Dnio.accessLog.maxFiles 保留的历史文件数；
+ * -Dnio.accessLog.ringSize 每个线程缓冲的记录数
+ *
+ * @author chensicong
+ * @date 2026-10-18 16:00
+ **/
+public final class AccessLog {
+
+    public static final AccessLog DEFAULT = new AccessLog();
+
+    private static final byte TYPE_CONNECT = 1;
+
+    private static final byte TYPE_REQUEST = 2;
+
+    /**
+     * 一条记录的长度：时间(8) 耗时(8) 字节数(8) 地址(16，IPv4只用前4字节) 端口(2) 状态码(2) 类型(1)
+     * 地址长度(1，4或16，0表示没有地址) 保留(1) 请求行长度(1) 请求行(64)
+     */
+    private static final int RECORD_SIZE = 112;
+
+    private static final int ADDRESS_OFFSET = 24;
+
+    private static final int LINE_OFFSET = 48;
+
+    private static final int MAX_LINE_LENGTH = RECORD_SIZE - LINE_OFFSET;
+
+    private static final int BATCH_SIZE = 256 * 1024;
+
+    private final boolean enabled = !"false".equals(System.getProperty("nio.accessLog.enabled"));
+
+    private final Path file = Paths.get(System.getProperty("nio.accessLog.file", "logs/access.log"));
+
+    private final long maxFileSize = Long.getLong("nio.accessLog.maxFileSize", 64 * 1024 * 1024L);
+
+    private final int maxFiles = Integer.getInteger("nio.accessLog.maxFiles", 5);
+
+    private final int ringSize = Integer.highestOneBit(Math.max(16, Integer.getInteger("nio.accessLog.ringSize", 8192)));
+
+    private final ThreadLocal<Ring> ring = ThreadLocal.withInitial(this::newRing);
+
+    private final List<Ring> rings = new CopyOnWriteArrayList<>();
+
+    /**
+     * 所有虚拟线程共用的环形缓冲区，第一次使用时创建
+     */
+    private volatile Ring sharedRing;
+
+    private final AtomicLong written = new AtomicLong();
+
+    /**
+     * 已经移除的环形缓冲区丢弃的记录数
+     */
+    private final AtomicLong retiredDropped = new AtomicLong();
+
+    private Thread writer;
+
+    // 以下字段只由写线程访问（进程退出时由shutdown hook在同步块中访问）
+
+    private FileChannel channel;
+
+    private long fileSize;
+
+    private final ByteBuffer batch = ByteBuffer.allocateDirect(BATCH_SIZE);
+
+    private final StringBuilder line = new StringBuilder(256);
+
+    private long reportedDropped;
+
+    private AccessLog() {
+    }
+
+    /**
+     * 记录新连接
+     */
+    public void connect(SocketAddress remote) {
+        if (!enabled) {
+            return;
+        }
+        Ring r = ring();
+        long seq = r.claim();
+        if (seq < 0) {
+            return;
+        }
+        int index = r.offset(seq);
+        ByteBuffer b = r.buffer;
+        putHeader(b, index, TYPE_CONNECT, remote, 0, 0, 0);
+        b.put(index + LINE_OFFSET - 1, (byte) 0);
+        r.publish(seq);
+    }
+
+    /**
+     * 记录一个已解析的请求
+     *
+     * @param bytes        响应体字节数
+     * @param latencyNanos 请求从解码完成到响应写出的耗时
+     */
+    public void request(SocketAddress remote, String method, String uri, int status, long bytes, long latencyNanos) {
+        if (!enabled) {
+            return;
+        }
+        Ring r = ring();
+        long seq = r.claim();
+        if (seq < 0) {
+            return;
+        }
+        int index = r.offset(seq);
+        ByteBuffer b = r.buffer;
+        putHeader(b, index, TYPE_REQUEST, remote, status, bytes, latencyNanos);
+        int length = putAscii(b, index + LINE_OFFSET, 0, method);
+        if (length < MAX_LINE_LENGTH) {
+            b.put(index + LINE_OFFSET + length++, (byte) ' ');
+        }
+        length = putAscii(b, index + LINE_OFFSET, length, uri);
+        b.put(index + LINE_OFFSET - 1, (byte) length);
+        r.publish(seq);
+    }
+
+    /**
+     * 记录一个未解析的原始请求，请求行从request的position开始截取到第一个换行符
+     */
+    public void request(SocketAddress remote, ByteBuffer request, int status, long bytes) {
+        if (!enabled) {
+            return;
+        }
+        Ring r = ring();
+        long seq = r.claim();
+        if (seq < 0) {
+            return;
+        }
+        int index = r.offset(seq);
+        ByteBuffer b = r.buffer;
+        putHeader(b, index, TYPE_REQUEST, remote, status, bytes, 0);
+        int length = 0;
+        for (int i = request.position(); i < request.limit() && length < MAX_LINE_LENGTH; i++) {
+            byte c = request.get(i);
+            if (c == '\r' || c == '\n') {
+                break;
+            }
+            b.put(index + LINE_OFFSET + length++, c);
+        }
+        b.put(index + LINE_OFFSET - 1, (byte) length);
+        r.publish(seq);
+    }
+
+    /**
+     * 因缓冲区满而丢弃的记录数
+     */
+    public long droppedCount() {
+        long dropped = retiredDropped.get();
+        for (Ring r : rings) {
+            dropped += r.dropped.get();
+        }
+        return dropped;
+    }
+
+    /**
+     * 已经写入文件的记录数
+     */
+    public long writtenCount() {
+        return written.get();
+    }
+
+    private static void putHeader(ByteBuffer b, int index, byte type, SocketAddress remote, int status, long bytes,
+                                  long latencyNanos) {
+        int addressLength = 0;
+        int port = 0;
+        if (remote instanceof InetSocketAddress) {
+            InetSocketAddress address = (InetSocketAddress) remote;
+            if (address.getAddress() != null) {
+                // 网络字节序的4字节（IPv4）或16字节（IPv6）
+                byte[] ip = address.getAddress().getAddress();
+                addressLength = ip.length;
+                for (int i = 0; i < ip.length; i++) {
+                    b.put(index + ADDRESS_OFFSET + i, ip[i]);
+                }
+            }
+            port = address.getPort();
+        }
+        b.putLong(index, System.currentTimeMillis());
+        b.putLong(index + 8, latencyNanos);
+        b.putLong(index + 16, bytes);
+        b.putShort(index + 40, (short) port);
+        b.putShort(index + 42, (short) status);
+        b.put(index + 44, type);
+        b.put(index + 45, (byte) addressLength);
+    }
+
+    private static int putAscii(ByteBuffer b, int offset, int length, String value) {
+        if (value == null) {
+            return length;
+        }
+        for (int i = 0; i < value.length() && length < MAX_LINE_LENGTH; i++) {
+            b.put(offset + length++, (byte) value.charAt(i));
+        }
+        return length;
+    }
+
+    private Ring ring() {
+        if (!VirtualThreads.isVirtual(Thread.currentThread())) {
+            return ring.get();
+        }
+        Ring r = sharedRing;
+        if (r == null) {
+            synchronized (this) {
+                r = sharedRing;
+                if (r == null) {
+                    r = sharedRing = newRing(true);
+                }
+            }
+        }
+        return r;
+    }
+
+    private Ring newRing() {
+        return newRing(false);
+    }
+
+    private Ring newRing(boolean multiProducer) {
+        Ring r = new Ring(ringSize, multiProducer ? null : Thread.currentThread());
+        rings.add(r);
+        synchronized (this) {
+            if (writer == null) {
+                writer = new Thread(this::writeLoop, "access-log-writer");
+                writer.setDaemon(true);
+                writer.start();
+                Runtime.getRuntime().addShutdownHook(new Thread(this::drainOnShutdown, "access-log-flush"));
+            }
+        }
+        return r;
+    }
+
+    private void writeLoop() {
+        while (true) {
+            try {
+                if (drain() == 0) {
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+                }
+            } catch (Throwable t) {
+                // 写日志失败不能影响服务，丢掉这一批，稍后重试
+                t.printStackTrace();
+                batch.clear();
+                closeFile();
+                LockSupport.parkNanos(TimeUnit.SECONDS.toNanos(1));
+            }
+        }
+    }
+
+    private void drainOnShutdown() {
+        try {
+            synchronized (batch) {
+                drain();
+                if (channel != null) {
+                    channel.force(false);
+                }
+            }
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * 把所有环形缓冲区中的记录格式化后写入文件
+     *
+     * @return 处理的记录数
+     */
+    private int drain() throws IOException {
+        synchronized (batch) {
+            int count = 0;
+            for (Ring r : rings) {
+                // 先判断线程是否已经结束：结束前发布的记录这一轮都能读到，读完后就不会再有新的记录
+                boolean terminated = r.owner != null && !r.owner.isAlive();
+                long consumer = r.consumer.get();
+                for (; r.isPublished(consumer); consumer++) {
+                    format(r.buffer, r.offset(consumer));
+                    count++;
+                }
+                r.consumer.lazySet(consumer);
+                if (terminated) {
+                    rings.remove(r);
+                    retiredDropped.addAndGet(r.dropped.get());
+                }
+            }
+            long dropped = droppedCount();
+            if (dropped != reportedDropped) {
+                line.setLength(0);
+                line.append(Instant.now()).append(" dropped ").append(dropped - reportedDropped)
+                        .append(" records, total ").append(dropped).append('\n');
+                append(line);
+                reportedDropped = dropped;
+            }
+            flushBatch();
+            written.addAndGet(count);
+            return count;
+        }
+    }
+
+    private void format(ByteBuffer b, int index) throws IOException {
+        line.setLength(0);
+        line.append(Instant.ofEpochMilli(b.getLong(index))).append(' ');
+        appendAddress(b, index);
+        line.append(':').append(b.getShort(index + 40) & 0xffff).append(' ');
+        if (b.get(index + 44) == TYPE_CONNECT) {
+            line.append("CONNECT\n");
+        } else {
+            line.append('"');
+            int length = b.get(index + LINE_OFFSET - 1) & 0xff;
+            for (int i = 0; i < length; i++) {
+                line.append((char) (b.get(index + LINE_OFFSET + i) & 0xff));
+            }
+            line.append("\" ").append(b.getShort(index + 42)).append(' ').append(b.getLong(index + 16))
+                    .append(' ').append(TimeUnit.NANOSECONDS.toMicros(b.getLong(index + 8))).append("us\n");
+        }
+        append(line);
+    }
+
+    /**
+     * IPv4写成点分十进制，IPv6写成[地址]，没有地址时写-
+     */
+    private void appendAddress(ByteBuffer b, int index) {
+        int length = b.get(index + 45);
+        if (length == 4) {
+            for (int i = 0; i < 4; i++) {
+                line.append(i == 0 ? "" : ".").append(b.get(index + ADDRESS_OFFSET + i) & 0xff);
+            }
+        } else if (length == 16) {
+            byte[] ip = new byte[16];
+            for (int i = 0; i < 16; i++) {
+                ip[i] = b.get(index + ADDRESS_OFFSET + i);
+            }
+            try {
+                line.append('[').append(InetAddress.getByAddress(ip).getHostAddress()).append(']');
+            } catch (UnknownHostException ex) {
+                // 长度是16时不会发生
+                line.append('-');
+            }
+        } else {
+            line.append('-');
+        }
+    }
+
+    private void append(CharSequence text) throws IOException {
+        if (batch.remaining() < text.length() * 3) {
+            flushBatch();
+        }
+        batch.put(text.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void flushBatch() throws IOException {
+        if (batch.position() == 0) {
+            return;
+        }
+        batch.flip();
+        if (channel == null) {
+            open();
+        }
+        if (fileSize > 0 && fileSize + batch.remaining() > maxFileSize) {
+            roll();
+        }
+        while (batch.hasRemaining()) {
+            fileSize += channel.write(batch);
+        }
+        batch.clear();
+    }
+
+    private void open() throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        fileSize = channel.size();
+    }
+
+    /**
+     * 关闭当前文件，access.log依次重命名为access.log.1、access.log.2...，超过maxFiles的删除，再打开新文件
+     */
+    private void roll() throws IOException {
+        closeFile();
+        Files.deleteIfExists(rolled(maxFiles));
+        for (int i = maxFiles - 1; i >= 1; i--) {
+            Path from = rolled(i);
+            if (Files.exists(from)) {
+                Files.move(from, rolled(i + 1), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        if (maxFiles > 0) {
+            Files.move(file, rolled(1), StandardCopyOption.REPLACE_EXISTING);
+        } else {
+            Files.deleteIfExists(file);
+        }
+        open();
+    }
+
+    private Path rolled(int index) {
+        return file.resolveSibling(file.getFileName() + "." + index);
+    }
+
+    private void closeFile() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+            channel = null;
+        }
+    }
+
+    /**
+     * 单消费者（写线程）的环形缓冲区，记录定长，按序号定位。
+     * 平台线程各自独占一个（单生产者）；虚拟线程共用一个（多生产者），按槽位单独发布，写线程按顺序读到第一个未发布的槽位为止
+     */
+    private static final class Ring {
+
+        /**
+         * 独占该缓冲区的线程，线程结束后缓冲区由写线程移除；共用的缓冲区为null
+         */
+        final Thread owner;
+
+        final ByteBuffer buffer;
+
+        final int size;
+
+        final boolean multiProducer;
+
+        /**
+         * 下一条要写入的序号，单生产者时只由所属线程更新，多生产者时CAS抢占
+         */
+        final AtomicLong producer = new AtomicLong();
+
+        /**
+         * 下一条要读取的序号，只由写线程更新
+         */
+        final AtomicLong consumer = new AtomicLong();
+
+        final AtomicLong dropped = new AtomicLong();
+
+        /**
+         * 多生产者时每个槽位已发布记录的序号+1
+         */
+        final AtomicLongArray published;
+
+        Ring(int size, Thread owner) {
+            this.owner = owner;
+            this.size = size;
+            this.multiProducer = owner == null;
+            this.buffer = ByteBuffer.allocateDirect(size * RECORD_SIZE);
+            this.published = multiProducer ? new AtomicLongArray(size) : null;
+        }
+
+        /**
+         * @return 抢到的序号，缓冲区已满时返回-1（记录被丢弃）
+         */
+        long claim() {
+            while (true) {
+                long seq = producer.get();
+                if (seq - consumer.get() >= size) {
+                    if (multiProducer) {
+                        dropped.incrementAndGet();
+                    } else {
+                        dropped.lazySet(dropped.get() + 1);
+                    }
+                    return -1;
+                }
+                if (!multiProducer) {
+                    return seq;
+                }
+                if (producer.compareAndSet(seq, seq + 1)) {
+                    return seq;
+                }
+            }
+        }
+
+        /**
+         * 序号对应的记录在缓冲区中的偏移量
+         */
+        int offset(long seq) {
+            return (int) (seq & (size - 1)) * RECORD_SIZE;
+        }
+
+        /**
+         * 记录写完后发布，写线程看到新的序号时一定能看到完整的记录
+         */
+        void publish(long seq) {
+            if (multiProducer) {
+                published.lazySet((int) (seq & (size - 1)), seq + 1);
+            } else {
+                producer.lazySet(seq + 1);
+            }
+        }
+
+        boolean isPublished(long seq) {
+            if (multiProducer) {
+                return published.get((int) (seq & (size - 1))) == seq + 1;
+            }
+            return seq < producer.get();
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.study.hc.net.nio;
+
+/**
+ * 连接读缓冲区大小的自适应策略：根据最近几次read把缓冲区填满的程度，预测下一次read应该申请多大的缓冲区
+ * <p>
+ * 候选大小是[min, max]之间的2的幂，和{@link BufferPool}的规格一一对应，申请时总能命中池化的缓冲区。
+ * 一次read把缓冲区填满说明数据比预测的多，直接跳升两级；连续两次read只用到了小一级的大小才降一级，
+ * 涨得快、降得慢，避免在大小两档之间来回抖动。只由所属reactor线程访问
+ *
+ * @author chensicong
+ * @date 2026-10-18 19:00
+ **/
+class AdaptiveReceiveBuffer {
+
+    private static final int GROW_STEPS = 2;
+
+    private final int minShift;
+
+    private final int maxShift;
+
+    private int shift;
+
+    private boolean decreaseNow;
+
+    AdaptiveReceiveBuffer(int min, int initial, int max) {
+        this.minShift = log2(Math.max(BufferPool.MIN_SIZE, min));
+        this.maxShift = Math.max(minShift, log2(Math.min(BufferPool.MAX_SIZE, max)));
+        this.shift = Math.max(minShift, Math.min(maxShift, log2(initial)));
+    }
+
+    /**
+     * 下一次read应当申请的缓冲区大小
+     */
+    int nextSize() {
+        return 1 << shift;
+    }
+
+    /**
+     * 记录一次read的结果
+     *
+     * @param attempted 本次read时缓冲区的剩余空间
+     * @param actual    实际读到的字节数
+     */
+    void record(int attempted, int actual) {
+        if (actual >= attempted && attempted >= nextSize()) {
+            // 填满了一个不小于预测大小的缓冲区，说明还有更多数据
+            shift = Math.min(maxShift, shift + GROW_STEPS);
+            decreaseNow = false;
+        } else if (actual <= 1 << (shift - 1) && shift > minShift) {
+            if (decreaseNow) {
+                shift--;
+                decreaseNow = false;
+            } else {
+                decreaseNow = true;
+            }
+        } else {
+            decreaseNow = false;
+        }
+    }
+
+    /**
+     * 向上取整到2的幂后的指数
+     */
+    private static int log2(int size) {
+        return 32 - Integer.numberOfLeadingZeros(Math.max(1, size) - 1);
+    }
+}
@@ -0,0 +1,261 @@
+package com.study.hc.net.nio;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 堆外缓冲区池，参考{@link DirectBufferDemo}：堆外内存申请/释放的代价比堆内高得多，所以申请一次之后反复复用
+ * <p>
+ * 按容量划分为若干规格（512B ~ 64KB，每级翻倍），申请时向上取整到最近的规格。
+ * 每个线程（主要是reactor线程）有自己的本地缓存，申请/归还都不需要加锁；
+ * 本地缓存满了以后归还到全局共享池，其他线程本地缓存为空时再从共享池中获取。
+ * 虚拟线程不使用本地缓存，直接使用共享池，否则缓存的缓冲区会随着短命的虚拟线程一起丢掉。
+ * 超过最大规格的缓冲区不做池化，直接申请。
+ * <p>
+ * 必须显式调用{@link #release(ByteBuffer)}归还。启动参数 -Dnio.buffer.leakDetection=true 开启泄漏检测（调试模式），
+ * 会记录每个未归还缓冲区的申请位置，重复归还会直接抛出异常，进程退出时打印仍未归还的缓冲区。
+ *
+ * @author chensicong
+ * @date 2026-10-17 20:05
+ **/
+public class BufferPool {
+
+    public static final BufferPool DEFAULT = new BufferPool();
+
+    private static final int MIN_SIZE_SHIFT = 9;
+
+    private static final int SIZE_CLASS_COUNT = 8;
+
+    /**
+     * 最小规格 512B
+     */
+    public static final int MIN_SIZE = 1 << MIN_SIZE_SHIFT;
+
+    /**
+     * 最大规格 64KB
+     */
+    public static final int MAX_SIZE = MIN_SIZE << (SIZE_CLASS_COUNT - 1);
+
+    /**
+     * 每个线程每种规格最多缓存的个数
+     */
+    private static final int THREAD_CACHE_SIZE = 64;
+
+    /**
+     * 共享池每种规格最多缓存的个数
+     */
+    private static final int SHARED_CACHE_SIZE = 1024;
+
+    private final ThreadLocal<ThreadCache> threadCache = ThreadLocal.withInitial(ThreadCache::new);
+
+    private final SharedCache[] shared = new SharedCache[SIZE_CLASS_COUNT];
+
+    private final boolean leakDetection;
+
+    /**
+     * 调试模式下记录未归还的缓冲区及其申请位置
+     */
+    private final Map<ByteBuffer, Throwable> outstanding = new IdentityHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder unpooled = new LongAdder();
+
+    public BufferPool() {
+        this(Boolean.getBoolean("nio.buffer.leakDetection"));
+    }
+
+    public BufferPool(boolean leakDetection) {
+        for (int i = 0; i < SIZE_CLASS_COUNT; i++) {
+            shared[i] = new SharedCache();
+        }
+        this.leakDetection = leakDetection;
+        if (leakDetection) {
+            Runtime.getRuntime().addShutdownHook(new Thread(this::reportLeaks, "buffer-leak-reporter"));
+        }
+    }
+
+    /**
+     * 申请一个容量不小于minCapacity的堆外缓冲区，处于写模式（position=0，limit=capacity）
+     */
+    public ByteBuffer acquire(int minCapacity) {
+        int sizeClass = sizeClass(minCapacity);
+        ByteBuffer buffer;
+        if (sizeClass < 0) {
+            unpooled.increment();
+            buffer = ByteBuffer.allocateDirect(minCapacity);
+        } else {
+            ThreadCache cache = threadCache();
+            buffer = cache == null ? null : cache.poll(sizeClass);
+            if (buffer == null) {
+                buffer = shared[sizeClass].poll();
+            }
+            if (buffer != null) {
+                hits.increment();
+                buffer.clear();
+            } else {
+                misses.increment();
+                buffer = ByteBuffer.allocateDirect(MIN_SIZE << sizeClass);
+            }
+        }
+        if (leakDetection) {
+            synchronized (outstanding) {
+                outstanding.put(buffer, new Throwable("buffer acquired at"));
+            }
+        }
+        return buffer;
+    }
+
+    /**
+     * 归还缓冲区，归还之后调用方不能再使用它
+     */
+    public void release(ByteBuffer buffer) {
+        if (leakDetection) {
+            synchronized (outstanding) {
+                if (outstanding.remove(buffer) == null) {
+                    throw new IllegalStateException("buffer released twice or not acquired from this pool: " + buffer);
+                }
+            }
+        }
+        int sizeClass = sizeClass(buffer.capacity());
+        if (sizeClass < 0 || !buffer.isDirect() || buffer.capacity() != MIN_SIZE << sizeClass) {
+            // 非池化的缓冲区交给GC回收
+            return;
+        }
+        ThreadCache cache = threadCache();
+        if (cache == null || !cache.offer(sizeClass, buffer)) {
+            shared[sizeClass].offer(buffer);
+        }
+    }
+
+    /**
+     * 当前线程的本地缓存，虚拟线程返回null
+     */
+    private ThreadCache threadCache() {
+        return VirtualThreads.isVirtual(Thread.currentThread()) ? null : threadCache.get();
+    }
+
+    /**
+     * 容量对应的规格下标，超过最大规格返回-1
+     */
+    private static int sizeClass(int capacity) {
+        if (capacity > MAX_SIZE) {
+            return -1;
+        }
+        if (capacity <= MIN_SIZE) {
+            return 0;
+        }
+        return 32 - Integer.numberOfLeadingZeros(capacity - 1) - MIN_SIZE_SHIFT;
+    }
+
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    public long missCount() {
+        return misses.sum();
+    }
+
+    public long unpooledCount() {
+        return unpooled.sum();
+    }
+
+    /**
+     * 调试模式下当前未归还的缓冲区个数，非调试模式返回-1
+     */
+    public int outstandingCount() {
+        if (!leakDetection) {
+            return -1;
+        }
+        synchronized (outstanding) {
+            return outstanding.size();
+        }
+    }
+
+    /**
+     * 打印所有未归还缓冲区的申请位置
+     */
+    public void reportLeaks() {
+        List<Throwable> leaks;
+        synchronized (outstanding) {
+            leaks = new ArrayList<>(outstanding.values());
+        }
+        for (Throwable leak : leaks) {
+            System.err.println("LEAK: ByteBuffer was not released");
+            leak.printStackTrace();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("BufferPool[hit=%s, miss=%s, unpooled=%s]", hitCount(), missCount(), unpooledCount());
+    }
+
+    /**
+     * 线程本地缓存，只会被所属线程访问，不需要同步
+     */
+    private static final class ThreadCache {
+
+        private final ArrayDeque<ByteBuffer>[] queues = newQueues(SIZE_CLASS_COUNT);
+
+        /**
+         * Java不能直接创建泛型数组，先创建通配符数组再转型；数组只在本类中读写，不会放进其他类型的元素
+         */
+        @SuppressWarnings("unchecked")
+        private static <T> ArrayDeque<T>[] newQueues(int length) {
+            return (ArrayDeque<T>[]) new ArrayDeque<?>[length];
+        }
+
+        ByteBuffer poll(int sizeClass) {
+            ArrayDeque<ByteBuffer> queue = queues[sizeClass];
+            return queue == null ? null : queue.pollLast();
+        }
+
+        boolean offer(int sizeClass, ByteBuffer buffer) {
+            ArrayDeque<ByteBuffer> queue = queues[sizeClass];
+            if (queue == null) {
+                queue = queues[sizeClass] = new ArrayDeque<>(THREAD_CACHE_SIZE);
+            }
+            if (queue.size() >= THREAD_CACHE_SIZE) {
+                return false;
+            }
+            queue.addLast(buffer);
+            return true;
+        }
+    }
+
+    /**
+     * 全局共享池，线程本地缓存的溢出部分放在这里
+     */
+    private static final class SharedCache {
+
+        private final ConcurrentLinkedQueue<ByteBuffer> queue = new ConcurrentLinkedQueue<>();
+
+        private final AtomicInteger size = new AtomicInteger();
+
+        ByteBuffer poll() {
+            ByteBuffer buffer = queue.poll();
+            if (buffer != null) {
+                size.decrementAndGet();
+            }
+            return buffer;
+        }
+
+        void offer(ByteBuffer buffer) {
+            if (size.incrementAndGet() > SHARED_CACHE_SIZE) {
+                size.decrementAndGet();
+                return;
+            }
+            queue.offer(buffer);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.study.hc.net.nio;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 把字节流解码成消息的入站处理器基类：收到的ByteBuffer追加到{@link CompositeByteBuffer}中，
+ * 反复调用{@link #decode}直到数据不够一个完整消息，每解码出一个消息就传给下一个处理器
+ * <p>
+ * 入站处理暂停时（{@link ChannelHandlerContext#isInputPaused()}）停止解码，剩余数据留在缓冲区中，
+ * 恢复后（{@link #channelReadResumed}）继续；连接关闭时归还所有缓冲区
+ *
+ * @author chensicong
+ * @date 2026-10-18 20:00
+ **/
+public abstract class ByteToMessageHandler implements ChannelInboundHandler {
+
+    private final CompositeByteBuffer cumulation = new CompositeByteBuffer();
+
+    /**
+     * 正在解码，防止下游处理器在同一调用栈中触发channelReadResumed时重入
+     */
+    private boolean decoding;
+
+    /**
+     * 从in中解码一个消息，数据不够时返回null。读取的数据通过移动组成部分的position消费
+     */
+    protected abstract Object decode(ChannelHandlerContext ctx, CompositeByteBuffer in) throws Exception;
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (!(msg instanceof ByteBuffer)) {
+            ctx.fireChannelRead(msg);
+            return;
+        }
+        cumulation.addComponent((ByteBuffer) msg);
+        callDecode(ctx);
+    }
+
+    @Override
+    public void channelReadResumed(ChannelHandlerContext ctx) throws Exception {
+        callDecode(ctx);
+        ctx.fireChannelReadResumed();
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        cumulation.release();
+        ctx.fireChannelInactive();
+    }
+
+    private void callDecode(ChannelHandlerContext ctx) throws Exception {
+        if (decoding) {
+            return;
+        }
+        decoding = true;
+        try {
+            while (!ctx.isInputPaused() && cumulation.isReadable()) {
+                Object msg = decode(ctx, cumulation);
+                if (msg == null) {
+                    break;
+                }
+                ctx.fireChannelRead(msg);
+            }
+        } finally {
+            decoding = false;
+            cumulation.discardReadComponents();
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.study.hc.net.nio;
+
+/**
+ * {@link ChannelPipeline}中的处理器，实际使用的是{@link ChannelInboundHandler}和{@link ChannelOutboundHandler}，
+ * 编解码器可以同时实现两者
+ * <p>
+ * 每个连接有自己的pipeline和处理器实例，处理器只会在连接所属的I/O reactor线程中被调用，可以保存连接级别的状态
+ *
+ * @author chensicong
+ * @date 2026-10-18 20:00
+ **/
+public interface ChannelHandler {
+}
@@ -0,0 +1,151 @@
+package com.study.hc.net.nio;
+
+import java.net.SocketAddress;
+
+/**
+ * 处理器在pipeline中的位置，处理器通过它把消息传给下一个处理器：
+ * 入站事件用fireXxx传给后面的下一个入站处理器，出站消息用write/flush传给前面的下一个出站处理器
+ *
+ * @author chensicong
+ * @date 2026-10-18 20:00
+ **/
+public final class ChannelHandlerContext {
+
+    private final String name;
+
+    private final ChannelHandler handler;
+
+    private final ChannelPipeline pipeline;
+
+    ChannelHandlerContext prev;
+
+    ChannelHandlerContext next;
+
+    ChannelHandlerContext(String name, ChannelHandler handler, ChannelPipeline pipeline) {
+        this.name = name;
+        this.handler = handler;
+        this.pipeline = pipeline;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public ChannelHandler handler() {
+        return handler;
+    }
+
+    public ChannelPipeline pipeline() {
+        return pipeline;
+    }
+
+    public SocketAddress remoteAddress() {
+        return pipeline.remoteAddress();
+    }
+
+    /**
+     * 入站处理是否暂停（处理中的请求达到上限、处理器要求暂停，或者连接不再接收新的请求）。
+     * 暂停期间解码器应当把数据留着，等{@link ChannelInboundHandler#channelReadResumed}时再继续
+     */
+    public boolean isInputPaused() {
+        return pipeline.isInputPaused();
+    }
+
+    /**
+     * 发送队列是否低于高水位，为false时应当暂停产生新的响应，等{@link ChannelInboundHandler#channelWritabilityChanged}
+     */
+    public boolean isWritable() {
+        return pipeline.isWritable();
+    }
+
+    public void fireChannelRead(Object msg) {
+        ChannelHandlerContext ctx = nextInbound();
+        try {
+            ((ChannelInboundHandler) ctx.handler).channelRead(ctx, msg);
+        } catch (Throwable t) {
+            ctx.invokeExceptionCaught(t);
+        }
+    }
+
+    public void fireChannelReadComplete() {
+        ChannelHandlerContext ctx = nextInbound();
+        try {
+            ((ChannelInboundHandler) ctx.handler).channelReadComplete(ctx);
+        } catch (Throwable t) {
+            ctx.invokeExceptionCaught(t);
+        }
+    }
+
+    public void fireChannelReadResumed() {
+        ChannelHandlerContext ctx = nextInbound();
+        try {
+            ((ChannelInboundHandler) ctx.handler).channelReadResumed(ctx);
+        } catch (Throwable t) {
+            ctx.invokeExceptionCaught(t);
+        }
+    }
+
+    public void fireChannelWritabilityChanged() {
+        ChannelHandlerContext ctx = nextInbound();
+        try {
+            ((ChannelInboundHandler) ctx.handler).channelWritabilityChanged(ctx);
+        } catch (Throwable t) {
+            ctx.invokeExceptionCaught(t);
+        }
+    }
+
+    public void fireChannelInactive() {
+        ChannelHandlerContext ctx = nextInbound();
+        try {
+            ((ChannelInboundHandler) ctx.handler).channelInactive(ctx);
+        } catch (Throwable t) {
+            // 连接已经关闭，只能记录下来，继续通知后面的处理器释放资源
+            t.printStackTrace();
+            ctx.fireChannelInactive();
+        }
+    }
+
+    public void fireExceptionCaught(Throwable cause) {
+        nextInbound().invokeExceptionCaught(cause);
+    }
+
+    private void invokeExceptionCaught(Throwable cause) {
+        try {
+            ((ChannelInboundHandler) handler).exceptionCaught(this, cause);
+        } catch (Throwable t) {
+            t.printStackTrace();
+        }
+    }
+
+    public void write(Object msg) throws Exception {
+        ChannelHandlerContext ctx = prevOutbound();
+        ((ChannelOutboundHandler) ctx.handler).write(ctx, msg);
+    }
+
+    public void flush() throws Exception {
+        ChannelHandlerContext ctx = prevOutbound();
+        ((ChannelOutboundHandler) ctx.handler).flush(ctx);
+    }
+
+    /**
+     * 尾节点是入站处理器，一定能找到
+     */
+    private ChannelHandlerContext nextInbound() {
+        ChannelHandlerContext ctx = next;
+        while (!(ctx.handler instanceof ChannelInboundHandler)) {
+            ctx = ctx.next;
+        }
+        return ctx;
+    }
+
+    /**
+     * 头节点是出站处理器，一定能找到
+     */
+    private ChannelHandlerContext prevOutbound() {
+        ChannelHandlerContext ctx = prev;
+        while (!(ctx.handler instanceof ChannelOutboundHandler)) {
+            ctx = ctx.prev;
+        }
+        return ctx;
+    }
+}
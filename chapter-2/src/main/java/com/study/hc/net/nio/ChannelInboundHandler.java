@@ -0,0 +1,52 @@
+package com.study.hc.net.nio;
+
+/**
+ * 入站处理器：处理从连接读到的数据和连接事件，按pipeline中从前到后的顺序调用
+ * <p>
+ * 消息是什么类型由前一个处理器决定：第一个处理器收到的是刚读到的ByteBuffer（读模式，来自{@link BufferPool}），
+ * 解码器把它转换成HttpRequest等消息后用{@link ChannelHandlerContext#fireChannelRead(Object)}传给下一个。
+ * 不再往后传递的ByteBuffer由处理器自己负责归还
+ *
+ * @author chensicong
+ * @date 2026-10-18 20:00
+ **/
+public interface ChannelInboundHandler extends ChannelHandler {
+
+    void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception;
+
+    /**
+     * 一次read得到的数据已经处理完（channelRead可能被调用了多次），适合在这里批量flush或者批量提交积攒的工作
+     */
+    default void channelReadComplete(ChannelHandlerContext ctx) throws Exception {
+        ctx.fireChannelReadComplete();
+    }
+
+    /**
+     * 之前因为处理中的请求太多而暂停的入站处理恢复了，缓存了未处理数据的处理器应当继续处理
+     */
+    default void channelReadResumed(ChannelHandlerContext ctx) throws Exception {
+        ctx.fireChannelReadResumed();
+    }
+
+    /**
+     * 发送队列越过高水位变为不可写，或者降到低水位以下恢复可写，用{@link ChannelHandlerContext#isWritable()}查询当前状态。
+     * 在I/O线程中产生响应的处理器应当在不可写时暂停产生新的响应，恢复可写后继续
+     */
+    default void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        ctx.fireChannelWritabilityChanged();
+    }
+
+    /**
+     * 连接已关闭，释放处理器持有的缓冲区等资源
+     */
+    default void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        ctx.fireChannelInactive();
+    }
+
+    /**
+     * 处理入站事件时抛出了异常（例如请求不合法），不处理就继续往后传递，最后由连接响应错误或关闭连接
+     */
+    default void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+        ctx.fireExceptionCaught(cause);
+    }
+}
@@ -0,0 +1,19 @@
+package com.study.hc.net.nio;
+
+/**
+ * 出站处理器：处理要写出的消息，按pipeline中从后到前的顺序调用，最后到达连接的发送队列
+ * <p>
+ * 到达发送队列的消息只能是ByteBuffer（读模式）或{@link FileRegion}，
+ * 编码器负责把{@link HttpExchange}等消息转换成这两种类型
+ *
+ * @author chensicong
+ * @date 2026-10-18 20:00
+ **/
+public interface ChannelOutboundHandler extends ChannelHandler {
+
+    void write(ChannelHandlerContext ctx, Object msg) throws Exception;
+
+    default void flush(ChannelHandlerContext ctx) throws Exception {
+        ctx.flush();
+    }
+}
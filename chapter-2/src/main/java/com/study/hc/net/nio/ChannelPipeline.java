@@ -0,0 +1,275 @@
+package com.study.hc.net.nio;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 每个连接一条的处理器链：入站数据从头到尾经过各个{@link ChannelInboundHandler}，出站消息从尾到头经过各个{@link ChannelOutboundHandler}
+ * <p>
+ * 头节点连接socket：入站的起点是刚读到的ByteBuffer，出站的终点是连接的发送队列；
+ * 尾节点把解码出的请求交给reactor排队、提交给业务线程池。
+ * 默认的链是 decoder({@link HttpRequestDecodeHandler}) → encoder({@link HttpResponseEncodeHandler})，
+ * 可以在两者之间或前后插入自己的处理器，例如协议转换、请求过滤、响应改写等。
+ * 处理器之间传递的是缓冲区本身或它的视图，不需要在每一层拷贝到byte[]、String。
+ * 只在连接所属的I/O reactor线程中访问
+ *
+ * @author chensicong
+ * @date 2026-10-18 20:00
+ **/
+public final class ChannelPipeline {
+
+    private final Connection connection;
+
+    private final ChannelHandlerContext head;
+
+    private final ChannelHandlerContext tail;
+
+    ChannelPipeline(Connection connection) {
+        this.connection = connection;
+        this.head = new ChannelHandlerContext("head", new HeadHandler(connection), this);
+        this.tail = new ChannelHandlerContext("tail", new TailHandler(connection), this);
+        head.next = tail;
+        tail.prev = head;
+    }
+
+    public ChannelPipeline addFirst(String name, ChannelHandler handler) {
+        insertAfter(head, name, handler);
+        return this;
+    }
+
+    public ChannelPipeline addLast(String name, ChannelHandler handler) {
+        insertAfter(tail.prev, name, handler);
+        return this;
+    }
+
+    public ChannelPipeline addBefore(String baseName, String name, ChannelHandler handler) {
+        insertAfter(context(baseName).prev, name, handler);
+        return this;
+    }
+
+    public ChannelPipeline addAfter(String baseName, String name, ChannelHandler handler) {
+        insertAfter(context(baseName), name, handler);
+        return this;
+    }
+
+    public ChannelHandler remove(String name) {
+        ChannelHandlerContext ctx = context(name);
+        ctx.prev.next = ctx.next;
+        ctx.next.prev = ctx.prev;
+        return ctx.handler();
+    }
+
+    /**
+     * @return 对应名称的处理器，不存在时返回null
+     */
+    public ChannelHandler get(String name) {
+        ChannelHandlerContext ctx = find(name);
+        return ctx == null ? null : ctx.handler();
+    }
+
+    public List<String> names() {
+        List<String> names = new ArrayList<>();
+        for (ChannelHandlerContext ctx = head.next; ctx != tail; ctx = ctx.next) {
+            names.add(ctx.name());
+        }
+        return names;
+    }
+
+    SocketAddress remoteAddress() {
+        return connection.remoteAddress();
+    }
+
+    boolean isInputPaused() {
+        return connection.isInputPaused();
+    }
+
+    boolean isWritable() {
+        return connection.isWritable();
+    }
+
+    /**
+     * 处理器自己的背压：积压的工作太多时暂停读取和解码，处理完后调用{@link #resumeRead()}恢复
+     */
+    public void pauseRead() {
+        connection.suspendRead(Connection.SUSPEND_HANDLER);
+    }
+
+    /**
+     * 恢复{@link #pauseRead()}暂停的读取，解码器继续解码已经读到的数据
+     */
+    public void resumeRead() {
+        if (!connection.isReadSuspended(Connection.SUSPEND_HANDLER)) {
+            return;
+        }
+        connection.resumeRead(Connection.SUSPEND_HANDLER);
+        if (!connection.isInputPaused()) {
+            head.fireChannelReadResumed();
+        }
+    }
+
+    /**
+     * 不再读取新的数据，已经写入的数据发送完以后关闭连接
+     */
+    public void closeAfterFlush() throws IOException {
+        connection.closeAfterFlush();
+    }
+
+    /**
+     * 立即关闭连接，丢弃还没发送的数据
+     */
+    public void close() {
+        connection.close();
+    }
+
+    /**
+     * 把读到的数据交给第一个入站处理器，缓冲区的所有权随之转移
+     */
+    void fireChannelRead(ByteBuffer buffer) {
+        head.fireChannelRead(buffer);
+    }
+
+    void fireChannelReadComplete() {
+        head.fireChannelReadComplete();
+    }
+
+    void fireChannelReadResumed() {
+        head.fireChannelReadResumed();
+    }
+
+    void fireChannelWritabilityChanged() {
+        head.fireChannelWritabilityChanged();
+    }
+
+    void fireChannelInactive() {
+        head.fireChannelInactive();
+    }
+
+    /**
+     * 从尾部写出一个消息，经过所有出站处理器后进入发送队列（不会立即写出）
+     */
+    void write(Object msg) throws IOException {
+        try {
+            tail.write(msg);
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+    }
+
+    void flush() throws IOException {
+        try {
+            tail.flush();
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+    }
+
+    private void insertAfter(ChannelHandlerContext prev, String name, ChannelHandler handler) {
+        if (find(name) != null) {
+            throw new IllegalArgumentException("duplicate handler name: " + name);
+        }
+        ChannelHandlerContext ctx = new ChannelHandlerContext(name, handler, this);
+        ctx.prev = prev;
+        ctx.next = prev.next;
+        prev.next.prev = ctx;
+        prev.next = ctx;
+    }
+
+    private ChannelHandlerContext context(String name) {
+        ChannelHandlerContext ctx = find(name);
+        if (ctx == null) {
+            throw new IllegalArgumentException("no such handler: " + name);
+        }
+        return ctx;
+    }
+
+    private ChannelHandlerContext find(String name) {
+        for (ChannelHandlerContext ctx = head.next; ctx != tail; ctx = ctx.next) {
+            if (ctx.name().equals(name)) {
+                return ctx;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 出站的终点：ByteBuffer和FileRegion进入连接的发送队列
+     */
+    private static final class HeadHandler implements ChannelOutboundHandler {
+
+        private final Connection connection;
+
+        HeadHandler(Connection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public void write(ChannelHandlerContext ctx, Object msg) {
+            if (msg instanceof ByteBuffer) {
+                connection.write((ByteBuffer) msg);
+            } else if (msg instanceof FileRegion) {
+                connection.write((FileRegion) msg);
+            } else {
+                throw new IllegalArgumentException("unsupported outbound message: " + msg.getClass().getName()
+                        + "，需要编码器把它转换成ByteBuffer或FileRegion");
+            }
+        }
+
+        @Override
+        public void flush(ChannelHandlerContext ctx) throws IOException {
+            connection.flush();
+        }
+    }
+
+    /**
+     * 入站的终点：请求交给连接排队，其他消息丢弃
+     */
+    private static final class TailHandler implements ChannelInboundHandler {
+
+        private final Connection connection;
+
+        TailHandler(Connection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            if (msg instanceof HttpRequest) {
+                connection.enqueue((HttpRequest) msg);
+            } else if (msg instanceof HttpExchange) {
+                // 已经有响应的请求（例如缓存命中）
+                connection.enqueue((HttpExchange) msg);
+            } else if (msg instanceof ByteBuffer && !((ByteBuffer) msg).isReadOnly()) {
+                // 没有解码器处理的原始数据
+                BufferPool.DEFAULT.release((ByteBuffer) msg);
+            }
+        }
+
+        @Override
+        public void channelReadComplete(ChannelHandlerContext ctx) {
+        }
+
+        @Override
+        public void channelReadResumed(ChannelHandlerContext ctx) {
+        }
+
+        @Override
+        public void channelWritabilityChanged(ChannelHandlerContext ctx) {
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) {
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            connection.inboundFailed(cause);
+        }
+    }
+}
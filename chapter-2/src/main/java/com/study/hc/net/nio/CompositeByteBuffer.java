@@ -0,0 +1,85 @@
+package com.study.hc.net.nio;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * 由多次read得到的缓冲区按顺序组成的逻辑缓冲区，消息跨多次read时不需要把数据拷贝到一个更大的缓冲区中再解析
+ * <p>
+ * 每个组成部分都是读模式的ByteBuffer，position就是读指针：解码器通过{@link #firstComponent()}拿到当前的部分直接读取，
+ * 读完的部分在{@link #discardReadComponents()}时归还给{@link BufferPool}（只读缓冲区是共享内容，不归还）。
+ * 只在所属连接的I/O线程中使用，不是线程安全的
+ *
+ * @author chensicong
+ * @date 2026-10-18 20:00
+ **/
+public final class CompositeByteBuffer {
+
+    private final ArrayDeque<ByteBuffer> components = new ArrayDeque<>(4);
+
+    /**
+     * 追加一个读模式的缓冲区，所有权转移给本对象
+     */
+    public void addComponent(ByteBuffer buffer) {
+        if (!buffer.hasRemaining()) {
+            release(buffer);
+            return;
+        }
+        components.addLast(buffer);
+    }
+
+    /**
+     * 第一个还有数据的部分，没有数据时返回null。调用方直接移动它的position表示已经读取
+     */
+    public ByteBuffer firstComponent() {
+        discardReadComponents();
+        return components.peekFirst();
+    }
+
+    public int readableBytes() {
+        int bytes = 0;
+        for (ByteBuffer component : components) {
+            bytes += component.remaining();
+        }
+        return bytes;
+    }
+
+    public boolean isReadable() {
+        for (ByteBuffer component : components) {
+            if (component.hasRemaining()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int componentCount() {
+        return components.size();
+    }
+
+    /**
+     * 归还已经读完的部分
+     */
+    public void discardReadComponents() {
+        ByteBuffer first;
+        while ((first = components.peekFirst()) != null && !first.hasRemaining()) {
+            release(components.pollFirst());
+        }
+    }
+
+    /**
+     * 归还所有部分，包括还没读完的
+     */
+    public void release() {
+        ByteBuffer buffer;
+        while ((buffer = components.pollFirst()) != null) {
+            release(buffer);
+        }
+    }
+
+    private static void release(ByteBuffer buffer) {
+        if (!buffer.isReadOnly()) {
+            BufferPool.DEFAULT.release(buffer);
+        }
+    }
+}
@@ -0,0 +1,292 @@
+package com.study.hc.net.nio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 响应压缩：包装业务处理器，按请求的Accept-Encoding把文本类响应压缩成gzip或deflate，
+ * 和业务处理器一样在业务线程中执行，压缩不占用I/O线程
+ * <p>
+ * 动态生成的byte[]响应体在当前业务线程中直接流式压缩（{@link Compressor}）；
+ * 共享的响应体和文件响应体（例如{@link StaticFileHandler}返回的）带有ETag时认为内容可以复用，
+ * 压缩后的版本只在后台线程中计算一次，放进按总字节数LRU淘汰的缓存，之后直接写出缓存的只读副本；
+ * 后台还没算完时先按未压缩的内容响应，不让请求等待。
+ * <p>
+ * 压缩后的响应带有Vary: Accept-Encoding，ETag改成弱ETag（和未压缩的版本语义相同、字节不同），
+ * 去掉Accept-Ranges（不支持对压缩后的内容做Range）。只压缩200响应，已经有Content-Encoding的响应原样返回
+ *
+ * @author chensicong
+ * @date 2026-10-19 02:00
+ **/
+public class CompressionHandler implements HttpHandler {
+
+    private final HttpHandler delegate;
+
+    private final int level;
+
+    private final int minBytes;
+
+    private final long cacheCapacity;
+
+    private final VariantCache cache;
+
+    /**
+     * 计算可复用响应体的压缩版本，单线程、有界队列，满了就放弃，下次请求再提交
+     */
+    private final ThreadPoolExecutor compressExecutor;
+
+    /**
+     * 已经提交、还没算完的缓存key，同一个版本只提交一次
+     */
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+
+    private final LongAdder compressedResponses = new LongAdder();
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param level         压缩级别，0~9或者{@link java.util.zip.Deflater#DEFAULT_COMPRESSION}
+     * @param minBytes      响应体小于该大小时不压缩，压缩省下的字节抵不上CPU开销和gzip头尾
+     * @param cacheCapacity 压缩版本缓存的总字节数上限，超过该大小的文件不压缩
+     */
+    public CompressionHandler(HttpHandler delegate, int level, int minBytes, long cacheCapacity) {
+        this.delegate = delegate;
+        this.level = level;
+        this.minBytes = minBytes;
+        this.cacheCapacity = cacheCapacity;
+        this.cache = new VariantCache(cacheCapacity);
+        this.compressExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(256), r -> {
+            Thread thread = new Thread(r, "nio-compress");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public HttpResponse handle(HttpRequest request) throws Exception {
+        HttpResponse response = delegate.handle(request);
+        if (response == null || response.status() != 200 || response.isPreEncoded()
+                || header(response, "Content-Encoding") != null
+                || !isCompressible(header(response, "Content-Type"))
+                || response.contentLength() < minBytes) {
+            return response;
+        }
+        // 同一个URL的响应内容随Accept-Encoding变化，压缩和未压缩的版本都要告诉中间的缓存
+        String vary = header(response, "Vary");
+        if (vary == null) {
+            response.header("Vary", "Accept-Encoding");
+        } else if (!vary.toLowerCase(Locale.ROOT).contains("accept-encoding")) {
+            response.header("Vary", vary + ", Accept-Encoding");
+        }
+        ContentEncoding encoding = ContentEncoding.negotiate(request.header("accept-encoding"));
+        if (encoding == null) {
+            return response;
+        }
+        String etag = header(response, "ETag");
+        if (response.bodyFile() == null && (response.bodyBuffer() == null || etag == null)) {
+            // 动态生成的响应体：在当前业务线程中直接压缩
+            return compressNow(response, encoding);
+        }
+        if (etag == null || response.contentLength() > cacheCapacity) {
+            return response;
+        }
+        String key = encoding.token() + ' ' + request.uri() + ' ' + etag;
+        Variant variant = cache.get(key);
+        if (variant == null) {
+            misses.increment();
+            submit(key, encoding, response);
+            return response;
+        }
+        hits.increment();
+        if (variant.content == null) {
+            // 压缩后不会变小
+            return response;
+        }
+        compressedResponses.increment();
+        return encoded(response, encoding).body(variant.content.duplicate());
+    }
+
+    private HttpResponse compressNow(HttpResponse response, ContentEncoding encoding) {
+        long length = response.contentLength();
+        if (response.bodyBuffer() != null) {
+            ByteBuffer compressed = Compressor.compress(encoding, level, response.bodyBuffer());
+            if (compressed.remaining() >= length) {
+                return response;
+            }
+            compressedResponses.increment();
+            return encoded(response, encoding).body(compressed);
+        }
+        byte[] compressed = Compressor.compress(encoding, level, response.body());
+        if (compressed.length >= length) {
+            return response;
+        }
+        compressedResponses.increment();
+        return encoded(response, encoding).body(compressed);
+    }
+
+    /**
+     * 提交到后台线程压缩，结果放入缓存；文件在后台线程中重新打开读取，不影响响应中的FileRegion
+     */
+    private void submit(String key, ContentEncoding encoding, HttpResponse response) {
+        if (!pending.add(key)) {
+            return;
+        }
+        ByteBuffer buffer = response.bodyBuffer() == null ? null : response.bodyBuffer().duplicate();
+        FileRegion file = response.bodyFile();
+        long length = response.contentLength();
+        try {
+            compressExecutor.execute(() -> {
+                try {
+                    ByteBuffer compressed = buffer != null ? Compressor.compress(encoding, level, buffer)
+                            : Compressor.compress(encoding, level, file.path(), file.position(), file.count());
+                    if (compressed != null) {
+                        cache.put(key, compressed.remaining() < length ? compressed : null);
+                    }
+                } catch (IOException ex) {
+                    // 文件读取失败（例如被删除），下次请求再试
+                } finally {
+                    pending.remove(key);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            pending.remove(key);
+        }
+    }
+
+    /**
+     * 复制状态和响应头，生成压缩后的响应，原来的响应不修改
+     */
+    private static HttpResponse encoded(HttpResponse response, ContentEncoding encoding) {
+        HttpResponse result = new HttpResponse(response.status());
+        for (Map.Entry<String, String> header : response.headers().entrySet()) {
+            String name = header.getKey();
+            String value = header.getValue();
+            if (name.equalsIgnoreCase("Accept-Ranges")) {
+                continue;
+            }
+            if (name.equalsIgnoreCase("ETag") && !value.startsWith("W/")) {
+                value = "W/" + value;
+            }
+            result.header(name, value);
+        }
+        return result.header("Content-Encoding", encoding.token());
+    }
+
+    private static String header(HttpResponse response, String name) {
+        for (Map.Entry<String, String> header : response.headers().entrySet()) {
+            if (header.getKey().equalsIgnoreCase(name)) {
+                return header.getValue();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 文本类内容才值得压缩，图片、视频、压缩包本身已经压缩过
+     */
+    static boolean isCompressible(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        int semicolon = contentType.indexOf(';');
+        String type = (semicolon < 0 ? contentType : contentType.substring(0, semicolon)).trim()
+                .toLowerCase(Locale.ROOT);
+        return type.startsWith("text/") || type.endsWith("+json") || type.endsWith("+xml")
+                || type.equals("application/json") || type.equals("application/javascript")
+                || type.equals("application/xml") || type.equals("application/wasm");
+    }
+
+    /**
+     * 压缩后返回的响应数
+     */
+    public long compressedCount() {
+        return compressedResponses.sum();
+    }
+
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    public long missCount() {
+        return misses.sum();
+    }
+
+    public long cachedBytes() {
+        return cache.totalBytes();
+    }
+
+    /**
+     * 压缩版本缓存，按总字节数做LRU淘汰；会被多个业务线程和后台压缩线程同时访问，用synchronized保护
+     */
+    private static final class VariantCache {
+
+        /**
+         * 每个条目除压缩内容外的大致开销，不会变小的内容也占用这么多
+         */
+        private static final int ENTRY_OVERHEAD = 128;
+
+        private final long capacity;
+
+        private final LinkedHashMap<String, Variant> variants = new LinkedHashMap<>(16, 0.75f, true);
+
+        private long totalBytes;
+
+        VariantCache(long capacity) {
+            this.capacity = capacity;
+        }
+
+        synchronized Variant get(String key) {
+            return variants.get(key);
+        }
+
+        /**
+         * @param content 压缩后的只读缓冲区，为null表示压缩后不会变小
+         */
+        synchronized void put(String key, ByteBuffer content) {
+            Variant variant = new Variant(content);
+            if (variant.bytes > capacity) {
+                return;
+            }
+            Variant previous = variants.put(key, variant);
+            if (previous != null) {
+                totalBytes -= previous.bytes;
+            }
+            totalBytes += variant.bytes;
+            Iterator<Variant> iterator = variants.values().iterator();
+            while (totalBytes > capacity && iterator.hasNext()) {
+                totalBytes -= iterator.next().bytes;
+                iterator.remove();
+            }
+        }
+
+        synchronized long totalBytes() {
+            return totalBytes;
+        }
+    }
+
+    private static final class Variant {
+
+        final ByteBuffer content;
+
+        final long bytes;
+
+        Variant(ByteBuffer content) {
+            this.content = content;
+            this.bytes = (content == null ? 0 : content.remaining()) + VariantCache.ENTRY_OVERHEAD;
+        }
+    }
+}
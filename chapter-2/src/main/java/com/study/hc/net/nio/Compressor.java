@@ -0,0 +1,209 @@
+package com.study.hc.net.nio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * 按{@link ContentEncoding}流式压缩响应体，每个线程一个实例，通过{@link #current()}获取
+ * <p>
+ * 每个Deflater要分配几百KB的本地内存，创建和end()的开销都不小，GZIPOutputStream每次都新建一个；
+ * 这里每个线程复用同一对Deflater，用reset()开始下一次压缩。输入按64KB分段送进Deflater，
+ * 堆外缓冲区和文件不需要先整个拷贝到堆上；输出写进线程复用的数组，最后只按实际长度拷贝一次。
+ * 线程结束前Deflater不会被end()，只适合给业务线程、后台压缩线程这类常驻线程使用
+ *
+ * @author chensicong
+ * @date 2026-10-19 02:00
+ **/
+final class Compressor {
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * 输出数组超过该大小时用完不保留，避免一次大响应让线程一直占着大数组
+     */
+    private static final int MAX_RETAINED_OUTPUT = 1024 * 1024;
+
+    /**
+     * 没有文件名、修改时间的gzip头，OS字段为unknown
+     */
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+    private static final ThreadLocal<Compressor> CURRENT = ThreadLocal.withInitial(Compressor::new);
+
+    /**
+     * gzip自己写头和尾，Deflater只输出原始的deflate数据
+     */
+    private final Deflater gzipDeflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+
+    private final Deflater zlibDeflater = new Deflater(Deflater.DEFAULT_COMPRESSION, false);
+
+    private final CRC32 crc = new CRC32();
+
+    private final byte[] input = new byte[CHUNK_SIZE];
+
+    private byte[] output = new byte[CHUNK_SIZE];
+
+    private int outputLength;
+
+    private Deflater deflater;
+
+    private ContentEncoding encoding;
+
+    private long inputLength;
+
+    private Compressor() {
+    }
+
+    static Compressor current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * 压缩byte[]响应体
+     */
+    static byte[] compress(ContentEncoding encoding, int level, byte[] body) {
+        Compressor compressor = current();
+        compressor.begin(encoding, level);
+        compressor.update(body, 0, body.length);
+        compressor.finish();
+        return compressor.toByteArray();
+    }
+
+    /**
+     * 压缩缓冲区中position到limit之间的内容，不改变缓冲区的position
+     *
+     * @return 压缩结果的只读堆外缓冲区
+     */
+    static ByteBuffer compress(ContentEncoding encoding, int level, ByteBuffer body) {
+        Compressor compressor = current();
+        compressor.begin(encoding, level);
+        compressor.update(body.duplicate());
+        compressor.finish();
+        return compressor.toDirectBuffer();
+    }
+
+    /**
+     * 压缩文件中的一段内容
+     *
+     * @return 压缩结果的只读堆外缓冲区，文件比预期的短（读取过程中被截断）时返回null
+     */
+    static ByteBuffer compress(ContentEncoding encoding, int level, Path path, long position, long count)
+            throws IOException {
+        Compressor compressor = current();
+        compressor.begin(encoding, level);
+        try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer chunk = ByteBuffer.wrap(compressor.input);
+            long offset = position;
+            long end = position + count;
+            while (offset < end) {
+                chunk.clear();
+                chunk.limit((int) Math.min(CHUNK_SIZE, end - offset));
+                int read = file.read(chunk, offset);
+                if (read < 0) {
+                    // 下一次begin会reset Deflater
+                    compressor.release();
+                    return null;
+                }
+                compressor.update(compressor.input, 0, read);
+                offset += read;
+            }
+        }
+        compressor.finish();
+        return compressor.toDirectBuffer();
+    }
+
+    private void begin(ContentEncoding encoding, int level) {
+        this.encoding = encoding;
+        this.deflater = encoding == ContentEncoding.GZIP ? gzipDeflater : zlibDeflater;
+        deflater.reset();
+        deflater.setLevel(level);
+        crc.reset();
+        inputLength = 0;
+        outputLength = 0;
+        if (encoding == ContentEncoding.GZIP) {
+            System.arraycopy(GZIP_HEADER, 0, output, 0, GZIP_HEADER.length);
+            outputLength = GZIP_HEADER.length;
+        }
+    }
+
+    private void update(byte[] bytes, int offset, int length) {
+        if (encoding == ContentEncoding.GZIP) {
+            crc.update(bytes, offset, length);
+        }
+        inputLength += length;
+        // Deflater只保存输入数组的引用，必须在本次调用内消费完，input数组下一段还要复用
+        deflater.setInput(bytes, offset, length);
+        while (!deflater.needsInput()) {
+            deflate();
+        }
+    }
+
+    private void update(ByteBuffer body) {
+        if (body.hasArray()) {
+            update(body.array(), body.arrayOffset() + body.position(), body.remaining());
+            return;
+        }
+        // Java 8的Deflater只接受byte[]，堆外缓冲区分段拷贝到复用的输入数组
+        while (body.hasRemaining()) {
+            int length = Math.min(CHUNK_SIZE, body.remaining());
+            body.get(input, 0, length);
+            update(input, 0, length);
+        }
+    }
+
+    private void finish() {
+        deflater.finish();
+        while (!deflater.finished()) {
+            deflate();
+        }
+        if (encoding == ContentEncoding.GZIP) {
+            ensureCapacity(8);
+            writeIntLE((int) crc.getValue());
+            writeIntLE((int) inputLength);
+        }
+    }
+
+    private void deflate() {
+        ensureCapacity(1);
+        outputLength += deflater.deflate(output, outputLength, output.length - outputLength);
+    }
+
+    private void ensureCapacity(int bytes) {
+        if (output.length - outputLength < bytes) {
+            output = Arrays.copyOf(output, Math.max(output.length * 2, outputLength + bytes));
+        }
+    }
+
+    private void writeIntLE(int value) {
+        output[outputLength++] = (byte) value;
+        output[outputLength++] = (byte) (value >>> 8);
+        output[outputLength++] = (byte) (value >>> 16);
+        output[outputLength++] = (byte) (value >>> 24);
+    }
+
+    private byte[] toByteArray() {
+        byte[] result = Arrays.copyOf(output, outputLength);
+        release();
+        return result;
+    }
+
+    private ByteBuffer toDirectBuffer() {
+        ByteBuffer result = ByteBuffer.allocateDirect(outputLength);
+        result.put(output, 0, outputLength).flip();
+        release();
+        return result.asReadOnlyBuffer();
+    }
+
+    private void release() {
+        outputLength = 0;
+        if (output.length > MAX_RETAINED_OUTPUT) {
+            output = new byte[CHUNK_SIZE];
+        }
+    }
+}
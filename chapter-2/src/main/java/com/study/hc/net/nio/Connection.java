@@ -0,0 +1,640 @@
+package com.study.hc.net.nio;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 客户端连接的上下文，作为attachment挂在SelectionKey上，只会被所属的I/O reactor线程访问
+ * <p>
+ * 每次read得到的缓冲区交给连接的{@link ChannelPipeline}，由其中的解码器解码（半包数据和解码状态保存在解码器中）。
+ * 解码出的请求按顺序排队，由业务线程池处理后交回本线程，按请求顺序经过pipeline的出站处理器编码后写出。
+ * 写出的响应先进入outbound队列，{@link #flush()}时用一次gathering write批量写出，文件响应体用transferTo发送；
+ * socket发送缓冲区满写不完时注册OP_WRITE，等可写事件再继续，不会在reactor线程上空转。
+ * 空闲、读、写超时由所属reactor线程的时间轮检查，超时后关闭连接。
+ *
+ * @author chensicong
+ * @date 2026-10-17 19:20
+ **/
+class Connection {
+
+    /**
+     * 一次gathering write最多合并的缓冲区个数
+     */
+    private static final int MAX_GATHERING_BUFFERS = 16;
+
+    /**
+     * 一次flush最多调用write的次数，避免一个连接长时间占用reactor线程
+     */
+    private static final int WRITE_SPIN_COUNT = 16;
+
+    /**
+     * 暂停读的原因：待发送数据超过高水位
+     */
+    static final int SUSPEND_WRITE_BACKPRESSURE = 1;
+
+    /**
+     * 暂停读的原因：处理中的请求数达到pipelining上限
+     */
+    static final int SUSPEND_PIPELINE_FULL = 2;
+
+    /**
+     * 暂停读的原因：业务线程池队列已满
+     */
+    static final int SUSPEND_WORKER_BUSY = 4;
+
+    /**
+     * 暂停读的原因：不再接收新的请求（对端关闭输出，或者即将关闭连接）
+     */
+    static final int SUSPEND_INPUT_CLOSED = 8;
+
+    /**
+     * 暂停读的原因：pipeline中的处理器要求暂停（{@link ChannelPipeline#pauseRead()}）
+     */
+    static final int SUSPEND_HANDLER = 16;
+
+    final SocketChannel channel;
+
+    /**
+     * 所属reactor线程重建selector后会换成新selector上的key
+     */
+    SelectionKey key;
+
+    final HttpRequestDecoder decoder = new HttpRequestDecoder();
+
+    /**
+     * 对端地址，建立连接时获取一次，记访问日志时使用
+     */
+    private final SocketAddress remoteAddress;
+
+    private final ServerConfig config;
+
+    /**
+     * 所属reactor线程的负载计数
+     */
+    private final ReactorLoad load;
+
+    /**
+     * 所属reactor线程的运行指标
+     */
+    private final ReactorMetrics metrics;
+
+    /**
+     * 入站、出站处理器链
+     */
+    private final ChannelPipeline pipeline = new ChannelPipeline(this);
+
+    /**
+     * 决定每次申请多大的inbound缓冲区
+     */
+    private final AdaptiveReceiveBuffer receiveBuffer;
+
+    /**
+     * 最近一次read把缓冲区填满了，socket中可能还有数据
+     */
+    private boolean lastReadFilled;
+
+    /**
+     * 待发送的数据，ByteBuffer（读模式）或FileRegion，按顺序写出，写完后释放
+     */
+    private final ArrayDeque<Object> outbound = new ArrayDeque<>();
+
+    private final ByteBuffer[] gathering = new ByteBuffer[MAX_GATHERING_BUFFERS];
+
+    private long pendingOutboundBytes;
+
+    private boolean writable = true;
+
+    /**
+     * 暂停读的原因，按位记录，全部解除后才恢复OP_READ
+     */
+    private int readSuspended;
+
+    /**
+     * 数据写完后关闭连接
+     */
+    private boolean closeAfterFlush;
+
+    /**
+     * 已解码、按到达顺序排队等待响应的请求。业务线程可能乱序完成，只有队头的响应就绪后才写出，保证响应顺序与请求顺序一致
+     */
+    private final ArrayDeque<HttpExchange> inflight = new ArrayDeque<>();
+
+    /**
+     * 还没有提交给业务线程池的请求
+     */
+    private final ArrayDeque<HttpExchange> unsubmitted = new ArrayDeque<>();
+
+    /**
+     * 不再解码新的请求
+     */
+    private boolean inputClosed;
+
+    private boolean closed;
+
+    /**
+     * 所属reactor线程的定时器，用于空闲/读/写超时检查
+     */
+    private final HashedWheelTimer timer;
+
+    private HashedWheelTimer.Timeout timeout;
+
+    /**
+     * 最近一次读到数据的时间
+     */
+    private long lastReadNanos;
+
+    /**
+     * 最近一次写出数据（或发送队列由空变为非空）的时间
+     */
+    private long lastWriteNanos;
+
+    /**
+     * 读超时、排入408响应的时间，没有发生读超时时为0
+     */
+    private long requestTimedOutNanos;
+
+    /**
+     * 所属I/O线程的流量录制和本连接在录制中的ID，没有启用录制时为null
+     */
+    private TrafficCapture capture;
+
+    private long captureId;
+
+    Connection(SocketChannel channel, SelectionKey key, ServerConfig config, ReactorLoad load,
+               ReactorMetrics metrics, HashedWheelTimer timer) {
+        this.channel = channel;
+        this.key = key;
+        this.config = config;
+        this.load = load;
+        this.metrics = metrics;
+        this.remoteAddress = remoteAddress(channel);
+        this.timer = timer;
+        this.receiveBuffer = new AdaptiveReceiveBuffer(config.getMinReceiveBufferSize(),
+                config.getInitialReceiveBufferSize(), config.getMaxReceiveBufferSize());
+        lastReadNanos = lastWriteNanos = System.nanoTime();
+        long delay = nextTimeoutCheck(Long.MAX_VALUE, config.getIdleTimeoutMillis());
+        delay = nextTimeoutCheck(delay, config.getReadTimeoutMillis());
+        delay = nextTimeoutCheck(delay, config.getWriteTimeoutMillis());
+        if (delay != Long.MAX_VALUE) {
+            timeout = timer.schedule(this::checkTimeouts, delay, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * 开始录制这个连接读到的数据，在注册完成后由I/O线程调用
+     */
+    void capture(TrafficCapture capture) {
+        this.capture = capture;
+        this.captureId = capture.opened();
+    }
+
+    private static SocketAddress remoteAddress(SocketChannel channel) {
+        try {
+            return channel.getRemoteAddress();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static long nextTimeoutCheck(long current, long timeoutMillis) {
+        return timeoutMillis > 0 ? Math.min(current, TimeUnit.MILLISECONDS.toNanos(timeoutMillis)) : current;
+    }
+
+    /**
+     * 定时检查空闲/读/写超时。读写时只更新时间戳，不重新设置定时任务；
+     * 定时任务到期时如果还没超时，按剩余时间重新挂一个，所以每个超时周期只有一次O(1)的时间轮操作
+     */
+    private void checkTimeouts() {
+        timeout = null;
+        if (closed) {
+            return;
+        }
+        long now = System.nanoTime();
+        long next = Long.MAX_VALUE;
+
+        long idleTimeout = TimeUnit.MILLISECONDS.toNanos(config.getIdleTimeoutMillis());
+        if (idleTimeout > 0) {
+            if (inflight.isEmpty() && outbound.isEmpty() && !decoder.isDecoding()) {
+                long idle = now - Math.max(lastReadNanos, lastWriteNanos);
+                if (idle >= idleTimeout) {
+                    close();
+                    return;
+                }
+                next = Math.min(next, idleTimeout - idle);
+            } else {
+                next = Math.min(next, idleTimeout);
+            }
+        }
+
+        long readTimeout = TimeUnit.MILLISECONDS.toNanos(config.getReadTimeoutMillis());
+        if (readTimeout > 0) {
+            if (decoder.isDecoding() && !inputClosed && readSuspended == 0) {
+                long waiting = now - lastReadNanos;
+                if (waiting >= readTimeout) {
+                    // 半个请求迟迟不发完（例如slowloris攻击），响应408；408不是长连接响应，写出后关闭连接
+                    enqueueError(HttpResponse.error(408, "request timeout"));
+                    try {
+                        writeCompletedResponses();
+                    } catch (IOException ex) {
+                        close();
+                        return;
+                    }
+                    if (closed) {
+                        return;
+                    }
+                    // 对端可能一直不读408，继续挂下面的写超时检查；没有配置写超时时最多再等一个读超时
+                    requestTimedOutNanos = now;
+                    next = Math.min(next, readTimeout);
+                } else {
+                    next = Math.min(next, readTimeout - waiting);
+                }
+            } else if (requestTimedOutNanos != 0 && config.getWriteTimeoutMillis() <= 0) {
+                long waited = now - requestTimedOutNanos;
+                if (waited >= readTimeout) {
+                    close();
+                    return;
+                }
+                next = Math.min(next, readTimeout - waited);
+            } else {
+                next = Math.min(next, readTimeout);
+            }
+        }
+
+        long writeTimeout = TimeUnit.MILLISECONDS.toNanos(config.getWriteTimeoutMillis());
+        if (writeTimeout > 0) {
+            if (!outbound.isEmpty()) {
+                long stalled = now - lastWriteNanos;
+                if (stalled >= writeTimeout) {
+                    // 对端一直不读数据
+                    close();
+                    return;
+                }
+                next = Math.min(next, writeTimeout - stalled);
+            } else {
+                next = Math.min(next, writeTimeout);
+            }
+        }
+
+        if (next != Long.MAX_VALUE && !isClosed()) {
+            timeout = timer.schedule(this::checkTimeouts, next, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * 从channel中读一次数据，缓冲区大小由{@link AdaptiveReceiveBuffer}根据最近的读取量决定。
+     * 读到的缓冲区交给pipeline处理，不再由连接持有，所以空闲连接不占用缓冲区
+     *
+     * @return 读到的字节数，-1表示对端关闭
+     */
+    int read() throws IOException {
+        ByteBuffer buffer = BufferPool.DEFAULT.acquire(receiveBuffer.nextSize());
+        int attempted = buffer.remaining();
+        int readBytes;
+        try {
+            readBytes = channel.read(buffer);
+        } catch (IOException ex) {
+            BufferPool.DEFAULT.release(buffer);
+            throw ex;
+        }
+        lastReadFilled = readBytes == attempted;
+        if (readBytes <= 0) {
+            BufferPool.DEFAULT.release(buffer);
+            return readBytes;
+        }
+        lastReadNanos = System.nanoTime();
+        metrics.bytesRead(readBytes);
+        receiveBuffer.record(attempted, readBytes);
+        buffer.flip();
+        if (capture != null) {
+            capture.data(captureId, buffer);
+        }
+        pipeline.fireChannelRead(buffer);
+        pipeline.fireChannelReadComplete();
+        return readBytes;
+    }
+
+    /**
+     * 同一次可读事件中是否值得继续read：上一次填满了缓冲区，且连接没有暂停读
+     */
+    boolean canReadMore() {
+        return lastReadFilled && readSuspended == 0 && !closed;
+    }
+
+    ChannelPipeline pipeline() {
+        return pipeline;
+    }
+
+    SocketAddress remoteAddress() {
+        return remoteAddress;
+    }
+
+    /**
+     * 入站处理是否暂停：不再接收新的请求、处理中的请求达到pipelining上限，或者处理器要求暂停
+     */
+    boolean isInputPaused() {
+        return inputClosed || closed || inflight.size() >= config.getMaxPipelinedRequests()
+                || isReadSuspended(SUSPEND_HANDLER);
+    }
+
+    /**
+     * 新解码出一个请求（由pipeline尾部调用），排到队尾等待提交给业务线程池
+     */
+    void enqueue(HttpRequest request) {
+        enqueue(new HttpExchange(request, request.isKeepAlive()));
+    }
+
+    /**
+     * 排入一个请求，已经有响应的（例如缓存命中）不再提交给业务线程池，轮到它时直接写出
+     */
+    void enqueue(HttpExchange exchange) {
+        inflight.addLast(exchange);
+        if (exchange.response() == null) {
+            unsubmitted.addLast(exchange);
+        }
+        if (!exchange.isKeepAlive()) {
+            // 短连接：这个请求之后的数据都不再处理
+            shutdownInput();
+        } else if (inflight.size() >= config.getMaxPipelinedRequests()) {
+            // 处理中的请求太多，先不读新的数据，等响应写出后再继续
+            suspendRead(SUSPEND_PIPELINE_FULL);
+        }
+    }
+
+    /**
+     * pipeline处理入站数据时出错（由pipeline尾部调用）：请求不合法时响应对应的错误码，其他错误直接关闭连接
+     */
+    void inboundFailed(Throwable cause) {
+        if (cause instanceof HttpDecodeException) {
+            HttpDecodeException ex = (HttpDecodeException) cause;
+            enqueueError(HttpResponse.error(ex.status(), ex.getMessage()));
+        } else {
+            cause.printStackTrace();
+            close();
+        }
+    }
+
+    /**
+     * 请求不合法，排在已有请求之后响应错误并关闭连接
+     */
+    void enqueueError(HttpResponse response) {
+        HttpExchange exchange = new HttpExchange(null, false);
+        exchange.response(response);
+        inflight.addLast(exchange);
+        shutdownInput();
+    }
+
+    HttpExchange peekUnsubmitted() {
+        return unsubmitted.peekFirst();
+    }
+
+    void pollUnsubmitted() {
+        unsubmitted.pollFirst();
+    }
+
+    int inflightCount() {
+        return inflight.size();
+    }
+
+    /**
+     * 不再读取、解码新的请求，已经在处理中的请求响应完以后关闭连接
+     */
+    void shutdownInput() {
+        inputClosed = true;
+        suspendRead(SUSPEND_INPUT_CLOSED);
+    }
+
+    /**
+     * 按请求顺序把所有已就绪的响应交给pipeline的出站处理器（遇到第一个未就绪的响应就停止），然后flush
+     */
+    void writeCompletedResponses() throws IOException {
+        HttpExchange head;
+        while ((head = inflight.peekFirst()) != null && head.response() != null) {
+            inflight.pollFirst();
+            HttpResponse response = head.response();
+            HttpRequest request = head.request();
+            long latency = System.nanoTime() - head.startNanos();
+            if (request != null) {
+                metrics.requestCompleted(latency);
+                AccessLog.DEFAULT.request(remoteAddress, request.method(), request.uri(), response.status(),
+                        response.contentLength(), latency);
+            } else {
+                AccessLog.DEFAULT.request(remoteAddress, null, null, response.status(), response.contentLength(), latency);
+            }
+            pipeline.write(head);
+            if (closed) {
+                return;
+            }
+            if (!head.isKeepAlive()) {
+                inflight.clear();
+                unsubmitted.clear();
+                closeAfterFlush();
+                return;
+            }
+        }
+        if (inputClosed && inflight.isEmpty()) {
+            closeAfterFlush();
+            return;
+        }
+        pipeline.flush();
+    }
+
+    /**
+     * 把数据（读模式）加入发送队列，只有调用{@link #flush()}后才会真正写出。
+     * 写完后可写的缓冲区归还给BufferPool，只读缓冲区是共享的内容，直接丢弃
+     */
+    void write(ByteBuffer buffer) {
+        addOutbound(buffer, buffer.remaining());
+    }
+
+    void write(FileRegion region) {
+        addOutbound(region, region.remaining());
+    }
+
+    private void addOutbound(Object msg, long bytes) {
+        if (outbound.isEmpty()) {
+            lastWriteNanos = System.nanoTime();
+        }
+        outbound.addLast(msg);
+        pendingOutboundBytes += bytes;
+        load.addPendingOutboundBytes(bytes);
+        if (writable && pendingOutboundBytes > config.getWriteBufferHighWaterMark()) {
+            writable = false;
+            suspendRead(SUSPEND_WRITE_BACKPRESSURE);
+            pipeline.fireChannelWritabilityChanged();
+        }
+    }
+
+    /**
+     * 尽量写出发送队列中的数据；已经在等待OP_WRITE时什么都不做，等可写事件再写
+     */
+    void flush() throws IOException {
+        if ((key.interestOps() & SelectionKey.OP_WRITE) != 0) {
+            return;
+        }
+        doFlush();
+    }
+
+    /**
+     * 可写事件触发：socket发送缓冲区有空间了，继续写出剩余数据
+     */
+    void forceFlush() throws IOException {
+        doFlush();
+    }
+
+    private void doFlush() throws IOException {
+        for (int spin = 0; spin < WRITE_SPIN_COUNT && !outbound.isEmpty(); spin++) {
+            long written;
+            Object first = outbound.peekFirst();
+            if (first instanceof FileRegion) {
+                written = ((FileRegion) first).transferTo(channel);
+            } else {
+                // 合并队头连续的缓冲区
+                int count = 0;
+                for (Object msg : outbound) {
+                    if (!(msg instanceof ByteBuffer)) {
+                        break;
+                    }
+                    gathering[count++] = (ByteBuffer) msg;
+                    if (count == MAX_GATHERING_BUFFERS) {
+                        break;
+                    }
+                }
+                written = count == 1 ? channel.write(gathering[0]) : channel.write(gathering, 0, count);
+                for (int i = 0; i < count; i++) {
+                    gathering[i] = null;
+                }
+            }
+            if (written == 0) {
+                // 发送缓冲区满了
+                break;
+            }
+            pendingOutboundBytes -= written;
+            lastWriteNanos = System.nanoTime();
+            load.addPendingOutboundBytes(-written);
+            metrics.bytesWritten(written);
+            Object head;
+            while ((head = outbound.peekFirst()) != null && isFlushed(head)) {
+                release(outbound.pollFirst());
+            }
+        }
+
+        if (outbound.isEmpty()) {
+            setInterest(SelectionKey.OP_WRITE, false);
+            if (closeAfterFlush) {
+                close();
+                return;
+            }
+        } else {
+            // 没写完，注册OP_WRITE，等socket可写时继续
+            setInterest(SelectionKey.OP_WRITE, true);
+        }
+        if (!writable && pendingOutboundBytes < config.getWriteBufferLowWaterMark()) {
+            writable = true;
+            resumeRead(SUSPEND_WRITE_BACKPRESSURE);
+            // 最后通知，处理器在回调中可以继续写出、flush
+            pipeline.fireChannelWritabilityChanged();
+        }
+    }
+
+    private static boolean isFlushed(Object msg) {
+        return msg instanceof FileRegion ? ((FileRegion) msg).isDone() : !((ByteBuffer) msg).hasRemaining();
+    }
+
+    private static void release(Object msg) {
+        if (msg instanceof FileRegion) {
+            ((FileRegion) msg).close();
+        } else if (!((ByteBuffer) msg).isReadOnly()) {
+            BufferPool.DEFAULT.release((ByteBuffer) msg);
+        }
+    }
+
+    /**
+     * 待发送数据是否低于高水位，为false时生产者应该暂停产生新的数据；变化时通知pipeline（channelWritabilityChanged）
+     */
+    boolean isWritable() {
+        return writable;
+    }
+
+    long pendingOutboundBytes() {
+        return pendingOutboundBytes;
+    }
+
+    boolean isReadSuspended(int reason) {
+        return (readSuspended & reason) != 0;
+    }
+
+    void suspendRead(int reason) {
+        if (readSuspended == 0) {
+            setInterest(SelectionKey.OP_READ, false);
+        }
+        readSuspended |= reason;
+    }
+
+    void resumeRead(int reason) {
+        if (readSuspended == 0) {
+            return;
+        }
+        readSuspended &= ~reason;
+        if (readSuspended == 0 && !closeAfterFlush) {
+            setInterest(SelectionKey.OP_READ, true);
+        }
+    }
+
+    private void setInterest(int op, boolean enable) {
+        if (!key.isValid()) {
+            return;
+        }
+        int ops = key.interestOps();
+        int newOps = enable ? ops | op : ops & ~op;
+        if (newOps != ops) {
+            key.interestOps(newOps);
+        }
+    }
+
+    /**
+     * 不再读取新的请求，发送队列写完后关闭连接
+     */
+    void closeAfterFlush() throws IOException {
+        closeAfterFlush = true;
+        setInterest(SelectionKey.OP_READ, false);
+        pipeline.flush();
+    }
+
+    boolean isClosed() {
+        return !channel.isOpen();
+    }
+
+    void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (capture != null) {
+            capture.closed(captureId);
+        }
+        if (timeout != null) {
+            timeout.cancel();
+            timeout = null;
+        }
+        load.connectionClosed();
+        load.addPendingOutboundBytes(-pendingOutboundBytes);
+        pipeline.fireChannelInactive();
+        Object msg;
+        while ((msg = outbound.pollFirst()) != null) {
+            release(msg);
+        }
+        pendingOutboundBytes = 0;
+        inflight.clear();
+        unsubmitted.clear();
+        key.cancel();
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.study.hc.net.nio;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 新连接分配策略：acceptor线程接收到新连接后，决定交给哪个I/O reactor线程
+ * <p>
+ * 通过 -Dnio.balancer 选择：round-robin（默认）、least-connections、least-pending-bytes、power-of-two
+ *
+ * @author chensicong
+ * @date 2026-10-17 22:30
+ **/
+public interface ConnectionBalancer {
+
+    /**
+     * @param loads 每个I/O reactor线程的负载
+     * @return 选中的reactor下标
+     */
+    int select(ReactorLoad[] loads);
+
+    static ConnectionBalancer of(String name) {
+        switch (name) {
+            case "round-robin":
+                return new RoundRobin();
+            case "least-connections":
+                return new LeastConnections();
+            case "least-pending-bytes":
+                return new LeastPendingBytes();
+            case "power-of-two":
+                return new PowerOfTwoChoices();
+            default:
+                throw new IllegalArgumentException("unknown balancer: " + name);
+        }
+    }
+
+    /**
+     * 轮询，不看负载。长连接负载不均时会出现热点
+     */
+    final class RoundRobin implements ConnectionBalancer {
+
+        private final AtomicInteger index = new AtomicInteger();
+
+        @Override
+        public int select(ReactorLoad[] loads) {
+            return Math.floorMod(index.getAndIncrement(), loads.length);
+        }
+    }
+
+    /**
+     * 选当前连接数最少的reactor，连接数相同时从轮询位置开始找，避免总是选中第一个
+     */
+    final class LeastConnections implements ConnectionBalancer {
+
+        private final AtomicInteger start = new AtomicInteger();
+
+        @Override
+        public int select(ReactorLoad[] loads) {
+            int offset = Math.floorMod(start.getAndIncrement(), loads.length);
+            int best = offset;
+            for (int i = 1; i < loads.length; i++) {
+                int candidate = (offset + i) % loads.length;
+                if (loads[candidate].activeConnections() < loads[best].activeConnections()) {
+                    best = candidate;
+                }
+            }
+            return best;
+        }
+    }
+
+    /**
+     * 选待发送字节数最少的reactor：发送积压说明该线程上有大流量连接或者慢客户端
+     */
+    final class LeastPendingBytes implements ConnectionBalancer {
+
+        private final AtomicInteger start = new AtomicInteger();
+
+        @Override
+        public int select(ReactorLoad[] loads) {
+            int offset = Math.floorMod(start.getAndIncrement(), loads.length);
+            int best = offset;
+            for (int i = 1; i < loads.length; i++) {
+                int candidate = (offset + i) % loads.length;
+                if (compare(loads[candidate], loads[best]) < 0) {
+                    best = candidate;
+                }
+            }
+            return best;
+        }
+
+        private static int compare(ReactorLoad a, ReactorLoad b) {
+            int result = Long.compare(a.pendingOutboundBytes(), b.pendingOutboundBytes());
+            return result != 0 ? result : Integer.compare(a.activeConnections(), b.activeConnections());
+        }
+    }
+
+    /**
+     * 随机选两个，取负载较小的一个。只读两个计数器，reactor很多时比遍历全部便宜，效果接近最少连接
+     */
+    final class PowerOfTwoChoices implements ConnectionBalancer {
+
+        @Override
+        public int select(ReactorLoad[] loads) {
+            if (loads.length == 1) {
+                return 0;
+            }
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            int a = random.nextInt(loads.length);
+            int b = random.nextInt(loads.length - 1);
+            if (b >= a) {
+                b++;
+            }
+            return load(loads[a]) <= load(loads[b]) ? a : b;
+        }
+
+        /**
+         * 每64KB待发送数据折算成一个连接
+         */
+        private static long load(ReactorLoad load) {
+            return load.activeConnections() + (load.pendingOutboundBytes() >> 16);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.study.hc.net.nio;
+
+import java.util.Locale;
+
+/**
+ * 支持的响应压缩格式（Content-Encoding），按Accept-Encoding协商
+ *
+ * @author chensicong
+ * @date 2026-10-19 02:00
+ **/
+public enum ContentEncoding {
+
+    /**
+     * gzip格式：10字节的头 + 原始deflate数据 + CRC32和原始长度
+     */
+    GZIP("gzip"),
+
+    /**
+     * HTTP的deflate实际是zlib格式（RFC 1950），不是原始的deflate数据
+     */
+    DEFLATE("deflate");
+
+    private final String token;
+
+    ContentEncoding(String token) {
+        this.token = token;
+    }
+
+    /**
+     * Content-Encoding头的值
+     */
+    public String token() {
+        return token;
+    }
+
+    /**
+     * 按Accept-Encoding选择压缩格式：q值高的优先，q值相同时优先gzip；q=0表示不接受，"*"匹配没有单独列出的格式
+     *
+     * @return 客户端不接受任何支持的格式时返回null
+     */
+    public static ContentEncoding negotiate(String acceptEncoding) {
+        if (acceptEncoding == null || acceptEncoding.isEmpty()) {
+            return null;
+        }
+        float gzip = -1;
+        float deflate = -1;
+        float any = -1;
+        for (String item : acceptEncoding.split(",")) {
+            int semicolon = item.indexOf(';');
+            String name = (semicolon < 0 ? item : item.substring(0, semicolon)).trim().toLowerCase(Locale.ROOT);
+            float q = semicolon < 0 ? 1 : quality(item.substring(semicolon + 1));
+            if (name.equals("gzip") || name.equals("x-gzip")) {
+                gzip = Math.max(gzip, q);
+            } else if (name.equals("deflate")) {
+                deflate = Math.max(deflate, q);
+            } else if (name.equals("*")) {
+                any = q;
+            }
+        }
+        if (gzip < 0) {
+            gzip = any;
+        }
+        if (deflate < 0) {
+            deflate = any;
+        }
+        if (gzip <= 0 && deflate <= 0) {
+            return null;
+        }
+        return gzip >= deflate ? GZIP : DEFLATE;
+    }
+
+    /**
+     * 解析";q=0.5"形式的参数，结果限制在0~1之间；没有q参数时为1，q值不是有限的数字（包括NaN、Infinity）时按0处理
+     */
+    private static float quality(String params) {
+        for (String param : params.split(";")) {
+            param = param.trim();
+            if (param.startsWith("q=") || param.startsWith("Q=")) {
+                float q;
+                try {
+                    q = Float.parseFloat(param.substring(2).trim());
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+                if (Float.isNaN(q) || Float.isInfinite(q)) {
+                    return 0;
+                }
+                return Math.max(0, Math.min(1, q));
+            }
+        }
+        return 1;
+    }
+}
@@ -0,0 +1,87 @@
+package com.study.hc.net.nio;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 文件中的一段内容，作为响应体时用{@link FileChannel#transferTo}（Linux上是sendfile）直接从page cache发送到socket，
+ * 不经过用户态缓冲区
+ * <p>
+ * 文件在第一次发送时才由I/O线程打开，发送完或连接关闭时关闭，
+ * 所以响应生成后连接提前关闭也不会泄漏文件句柄。每个响应单独创建一个实例，不能复用。
+ *
+ * @author chensicong
+ * @date 2026-10-18 09:30
+ **/
+public class FileRegion {
+
+    private final Path path;
+
+    private final long position;
+
+    private final long count;
+
+    private long transferred;
+
+    private FileChannel file;
+
+    public FileRegion(Path path, long position, long count) {
+        this.path = path;
+        this.position = position;
+        this.count = count;
+    }
+
+    Path path() {
+        return path;
+    }
+
+    long position() {
+        return position;
+    }
+
+    public long count() {
+        return count;
+    }
+
+    long remaining() {
+        return count - transferred;
+    }
+
+    public boolean isDone() {
+        return transferred >= count;
+    }
+
+    /**
+     * 把剩余内容写到channel，非阻塞socket的发送缓冲区满时返回0；
+     * 阻塞socket一次也不一定能写完，调用方要循环到{@link #isDone()}为止
+     */
+    public long transferTo(WritableByteChannel target) throws IOException {
+        if (file == null) {
+            file = FileChannel.open(path, StandardOpenOption.READ);
+        }
+        long written = file.transferTo(position + transferred, count - transferred, target);
+        if (written == 0 && file.size() <= position + transferred) {
+            // 发送过程中文件被截断，已经发出的Content-Length没法兑现，只能关闭连接
+            throw new EOFException("file truncated: " + path);
+        }
+        transferred += written;
+        if (isDone()) {
+            close();
+        }
+        return written;
+    }
+
+    public void close() {
+        if (file != null) {
+            try {
+                file.close();
+            } catch (IOException ignored) {
+            }
+            file = null;
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package com.study.hc.net.nio;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 时间轮定时器，每个reactor线程一个，只能在所属线程中使用（不做任何同步）
+ * <p>
+ * 把时间切成固定长度的tick，轮子上每个槽位是一个双向链表，放所有在该tick到期的任务；
+ * 到期时间超过一圈的任务记录还需要转几圈（remainingRounds）。
+ * 添加、取消都是O(1)，适合几万个连接各自挂着空闲/读/写超时、且大部分超时会在到期前被取消或推迟的场景，
+ * 不像优先队列那样每次操作都是O(log n)。
+ * 到期精度为一个tick：任务不会提前执行，最多推迟一个tick。
+ * <p>
+ * 定时器不自带线程，由reactor线程在事件循环中调用{@link #expireTimeouts()}驱动，
+ * 并用{@link #nanosUntilNextExpiry()}作为select的超时时间：只在最早的任务到期时唤醒，而不是每个tick都唤醒。
+ *
+ * @author chensicong
+ * @date 2026-10-17 23:00
+ **/
+final class HashedWheelTimer {
+
+    private final long tickNanos;
+
+    private final Timeout[] wheelHeads;
+
+    private final Timeout[] wheelTails;
+
+    private final int mask;
+
+    private final long startNanos = System.nanoTime();
+
+    /**
+     * 下一个要处理的tick
+     */
+    private long tick;
+
+    private int pendingTimeouts;
+
+    /**
+     * 正在执行到期任务时新添加的任务先暂存在这里，当前tick处理完之后再放入时间轮，
+     * 否则放进当前槽位的任务圈数会算错
+     */
+    private boolean expiring;
+
+    private Timeout newTimeouts;
+
+    /**
+     * 最早的任务到期的tick的下界。添加任务时更新；取消任务不更新，
+     * 所以可能偏早，走过这个tick以后重新计算，代价是取消任务后可能多唤醒一次
+     */
+    private long nextExpiryTick = Long.MAX_VALUE;
+
+    HashedWheelTimer(long tickDuration, TimeUnit unit, int wheelSize) {
+        if (tickDuration <= 0 || wheelSize <= 0) {
+            throw new IllegalArgumentException("tickDuration and wheelSize must be positive");
+        }
+        int size = Integer.highestOneBit(wheelSize - 1) << 1;
+        size = Math.max(size, 1);
+        this.tickNanos = unit.toNanos(tickDuration);
+        this.wheelHeads = new Timeout[size];
+        this.wheelTails = new Timeout[size];
+        this.mask = size - 1;
+    }
+
+    /**
+     * 添加一个定时任务，在delay之后由reactor线程执行
+     */
+    Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        long deadline = System.nanoTime() - startNanos + Math.max(unit.toNanos(delay), 0);
+        Timeout timeout = new Timeout(this, task, deadline);
+        if (expiring) {
+            timeout.next = newTimeouts;
+            newTimeouts = timeout;
+        } else {
+            add(timeout);
+        }
+        return timeout;
+    }
+
+    private void add(Timeout timeout) {
+        long calculated = timeout.deadline / tickNanos;
+        // 已经过了的tick放到下一个要处理的槽位
+        long ticks = Math.max(calculated, tick);
+        timeout.remainingRounds = (ticks - tick) / wheelHeads.length;
+        link(timeout, (int) (ticks & mask));
+        pendingTimeouts++;
+        // 之前的任务都取消了时，旧的下界已经没有意义
+        nextExpiryTick = pendingTimeouts == 1 ? ticks : Math.min(nextExpiryTick, ticks);
+    }
+
+    /**
+     * 执行所有已经到期的任务
+     */
+    void expireTimeouts() {
+        long now = System.nanoTime() - startNanos;
+        // 只处理完整走过的tick
+        while ((tick + 1) * tickNanos <= now) {
+            expiring = true;
+            int bucket = (int) (tick & mask);
+            Timeout timeout = wheelHeads[bucket];
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                if (timeout.task == null) {
+                    // 执行到期任务期间被取消的，延迟到这里摘除
+                    unlink(timeout);
+                    pendingTimeouts--;
+                } else if (timeout.remainingRounds <= 0) {
+                    unlink(timeout);
+                    pendingTimeouts--;
+                    timeout.expire();
+                } else {
+                    timeout.remainingRounds--;
+                }
+                timeout = next;
+            }
+            expiring = false;
+            tick++;
+            addNewTimeouts();
+        }
+        if (nextExpiryTick < tick) {
+            nextExpiryTick = computeNextExpiryTick();
+        }
+    }
+
+    /**
+     * 从当前tick开始逐个槽位查找最早到期的任务：槽位偏移i、还剩r圈的任务在tick + i + r * 轮子大小时到期，
+     * 找到本圈就到期的任务后，后面的槽位不可能更早，不用再找
+     */
+    private long computeNextExpiryTick() {
+        if (pendingTimeouts == 0) {
+            return Long.MAX_VALUE;
+        }
+        long next = Long.MAX_VALUE;
+        for (long ticks = tick; ticks < tick + wheelHeads.length && ticks < next; ticks++) {
+            for (Timeout timeout = wheelHeads[(int) (ticks & mask)]; timeout != null; timeout = timeout.next) {
+                if (timeout.task == null) {
+                    continue;
+                }
+                next = Math.min(next, ticks + timeout.remainingRounds * wheelHeads.length);
+                if (timeout.remainingRounds <= 0) {
+                    break;
+                }
+            }
+        }
+        return next;
+    }
+
+    private void addNewTimeouts() {
+        Timeout timeout = newTimeouts;
+        newTimeouts = null;
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            timeout.next = null;
+            // 暂存期间已经被取消的不再加入
+            if (!timeout.isExpired()) {
+                add(timeout);
+            }
+            timeout = next;
+        }
+    }
+
+    /**
+     * 距离最早的任务到期（所在tick走完）的纳秒数，没有待执行任务时返回-1
+     */
+    long nanosUntilNextExpiry() {
+        if (pendingTimeouts == 0 || nextExpiryTick == Long.MAX_VALUE) {
+            return -1;
+        }
+        long now = System.nanoTime() - startNanos;
+        return Math.max((nextExpiryTick + 1) * tickNanos - now, 0);
+    }
+
+    int pendingTimeouts() {
+        return pendingTimeouts;
+    }
+
+    private void link(Timeout timeout, int bucket) {
+        timeout.bucket = bucket;
+        Timeout tail = wheelTails[bucket];
+        if (tail == null) {
+            wheelHeads[bucket] = timeout;
+        } else {
+            tail.next = timeout;
+            timeout.prev = tail;
+        }
+        wheelTails[bucket] = timeout;
+    }
+
+    private void unlink(Timeout timeout) {
+        int bucket = timeout.bucket;
+        if (timeout.prev == null) {
+            wheelHeads[bucket] = timeout.next;
+        } else {
+            timeout.prev.next = timeout.next;
+        }
+        if (timeout.next == null) {
+            wheelTails[bucket] = timeout.prev;
+        } else {
+            timeout.next.prev = timeout.prev;
+        }
+        timeout.prev = null;
+        timeout.next = null;
+        timeout.bucket = -1;
+    }
+
+    /**
+     * 定时任务句柄，可以在到期前取消
+     */
+    static final class Timeout {
+
+        private final HashedWheelTimer timer;
+
+        private Runnable task;
+
+        private final long deadline;
+
+        private long remainingRounds;
+
+        private int bucket = -1;
+
+        private Timeout prev;
+
+        private Timeout next;
+
+        private Timeout(HashedWheelTimer timer, Runnable task, long deadline) {
+            this.timer = timer;
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * 取消任务，O(1)；已经执行或取消过则什么都不做
+         */
+        void cancel() {
+            // 正在遍历槽位时不能修改链表，只做标记，遍历到时再摘除
+            if (bucket >= 0 && !timer.expiring) {
+                timer.unlink(this);
+                timer.pendingTimeouts--;
+            }
+            task = null;
+        }
+
+        boolean isExpired() {
+            return task == null;
+        }
+
+        private void expire() {
+            Runnable expiredTask = task;
+            task = null;
+            if (expiredTask != null) {
+                try {
+                    expiredTask.run();
+                } catch (Throwable t) {
+                    t.printStackTrace();
+                }
+            }
+        }
+    }
+}
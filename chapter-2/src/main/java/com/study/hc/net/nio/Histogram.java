@@ -0,0 +1,128 @@
+package com.study.hc.net.nio;
+
+/**
+ * 直方图，用于记录耗时（纳秒）、每轮就绪key数等非负数值
+ * <p>
+ * 按对数-线性分桶：每个2的幂区间再等分为8个桶，相对误差不超过12.5%，总共不到500个桶，和数值范围无关。
+ * 只能由一个线程记录（每个reactor线程一份），记录只是几次普通字段的自增，没有原子操作和内存屏障；
+ * 其他线程先用{@link #snapshot()}复制一份再计算分位数，复制时没有同步，读到的是近似值，用于监控足够了。
+ * 多个线程的数据用{@link #add(Histogram)}汇总到新的直方图中。
+ *
+ * @author chensicong
+ * @date 2026-10-18 11:00
+ **/
+public final class Histogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT;
+
+    private final long[] counts = new long[BUCKET_COUNT];
+
+    private long count;
+
+    private long sum;
+
+    private long max;
+
+    /**
+     * 只能由所属线程调用
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts[bucket(value)]++;
+        count++;
+        sum += value;
+        if (value > max) {
+            max = value;
+        }
+    }
+
+    public long count() {
+        return count;
+    }
+
+    public long sum() {
+        return sum;
+    }
+
+    public long max() {
+        return max;
+    }
+
+    public double mean() {
+        long n = count();
+        return n == 0 ? 0 : (double) sum() / n;
+    }
+
+    /**
+     * @param quantile 0~1之间，例如0.99
+     * @return 分位数所在桶的上界（不超过最大值），没有数据时返回0
+     */
+    public long percentile(double quantile) {
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(upperBound(i), max());
+            }
+        }
+        return max();
+    }
+
+    /**
+     * 把另一个直方图的数据累加进来，用于汇总多个reactor线程的数据；只能累加到调用线程自己的直方图中
+     */
+    public void add(Histogram other) {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] += other.counts[i];
+        }
+        count += other.count;
+        sum += other.sum;
+        if (other.max > max) {
+            max = other.max;
+        }
+    }
+
+    /**
+     * 复制当前的数据，其他线程读取时使用，分位数、总数和最大值都来自同一份数据
+     */
+    public Histogram snapshot() {
+        Histogram snapshot = new Histogram();
+        snapshot.add(this);
+        return snapshot;
+    }
+
+    /**
+     * 小于8的值每个值一个桶，之后每个2的幂区间[2^e, 2^(e+1))分成8个桶
+     */
+    static int bucket(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        return ((exponent - SUB_BUCKET_BITS + 1) << SUB_BUCKET_BITS) + (int) ((value >>> shift) & (SUB_BUCKET_COUNT - 1));
+    }
+
+    static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKET_COUNT) {
+            return bucket;
+        }
+        int shift = (bucket >>> SUB_BUCKET_BITS) - 1;
+        long lower = (long) (SUB_BUCKET_COUNT + (bucket & (SUB_BUCKET_COUNT - 1))) << shift;
+        return lower + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,53 @@
+package com.study.hc.net.nio;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+
+/**
+ * HTTP日期格式（RFC 7231 IMF-fixdate），以及预先格式化好的当前时间
+ * <p>
+ * Date响应头的精度只到秒，每个响应都格式化一次是浪费：同一秒内的所有响应共用一份格式化好的字节，
+ * 秒数变了以后第一个调用方重新格式化。多个线程同时发现过期时可能重复格式化，结果相同，不需要加锁
+ *
+ * @author chensicong
+ * @date 2026-10-18 22:00
+ **/
+final class HttpDate {
+
+    static final DateTimeFormatter FORMAT =
+            DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US).withZone(ZoneOffset.UTC);
+
+    private static volatile Snapshot current = new Snapshot(System.currentTimeMillis() / 1000);
+
+    private HttpDate() {
+    }
+
+    /**
+     * 当前时间的Date头取值（ASCII），同一秒内返回同一个数组，调用方不能修改。
+     * 可以用引用比较判断时间是否已经跳到下一秒
+     */
+    static byte[] current() {
+        Snapshot snapshot = current;
+        long second = System.currentTimeMillis() / 1000;
+        if (snapshot.second != second) {
+            snapshot = new Snapshot(second);
+            current = snapshot;
+        }
+        return snapshot.bytes;
+    }
+
+    private static final class Snapshot {
+
+        final long second;
+
+        final byte[] bytes;
+
+        Snapshot(long second) {
+            this.second = second;
+            this.bytes = FORMAT.format(Instant.ofEpochSecond(second)).getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.study.hc.net.nio;
+
+import java.io.IOException;
+
+/**
+ * 请求报文不合法时抛出，携带应该返回给客户端的状态码
+ *
+ * @author chensicong
+ * @date 2026-10-17 19:20
+ **/
+public class HttpDecodeException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int status;
+
+    public HttpDecodeException(int status, String message) {
+        super(message);
+        this.status = status;
+    }
+
+    public int status() {
+        return status;
+    }
+}
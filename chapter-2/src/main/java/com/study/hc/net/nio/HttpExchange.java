@@ -0,0 +1,63 @@
+package com.study.hc.net.nio;
+
+/**
+ * 一次请求/响应交换：请求解码后按到达顺序排队，业务线程生成响应后交回I/O线程填入，
+ * 轮到它写出时作为出站消息经过pipeline，出站处理器可以查看请求、替换响应
+ *
+ * @author chensicong
+ * @date 2026-10-18 20:00
+ **/
+public final class HttpExchange {
+
+    private final HttpRequest request;
+
+    private final boolean keepAlive;
+
+    /**
+     * 解码完成的时间，用于统计请求耗时
+     */
+    private final long startNanos = System.nanoTime();
+
+    private HttpResponse response;
+
+    HttpExchange(HttpRequest request, boolean keepAlive) {
+        this.request = request;
+        this.keepAlive = keepAlive;
+    }
+
+    /**
+     * 请求不合法时为null
+     */
+    public HttpRequest request() {
+        return request;
+    }
+
+    /**
+     * 是否是HEAD请求，响应只写出响应头
+     */
+    public boolean isHead() {
+        return request != null && "HEAD".equals(request.method());
+    }
+
+    /**
+     * 响应后是否保持连接
+     */
+    public boolean isKeepAlive() {
+        return keepAlive;
+    }
+
+    public long startNanos() {
+        return startNanos;
+    }
+
+    /**
+     * 业务线程还没处理完时为null
+     */
+    public HttpResponse response() {
+        return response;
+    }
+
+    public void response(HttpResponse response) {
+        this.response = response;
+    }
+}
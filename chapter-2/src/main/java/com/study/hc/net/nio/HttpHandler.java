@@ -0,0 +1,13 @@
+package com.study.hc.net.nio;
+
+/**
+ * 业务处理接口，在业务线程池中执行，可以做数据库、接口调用等阻塞操作
+ *
+ * @author chensicong
+ * @date 2026-10-17 21:10
+ **/
+@FunctionalInterface
+public interface HttpHandler {
+
+    HttpResponse handle(HttpRequest request) throws Exception;
+}
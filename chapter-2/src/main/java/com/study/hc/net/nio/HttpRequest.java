@@ -0,0 +1,149 @@
+package com.study.hc.net.nio;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 解码完成的一个HTTP/1.x请求
+ *
+ * @author chensicong
+ * @date 2026-10-17 19:20
+ **/
+public class HttpRequest {
+
+    private static final byte[] EMPTY_BODY = new byte[0];
+
+    private final String method;
+
+    /**
+     * 按需从请求行的字节创建，只匹配路由、不访问uri()时不需要创建String
+     */
+    private String uri;
+
+    private final String version;
+
+    /**
+     * 请求行的原始字节（ISO-8859-1），请求目标（uri）在[targetStart, targetEnd)之间
+     */
+    private byte[] line;
+
+    private int targetStart;
+
+    private int targetEnd;
+
+    /**
+     * 请求头，key统一转成小写，同名请求头用", "合并
+     */
+    private final Map<String, String> headers = new LinkedHashMap<>();
+
+    private byte[] body = EMPTY_BODY;
+
+    public HttpRequest(String method, String uri, String version) {
+        this.method = method;
+        this.uri = uri;
+        this.version = version;
+    }
+
+    /**
+     * 由解码器创建，line是请求行的拷贝，归本请求所有
+     */
+    HttpRequest(String method, byte[] line, int targetStart, int targetEnd, String version) {
+        this.method = method;
+        this.line = line;
+        this.targetStart = targetStart;
+        this.targetEnd = targetEnd;
+        this.version = version;
+    }
+
+    public String method() {
+        return method;
+    }
+
+    public String uri() {
+        if (uri == null) {
+            uri = new String(line, targetStart, targetEnd - targetStart, StandardCharsets.ISO_8859_1);
+        }
+        return uri;
+    }
+
+    /**
+     * 请求目标（uri）所在的字节数组，范围是[{@link #targetStart()}, {@link #targetEnd()})，调用方不能修改
+     */
+    byte[] targetBytes() {
+        if (line == null) {
+            line = uri.getBytes(StandardCharsets.ISO_8859_1);
+            targetStart = 0;
+            targetEnd = line.length;
+        }
+        return line;
+    }
+
+    int targetStart() {
+        targetBytes();
+        return targetStart;
+    }
+
+    int targetEnd() {
+        targetBytes();
+        return targetEnd;
+    }
+
+    /**
+     * 请求的路径（不含查询参数）是否等于path，直接比较字节，不创建String
+     */
+    boolean pathEquals(String path) {
+        byte[] bytes = targetBytes();
+        int length = path.length();
+        if (targetEnd - targetStart < length
+                || (targetEnd - targetStart > length && bytes[targetStart + length] != '?')) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (bytes[targetStart + i] != (byte) path.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public String version() {
+        return version;
+    }
+
+    public Map<String, String> headers() {
+        return headers;
+    }
+
+    public String header(String name) {
+        return headers.get(name.toLowerCase());
+    }
+
+    void addHeader(String name, String value) {
+        headers.merge(name.toLowerCase(), value, (oldValue, newValue) -> oldValue + ", " + newValue);
+    }
+
+    public byte[] body() {
+        return body;
+    }
+
+    void body(byte[] body) {
+        this.body = body;
+    }
+
+    /**
+     * 是否保持长连接：HTTP/1.1 默认长连接，除非显式 Connection: close；HTTP/1.0 默认短连接，除非显式 Connection: keep-alive
+     */
+    public boolean isKeepAlive() {
+        String connection = header("connection");
+        if ("HTTP/1.0".equals(version)) {
+            return connection != null && connection.equalsIgnoreCase("keep-alive");
+        }
+        return connection == null || !connection.equalsIgnoreCase("close");
+    }
+
+    @Override
+    public String toString() {
+        return method + " " + uri() + " " + version;
+    }
+}
@@ -0,0 +1,35 @@
+package com.study.hc.net.nio;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 把{@link HttpRequestDecoder}接入pipeline：逐个组成部分解码，解码器会消费完当前部分（不完整的行暂存在解码器中）再换下一个，
+ * 所以请求跨多次read时不需要拼接缓冲区。解码失败抛出的{@link HttpDecodeException}沿pipeline传到尾部，由连接响应错误码
+ *
+ * @author chensicong
+ * @date 2026-10-18 20:00
+ **/
+public class HttpRequestDecodeHandler extends ByteToMessageHandler {
+
+    private final HttpRequestDecoder decoder;
+
+    public HttpRequestDecodeHandler(HttpRequestDecoder decoder) {
+        this.decoder = decoder;
+    }
+
+    @Override
+    protected Object decode(ChannelHandlerContext ctx, CompositeByteBuffer in) throws HttpDecodeException {
+        ByteBuffer component;
+        while ((component = in.firstComponent()) != null) {
+            HttpRequest request = decoder.decode(component);
+            if (request != null) {
+                return request;
+            }
+            if (component.hasRemaining()) {
+                // 解码器没有消费完，不会发生，避免死循环
+                break;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,375 @@
+package com.study.hc.net.nio;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * 有状态的HTTP/1.1请求解码器，每个连接一个实例
+ * <p>
+ * 数据可能分多次到达（半包），也可能一次读到多个请求（粘包/pipelining），所以解码器需要记住上次解析到哪一步：
+ * 每次调用 {@link #decode(ByteBuffer)} 都从上次停下的状态继续，凑齐一个完整请求就返回，数据不够就返回null。
+ * 返回null时缓冲区中的数据已经全部消费（不完整的行暂存在解码器中），所以下一次read可以换一个新的缓冲区，
+ * 一个请求跨多个缓冲区时也不需要先把它们拼接起来。
+ * 支持 Content-Length 与 Transfer-Encoding: chunked 两种请求体。
+ *
+ * @author chensicong
+ * @date 2026-10-17 19:20
+ **/
+public class HttpRequestDecoder {
+
+    /**
+     * 请求行、请求头单行的最大长度
+     */
+    static final int MAX_LINE_LENGTH = 8192;
+
+    private static final int MAX_HEADER_COUNT = 100;
+
+    private static final long MAX_BODY_LENGTH = 8 * 1024 * 1024;
+
+    /**
+     * 常见的请求方法和协议版本复用同一个String，不需要每个请求都创建
+     */
+    private static final String[] KNOWN_METHODS = {"GET", "HEAD", "POST", "PUT", "DELETE", "PATCH", "OPTIONS"};
+
+    private static final String[] KNOWN_VERSIONS = {"HTTP/1.1", "HTTP/1.0"};
+
+    private enum State {
+        REQUEST_LINE, HEADER, FIXED_BODY, CHUNK_SIZE, CHUNK_DATA, CHUNK_DATA_END, TRAILER
+    }
+
+    private State state = State.REQUEST_LINE;
+
+    /**
+     * 正在解码的请求
+     */
+    private HttpRequest request;
+
+    private int headerCount;
+
+    /**
+     * 跨缓冲区的不完整行，等读到换行符后和后面的部分拼成一行
+     */
+    private byte[] partialLine = new byte[256];
+
+    private int partialLength;
+
+    /**
+     * Content-Length 方式的请求体
+     */
+    private byte[] fixedBody;
+
+    private int fixedBodyOffset;
+
+    /**
+     * chunked 方式的请求体
+     */
+    private ByteArrayOutputStream chunkedBody;
+
+    private long chunkRemaining;
+
+    /**
+     * 从缓冲区（读模式）中解码一个请求
+     *
+     * @return 完整的请求；数据不足时返回null，已经解析的部分保存在解码器中
+     */
+    public HttpRequest decode(ByteBuffer in) throws HttpDecodeException {
+        while (true) {
+            switch (state) {
+                case REQUEST_LINE: {
+                    // 请求行直接在字节上解析，路由匹配时也直接比较字节
+                    int length = readLineBytes(in);
+                    if (length < 0) {
+                        return null;
+                    }
+                    // RFC 7230：请求行之前的空行需要忽略
+                    if (length == 0) {
+                        continue;
+                    }
+                    request = parseRequestLine(length);
+                    state = State.HEADER;
+                    break;
+                }
+                case HEADER: {
+                    String line = readLine(in);
+                    if (line == null) {
+                        return null;
+                    }
+                    if (line.isEmpty()) {
+                        HttpRequest complete = headersComplete();
+                        if (complete != null) {
+                            return complete;
+                        }
+                        break;
+                    }
+                    parseHeader(line);
+                    break;
+                }
+                case FIXED_BODY: {
+                    int length = Math.min(in.remaining(), fixedBody.length - fixedBodyOffset);
+                    in.get(fixedBody, fixedBodyOffset, length);
+                    fixedBodyOffset += length;
+                    if (fixedBodyOffset < fixedBody.length) {
+                        return null;
+                    }
+                    request.body(fixedBody);
+                    return complete();
+                }
+                case CHUNK_SIZE: {
+                    String line = readLine(in);
+                    if (line == null) {
+                        return null;
+                    }
+                    chunkRemaining = parseChunkSize(line);
+                    state = chunkRemaining == 0 ? State.TRAILER : State.CHUNK_DATA;
+                    break;
+                }
+                case CHUNK_DATA: {
+                    int length = (int) Math.min(in.remaining(), chunkRemaining);
+                    if (length == 0) {
+                        return null;
+                    }
+                    if (in.hasArray()) {
+                        chunkedBody.write(in.array(), in.arrayOffset() + in.position(), length);
+                        in.position(in.position() + length);
+                    } else {
+                        byte[] chunk = new byte[length];
+                        in.get(chunk);
+                        chunkedBody.write(chunk, 0, length);
+                    }
+                    chunkRemaining -= length;
+                    if (chunkRemaining == 0) {
+                        state = State.CHUNK_DATA_END;
+                    }
+                    break;
+                }
+                case CHUNK_DATA_END: {
+                    String line = readLine(in);
+                    if (line == null) {
+                        return null;
+                    }
+                    if (!line.isEmpty()) {
+                        throw new HttpDecodeException(400, "chunk数据后缺少CRLF");
+                    }
+                    state = State.CHUNK_SIZE;
+                    break;
+                }
+                case TRAILER: {
+                    String line = readLine(in);
+                    if (line == null) {
+                        return null;
+                    }
+                    // trailer头部直接丢弃，读到空行表示chunked请求体结束
+                    if (line.isEmpty()) {
+                        request.body(chunkedBody.toByteArray());
+                        return complete();
+                    }
+                    break;
+                }
+                default:
+                    throw new IllegalStateException(state.name());
+            }
+        }
+    }
+
+    /**
+     * 读取一行（以LF结尾，去掉CR）。没有完整的一行时把剩余数据暂存起来并返回null，缓冲区被全部消费
+     */
+    private String readLine(ByteBuffer in) throws HttpDecodeException {
+        int length = readLineBytes(in);
+        return length < 0 ? null : new String(partialLine, 0, length, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * 读取一行到partialLine的开头
+     *
+     * @return 行的长度（不含CRLF），没有完整的一行时返回-1
+     */
+    private int readLineBytes(ByteBuffer in) throws HttpDecodeException {
+        int start = in.position();
+        int limit = in.limit();
+        for (int i = start; i < limit; i++) {
+            if (in.get(i) == '\n') {
+                appendPartial(in, i - start);
+                in.position(i + 1);
+                int end = partialLength > 0 && partialLine[partialLength - 1] == '\r' ? partialLength - 1 : partialLength;
+                partialLength = 0;
+                return end;
+            }
+        }
+        appendPartial(in, limit - start);
+        return -1;
+    }
+
+    private void appendPartial(ByteBuffer in, int length) throws HttpDecodeException {
+        if (partialLength + length > MAX_LINE_LENGTH) {
+            throw new HttpDecodeException(state == State.REQUEST_LINE ? 414 : 431, "单行超过最大长度" + MAX_LINE_LENGTH);
+        }
+        if (partialLength + length > partialLine.length) {
+            partialLine = Arrays.copyOf(partialLine, Math.min(MAX_LINE_LENGTH, Math.max(partialLength + length,
+                    partialLine.length << 1)));
+        }
+        in.get(partialLine, partialLength, length);
+        partialLength += length;
+    }
+
+    private HttpRequest parseRequestLine(int length) throws HttpDecodeException {
+        int first = -1;
+        int last = -1;
+        for (int i = 0; i < length; i++) {
+            if (partialLine[i] == ' ') {
+                if (first < 0) {
+                    first = i;
+                }
+                last = i;
+            }
+        }
+        if (first <= 0 || last == first) {
+            throw new HttpDecodeException(400, "请求行不合法：" + new String(partialLine, 0, length, StandardCharsets.ISO_8859_1));
+        }
+        String version = known(KNOWN_VERSIONS, last + 1, length);
+        if (!version.startsWith("HTTP/1.")) {
+            throw new HttpDecodeException(505, "不支持的协议版本：" + version);
+        }
+        headerCount = 0;
+        // 请求行拷贝一份交给请求，partialLine会被下一行覆盖
+        return new HttpRequest(known(KNOWN_METHODS, 0, first), Arrays.copyOf(partialLine, length), first + 1, last,
+                version);
+    }
+
+    /**
+     * partialLine[start, end)等于candidates中的某一个时直接返回它，否则创建新的String
+     */
+    private String known(String[] candidates, int start, int end) {
+        for (String candidate : candidates) {
+            if (candidate.length() == end - start && matches(candidate, start)) {
+                return candidate;
+            }
+        }
+        return new String(partialLine, start, end - start, StandardCharsets.ISO_8859_1);
+    }
+
+    private boolean matches(String candidate, int start) {
+        for (int i = 0; i < candidate.length(); i++) {
+            if (partialLine[start + i] != candidate.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void parseHeader(String line) throws HttpDecodeException {
+        if (++headerCount > MAX_HEADER_COUNT) {
+            throw new HttpDecodeException(431, "请求头数量过多");
+        }
+        int colon = line.indexOf(':');
+        if (colon <= 0) {
+            throw new HttpDecodeException(400, "请求头不合法：" + line);
+        }
+        // 头部名称中不能有空白：RFC 7230要求拒绝冒号前有空白的请求（前后端解析不一致会导致请求走私），
+        // 行首的空白是已经废弃的多行头部（obs-fold），也不支持
+        for (int i = 0; i < colon; i++) {
+            char c = line.charAt(i);
+            if (c == ' ' || c == '\t') {
+                throw new HttpDecodeException(400, "请求头不合法：" + line);
+            }
+        }
+        request.addHeader(line.substring(0, colon), line.substring(colon + 1).trim());
+    }
+
+    /**
+     * 请求头读取完毕，根据 Transfer-Encoding / Content-Length 决定如何读取请求体
+     *
+     * @return 没有请求体时直接返回完整的请求
+     */
+    private HttpRequest headersComplete() throws HttpDecodeException {
+        String transferEncoding = request.header("transfer-encoding");
+        if (transferEncoding != null) {
+            // 只支持单独的chunked，gzip等编码不会被解码，不能把还没解码的请求体交给处理器
+            if (!"chunked".equalsIgnoreCase(transferEncoding)) {
+                throw new HttpDecodeException(501, "不支持的Transfer-Encoding：" + transferEncoding);
+            }
+            // 同时出现时以Transfer-Encoding为准
+            chunkedBody = new ByteArrayOutputStream();
+            state = State.CHUNK_SIZE;
+            return null;
+        }
+        String contentLength = request.header("content-length");
+        if (contentLength == null) {
+            return complete();
+        }
+        // 只接受十进制数字：Long.parseLong还接受正负号；多个Content-Length合并成"5, 5"后也会在这里被拒绝
+        if (contentLength.isEmpty()) {
+            throw new HttpDecodeException(400, "Content-Length不合法：" + contentLength);
+        }
+        long length = 0;
+        for (int i = 0; i < contentLength.length(); i++) {
+            char c = contentLength.charAt(i);
+            if (c < '0' || c > '9') {
+                throw new HttpDecodeException(400, "Content-Length不合法：" + contentLength);
+            }
+            length = length * 10 + (c - '0');
+            if (length > MAX_BODY_LENGTH) {
+                throw new HttpDecodeException(413, "请求体过大：" + contentLength);
+            }
+        }
+        if (length == 0) {
+            return complete();
+        }
+        fixedBody = new byte[(int) length];
+        fixedBodyOffset = 0;
+        state = State.FIXED_BODY;
+        return null;
+    }
+
+    /**
+     * 解析chunk大小行，忽略扩展（;之后的部分）。大小只能是十六进制数字（Long.parseLong还接受正负号），
+     * 边解析边和剩余可用的长度比较，不会溢出
+     */
+    private long parseChunkSize(String line) throws HttpDecodeException {
+        int end = line.indexOf(';');
+        if (end < 0) {
+            end = line.length();
+        }
+        // 扩展之前允许有空白
+        while (end > 0 && (line.charAt(end - 1) == ' ' || line.charAt(end - 1) == '\t')) {
+            end--;
+        }
+        if (end == 0) {
+            throw new HttpDecodeException(400, "chunk大小不合法：" + line);
+        }
+        long available = MAX_BODY_LENGTH - chunkedBody.size();
+        long chunkSize = 0;
+        for (int i = 0; i < end; i++) {
+            int digit = Character.digit(line.charAt(i), 16);
+            if (digit < 0) {
+                throw new HttpDecodeException(400, "chunk大小不合法：" + line);
+            }
+            chunkSize = (chunkSize << 4) + digit;
+            if (chunkSize > available) {
+                throw new HttpDecodeException(413, "请求体过大");
+            }
+        }
+        return chunkSize;
+    }
+
+    /**
+     * 一个请求解码完成，重置状态，准备解码同一连接上的下一个请求
+     */
+    private HttpRequest complete() {
+        HttpRequest complete = this.request;
+        this.request = null;
+        this.fixedBody = null;
+        this.chunkedBody = null;
+        this.state = State.REQUEST_LINE;
+        return complete;
+    }
+
+    /**
+     * 是否正处于一个请求的中间（已经读到部分数据）
+     */
+    public boolean isDecoding() {
+        return state != State.REQUEST_LINE || partialLength > 0;
+    }
+}
@@ -0,0 +1,237 @@
+package com.study.hc.net.nio;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * HTTP响应，由{@link HttpHandler}生成，交回I/O线程后由{@link HttpResponseEncoder}编码写出
+ *
+ * @author chensicong
+ * @date 2026-10-17 21:10
+ **/
+public class HttpResponse {
+
+    private static final byte[] EMPTY_BODY = new byte[0];
+
+    private final int status;
+
+    /**
+     * 响应头，Content-Length、Connection由编码器生成，不需要设置
+     */
+    private final Map<String, String> headers = new LinkedHashMap<>();
+
+    private byte[] body = EMPTY_BODY;
+
+    /**
+     * 共享的响应体（例如缓存的文件内容），写出时使用只读副本，不会被修改或归还给缓冲池
+     */
+    private ByteBuffer bodyBuffer;
+
+    /**
+     * 用transferTo发送的文件响应体
+     */
+    private FileRegion bodyFile;
+
+    /**
+     * 预先编码好的完整响应，Date头变化（每秒一次）后重新编码
+     */
+    private volatile Encoded encoded;
+
+    public HttpResponse(int status) {
+        this.status = status;
+    }
+
+    public static HttpResponse ok(String body) {
+        return new HttpResponse(200).header("Content-Type", "text/plain; charset=utf-8").body(body);
+    }
+
+    public static HttpResponse error(int status, String message) {
+        return new HttpResponse(status).header("Content-Type", "text/plain; charset=utf-8").body(message);
+    }
+
+    public int status() {
+        return status;
+    }
+
+    public Map<String, String> headers() {
+        return headers;
+    }
+
+    public HttpResponse header(String name, String value) {
+        headers.put(name, value);
+        return this;
+    }
+
+    public byte[] body() {
+        return body;
+    }
+
+    public HttpResponse body(byte[] body) {
+        this.body = body;
+        this.bodyBuffer = null;
+        this.bodyFile = null;
+        return this;
+    }
+
+    /**
+     * 使用缓冲区中position到limit之间的内容作为响应体，缓冲区可以被多个响应共享
+     */
+    public HttpResponse body(ByteBuffer body) {
+        this.body = EMPTY_BODY;
+        this.bodyBuffer = body;
+        this.bodyFile = null;
+        return this;
+    }
+
+    public HttpResponse body(FileRegion body) {
+        this.body = EMPTY_BODY;
+        this.bodyBuffer = null;
+        this.bodyFile = body;
+        return this;
+    }
+
+    public ByteBuffer bodyBuffer() {
+        return bodyBuffer;
+    }
+
+    public FileRegion bodyFile() {
+        return bodyFile;
+    }
+
+    /**
+     * 把完整的响应（响应头和响应体）预先编码到只读的堆外缓冲区中，之后每次写出都只是这份缓冲区的只读视图，
+     * 不再编码、也不再拷贝。适合缓存的响应、过载保护的503这类反复发送、内容固定的响应，调用之后不能再修改响应
+     */
+    public HttpResponse preEncode() {
+        if (bodyFile != null) {
+            throw new IllegalStateException("file body can not be pre-encoded");
+        }
+        if (encoded == null) {
+            encoded = new Encoded(this);
+        }
+        return this;
+    }
+
+    public boolean isPreEncoded() {
+        return encoded != null;
+    }
+
+    /**
+     * 预先编码好的响应，没有调用过{@link #preEncode()}时返回null；返回的是只读视图，调用方可以随意修改position。
+     * Date头过期时先重新编码，多个线程同时发现过期时可能重复编码，结果相同
+     */
+    public ByteBuffer encoded(boolean keepAlive) {
+        Encoded current = encoded;
+        if (current == null) {
+            return null;
+        }
+        if (current.date != HttpDate.current()) {
+            current = new Encoded(this);
+            encoded = current;
+        }
+        return (keepAlive ? current.keepAlive : current.close).duplicate();
+    }
+
+    /**
+     * HEAD请求用的预先编码的响应：同一份缓冲区去掉末尾的响应体，只写出响应头
+     */
+    public ByteBuffer encoded(boolean keepAlive, boolean head) {
+        ByteBuffer encoded = encoded(keepAlive);
+        if (encoded != null && head) {
+            encoded.limit(encoded.limit() - (int) contentLength());
+        }
+        return encoded;
+    }
+
+    /**
+     * 预先编码后的长连接形式的字节数，没有预先编码时返回-1
+     */
+    public int encodedLength() {
+        Encoded current = encoded;
+        return current == null ? -1 : current.keepAlive.remaining();
+    }
+
+    public long contentLength() {
+        if (bodyBuffer != null) {
+            return bodyBuffer.remaining();
+        }
+        if (bodyFile != null) {
+            return bodyFile.count();
+        }
+        return body.length;
+    }
+
+    public HttpResponse body(String body) {
+        return body(body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static final class Encoded {
+
+        final byte[] date;
+
+        final ByteBuffer keepAlive;
+
+        final ByteBuffer close;
+
+        Encoded(HttpResponse response) {
+            this.date = HttpDate.current();
+            this.keepAlive = encode(response, true);
+            this.close = encode(response, false);
+        }
+
+        private static ByteBuffer encode(HttpResponse response, boolean keepAlive) {
+            ByteBuffer body = response.bodyBuffer;
+            ByteBuffer buffer = ByteBuffer.allocateDirect(HttpResponseEncoder.maxEncodedLength(response)
+                    + (body == null ? 0 : body.remaining()));
+            HttpResponseEncoder.encode(response, keepAlive, buffer);
+            if (body != null) {
+                buffer.put(body.duplicate());
+            }
+            buffer.flip();
+            return buffer.asReadOnlyBuffer();
+        }
+    }
+
+    public static String reasonPhrase(int status) {
+        switch (status) {
+            case 200:
+                return "OK";
+            case 206:
+                return "Partial Content";
+            case 304:
+                return "Not Modified";
+            case 400:
+                return "Bad Request";
+            case 403:
+                return "Forbidden";
+            case 404:
+                return "Not Found";
+            case 405:
+                return "Method Not Allowed";
+            case 408:
+                return "Request Timeout";
+            case 412:
+                return "Precondition Failed";
+            case 413:
+                return "Payload Too Large";
+            case 414:
+                return "URI Too Long";
+            case 416:
+                return "Range Not Satisfiable";
+            case 431:
+                return "Request Header Fields Too Large";
+            case 500:
+                return "Internal Server Error";
+            case 501:
+                return "Not Implemented";
+            case 503:
+                return "Service Unavailable";
+            case 505:
+                return "HTTP Version Not Supported";
+            default:
+                return "Unknown";
+        }
+    }
+}
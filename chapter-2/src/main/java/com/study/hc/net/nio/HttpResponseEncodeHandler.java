@@ -0,0 +1,41 @@
+package com.study.hc.net.nio;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 把{@link HttpExchange}编码成发送队列能接受的消息：响应头（和byte[]响应体）编码到池化的缓冲区中，
+ * 共享的响应体只写出一个只读视图，文件响应体原样交给发送队列用transferTo发送，都不做拷贝；
+ * 预先编码过的响应（{@link HttpResponse#preEncode()}）直接写出只读视图；HEAD请求只写出响应头
+ *
+ * @author chensicong
+ * @date 2026-10-18 20:00
+ **/
+public class HttpResponseEncodeHandler implements ChannelOutboundHandler {
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (!(msg instanceof HttpExchange)) {
+            ctx.write(msg);
+            return;
+        }
+        HttpExchange exchange = (HttpExchange) msg;
+        HttpResponse response = exchange.response();
+        boolean head = exchange.isHead();
+        ByteBuffer encoded = response.encoded(exchange.isKeepAlive(), head);
+        if (encoded != null) {
+            ctx.write(encoded);
+            return;
+        }
+        ctx.write(HttpResponseEncoder.encode(response, exchange.isKeepAlive(), head));
+        if (head) {
+            // 文件响应体还没有打开，不写出就不需要关闭
+            return;
+        }
+        if (response.bodyBuffer() != null) {
+            // 共享的缓冲区，每次写出用一个只读副本，互不影响position
+            ctx.write(response.bodyBuffer().asReadOnlyBuffer());
+        } else if (response.bodyFile() != null) {
+            ctx.write(response.bodyFile());
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.study.hc.net.nio;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+/**
+ * 响应编码器：直接把响应编码到池化的堆外缓冲区中，不经过String拼接
+ * <p>
+ * 只编码响应头（包括每秒更新一次的Date头）和byte[]形式的响应体；共享缓冲区、文件形式的响应体由{@link HttpResponseEncodeHandler}单独写出，不做拷贝。
+ * HEAD请求的响应保留完整响应体对应的Content-Length，但不写出响应体，否则长连接上的客户端会把它当成下一个响应的开头
+ *
+ * @author chensicong
+ * @date 2026-10-17 21:10
+ **/
+public class HttpResponseEncoder {
+
+    private static final byte[] CRLF = {'\r', '\n'};
+
+    /**
+     * @return 读模式的缓冲区，来自{@link BufferPool#DEFAULT}，写出后需要归还
+     */
+    public static ByteBuffer encode(HttpResponse response, boolean keepAlive) {
+        return encode(response, keepAlive, false);
+    }
+
+    /**
+     * @param head 是否是HEAD请求的响应，是时不编码响应体
+     * @return 读模式的缓冲区，来自{@link BufferPool#DEFAULT}，写出后需要归还
+     */
+    public static ByteBuffer encode(HttpResponse response, boolean keepAlive, boolean head) {
+        ByteBuffer buffer = BufferPool.DEFAULT.acquire(maxEncodedLength(response));
+        encode(response, keepAlive, head, buffer);
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * 编码到调用方提供的缓冲区（写模式），剩余空间不能小于{@link #maxEncodedLength(HttpResponse)}
+     */
+    public static void encode(HttpResponse response, boolean keepAlive, ByteBuffer buffer) {
+        encode(response, keepAlive, false, buffer);
+    }
+
+    public static void encode(HttpResponse response, boolean keepAlive, boolean head, ByteBuffer buffer) {
+        putAscii(buffer, "HTTP/1.1 ");
+        putInt(buffer, response.status());
+        buffer.put((byte) ' ');
+        putAscii(buffer, HttpResponse.reasonPhrase(response.status()));
+        buffer.put(CRLF);
+        putAscii(buffer, "Date: ");
+        buffer.put(HttpDate.current());
+        buffer.put(CRLF);
+        for (Map.Entry<String, String> header : response.headers().entrySet()) {
+            putAscii(buffer, header.getKey());
+            buffer.put((byte) ':').put((byte) ' ');
+            putAscii(buffer, header.getValue());
+            buffer.put(CRLF);
+        }
+        if (response.status() != 304) {
+            // bodyBuffer、bodyFile形式的响应体不在这里编码，跟在响应头后面单独写出
+            putAscii(buffer, "Content-Length: ");
+            putInt(buffer, response.contentLength());
+            buffer.put(CRLF);
+        }
+        if (!keepAlive) {
+            putAscii(buffer, "Connection: close");
+            buffer.put(CRLF);
+        }
+        buffer.put(CRLF);
+        if (!head) {
+            buffer.put(response.body());
+        }
+    }
+
+    /**
+     * 编码结果长度的上限估算（响应头 + byte[]形式的响应体），保证一次申请的缓冲区足够大
+     */
+    public static int maxEncodedLength(HttpResponse response) {
+        int length = 192 + response.body().length;
+        for (Map.Entry<String, String> header : response.headers().entrySet()) {
+            length += header.getKey().length() + header.getValue().length() + 4;
+        }
+        return length;
+    }
+
+    static void putAscii(ByteBuffer buffer, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            buffer.put((byte) value.charAt(i));
+        }
+    }
+
+    static void putInt(ByteBuffer buffer, long value) {
+        if (value >= 10) {
+            putInt(buffer, value / 10);
+        }
+        buffer.put((byte) ('0' + value % 10));
+    }
+}
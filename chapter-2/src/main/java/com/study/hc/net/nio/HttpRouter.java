@@ -0,0 +1,516 @@
+package com.study.hc.net.nio;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 按请求方法和路径把请求分发给不同的{@link RouteHandler}，作为{@link HttpHandler}交给{@link NIOServerV3}
+ * <pre>
+ * HttpRouter router = new HttpRouter()
+ *         .get("/users/{id}", (request, params) -&gt; ...)
+ *         .get("/users/{id}/orders", (request, params) -&gt; ...)
+ *         .get("/static/{path*}", (request, params) -&gt; ...);
+ * </pre>
+ * 路由在注册时编译成按字节比较的基数树（radix trie）：公共前缀只存一份，匹配时沿着树逐字节比较请求行中的路径，
+ * 不创建String、不做正则匹配，耗时只和路径长度有关，和路由的数量无关。
+ * {name}匹配一整段路径（不含/），{name*}只能放在最后，匹配剩余的所有路径；同一位置静态路径优先于参数，参数优先于通配。
+ * 路径参数只记录在请求行中的位置（{@link PathParams}）。
+ * <p>
+ * 每个业务线程有一个最近匹配结果的缓存（按方法和路径索引），热点路径命中缓存时只需要一次比较，不用在树上回溯。
+ * 匹配和分发的过程不申请内存。路由必须在服务端启动之前注册完
+ *
+ * @author chensicong
+ * @date 2026-10-19 01:00
+ **/
+public class HttpRouter implements HttpHandler {
+
+    private static final String[] METHODS = {"GET", "HEAD", "POST", "PUT", "DELETE", "PATCH", "OPTIONS"};
+
+    private static final int GET = 0;
+
+    private static final int HEAD = 1;
+
+    /**
+     * 不限方法的路由的下标，也用来表示其他不认识的方法
+     */
+    private static final int ANY = METHODS.length;
+
+    private static final int CACHE_SIZE = 256;
+
+    private static final byte[] ROOT_PATH = {'/'};
+
+    private final Node root = new Node(new byte[0]);
+
+    private HttpHandler notFound = request -> HttpResponse.error(404, "not found");
+
+    private final ThreadLocal<MatchState> state = ThreadLocal.withInitial(MatchState::new);
+
+    public HttpRouter get(String pattern, RouteHandler handler) {
+        return route("GET", pattern, handler);
+    }
+
+    public HttpRouter post(String pattern, RouteHandler handler) {
+        return route("POST", pattern, handler);
+    }
+
+    public HttpRouter put(String pattern, RouteHandler handler) {
+        return route("PUT", pattern, handler);
+    }
+
+    public HttpRouter delete(String pattern, RouteHandler handler) {
+        return route("DELETE", pattern, handler);
+    }
+
+    /**
+     * 不限请求方法的路由，同一路径上指定了方法的路由优先
+     */
+    public HttpRouter any(String pattern, RouteHandler handler) {
+        return route(null, pattern, handler);
+    }
+
+    /**
+     * 没有匹配的路由时的处理，默认响应404
+     */
+    public HttpRouter notFound(HttpHandler handler) {
+        this.notFound = handler;
+        return this;
+    }
+
+    /**
+     * @param method 请求方法，null表示不限
+     */
+    public HttpRouter route(String method, String pattern, RouteHandler handler) {
+        int methodIndex = method == null ? ANY : methodIndex(method);
+        if (methodIndex == ANY && method != null) {
+            throw new IllegalArgumentException("unsupported method: " + method);
+        }
+        if (!pattern.startsWith("/")) {
+            throw new IllegalArgumentException("pattern must start with '/': " + pattern);
+        }
+        List<String> names = new ArrayList<>();
+        Node node = root;
+        int staticStart = 0;
+        for (int i = 0; i < pattern.length(); i++) {
+            if (pattern.charAt(i) != '{') {
+                continue;
+            }
+            int close = pattern.indexOf('}', i);
+            if (close < 0 || pattern.charAt(i - 1) != '/'
+                    || (close + 1 < pattern.length() && pattern.charAt(close + 1) != '/')) {
+                throw new IllegalArgumentException("path parameter must be a whole segment: " + pattern);
+            }
+            node = node.insert(bytes(pattern, staticStart, i), 0);
+            String name = pattern.substring(i + 1, close);
+            if (name.endsWith("*")) {
+                if (close + 1 != pattern.length()) {
+                    throw new IllegalArgumentException("wildcard must be the last segment: " + pattern);
+                }
+                name = name.substring(0, name.length() - 1);
+                if (node.wildcard == null) {
+                    node.wildcard = new Node(new byte[0]);
+                }
+                node = node.wildcard;
+            } else {
+                if (node.param == null) {
+                    node.param = new Node(new byte[0]);
+                }
+                node = node.param;
+            }
+            if (name.isEmpty() || names.contains(name)) {
+                throw new IllegalArgumentException("invalid path parameter name '" + name + "': " + pattern);
+            }
+            names.add(name);
+            staticStart = close + 1;
+            i = close;
+        }
+        node = node.insert(bytes(pattern, staticStart, pattern.length()), 0);
+        if (names.size() > PathParams.MAX_PARAMS) {
+            throw new IllegalArgumentException("too many path parameters: " + pattern);
+        }
+        if (node.routes[methodIndex] != null) {
+            throw new IllegalArgumentException("duplicate route: " + (method == null ? "*" : method) + " " + pattern);
+        }
+        node.routes[methodIndex] = new Route(handler, names.toArray(new String[0]));
+        node.updateAllow();
+        return this;
+    }
+
+    @Override
+    public HttpResponse handle(HttpRequest request) throws Exception {
+        byte[] bytes = request.targetBytes();
+        int start = request.targetStart();
+        int end = request.targetEnd();
+        if (start < end && bytes[start] != '/') {
+            // absolute-form（http://host/path），跳过scheme和host
+            start = skipAuthority(bytes, start, end);
+        }
+        for (int i = start; i < end; i++) {
+            if (bytes[i] == '?') {
+                end = i;
+                break;
+            }
+        }
+        if (start == end) {
+            bytes = ROOT_PATH;
+            start = 0;
+            end = 1;
+        }
+        int method = methodIndex(request.method());
+        MatchState state = this.state.get();
+        PathParams params = state.params;
+        params.reset(bytes);
+        state.allowNode = null;
+
+        Route route = state.lookup(bytes, start, end, method);
+        if (route == null) {
+            route = match(root, bytes, start, end, method, state);
+            if (route != null) {
+                state.remember(bytes, start, end, method, route);
+            }
+        }
+        if (route == null) {
+            if (state.allowNode != null) {
+                return HttpResponse.error(405, "method not allowed").header("Allow", state.allowNode.allow);
+            }
+            return notFound.handle(request);
+        }
+        params.names(route.names);
+        return route.handler.handle(request, params);
+    }
+
+    /**
+     * 从node（标签已经匹配过）开始匹配bytes[pos, end)，失败时回溯，依次尝试静态子节点、参数、通配
+     */
+    private static Route match(Node node, byte[] bytes, int pos, int end, int method, MatchState state) {
+        PathParams params = state.params;
+        if (pos == end) {
+            Route route = node.route(method);
+            if (route != null) {
+                return route;
+            }
+            if (node.allow != null) {
+                state.allowNode = node;
+            }
+        } else {
+            Node child = node.child(bytes[pos]);
+            if (child != null && child.matches(bytes, pos, end)) {
+                Route route = match(child, bytes, pos + child.label.length, end, method, state);
+                if (route != null) {
+                    return route;
+                }
+            }
+            if (node.param != null) {
+                int segmentEnd = pos;
+                while (segmentEnd < end && bytes[segmentEnd] != '/') {
+                    segmentEnd++;
+                }
+                if (segmentEnd > pos) {
+                    params.push(pos, segmentEnd);
+                    Route route = match(node.param, bytes, segmentEnd, end, method, state);
+                    if (route != null) {
+                        return route;
+                    }
+                    params.pop();
+                }
+            }
+        }
+        if (node.wildcard != null) {
+            Route route = node.wildcard.route(method);
+            if (route != null) {
+                params.push(pos, end);
+                return route;
+            }
+            if (node.wildcard.allow != null) {
+                state.allowNode = node.wildcard;
+            }
+        }
+        return null;
+    }
+
+    private static int skipAuthority(byte[] bytes, int start, int end) {
+        for (int i = start; i + 2 < end; i++) {
+            if (bytes[i] == ':' && bytes[i + 1] == '/' && bytes[i + 2] == '/') {
+                for (int j = i + 3; j < end; j++) {
+                    if (bytes[j] == '/') {
+                        return j;
+                    }
+                }
+                return end;
+            }
+        }
+        return start;
+    }
+
+    private static int methodIndex(String method) {
+        for (int i = 0; i < METHODS.length; i++) {
+            // 解码器复用常见方法的String，一般引用比较就能命中
+            if (METHODS[i] == method || METHODS[i].equals(method)) {
+                return i;
+            }
+        }
+        return ANY;
+    }
+
+    private static byte[] bytes(String pattern, int start, int end) {
+        byte[] bytes = new byte[end - start];
+        for (int i = start; i < end; i++) {
+            bytes[i - start] = (byte) pattern.charAt(i);
+        }
+        return bytes;
+    }
+
+    private static final class Route {
+
+        final RouteHandler handler;
+
+        final String[] names;
+
+        Route(RouteHandler handler, String[] names) {
+            this.handler = handler;
+            this.names = names;
+        }
+    }
+
+    /**
+     * 基数树的节点。label是从父节点到本节点的静态字节（根节点、参数节点、通配节点为空），
+     * 静态子节点按label的第一个字节区分，一个节点最多有一个参数子节点和一个通配子节点
+     */
+    private static final class Node {
+
+        byte[] label;
+
+        byte[] firstBytes = new byte[0];
+
+        Node[] children = new Node[0];
+
+        Node param;
+
+        Node wildcard;
+
+        /**
+         * 以本节点结尾的路由，按方法下标存放，最后一个是不限方法的路由
+         */
+        final Route[] routes = new Route[ANY + 1];
+
+        /**
+         * 本节点有路由时，405响应的Allow头，没有路由时为null
+         */
+        String allow;
+
+        Node(byte[] label) {
+            this.label = label;
+        }
+
+        Route route(int method) {
+            Route route = routes[method];
+            if (route == null && method == HEAD) {
+                route = routes[GET];
+            }
+            return route != null ? route : routes[ANY];
+        }
+
+        Node child(byte first) {
+            byte[] firstBytes = this.firstBytes;
+            for (int i = 0; i < firstBytes.length; i++) {
+                if (firstBytes[i] == first) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        boolean matches(byte[] bytes, int pos, int end) {
+            if (label.length > end - pos) {
+                return false;
+            }
+            for (int i = 1; i < label.length; i++) {
+                if (label[i] != bytes[pos + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * 插入path[from, path.length)，必要时拆分已有的子节点
+         *
+         * @return 路径结尾处的节点
+         */
+        Node insert(byte[] path, int from) {
+            if (from == path.length) {
+                return this;
+            }
+            Node child = child(path[from]);
+            if (child == null) {
+                child = new Node(Arrays.copyOfRange(path, from, path.length));
+                addChild(child);
+                return child;
+            }
+            int common = 0;
+            while (common < child.label.length && from + common < path.length
+                    && child.label[common] == path[from + common]) {
+                common++;
+            }
+            if (common < child.label.length) {
+                // 公共前缀比子节点的标签短：拆成前缀节点和剩余部分
+                Node prefix = new Node(Arrays.copyOf(child.label, common));
+                child.label = Arrays.copyOfRange(child.label, common, child.label.length);
+                prefix.addChild(child);
+                children[indexOf(prefix.label[0])] = prefix;
+                child = prefix;
+            }
+            return child.insert(path, from + common);
+        }
+
+        private void addChild(Node child) {
+            int n = children.length;
+            firstBytes = Arrays.copyOf(firstBytes, n + 1);
+            children = Arrays.copyOf(children, n + 1);
+            firstBytes[n] = child.label[0];
+            children[n] = child;
+        }
+
+        private int indexOf(byte first) {
+            for (int i = 0; i < firstBytes.length; i++) {
+                if (firstBytes[i] == first) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        void updateAllow() {
+            StringBuilder allow = new StringBuilder();
+            for (int i = 0; i < routes.length; i++) {
+                if (routes[i] != null) {
+                    if (i == ANY) {
+                        allow.setLength(0);
+                        allow.append(String.join(", ", METHODS));
+                        break;
+                    }
+                    allow.append(allow.length() == 0 ? "" : ", ").append(METHODS[i]);
+                    if (i == GET && routes[HEAD] == null) {
+                        allow.append(", HEAD");
+                    }
+                }
+            }
+            this.allow = allow.toString();
+        }
+    }
+
+    /**
+     * 每个业务线程一份的匹配状态：复用的路径参数和最近匹配结果的缓存。
+     * 缓存是两路组相联的：每个路径可以放在相邻的两个位置中的一个，替换较久没有命中的那个，减少热点路径之间互相挤占；
+     * 条目对象和其中的数组替换时复用，稳定运行后不再申请内存
+     */
+    private static final class MatchState {
+
+        final PathParams params = new PathParams();
+
+        final CacheEntry[] cache = new CacheEntry[CACHE_SIZE];
+
+        /**
+         * 路径匹配、但是方法不匹配的节点，用于响应405
+         */
+        Node allowNode;
+
+        /**
+         * 每次命中或写入递增，用来判断两路中哪个较久没有用到
+         */
+        private int clock;
+
+        /**
+         * 缓存命中时把参数的位置填到params中
+         */
+        Route lookup(byte[] bytes, int start, int end, int method) {
+            int hash = hash(bytes, start, end, method);
+            int set = hash & (CACHE_SIZE - 2);
+            for (int way = set; way < set + 2; way++) {
+                CacheEntry entry = cache[way];
+                if (entry != null && entry.matches(bytes, start, end, method, hash)) {
+                    entry.lastUsed = ++clock;
+                    int[] offsets = entry.offsets;
+                    for (int i = 0; i < entry.paramCount * 2; i += 2) {
+                        params.push(start + offsets[i], start + offsets[i + 1]);
+                    }
+                    return entry.route;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * 记录刚匹配成功的结果，参数位置按相对路径起点保存
+         */
+        void remember(byte[] bytes, int start, int end, int method, Route route) {
+            int hash = hash(bytes, start, end, method);
+            int set = hash & (CACHE_SIZE - 2);
+            int way = cache[set] == null || cache[set + 1] != null && cache[set].lastUsed <= cache[set + 1].lastUsed
+                    ? set : set + 1;
+            CacheEntry entry = cache[way];
+            if (entry == null) {
+                entry = cache[way] = new CacheEntry();
+            }
+            entry.set(bytes, start, end, method, hash, route, params);
+            entry.lastUsed = ++clock;
+        }
+
+        private static int hash(byte[] bytes, int start, int end, int method) {
+            int hash = method;
+            for (int i = start; i < end; i++) {
+                hash = hash * 31 + bytes[i];
+            }
+            // 路径大多只在中间或末尾的几个字符上不同，混合一下让低位分布均匀
+            hash *= 0x9e3779b9;
+            return hash ^ (hash >>> 16);
+        }
+    }
+
+    private static final class CacheEntry {
+
+        byte[] path = new byte[64];
+
+        int length;
+
+        int method;
+
+        int hash;
+
+        Route route;
+
+        final int[] offsets = new int[PathParams.MAX_PARAMS * 2];
+
+        int paramCount;
+
+        int lastUsed;
+
+        boolean matches(byte[] bytes, int start, int end, int method, int hash) {
+            if (this.hash != hash || this.method != method || length != end - start) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (path[i] != bytes[start + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        void set(byte[] bytes, int start, int end, int method, int hash, Route route, PathParams params) {
+            length = end - start;
+            if (path.length < length) {
+                path = new byte[length];
+            }
+            System.arraycopy(bytes, start, path, 0, length);
+            this.method = method;
+            this.hash = hash;
+            this.route = route;
+            paramCount = params.size();
+            for (int i = 0; i < paramCount; i++) {
+                offsets[i * 2] = params.start(i) - start;
+                offsets[i * 2 + 1] = params.end(i) - start;
+            }
+        }
+    }
+}
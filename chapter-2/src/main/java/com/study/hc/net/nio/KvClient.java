@@ -0,0 +1,233 @@
+package com.study.hc.net.nio;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link KvService}的阻塞式客户端，一个实例对应一个连接，不是线程安全的
+ * <p>
+ * 单个请求用get/set/delete；pipelining时先连续调用sendXxx，再按发送的顺序调用同样次数的{@link #receive()}。
+ * main方法是一个简单的压测工具：
+ * KvClient --connections=16 --pipeline=16 --duration=10 --keys=100000 --valueSize=100 --setRatio=0.1 [--host=localhost --port=11211]
+ *
+ * @author chensicong
+ * @date 2026-10-19 00:00
+ **/
+public class KvClient implements AutoCloseable {
+
+    private final SocketChannel channel;
+
+    private final ByteBuffer out = ByteBuffer.allocateDirect(64 * 1024);
+
+    private final ByteBuffer in = ByteBuffer.allocateDirect(64 * 1024);
+
+    private final ByteBuffer header = ByteBuffer.allocate(KvProtocol.RESPONSE_HEADER_LENGTH);
+
+    public KvClient(InetSocketAddress address) throws IOException {
+        channel = SocketChannel.open(address);
+        channel.socket().setTcpNoDelay(true);
+        in.flip();
+    }
+
+    /**
+     * @return value，不存在时返回null
+     */
+    public byte[] get(byte[] key) throws IOException {
+        sendGet(key);
+        flush();
+        return receive();
+    }
+
+    public void set(byte[] key, byte[] value) throws IOException {
+        sendSet(key, value);
+        flush();
+        receive();
+    }
+
+    /**
+     * @return key是否存在
+     */
+    public boolean delete(byte[] key) throws IOException {
+        sendDelete(key);
+        flush();
+        return receive() != null;
+    }
+
+    public void sendGet(byte[] key) throws IOException {
+        send(KvProtocol.GET, key, null);
+    }
+
+    public void sendSet(byte[] key, byte[] value) throws IOException {
+        send(KvProtocol.SET, key, value);
+    }
+
+    public void sendDelete(byte[] key) throws IOException {
+        send(KvProtocol.DELETE, key, null);
+    }
+
+    /**
+     * 写出缓冲的请求
+     */
+    public void flush() throws IOException {
+        out.flip();
+        while (out.hasRemaining()) {
+            channel.write(out);
+        }
+        out.clear();
+    }
+
+    /**
+     * 读取下一个响应，未写出的请求会先写出
+     *
+     * @return OK时返回value（没有value时为空数组），NOT_FOUND时返回null
+     * @throws IOException 服务端返回ERROR
+     */
+    public byte[] receive() throws IOException {
+        if (out.position() > 0) {
+            flush();
+        }
+        header.clear();
+        readFully(header);
+        header.flip();
+        byte status = header.get();
+        byte[] value = new byte[header.getInt()];
+        readFully(ByteBuffer.wrap(value));
+        switch (status) {
+            case KvProtocol.OK:
+                return value;
+            case KvProtocol.NOT_FOUND:
+                return null;
+            default:
+                throw new IOException("server error: " + new String(value, StandardCharsets.UTF_8));
+        }
+    }
+
+    private void send(byte op, byte[] key, byte[] value) throws IOException {
+        int valueLength = value == null ? 0 : value.length;
+        if (out.remaining() < KvProtocol.REQUEST_HEADER_LENGTH + key.length + valueLength) {
+            flush();
+        }
+        out.put(op).putShort((short) key.length).putInt(valueLength).put(key);
+        if (value != null) {
+            if (out.remaining() < value.length) {
+                // value比发送缓冲区还大，直接写出
+                flush();
+                ByteBuffer buffer = ByteBuffer.wrap(value);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            } else {
+                out.put(value);
+            }
+        }
+    }
+
+    private void readFully(ByteBuffer dst) throws IOException {
+        while (dst.hasRemaining()) {
+            if (!in.hasRemaining()) {
+                in.clear();
+                if (channel.read(in) < 0) {
+                    throw new EOFException("connection closed by server");
+                }
+                in.flip();
+            }
+            int n = Math.min(in.remaining(), dst.remaining());
+            int limit = in.limit();
+            in.limit(in.position() + n);
+            dst.put(in);
+            in.limit(limit);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    public static void main(String[] args) throws Exception {
+        InetSocketAddress address = new InetSocketAddress(option(args, "host", "localhost"),
+                Integer.parseInt(option(args, "port", "11211")));
+        int connections = Integer.parseInt(option(args, "connections", "16"));
+        int pipeline = Math.max(1, Integer.parseInt(option(args, "pipeline", "16")));
+        long durationNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(option(args, "duration", "10")));
+        int keys = Integer.parseInt(option(args, "keys", "100000"));
+        byte[] value = new byte[Integer.parseInt(option(args, "valueSize", "100"))];
+        double setRatio = Double.parseDouble(option(args, "setRatio", "0.1"));
+
+        // 先写入所有key，避免压测时全是未命中
+        try (KvClient loader = new KvClient(address)) {
+            for (int i = 0; i < keys; i++) {
+                loader.sendSet(key(i), value);
+                if (i % pipeline == pipeline - 1) {
+                    for (int j = 0; j < pipeline; j++) {
+                        loader.receive();
+                    }
+                }
+            }
+            for (int i = 0; i < keys % pipeline; i++) {
+                loader.receive();
+            }
+        }
+
+        LongAdder requests = new LongAdder();
+        LongAdder misses = new LongAdder();
+        long deadline = System.nanoTime() + durationNanos;
+        List<Thread> threads = new ArrayList<>();
+        for (int c = 0; c < connections; c++) {
+            Thread thread = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                try (KvClient client = new KvClient(address)) {
+                    while (System.nanoTime() < deadline) {
+                        for (int i = 0; i < pipeline; i++) {
+                            byte[] key = key(random.nextInt(keys));
+                            if (random.nextDouble() < setRatio) {
+                                client.sendSet(key, value);
+                            } else {
+                                client.sendGet(key);
+                            }
+                        }
+                        for (int i = 0; i < pipeline; i++) {
+                            if (client.receive() == null) {
+                                misses.increment();
+                            }
+                        }
+                        requests.add(pipeline);
+                    }
+                } catch (IOException ex) {
+                    ex.printStackTrace();
+                }
+            }, "kv-client-" + c);
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        double seconds = durationNanos / 1e9;
+        System.out.printf("requests=%d throughput=%.0f/s misses=%d%n", requests.sum(), requests.sum() / seconds,
+                misses.sum());
+    }
+
+    private static byte[] key(int i) {
+        return ("key:" + i).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static String option(String[] args, String name, String defaultValue) {
+        String prefix = "--" + name + "=";
+        for (String arg : args) {
+            if (arg.startsWith(prefix)) {
+                return arg.substring(prefix.length());
+            }
+        }
+        return defaultValue;
+    }
+}
@@ -0,0 +1,18 @@
+package com.study.hc.net.nio;
+
+import java.io.IOException;
+
+/**
+ * KV请求帧不合法时抛出，服务端响应ERROR后关闭连接（帧边界已经乱了，后面的数据无法再解析）
+ *
+ * @author chensicong
+ * @date 2026-10-19 00:00
+ **/
+public class KvDecodeException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public KvDecodeException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,83 @@
+package com.study.hc.net.nio;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * {@link KvService}的二进制协议，所有整数都是大端序：
+ * <pre>
+ * 请求：op(1) keyLength(2) valueLength(4) key value    op: 1=GET 2=SET 3=DELETE，只有SET带value
+ * 响应：status(1) valueLength(4) value                 status: 0=OK 1=NOT_FOUND 2=ERROR（value是错误信息）
+ * </pre>
+ * 帧的长度都在头部，解码时不需要查找分隔符；客户端可以连续发送多个请求（pipelining），响应按请求的顺序返回
+ *
+ * @author chensicong
+ * @date 2026-10-19 00:00
+ **/
+final class KvProtocol {
+
+    static final byte GET = 1;
+
+    static final byte SET = 2;
+
+    static final byte DELETE = 3;
+
+    static final byte OK = 0;
+
+    static final byte NOT_FOUND = 1;
+
+    static final byte ERROR = 2;
+
+    static final int REQUEST_HEADER_LENGTH = 7;
+
+    static final int RESPONSE_HEADER_LENGTH = 5;
+
+    static final int MAX_KEY_LENGTH = 250;
+
+    /**
+     * key和value加起来不能超过一个存储页
+     */
+    static final int MAX_VALUE_LENGTH = KvShard.PAGE_SIZE - 1;
+
+    /**
+     * 不带value的响应预先编码好，写出时只需要duplicate（只读，写完不归还给BufferPool）
+     */
+    private static final ByteBuffer OK_EMPTY = header(OK, 0);
+
+    private static final ByteBuffer NOT_FOUND_EMPTY = header(NOT_FOUND, 0);
+
+    private KvProtocol() {
+    }
+
+    static ByteBuffer ok() {
+        return OK_EMPTY.duplicate();
+    }
+
+    static ByteBuffer notFound() {
+        return NOT_FOUND_EMPTY.duplicate();
+    }
+
+    static ByteBuffer error(String message) {
+        byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = response(ERROR, bytes.length);
+        buffer.put(bytes);
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * 申请一个池化的缓冲区并写入响应头，调用方接着写入valueLength字节的value后flip
+     */
+    static ByteBuffer response(byte status, int valueLength) {
+        ByteBuffer buffer = BufferPool.DEFAULT.acquire(RESPONSE_HEADER_LENGTH + valueLength);
+        buffer.put(status).putInt(valueLength);
+        return buffer;
+    }
+
+    private static ByteBuffer header(byte status, int valueLength) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(RESPONSE_HEADER_LENGTH);
+        buffer.put(status).putInt(valueLength);
+        buffer.flip();
+        return buffer.asReadOnlyBuffer();
+    }
+}
@@ -0,0 +1,54 @@
+package com.study.hc.net.nio;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 解码出的一个KV请求。由连接所属的I/O线程创建，交给key所属分片的I/O线程执行，
+ * 执行结果（编码好的响应）再随完成通知交回连接所属的线程写出
+ *
+ * @author chensicong
+ * @date 2026-10-19 00:00
+ **/
+final class KvRequest {
+
+    final byte op;
+
+    final byte[] key;
+
+    final int hash;
+
+    /**
+     * 只有SET请求有value
+     */
+    final byte[] value;
+
+    /**
+     * 编码好的响应，由分片所在的线程设置
+     */
+    ByteBuffer response;
+
+    /**
+     * 响应是否可以写出，只由连接所属的线程读写：远程分片执行完以后，完成通知到达本线程时才设置，
+     * 不能直接用response是否为null判断（另一个线程可能正在写入）
+     */
+    boolean done;
+
+    KvRequest(byte op, byte[] key, byte[] value) {
+        this.op = op;
+        this.key = key;
+        this.hash = KvShard.hash(key);
+        this.value = value;
+    }
+
+    /**
+     * 不需要执行、直接按顺序写出的响应，例如解码失败时的错误
+     */
+    KvRequest(ByteBuffer response) {
+        this.op = 0;
+        this.key = null;
+        this.hash = 0;
+        this.value = null;
+        this.response = response;
+        this.done = true;
+    }
+}
@@ -0,0 +1,90 @@
+package com.study.hc.net.nio;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 把字节流解码成{@link KvRequest}：先攒够7字节的请求头，再按头部的长度把key、value拷贝出来。
+ * 帧可以跨越任意多个组成部分，解码状态保存在处理器中，不需要拼接缓冲区
+ *
+ * @author chensicong
+ * @date 2026-10-19 00:00
+ **/
+public class KvRequestDecodeHandler extends ByteToMessageHandler {
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private final byte[] header = new byte[KvProtocol.REQUEST_HEADER_LENGTH];
+
+    private int headerRead;
+
+    private byte op;
+
+    /**
+     * 正在读取的帧的key，为null表示还在读请求头
+     */
+    private byte[] key;
+
+    private byte[] value;
+
+    private int bodyRead;
+
+    @Override
+    protected Object decode(ChannelHandlerContext ctx, CompositeByteBuffer in) throws KvDecodeException {
+        ByteBuffer component;
+        while ((component = in.firstComponent()) != null) {
+            if (key == null) {
+                int n = Math.min(header.length - headerRead, component.remaining());
+                component.get(header, headerRead, n);
+                headerRead += n;
+                if (headerRead < header.length) {
+                    continue;
+                }
+                parseHeader();
+            }
+            if (bodyRead < key.length) {
+                bodyRead += copy(component, key, bodyRead);
+            }
+            if (bodyRead >= key.length) {
+                bodyRead += copy(component, value, bodyRead - key.length);
+            }
+            if (bodyRead == key.length + value.length) {
+                KvRequest request = new KvRequest(op, key, value);
+                headerRead = 0;
+                key = null;
+                value = null;
+                bodyRead = 0;
+                return request;
+            }
+        }
+        return null;
+    }
+
+    private void parseHeader() throws KvDecodeException {
+        op = header[0];
+        int keyLength = (header[1] & 0xff) << 8 | header[2] & 0xff;
+        int valueLength = (header[3] & 0xff) << 24 | (header[4] & 0xff) << 16 | (header[5] & 0xff) << 8 | header[6] & 0xff;
+        if (op != KvProtocol.GET && op != KvProtocol.SET && op != KvProtocol.DELETE) {
+            throw new KvDecodeException("unknown op: " + op);
+        }
+        if (keyLength == 0 || keyLength > KvProtocol.MAX_KEY_LENGTH) {
+            throw new KvDecodeException("invalid key length: " + keyLength);
+        }
+        if (valueLength < 0 || valueLength > KvProtocol.MAX_VALUE_LENGTH
+                || (op != KvProtocol.SET && valueLength != 0)) {
+            throw new KvDecodeException("invalid value length: " + valueLength);
+        }
+        key = new byte[keyLength];
+        value = valueLength == 0 ? EMPTY : new byte[valueLength];
+    }
+
+    /**
+     * 从component拷贝到dst的offset之后，最多拷贝到dst填满
+     *
+     * @return 拷贝的字节数
+     */
+    private static int copy(ByteBuffer component, byte[] dst, int offset) {
+        int n = Math.min(dst.length - offset, component.remaining());
+        component.get(dst, offset, n);
+        return n;
+    }
+}
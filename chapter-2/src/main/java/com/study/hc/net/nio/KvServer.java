@@ -0,0 +1,34 @@
+package com.study.hc.net.nio;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 启动{@link KvService}：-Dkv.capacityMb 指定内存上限（默认256MB），-Dnio.port 指定端口（默认11211），
+ * -Dkv.statsIntervalSeconds 大于0时定期打印各分片的统计信息
+ *
+ * @author chensicong
+ * @date 2026-10-19 00:00
+ **/
+public class KvServer {
+
+    public static void main(String[] args) throws Exception {
+        KvService kv = new KvService(Long.getLong("kv.capacityMb", 256L) << 20);
+        ServerConfig config = new ServerConfig().setPort(Integer.getInteger("nio.port", 11211));
+        NIOServerV3 server = new NIOServerV3(config, request -> HttpResponse.error(404, "not found"), kv);
+        kv.bind(server);
+        server.start();
+
+        long interval = Long.getLong("kv.statsIntervalSeconds", 0L);
+        if (interval > 0) {
+            ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "kv-stats");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleAtFixedRate(() -> kv.stats().thenAccept(System.out::println),
+                    interval, interval, TimeUnit.SECONDS);
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package com.study.hc.net.nio;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * KV连接的处理器，放在{@link KvRequestDecodeHandler}之后
+ * <p>
+ * key属于本线程分片的请求直接执行；属于其他分片的请求先按分片攒起来，一次read处理完（channelReadComplete）后
+ * 每个分片整批提交一次任务，分片线程执行完整批再提交一次完成通知回来，跨线程的任务数和唤醒次数与pipelining的深度无关。
+ * 响应按请求顺序写出：排在前面的远程请求还没完成时，后面已经完成的本地请求也要等着。
+ * 积压的请求太多、或者发送队列超过高水位（{@link ChannelHandlerContext#isWritable()}）时暂停读取，避免一个连接无限制地占用内存；
+ * 本地请求写出后、远程批次完成后和恢复可写时都会检查是否可以恢复
+ *
+ * @author chensicong
+ * @date 2026-10-19 00:00
+ **/
+public class KvServerHandler implements ChannelInboundHandler {
+
+    /**
+     * 未写出的请求超过该数量时暂停读取，降到一半以下时恢复
+     */
+    private static final int MAX_PENDING_REQUESTS = 1024;
+
+    private final KvService service;
+
+    /**
+     * 本连接所在I/O线程的分片
+     */
+    private final int localShard;
+
+    /**
+     * 按请求顺序排队、还未写出的请求
+     */
+    private final ArrayDeque<KvRequest> pending = new ArrayDeque<>();
+
+    /**
+     * 本轮read中属于各个远程分片的请求，下标是分片号
+     */
+    private final List<List<KvRequest>> batches;
+
+    private ChannelHandlerContext ctx;
+
+    private boolean inactive;
+
+    /**
+     * 请求帧不合法，已经排了一个ERROR响应，写完后关闭连接
+     */
+    private boolean failed;
+
+    /**
+     * 因积压的请求太多或者发送队列不可写调用了pauseRead
+     */
+    private boolean readPaused;
+
+    /**
+     * 正在{@link #resumeIfDrained}中恢复读取，恢复后解码出的请求又触发的检查交给外层循环处理，不递归
+     */
+    private boolean resuming;
+
+    KvServerHandler(KvService service, int localShard) {
+        this.service = service;
+        this.localShard = localShard;
+        this.batches = new ArrayList<>(Collections.nCopies(service.shardCount(), (List<KvRequest>) null));
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+        if (!(msg instanceof KvRequest)) {
+            ctx.fireChannelRead(msg);
+            return;
+        }
+        this.ctx = ctx;
+        KvRequest request = (KvRequest) msg;
+        pending.addLast(request);
+        int shard = service.shardFor(request.hash);
+        if (shard == localShard) {
+            service.shard(shard).execute(request);
+            request.done = true;
+        } else {
+            List<KvRequest> batch = batches.get(shard);
+            if (batch == null) {
+                batch = new ArrayList<>();
+                batches.set(shard, batch);
+            }
+            batch.add(request);
+        }
+        if (!readPaused && pending.size() >= MAX_PENDING_REQUESTS) {
+            readPaused = true;
+            ctx.pipeline().pauseRead();
+        }
+    }
+
+    @Override
+    public void channelReadComplete(ChannelHandlerContext ctx) throws Exception {
+        submitBatches();
+        // 写出已经完成的响应，由I/O线程在本次读事件结束时统一flush
+        writeCompleted(ctx);
+        // 请求都属于本地分片时不会有batchCompleted，必须在这里恢复读取
+        resumeIfDrained(ctx);
+        ctx.fireChannelReadComplete();
+    }
+
+    @Override
+    public void channelReadResumed(ChannelHandlerContext ctx) throws Exception {
+        // 恢复读取时解码器会先把积压的数据解码完，这些请求不在某次read中，需要在这里提交
+        submitBatches();
+        writeCompleted(ctx);
+        resumeIfDrained(ctx);
+        ctx.fireChannelReadResumed();
+    }
+
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        this.ctx = ctx;
+        if (!ctx.isWritable()) {
+            // 本地分片的请求解码出来就会产生响应，发送队列积压时不再解码
+            if (!readPaused) {
+                readPaused = true;
+                ctx.pipeline().pauseRead();
+            }
+        } else {
+            resumeIfDrained(ctx);
+        }
+        ctx.fireChannelWritabilityChanged();
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        if (!(cause instanceof KvDecodeException) || failed) {
+            ctx.fireExceptionCaught(cause);
+            return;
+        }
+        // 帧边界已经乱了，不再解码后面的数据，前面的请求都响应完以后回复错误并关闭
+        failed = true;
+        this.ctx = ctx;
+        ctx.pipeline().pauseRead();
+        pending.addLast(new KvRequest(KvProtocol.error(cause.getMessage())));
+        submitBatches();
+        try {
+            writeCompleted(ctx);
+            ctx.flush();
+        } catch (Exception ex) {
+            ctx.pipeline().close();
+        }
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        inactive = true;
+        KvRequest request;
+        while ((request = pending.pollFirst()) != null) {
+            // 远程请求的响应还在路上，完成通知到达时再归还
+            if (request.done) {
+                release(request.response);
+            }
+        }
+        ctx.fireChannelInactive();
+    }
+
+    private void submitBatches() {
+        for (int shard = 0; shard < batches.size(); shard++) {
+            List<KvRequest> batch = batches.get(shard);
+            if (batch != null && !batch.isEmpty()) {
+                batches.set(shard, null);
+                KvShard owner = service.shard(shard);
+                service.execute(shard, () -> {
+                    for (KvRequest request : batch) {
+                        owner.execute(request);
+                    }
+                    service.execute(localShard, () -> batchCompleted(batch));
+                });
+            }
+        }
+    }
+
+    /**
+     * 远程分片执行完一批请求，在本连接所在的线程中执行
+     */
+    private void batchCompleted(List<KvRequest> batch) {
+        if (inactive) {
+            for (KvRequest request : batch) {
+                release(request.response);
+            }
+            return;
+        }
+        for (KvRequest request : batch) {
+            request.done = true;
+        }
+        try {
+            writeCompleted(ctx);
+            resumeIfDrained(ctx);
+            ctx.flush();
+        } catch (Exception ex) {
+            // 写出失败（例如对端重置了连接）
+            ctx.pipeline().close();
+        }
+    }
+
+    /**
+     * 积压的请求降到一半以下、且发送队列可写时恢复读取。恢复时解码器会继续解码已经读到的数据，新的请求可能又达到上限、再次暂停，
+     * 本地请求在解码的同时已经执行完，所以循环检查直到不再暂停或者积压的是还没完成的远程请求。
+     * 每轮都flush一次：恢复可写的通知来自flush，解码出的响应没有别的时机写出；flush中再次改变可写状态时由这里的循环处理，不递归
+     */
+    private void resumeIfDrained(ChannelHandlerContext ctx) throws Exception {
+        if (resuming) {
+            return;
+        }
+        resuming = true;
+        try {
+            while (readPaused && !failed && !inactive && ctx.isWritable() && pending.size() < MAX_PENDING_REQUESTS / 2) {
+                readPaused = false;
+                // 解码出的请求在channelReadResumed中提交批次、写出已完成的响应
+                ctx.pipeline().resumeRead();
+                ctx.flush();
+            }
+        } finally {
+            resuming = false;
+        }
+    }
+
+    /**
+     * 按顺序写出队头所有已完成的响应
+     */
+    private void writeCompleted(ChannelHandlerContext ctx) throws Exception {
+        KvRequest head;
+        while ((head = pending.peekFirst()) != null && head.done) {
+            pending.pollFirst();
+            ctx.write(head.response);
+            if (failed && pending.isEmpty()) {
+                ctx.pipeline().closeAfterFlush();
+                return;
+            }
+        }
+    }
+
+    private static void release(ByteBuffer response) {
+        if (response != null && !response.isReadOnly()) {
+            BufferPool.DEFAULT.release(response);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.study.hc.net.nio;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * 内存KV服务：key空间按hash分成和I/O reactor线程一样多的分片，每个分片只归一个I/O线程所有，修改时不需要加锁。
+ * 连接所在线程的分片上的请求直接执行，其他分片的请求通过分片所在线程的任务队列转发（见{@link KvServerHandler}）
+ * <p>
+ * 作为{@link NIOServerV3}的pipelineInitializer使用，把每个新连接的HTTP编解码器换成KV协议（{@link KvProtocol}）：
+ * <pre>
+ * KvService kv = new KvService(capacityBytes);
+ * NIOServerV3 server = new NIOServerV3(config, handler, kv);
+ * kv.bind(server);
+ * server.start();
+ * </pre>
+ *
+ * @author chensicong
+ * @date 2026-10-19 00:00
+ **/
+public class KvService implements Consumer<ChannelPipeline> {
+
+    private final long capacityBytes;
+
+    private NIOServerV3 server;
+
+    private KvShard[] shards;
+
+    /**
+     * @param capacityBytes 所有分片的堆外内存上限之和，平均分给每个分片
+     */
+    public KvService(long capacityBytes) {
+        this.capacityBytes = capacityBytes;
+    }
+
+    /**
+     * 按服务端的I/O线程数创建分片，必须在服务端start之前调用
+     */
+    public void bind(NIOServerV3 server) {
+        int count = server.ioThreadCount();
+        KvShard[] shards = new KvShard[count];
+        for (int i = 0; i < count; i++) {
+            shards[i] = new KvShard(capacityBytes / count);
+        }
+        this.shards = shards;
+        this.server = server;
+    }
+
+    @Override
+    public void accept(ChannelPipeline pipeline) {
+        for (String name : pipeline.names()) {
+            pipeline.remove(name);
+        }
+        pipeline.addLast("decoder", new KvRequestDecodeHandler());
+        pipeline.addLast("kv", new KvServerHandler(this, server.currentIoThreadIndex()));
+    }
+
+    int shardCount() {
+        return shards.length;
+    }
+
+    /**
+     * key的hash所属的分片，用hash的高位（分片内的索引用低位），乘法代替取模
+     */
+    int shardFor(int hash) {
+        return (int) (((hash & 0xffffffffL) * shards.length) >>> 32);
+    }
+
+    KvShard shard(int index) {
+        return shards[index];
+    }
+
+    /**
+     * 在分片所在的I/O线程中执行任务
+     */
+    void execute(int shard, Runnable task) {
+        server.executeOnIoThread(shard, task);
+    }
+
+    /**
+     * 在各个分片所在的线程中收集统计信息
+     */
+    public CompletableFuture<String> stats() {
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[shards.length];
+        String[] lines = new String[shards.length];
+        for (int i = 0; i < shards.length; i++) {
+            int index = i;
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            futures[i] = future;
+            execute(index, () -> {
+                KvShard shard = shards[index];
+                lines[index] = String.format("shard-%d items=%d allocated=%dMB hits=%d misses=%d evictions=%d",
+                        index, shard.size(), shard.allocatedBytes() >> 20, shard.hitCount(), shard.missCount(),
+                        shard.evictionCount());
+                future.complete(null);
+            });
+        }
+        return CompletableFuture.allOf(futures).thenApply(v -> String.join("\n", lines));
+    }
+}
@@ -0,0 +1,515 @@
+package com.study.hc.net.nio;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * {@link KvService}的一个分片，只由所属的I/O reactor线程访问，所有操作都不加锁
+ * <p>
+ * 索引是开放寻址（线性探测）的int数组，槽里存的是条目下标，删除时留下墓碑；
+ * 条目的元数据（hash、key/value长度、存储位置、CLOCK访问位）放在并行的基本类型数组中，没有每个条目一个对象的开销，GC不需要扫描。
+ * key和value一起存放在堆外：内存按1MB的页向系统申请，每页按第一次使用时的规格切成等大的块（64B ~ 1MB，每级翻倍），
+ * 一个条目占用一块，块大小向上取整到key+value的长度。
+ * <p>
+ * 内存达到上限后按CLOCK淘汰：同规格的页组成一个环，指针扫过的块如果最近被访问过就清掉访问位继续，否则淘汰这个条目，复用它的块。
+ * 某个规格还没有任何页时，从页数最多的规格中整页回收（淘汰页上所有条目）改作新规格使用
+ *
+ * @author chensicong
+ * @date 2026-10-19 00:00
+ **/
+final class KvShard {
+
+    private static final int PAGE_SHIFT = 20;
+
+    static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+
+    private static final int MIN_CHUNK_SHIFT = 6;
+
+    private static final int CLASS_COUNT = PAGE_SHIFT - MIN_CHUNK_SHIFT + 1;
+
+    /**
+     * 块的引用：页号左移CHUNK_INDEX_BITS位 | 块在页中的序号
+     */
+    private static final int CHUNK_INDEX_BITS = PAGE_SHIFT - MIN_CHUNK_SHIFT;
+
+    private static final int EMPTY = 0;
+
+    private static final int TOMBSTONE = -1;
+
+    private final int maxPages;
+
+    private ByteBuffer[] pages = new ByteBuffer[8];
+
+    private int[] pageClass = new int[8];
+
+    /**
+     * 每页每块所属的条目下标，空闲为-1
+     */
+    private int[][] pageOwners = new int[8][];
+
+    private int pageCount;
+
+    /**
+     * 每个规格的空闲块
+     */
+    private final IntStack[] freeChunks = new IntStack[CLASS_COUNT];
+
+    /**
+     * 每个规格的页
+     */
+    private final IntStack[] classPages = new IntStack[CLASS_COUNT];
+
+    /**
+     * 每个规格的CLOCK指针：classPages中的位置和页中的块序号
+     */
+    private final int[] handPage = new int[CLASS_COUNT];
+
+    private final int[] handChunk = new int[CLASS_COUNT];
+
+    /**
+     * 槽中存放条目下标+1，0表示空槽，-1表示墓碑
+     */
+    private int[] slots = new int[1024];
+
+    /**
+     * 非空槽（包括墓碑）的个数，超过一半时扩容或重建
+     */
+    private int usedSlots;
+
+    private int size;
+
+    private int[] entryHash = new int[256];
+
+    private int[] entryKeyLength = new int[256];
+
+    private int[] entryValueLength = new int[256];
+
+    private int[] entryChunk = new int[256];
+
+    private boolean[] entryReferenced = new boolean[256];
+
+    private int entryCount;
+
+    private final IntStack freeEntries = new IntStack();
+
+    private long hits;
+
+    private long misses;
+
+    private long evictions;
+
+    /**
+     * @param maxBytes 本分片存放key和value的堆外内存上限，至少一页
+     */
+    KvShard(long maxBytes) {
+        this.maxPages = (int) Math.max(1, Math.min(maxBytes / PAGE_SIZE, 1 << (31 - CHUNK_INDEX_BITS)));
+        for (int i = 0; i < CLASS_COUNT; i++) {
+            freeChunks[i] = new IntStack();
+            classPages[i] = new IntStack();
+        }
+    }
+
+    /**
+     * key的hash，分片用高位、分片内的索引用低位
+     */
+    static int hash(byte[] key) {
+        int h = 0x9747b28c;
+        for (byte b : key) {
+            h = h * 31 + b;
+        }
+        // murmur3的fmix32，让每一位都充分混合
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    /**
+     * 执行请求，把编码好的响应设置到request.response
+     */
+    void execute(KvRequest request) {
+        switch (request.op) {
+            case KvProtocol.GET:
+                request.response = get(request.key, request.hash);
+                break;
+            case KvProtocol.SET:
+                request.response = set(request.key, request.hash, request.value)
+                        ? KvProtocol.ok() : KvProtocol.error("value too large");
+                break;
+            case KvProtocol.DELETE:
+                request.response = delete(request.key, request.hash) ? KvProtocol.ok() : KvProtocol.notFound();
+                break;
+            default:
+                request.response = KvProtocol.error("unknown op: " + request.op);
+        }
+    }
+
+    private ByteBuffer get(byte[] key, int hash) {
+        int slot = find(key, hash);
+        if (slot < 0) {
+            misses++;
+            return KvProtocol.notFound();
+        }
+        hits++;
+        int entry = slots[slot] - 1;
+        entryReferenced[entry] = true;
+        int valueLength = entryValueLength[entry];
+        ByteBuffer response = KvProtocol.response(KvProtocol.OK, valueLength);
+        ByteBuffer page = pages[entryChunk[entry] >>> CHUNK_INDEX_BITS];
+        int offset = chunkOffset(entryChunk[entry]) + entryKeyLength[entry];
+        page.limit(offset + valueLength);
+        page.position(offset);
+        response.put(page);
+        page.limit(PAGE_SIZE);
+        response.flip();
+        return response;
+    }
+
+    /**
+     * @return key和value加起来超过一页时返回false
+     */
+    private boolean set(byte[] key, int hash, byte[] value) {
+        int itemSize = key.length + value.length;
+        if (itemSize > PAGE_SIZE) {
+            return false;
+        }
+        int sizeClass = sizeClass(itemSize);
+        int slot = find(key, hash);
+        if (slot >= 0) {
+            int entry = slots[slot] - 1;
+            if (pageClass[entryChunk[entry] >>> CHUNK_INDEX_BITS] == sizeClass) {
+                // 块的规格不变，原地覆盖value
+                write(entryChunk[entry], key.length, value);
+                entryValueLength[entry] = value.length;
+                entryReferenced[entry] = true;
+                return true;
+            }
+            removeAt(slot);
+        }
+        // 先删掉旧值再申请块：申请时可能淘汰条目，不能淘汰到正在覆盖的旧条目
+        int chunk = allocate(sizeClass);
+        int entry = newEntry();
+        entryHash[entry] = hash;
+        entryKeyLength[entry] = key.length;
+        entryValueLength[entry] = value.length;
+        entryChunk[entry] = chunk;
+        // 新条目不置访问位：否则内存写满后指针扫一圈只是清掉了所有访问位，退化成FIFO
+        entryReferenced[entry] = false;
+        pageOwners[chunk >>> CHUNK_INDEX_BITS][chunkIndex(chunk)] = entry;
+        write(chunk, 0, key);
+        write(chunk, key.length, value);
+        insert(entry, hash);
+        return true;
+    }
+
+    private boolean delete(byte[] key, int hash) {
+        int slot = find(key, hash);
+        if (slot < 0) {
+            return false;
+        }
+        removeAt(slot);
+        return true;
+    }
+
+    int size() {
+        return size;
+    }
+
+    long hitCount() {
+        return hits;
+    }
+
+    long missCount() {
+        return misses;
+    }
+
+    long evictionCount() {
+        return evictions;
+    }
+
+    /**
+     * 已经申请的堆外内存
+     */
+    long allocatedBytes() {
+        return (long) pageCount * PAGE_SIZE;
+    }
+
+    /**
+     * @return key所在的槽，不存在时返回-1
+     */
+    private int find(byte[] key, int hash) {
+        int mask = slots.length - 1;
+        for (int i = hash & mask; ; i = (i + 1) & mask) {
+            int slot = slots[i];
+            if (slot == EMPTY) {
+                return -1;
+            }
+            if (slot > 0 && entryHash[slot - 1] == hash && keyEquals(slot - 1, key)) {
+                return i;
+            }
+        }
+    }
+
+    private boolean keyEquals(int entry, byte[] key) {
+        if (entryKeyLength[entry] != key.length) {
+            return false;
+        }
+        ByteBuffer page = pages[entryChunk[entry] >>> CHUNK_INDEX_BITS];
+        int offset = chunkOffset(entryChunk[entry]);
+        for (int i = 0; i < key.length; i++) {
+            if (page.get(offset + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 放到第一个空槽或墓碑上，调用方保证key不存在
+     */
+    private void insert(int entry, int hash) {
+        int mask = slots.length - 1;
+        int i = hash & mask;
+        while (slots[i] > 0) {
+            i = (i + 1) & mask;
+        }
+        if (slots[i] == EMPTY) {
+            usedSlots++;
+        }
+        slots[i] = entry + 1;
+        size++;
+        if (usedSlots * 2 > slots.length) {
+            // 墓碑太多时原大小重建即可，真的满了才扩容
+            rehash(size * 4 > slots.length ? slots.length * 2 : slots.length);
+        }
+    }
+
+    private void rehash(int capacity) {
+        int[] old = slots;
+        slots = new int[capacity];
+        int mask = capacity - 1;
+        for (int slot : old) {
+            if (slot > 0) {
+                int i = entryHash[slot - 1] & mask;
+                while (slots[i] != EMPTY) {
+                    i = (i + 1) & mask;
+                }
+                slots[i] = slot;
+            }
+        }
+        usedSlots = size;
+    }
+
+    /**
+     * 删除槽上的条目，块放回空闲列表
+     */
+    private void removeAt(int slot) {
+        int entry = slots[slot] - 1;
+        int chunk = entryChunk[entry];
+        release(entry, slot);
+        freeChunks[pageClass[chunk >>> CHUNK_INDEX_BITS]].push(chunk);
+    }
+
+    /**
+     * 淘汰条目，块由调用方直接复用或者整页回收
+     */
+    private void evict(int entry) {
+        int mask = slots.length - 1;
+        int i = entryHash[entry] & mask;
+        while (slots[i] != entry + 1) {
+            i = (i + 1) & mask;
+        }
+        release(entry, i);
+        evictions++;
+    }
+
+    private void release(int entry, int slot) {
+        slots[slot] = TOMBSTONE;
+        size--;
+        int chunk = entryChunk[entry];
+        pageOwners[chunk >>> CHUNK_INDEX_BITS][chunkIndex(chunk)] = -1;
+        freeEntries.push(entry);
+    }
+
+    private int newEntry() {
+        if (!freeEntries.isEmpty()) {
+            return freeEntries.pop();
+        }
+        if (entryCount == entryHash.length) {
+            int capacity = entryCount * 2;
+            entryHash = Arrays.copyOf(entryHash, capacity);
+            entryKeyLength = Arrays.copyOf(entryKeyLength, capacity);
+            entryValueLength = Arrays.copyOf(entryValueLength, capacity);
+            entryChunk = Arrays.copyOf(entryChunk, capacity);
+            entryReferenced = Arrays.copyOf(entryReferenced, capacity);
+        }
+        return entryCount++;
+    }
+
+    /**
+     * 申请一个块：先用空闲块，再申请新页，内存到上限后在同规格中按CLOCK淘汰，同规格没有页时从别的规格回收一整页
+     */
+    private int allocate(int sizeClass) {
+        if (!freeChunks[sizeClass].isEmpty()) {
+            return freeChunks[sizeClass].pop();
+        }
+        if (pageCount < maxPages) {
+            int page = pageCount++;
+            if (page == pages.length) {
+                pages = Arrays.copyOf(pages, page * 2);
+                pageClass = Arrays.copyOf(pageClass, page * 2);
+                pageOwners = Arrays.copyOf(pageOwners, page * 2);
+            }
+            pages[page] = ByteBuffer.allocateDirect(PAGE_SIZE);
+            return assignPage(page, sizeClass);
+        }
+        if (!classPages[sizeClass].isEmpty()) {
+            return evictInClass(sizeClass);
+        }
+        return reassignPage(sizeClass);
+    }
+
+    /**
+     * 把页切成sizeClass规格的块，第一块返回给调用方，其余放入空闲列表
+     */
+    private int assignPage(int page, int sizeClass) {
+        int chunks = chunksPerPage(sizeClass);
+        pageClass[page] = sizeClass;
+        pageOwners[page] = new int[chunks];
+        Arrays.fill(pageOwners[page], -1);
+        classPages[sizeClass].push(page);
+        for (int i = chunks - 1; i > 0; i--) {
+            freeChunks[sizeClass].push(page << CHUNK_INDEX_BITS | i);
+        }
+        return page << CHUNK_INDEX_BITS;
+    }
+
+    private int evictInClass(int sizeClass) {
+        IntStack list = classPages[sizeClass];
+        int chunks = chunksPerPage(sizeClass);
+        while (true) {
+            if (handPage[sizeClass] >= list.size()) {
+                handPage[sizeClass] = 0;
+            }
+            int page = list.get(handPage[sizeClass]);
+            int index = handChunk[sizeClass];
+            if (++handChunk[sizeClass] == chunks) {
+                handChunk[sizeClass] = 0;
+                handPage[sizeClass]++;
+            }
+            int owner = pageOwners[page][index];
+            if (owner < 0) {
+                continue;
+            }
+            if (entryReferenced[owner]) {
+                // 最近访问过，给它第二次机会
+                entryReferenced[owner] = false;
+                continue;
+            }
+            evict(owner);
+            return page << CHUNK_INDEX_BITS | index;
+        }
+    }
+
+    /**
+     * 从页数最多的规格中回收CLOCK指针所在的页，淘汰页上的所有条目，改作sizeClass规格使用
+     */
+    private int reassignPage(int sizeClass) {
+        int donor = 0;
+        for (int i = 1; i < CLASS_COUNT; i++) {
+            if (classPages[i].size() > classPages[donor].size()) {
+                donor = i;
+            }
+        }
+        IntStack list = classPages[donor];
+        int position = handPage[donor] < list.size() ? handPage[donor] : 0;
+        int page = list.get(position);
+        for (int owner : pageOwners[page]) {
+            if (owner >= 0) {
+                evict(owner);
+            }
+        }
+        freeChunks[donor].removeIf(chunk -> chunk >>> CHUNK_INDEX_BITS == page);
+        list.removeAt(position);
+        handChunk[donor] = 0;
+        return assignPage(page, sizeClass);
+    }
+
+    private void write(int chunk, int offset, byte[] bytes) {
+        ByteBuffer page = pages[chunk >>> CHUNK_INDEX_BITS];
+        page.position(chunkOffset(chunk) + offset);
+        page.put(bytes);
+    }
+
+    private int chunkOffset(int chunk) {
+        return chunkIndex(chunk) << (pageClass[chunk >>> CHUNK_INDEX_BITS] + MIN_CHUNK_SHIFT);
+    }
+
+    private static int chunkIndex(int chunk) {
+        return chunk & ((1 << CHUNK_INDEX_BITS) - 1);
+    }
+
+    private static int chunksPerPage(int sizeClass) {
+        return 1 << (CHUNK_INDEX_BITS - sizeClass);
+    }
+
+    private static int sizeClass(int itemSize) {
+        if (itemSize <= 1 << MIN_CHUNK_SHIFT) {
+            return 0;
+        }
+        return 32 - Integer.numberOfLeadingZeros(itemSize - 1) - MIN_CHUNK_SHIFT;
+    }
+
+    /**
+     * 不装箱的int栈
+     */
+    private static final class IntStack {
+
+        private int[] values = new int[16];
+
+        private int size;
+
+        void push(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int pop() {
+            return values[--size];
+        }
+
+        int get(int index) {
+            return values[index];
+        }
+
+        /**
+         * 用最后一个元素填补被删除的位置
+         */
+        void removeAt(int index) {
+            values[index] = values[--size];
+        }
+
+        void removeIf(IntPredicate predicate) {
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                if (!predicate.test(values[i])) {
+                    values[kept++] = values[i];
+                }
+            }
+            size = kept;
+        }
+
+        int size() {
+            return size;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+    }
+}
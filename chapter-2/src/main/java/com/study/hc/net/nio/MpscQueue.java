@@ -0,0 +1,85 @@
+package com.study.hc.net.nio;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * 无锁的多生产者单消费者（MPSC）无界队列，用作reactor线程的任务队列
+ * <p>
+ * 基于单向链表：生产者只用一次getAndSet抢占队尾，再把前驱节点的next指向自己，不需要加锁也不会阻塞；
+ * 消费者（reactor线程）独占队头，出队只是普通的读写。
+ * 生产者完成getAndSet到设置next之间的短暂窗口内，消费者会认为队列为空，调用方需要配合唤醒机制处理（见ReactorThread）。
+ *
+ * @author chensicong
+ * @date 2026-10-17 21:50
+ **/
+final class MpscQueue<E> {
+
+    private static final class Node<E> {
+
+        @SuppressWarnings("rawtypes")
+        private static final AtomicReferenceFieldUpdater<Node, Node> NEXT =
+                AtomicReferenceFieldUpdater.newUpdater(Node.class, Node.class, "next");
+
+        E value;
+
+        volatile Node<E> next;
+
+        Node(E value) {
+            this.value = value;
+        }
+
+        void lazySetNext(Node<E> next) {
+            NEXT.lazySet(this, next);
+        }
+    }
+
+    /**
+     * 队尾，生产者竞争
+     */
+    private final AtomicReference<Node<E>> tail;
+
+    /**
+     * 队头（哨兵节点），只有消费者访问
+     */
+    private Node<E> head;
+
+    MpscQueue() {
+        Node<E> stub = new Node<>(null);
+        head = stub;
+        tail = new AtomicReference<>(stub);
+    }
+
+    /**
+     * 入队，任意线程可调用
+     */
+    void offer(E value) {
+        if (value == null) {
+            throw new NullPointerException();
+        }
+        Node<E> node = new Node<>(value);
+        Node<E> prev = tail.getAndSet(node);
+        prev.lazySetNext(node);
+    }
+
+    /**
+     * 出队，只能由消费者线程调用
+     */
+    E poll() {
+        Node<E> next = head.next;
+        if (next == null) {
+            return null;
+        }
+        E value = next.value;
+        next.value = null;
+        head = next;
+        return value;
+    }
+
+    /**
+     * 只能由消费者线程调用
+     */
+    boolean isEmpty() {
+        return head.next == null;
+    }
+}
@@ -3,52 +3,474 @@ package com.study.hc.net.nio;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
 import java.nio.charset.StandardCharsets;
-import java.util.Scanner;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
 
 /**
- * 基于NIO 实现 tcp 客户端
+ * 基于NIO 实现 tcp 客户端：多连接、可pipelining的HTTP压测工具
+ * <p>
+ * N个连接平均分布在M个客户端reactor线程上，每个线程一个Selector，全部非阻塞。两种模式：
+ * <ul>
+ * <li>闭环（默认）：每个连接始终保持pipeline个请求在途，收到一个响应就补发一个，测的是最大吞吐</li>
+ * <li>开环（--rate=每秒请求数）：按固定速率发送，不管服务端是否跟得上。延迟从请求<b>计划</b>发送的时间算起，
+ * 服务端卡顿导致请求积压、晚发的时间也算进延迟，避免coordinated omission（只统计到发出去的请求，低估了延迟）</li>
+ * </ul>
+ * 用法：NIOClient --connections=64 --threads=2 --pipeline=1 --duration=10 --warmup=2 [--rate=20000] [--host=localhost --port=8089 --path=/]
  *
  * @author chensicong
  * @date 2021-04-10 00:43
  **/
 public class NIOClient {
 
-    public static void main(String[] args) throws IOException {
-        // 创建网络客户端
-        SocketChannel socketChannel = SocketChannel.open();
-        // 设置为非阻塞模式
-        socketChannel.configureBlocking(false);
-        // 请求与服务端简建立连接
-        socketChannel.connect(new InetSocketAddress("localhost", 8089));
-        while (!socketChannel.finishConnect()) {
-            //没连接上，则一直等待
-            Thread.yield();
-        }
-
-        Scanner scanner = new Scanner(System.in);
-        System.out.println("请输入：");
-        // 发送内容
-        String msg = scanner.nextLine();
-        ByteBuffer buffer = ByteBuffer.wrap(msg.getBytes(StandardCharsets.UTF_8));
-        while (buffer.hasRemaining()) {
-            socketChannel.write(buffer);
-        }
-
-        // 读取响应
-        System.out.println("收到服务端响应:");
-        ByteBuffer requestBuffer = ByteBuffer.allocate(1024);
-        while (socketChannel.isOpen() && socketChannel.read(requestBuffer) != -1) {
-            // 长连接情况下,需要手动判断数据有没有读取结束 (此处做一个简单的判断: 超过0字节就认为请求结束了)
-            if (requestBuffer.position() > 0) break;
-        }
-        requestBuffer.flip();
-        byte[] content = new byte[requestBuffer.limit()];
-        requestBuffer.get(content);
-        System.out.println(new String(content));
-
-        scanner.close();
-        socketChannel.close();
+    private final InetSocketAddress address;
+
+    private final byte[] request;
+
+    private final int connections;
+
+    private final int threads;
+
+    private final int pipeline;
+
+    /**
+     * 开环模式下的总速率（每秒请求数），0表示闭环模式
+     */
+    private final long rate;
+
+    private final long warmupNanos;
+
+    private final long durationNanos;
+
+    public NIOClient(InetSocketAddress address, String path, int connections, int threads, int pipeline, long rate,
+                     long warmupSeconds, long durationSeconds) {
+        this.address = address;
+        this.request = ("GET " + path + " HTTP/1.1\r\nHost: " + address.getHostString() + "\r\n\r\n")
+                .getBytes(StandardCharsets.US_ASCII);
+        this.connections = connections;
+        this.threads = Math.min(threads, connections);
+        this.pipeline = Math.max(1, pipeline);
+        this.rate = rate;
+        this.warmupNanos = TimeUnit.SECONDS.toNanos(warmupSeconds);
+        this.durationNanos = TimeUnit.SECONDS.toNanos(durationSeconds);
+    }
+
+    public static void main(String[] args) throws Exception {
+        String host = option(args, "host", "localhost");
+        int port = Integer.parseInt(option(args, "port", "8089"));
+        NIOClient client = new NIOClient(new InetSocketAddress(host, port), option(args, "path", "/"),
+                Integer.parseInt(option(args, "connections", "64")),
+                Integer.parseInt(option(args, "threads", "2")),
+                Integer.parseInt(option(args, "pipeline", "1")),
+                Long.parseLong(option(args, "rate", "0")),
+                Long.parseLong(option(args, "warmup", "2")),
+                Long.parseLong(option(args, "duration", "10")));
+        client.run();
+    }
+
+    private static String option(String[] args, String name, String defaultValue) {
+        String prefix = "--" + name + "=";
+        for (String arg : args) {
+            if (arg.startsWith(prefix)) {
+                return arg.substring(prefix.length());
+            }
+        }
+        return defaultValue;
+    }
+
+    public void run() throws Exception {
+        long start = System.nanoTime();
+        long measureStart = start + warmupNanos;
+        long end = measureStart + durationNanos;
+        // 每个连接的发送间隔，开环模式下总速率平均分到每个连接
+        long intervalNanos = rate > 0 ? TimeUnit.SECONDS.toNanos(1) * connections / rate : 0;
+
+        List<ClientReactor> reactors = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            reactors.add(new ClientReactor("nio-client-" + i, measureStart, end));
+        }
+        for (int i = 0; i < connections; i++) {
+            // 各连接的发送时间错开，避免所有连接同时发送
+            long firstSend = start + (intervalNanos > 0 ? intervalNanos * i / connections : 0);
+            reactors.get(i % threads).add(new ClientConnection(firstSend, intervalNanos));
+        }
+        for (ClientReactor reactor : reactors) {
+            reactor.start();
+        }
+        Histogram latency = new Histogram();
+        long errors = 0;
+        long non2xx = 0;
+        for (ClientReactor reactor : reactors) {
+            reactor.join();
+            latency.add(reactor.latency);
+            errors += reactor.errors;
+            non2xx += reactor.non2xx;
+        }
+
+        double seconds = durationNanos / 1e9;
+        System.out.println(String.format(Locale.ROOT, "%s  %s  connections=%d threads=%d pipeline=%d duration=%.0fs",
+                address, rate > 0 ? "open-loop rate=" + rate + "/s" : "closed-loop", connections, threads, pipeline, seconds));
+        System.out.println(String.format(Locale.ROOT, "requests=%d errors=%d non-2xx=%d throughput=%.0f req/s",
+                latency.count(), errors, non2xx, latency.count() / seconds));
+        System.out.println(String.format(Locale.ROOT, "latency(us) p50=%d p90=%d p99=%d p999=%d max=%d",
+                micros(latency.percentile(0.5)), micros(latency.percentile(0.9)), micros(latency.percentile(0.99)),
+                micros(latency.percentile(0.999)), micros(latency.max())));
+    }
+
+    private static long micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+
+    /**
+     * 客户端reactor线程，负责一部分连接的连接、发送和接收
+     */
+    private final class ClientReactor extends Thread {
+
+        private final Selector selector;
+
+        private final List<ClientConnection> connections = new ArrayList<>();
+
+        private final long measureStart;
+
+        private final long end;
+
+        /**
+         * 只由本线程写，结束后由主线程汇总
+         */
+        final Histogram latency = new Histogram();
+
+        long errors;
+
+        long non2xx;
+
+        ClientReactor(String name, long measureStart, long end) throws IOException {
+            super(name);
+            this.selector = Selector.open();
+            this.measureStart = measureStart;
+            this.end = end;
+        }
+
+        void add(ClientConnection connection) {
+            connection.reactor = this;
+            connections.add(connection);
+        }
+
+        @Override
+        public void run() {
+            for (ClientConnection connection : connections) {
+                connection.connect();
+            }
+            try {
+                long now;
+                while ((now = System.nanoTime()) < end) {
+                    long nextSend = end;
+                    if (rate > 0) {
+                        for (ClientConnection connection : connections) {
+                            connection.sendDue(now);
+                            nextSend = Math.min(nextSend, connection.nextSend);
+                        }
+                    }
+                    long waitNanos = Math.min(nextSend - now, TimeUnit.MILLISECONDS.toNanos(100));
+                    // select的超时精度只有毫秒，下一次发送不到1毫秒时不阻塞，保证开环模式按时发送
+                    int ready = waitNanos < TimeUnit.MILLISECONDS.toNanos(1)
+                            ? selector.selectNow() : selector.select(TimeUnit.NANOSECONDS.toMillis(waitNanos));
+                    if (ready == 0) {
+                        continue;
+                    }
+                    Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+                    while (iterator.hasNext()) {
+                        SelectionKey key = iterator.next();
+                        iterator.remove();
+                        ClientConnection connection = (ClientConnection) key.attachment();
+                        try {
+                            if (key.isConnectable()) {
+                                connection.finishConnect();
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                connection.flush();
+                            }
+                            if (key.isValid() && key.isReadable()) {
+                                connection.read();
+                            }
+                        } catch (IOException ex) {
+                            connection.reconnect();
+                        }
+                    }
+                }
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            } finally {
+                for (ClientConnection connection : connections) {
+                    connection.close();
+                }
+                try {
+                    selector.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+
+        /**
+         * 收到一个完整响应
+         *
+         * @param sendTime 请求的计划发送时间（开环）或实际发送时间（闭环）
+         */
+        void record(long sendTime, int status) {
+            long now = System.nanoTime();
+            // 按响应到达时间划分统计窗口：开环模式下服务端跟不上时，积压请求的计划时间会远早于统计开始时间，也要计入
+            if (now < measureStart || now > end) {
+                return;
+            }
+            latency.record(now - sendTime);
+            if (status / 100 != 2) {
+                non2xx++;
+            }
+        }
+
+        void recordErrors(int count) {
+            if (System.nanoTime() >= measureStart) {
+                errors += count;
+            }
+        }
+    }
+
+    /**
+     * 一个客户端连接，只在所属的ClientReactor线程中访问
+     */
+    private final class ClientConnection {
+
+        private ClientReactor reactor;
+
+        private SocketChannel channel;
+
+        private SelectionKey key;
+
+        private boolean connected;
+
+        /**
+         * 在途请求的发送时间，按发送顺序排列（环形队列），响应按同样的顺序返回
+         */
+        private final long[] sendTimes = new long[pipeline];
+
+        private int head;
+
+        private int inflight;
+
+        /**
+         * 开环模式下一个请求的计划发送时间
+         */
+        long nextSend;
+
+        private final long intervalNanos;
+
+        private ByteBuffer out;
+
+        private ByteBuffer in;
+
+        /**
+         * 正在跳过的响应体剩余字节数，-1表示正在读响应头
+         */
+        private long bodyRemaining = -1;
+
+        private int status;
+
+        ClientConnection(long firstSend, long intervalNanos) {
+            this.nextSend = firstSend;
+            this.intervalNanos = intervalNanos;
+        }
+
+        void connect() {
+            try {
+                channel = SocketChannel.open();
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                out = BufferPool.DEFAULT.acquire(request.length * pipeline);
+                in = BufferPool.DEFAULT.acquire(BufferPool.MAX_SIZE);
+                if (channel.connect(address)) {
+                    key = channel.register(reactor.selector, SelectionKey.OP_READ, this);
+                    onConnected();
+                } else {
+                    key = channel.register(reactor.selector, SelectionKey.OP_CONNECT, this);
+                }
+            } catch (IOException ex) {
+                reactor.recordErrors(1);
+                close();
+            }
+        }
+
+        void finishConnect() throws IOException {
+            if (channel.finishConnect()) {
+                key.interestOps(SelectionKey.OP_READ);
+                onConnected();
+            }
+        }
+
+        private void onConnected() throws IOException {
+            connected = true;
+            if (rate == 0) {
+                // 闭环：连接建立后先把pipeline填满
+                while (inflight < pipeline) {
+                    enqueue(System.nanoTime());
+                }
+                flush();
+            } else {
+                sendDue(System.nanoTime());
+            }
+        }
+
+        /**
+         * 开环：发出所有计划时间已到的请求。在途请求达到pipeline上限时先不发，
+         * 计划时间保持不变，等响应回来后再补发，延迟仍从计划时间算起
+         */
+        void sendDue(long now) {
+            if (!connected) {
+                return;
+            }
+            boolean sent = false;
+            while (nextSend <= now && inflight < pipeline) {
+                enqueue(nextSend);
+                nextSend += intervalNanos;
+                sent = true;
+            }
+            if (sent) {
+                try {
+                    flush();
+                } catch (IOException ex) {
+                    reconnect();
+                }
+            }
+        }
+
+        private void enqueue(long sendTime) {
+            sendTimes[(head + inflight) % pipeline] = sendTime;
+            inflight++;
+            out.put(request);
+        }
+
+        void flush() throws IOException {
+            out.flip();
+            channel.write(out);
+            out.compact();
+            int ops = out.position() > 0 ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ;
+            if (key.interestOps() != ops) {
+                key.interestOps(ops);
+            }
+        }
+
+        void read() throws IOException {
+            int n = channel.read(in);
+            if (n < 0) {
+                throw new IOException("connection closed by server");
+            }
+            in.flip();
+            boolean completed = false;
+            while (in.hasRemaining()) {
+                if (bodyRemaining < 0) {
+                    if (!parseHeader()) {
+                        break;
+                    }
+                } else {
+                    int skip = (int) Math.min(bodyRemaining, in.remaining());
+                    in.position(in.position() + skip);
+                    bodyRemaining -= skip;
+                }
+                if (bodyRemaining == 0) {
+                    complete();
+                    completed = true;
+                }
+            }
+            in.compact();
+            if (!in.hasRemaining()) {
+                throw new IOException("response header too large");
+            }
+            if (completed && rate == 0 && System.nanoTime() < reactor.end) {
+                flush();
+            }
+        }
+
+        /**
+         * 解析响应头，取出状态码和Content-Length，响应头不完整时返回false
+         */
+        private boolean parseHeader() throws IOException {
+            int start = in.position();
+            int limit = in.limit();
+            for (int i = start; i + 3 < limit; i++) {
+                if (in.get(i) == '\r' && in.get(i + 1) == '\n' && in.get(i + 2) == '\r' && in.get(i + 3) == '\n') {
+                    byte[] header = new byte[i - start];
+                    in.get(header);
+                    in.position(i + 4);
+                    String[] lines = new String(header, StandardCharsets.US_ASCII).split("\r\n");
+                    status = Integer.parseInt(lines[0].substring(9, 12));
+                    bodyRemaining = status == 304 || status == 204 ? 0 : -1;
+                    for (int j = 1; j < lines.length && bodyRemaining < 0; j++) {
+                        int colon = lines[j].indexOf(':');
+                        if (colon > 0 && lines[j].substring(0, colon).trim().equalsIgnoreCase("content-length")) {
+                            bodyRemaining = Long.parseLong(lines[j].substring(colon + 1).trim());
+                        }
+                    }
+                    if (bodyRemaining < 0) {
+                        throw new IOException("response without Content-Length");
+                    }
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void complete() {
+            if (inflight == 0) {
+                return;
+            }
+            long sendTime = sendTimes[head];
+            head = (head + 1) % pipeline;
+            inflight--;
+            bodyRemaining = -1;
+            reactor.record(sendTime, status);
+            if (rate == 0) {
+                // 闭环：收到一个响应就补发一个
+                enqueue(System.nanoTime());
+            }
+        }
+
+        /**
+         * 出错后在途的请求都算失败，重新建立连接；开环模式下计划时间不重置，断线期间积压的请求会在重连后补发
+         */
+        void reconnect() {
+            reactor.recordErrors(Math.max(1, inflight));
+            close();
+            head = 0;
+            inflight = 0;
+            bodyRemaining = -1;
+            connect();
+        }
+
+        void close() {
+            connected = false;
+            if (key != null) {
+                key.cancel();
+                key = null;
+            }
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                }
+                channel = null;
+            }
+            if (out != null) {
+                BufferPool.DEFAULT.release(out);
+                out = null;
+            }
+            if (in != null) {
+                BufferPool.DEFAULT.release(in);
+                in = null;
+            }
+        }
     }
 }
@@ -37,7 +37,7 @@ public class NIOServerV1 {
             SocketChannel socketChannel = serverSocketChannel.accept();// 获取新tcp连接通道
             // 判断是否有客户端请求连接，socketChannel不为空则表示有
             if (socketChannel != null) {
-                System.out.println("接收到新连接：" + socketChannel.getRemoteAddress());
+                AccessLog.DEFAULT.connect(socketChannel.getRemoteAddress());
                 socketChannel.configureBlocking(false); // 默认是阻塞的,一定要设置为非阻塞
                 channelList.add(socketChannel);
             } else {
@@ -45,9 +45,10 @@ public class NIOServerV1 {
                 while (iterator.hasNext()) {
                     socketChannel = iterator.next();
 
-                    // 判断socketChannel是否有数据
-                    ByteBuffer byteBuffer = ByteBuffer.allocate(1024);
+                    // 判断socketChannel是否有数据（读缓冲区从缓冲池中获取，处理完归还）
+                    ByteBuffer byteBuffer = BufferPool.DEFAULT.acquire(1024);
                     if (socketChannel.read(byteBuffer) == 0) {
+                        BufferPool.DEFAULT.release(byteBuffer);
                         continue;
                     }
                     while (socketChannel.isOpen() && socketChannel.read(byteBuffer) != -1) {
@@ -59,14 +60,13 @@ public class NIOServerV1 {
                     }
                     // byteBuffer没有数据，则不继续后面的处理
                     if (!byteBuffer.hasRemaining()) {
+                        BufferPool.DEFAULT.release(byteBuffer);
                         continue;
                     }
-                    //打印客户端发来的数据
+                    //记录客户端发来的请求（异步写访问日志，不在这里打印）
                     byteBuffer.flip();
-                    byte[] content = new byte[byteBuffer.limit()];
-                    byteBuffer.get(content);
-                    System.out.println(new String(content));
-                    System.out.println("收到数据,来自：" + socketChannel.getRemoteAddress());
+                    AccessLog.DEFAULT.request(socketChannel.getRemoteAddress(), byteBuffer, 200, 11);
+                    BufferPool.DEFAULT.release(byteBuffer);
 
                     // 响应结果200
                     String response = "HTTP/1.1 200 OK\r\n" +
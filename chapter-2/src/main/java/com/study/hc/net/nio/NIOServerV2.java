@@ -53,15 +53,16 @@ public class NIOServerV2 {
                     clientSocketChannel.configureBlocking(false);// 将客户端channel设置为非阻塞
                     // 将拿到的客户端连接通道客户端,注册到selector上面
                     clientSocketChannel.register(selector, SelectionKey.OP_READ, clientSocketChannel);
-                    System.out.println("收到新连接 : " + clientSocketChannel.getRemoteAddress());
+                    AccessLog.DEFAULT.connect(clientSocketChannel.getRemoteAddress());
                 }
 
                 if (selectionKey.isReadable()) {
                     SocketChannel socketChannel = (SocketChannel) selectionKey.attachment();
 
+                    // 从缓冲池中获取读缓冲区，处理完归还，避免每次可读事件都申请新的缓冲区
+                    ByteBuffer byteBuffer = BufferPool.DEFAULT.acquire(1024);
                     try {
                         // 判断socketChannel是否有数据
-                        ByteBuffer byteBuffer = ByteBuffer.allocate(1024);
                         int i = -2;
                         while (socketChannel.isOpen() && socketChannel.read(byteBuffer) != -1) {
                             // 客户端有发来数据，正常情况下需要判断数据有没有读取结束
@@ -74,12 +75,9 @@ public class NIOServerV2 {
                         if (byteBuffer.position() == 0) {
                             continue;
                         }
-                        //打印客户端发来的数据
+                        //记录客户端发来的请求（异步写访问日志，不在这里打印）
                         byteBuffer.flip();
-                        byte[] content = new byte[byteBuffer.limit()];
-                        byteBuffer.get(content);
-                        System.out.println(new String(content));
-                        System.out.println("收到数据,来自：" + socketChannel.getRemoteAddress());
+                        AccessLog.DEFAULT.request(socketChannel.getRemoteAddress(), byteBuffer, 200, 11);
                         // TODO 业务操作 数据库 接口调用等等
 
                         // 响应结果200
@@ -93,9 +91,11 @@ public class NIOServerV2 {
                     } catch (IOException exception) {
                         // e.printStackTrace();
                         selectionKey.cancel(); // 取消事件订阅
+                    } finally {
+                        BufferPool.DEFAULT.release(byteBuffer);
                     }
                 }
-                selector.selectNow();
+                // 不能在遍历selectedKeys的过程中调用selectNow()：它会往正在遍历的集合里加入新的就绪key，抛出ConcurrentModificationException
             }
         }
         // 问题: 此处一个selector监听所有事件,一个线程处理所有请求事件. 会成为瓶颈! 要有多线程的运用
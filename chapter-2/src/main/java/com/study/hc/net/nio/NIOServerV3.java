@@ -2,12 +2,15 @@ package com.study.hc.net.nio;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
-import java.nio.ByteBuffer;
+import java.net.StandardSocketOptions;
 import java.nio.channels.*;
-import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 /**
  * 基于reactor模式实现网络服务端
@@ -18,45 +21,210 @@ import java.util.concurrent.atomic.AtomicInteger;
 public class NIOServerV3 {
 
     /**
-     * 业务线程池，负责处理业务逻辑
+     * 过载时的响应，预先编码好，拒绝时不需要再编码
      */
-    private ExecutorService workerThreadPool = Executors.newFixedThreadPool(10);
+    private static final HttpResponse SERVICE_UNAVAILABLE = HttpResponse.error(503, "server busy")
+            .header("Retry-After", "1").preEncode();
 
-    private ServerSocketChannel serverSocketChannel;
+    /**
+     * 业务线程池，负责处理业务逻辑。使用有界队列，队列满时I/O线程暂停读取新请求，而不是无限堆积
+     */
+    private final ThreadPoolExecutor workerThreadPool;
+
+    private final ServerConfig config;
+
+    private final HttpHandler handler;
+
+    /**
+     * 新连接建立时定制pipeline，在默认的编解码器之外加入自定义的处理器
+     */
+    private final Consumer<ChannelPipeline> pipelineInitializer;
 
-    // 1.创建多个线程 - acceptor处理Reactor线程  负责捕获Accept事件 （处理网络连接）
-    private ReactorThread[] acceptorReactorThreads = new ReactorThread[1];
+    // 每个监听地址一个ServerSocketChannel，与acceptorReactorThreads下标一一对应，绑定端口之后才开始关注Accept事件
+    private ServerSocketChannel[] serverSocketChannels;
+
+    // 1.创建多个线程 - acceptor处理Reactor线程  负责捕获Accept事件 （处理网络连接），每个监听地址一个
+    private ReactorThread[] acceptorReactorThreads;
 
     //2.创建多个线程 - I/O处理Reactor线程   负责捕获READ、Writes事件 （处理IO操作，读取完数据后交由业务线程池处理)
-    private ReactorThread[] ioReactorThreads = new ReactorThread[8];
+    //  线程数可配置，默认等于CPU核数
+    private final ReactorThread[] ioReactorThreads;
+
+    // 每个I/O线程的负载，与ioReactorThreads下标一一对应，供连接分配策略使用
+    private final ReactorLoad[] ioReactorLoads;
+
+    private ServerMetrics metrics;
+
+    public NIOServerV3() {
+        this(new ServerConfig(), request -> HttpResponse.ok("Hello World"));
+    }
+
+    public NIOServerV3(ServerConfig config, HttpHandler handler) {
+        this(config, handler, pipeline -> {
+        });
+    }
+
+    /**
+     * @param pipelineInitializer 在I/O线程中对每个新连接调用，此时pipeline中已经有"decoder"、"encoder"
+     *                            （和启用了响应缓存时的"cache"）处理器
+     */
+    public NIOServerV3(ServerConfig config, HttpHandler handler, Consumer<ChannelPipeline> pipelineInitializer) {
+        this.config = config;
+        HttpHandler withMetrics = ServerMetrics.withEndpoint(config.getMetricsPath(), this::metrics, handler);
+        // 压缩在业务线程中进行，不占用I/O线程
+        this.handler = config.isCompression() ? new CompressionHandler(withMetrics, config.getCompressionLevel(),
+                config.getCompressionMinBytes(), config.getCompressionCacheMaxBytes()) : withMetrics;
+        this.pipelineInitializer = pipelineInitializer;
+        this.ioReactorThreads = new ReactorThread[config.getIoThreads()];
+        this.ioReactorLoads = new ReactorLoad[config.getIoThreads()];
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.workerThreadPool = new ThreadPoolExecutor(config.getWorkerThreads(), config.getWorkerThreads(),
+                0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(config.getWorkerQueueCapacity()),
+                r -> new Thread(r, "nio-worker-" + threadIndex.incrementAndGet()));
+    }
+
+    /**
+     * 所有I/O线程上的连接数之和
+     */
+    private int activeConnections() {
+        int total = 0;
+        for (ReactorLoad load : ioReactorLoads) {
+            total += load.activeConnections();
+        }
+        return total;
+    }
+
+    /**
+     * 运行指标，newGroup之后可用
+     */
+    public ServerMetrics metrics() {
+        return metrics;
+    }
 
     // reactor线程，封装了Selector轮询事件逻辑
-    abstract class ReactorThread extends Thread {
+    abstract class ReactorThread extends Thread implements WaitStrategy.Loop {
+
+        /**
+         * 重建selector时会被替换，其他线程提交任务时需要读到最新的selector来唤醒
+         */
+        volatile Selector selector;
+
+        /**
+         * 连续过早返回的空select次数：没有就绪事件、没有被唤醒、也没有等到超时就返回了
+         */
+        private int prematureSelects;
+
+        /**
+         * 没有就绪事件时怎么等待
+         */
+        private final WaitStrategy waitStrategy;
 
-        Selector selector;
+        /**
+         * 本轮等待中阻塞在select上的时间，其余的等待时间是自旋
+         */
+        private long parkNanos;
 
         boolean running = false;
 
-        private ArrayBlockingQueue<Runnable> taskQueue = new ArrayBlockingQueue(100);
+        /**
+         * 任务队列：其他线程（acceptor、业务线程）提交、只有本线程消费，使用无锁的MPSC队列，提交方永远不会阻塞
+         */
+        private final MpscQueue<Runnable> taskQueue = new MpscQueue<>();
+
+        /**
+         * 本线程是否（即将）阻塞在select上。只有为true时提交任务才需要调用selector.wakeup()，减少唤醒的系统调用
+         */
+        private final AtomicBoolean parked = new AtomicBoolean();
+
+        /**
+         * 本线程的负载计数
+         */
+        final ReactorLoad load = new ReactorLoad();
+
+        /**
+         * 本线程的时间轮定时器，只在本线程中使用
+         */
+        final HashedWheelTimer timer = new HashedWheelTimer(100, TimeUnit.MILLISECONDS, 512);
+
+        /**
+         * 本线程的运行指标
+         */
+        final ReactorMetrics metrics;
+
+        /**
+         * 本线程上所有连接共用的响应缓存，没有启用时为null
+         */
+        final ResponseCache responseCache = config.getResponseCacheMaxBytes() > 0
+                ? new ResponseCache(config.getResponseCacheMaxBytes(), config.getResponseCacheMaxEntryBytes(),
+                config.getResponseCacheTtlMillis()) : null;
+
+        /**
+         * 本线程的流量录制，只有I/O线程在启用录制时才有
+         */
+        TrafficCapture capture;
+
+        /**
+         * 有连接因业务线程池已满而暂停读取，业务线程空闲后需要通知本线程重试
+         */
+        volatile boolean waitingForWorker;
+
+        /**
+         * 已经提交了重试通知、还未执行，避免业务线程重复提交
+         */
+        private final AtomicBoolean workerNotifyPending = new AtomicBoolean();
+
+        public ReactorThread(String name) throws IOException {
+            this(name, new WaitStrategy.Blocking());
+        }
 
-        public ReactorThread() throws IOException {
+        public ReactorThread(String name, WaitStrategy waitStrategy) throws IOException {
+            super(name);
+            this.waitStrategy = waitStrategy;
             selector = Selector.open();
+            metrics = new ReactorMetrics(name, load);
+        }
+
+        //业务处理方法，SelectionKey上附加了连接相关的上下文
+        public abstract void handle(SelectionKey key) throws Exception;
+
+        //可写事件处理方法，socket发送缓冲区有空间后继续写出未写完的数据
+        public void handleWritable(SelectionKey key) throws Exception {
         }
 
-        //业务处理方法
-        public abstract void handle(SelectableChannel channel) throws Exception;
+        //每轮select处理完就绪事件后调用
+        protected void afterSelect() {
+        }
+
+        //业务线程池有空闲了
+        protected void workerAvailable() {
+        }
+
+        /**
+         * 由业务线程调用，如果本线程在等待业务线程池空闲，则提交一次重试
+         */
+        void notifyWorkerAvailable() {
+            if (waitingForWorker && workerNotifyPending.compareAndSet(false, true)) {
+                execute(() -> {
+                    workerNotifyPending.set(false);
+                    workerAvailable();
+                });
+            }
+        }
 
         @Override
         public void run() {
             while (true) {
                 try {
-                    // 执行队列中的任务
-                    Runnable task;
-                    while ((task = taskQueue.poll()) != null) {
-                        task.run();
-                    }
-                    // 非阻塞的方式轮询channel上是否有感兴趣的事件就绪
-                    int eventNums = selector.select(1000);
+                    long loopStart = System.nanoTime();
+                    // 执行队列中的任务和到期的定时任务
+                    int tasks = runAllTasks();
+                    timer.expireTimeouts();
+                    long selectStart = System.nanoTime();
+                    // 按等待策略等待channel上感兴趣的事件就绪（阻塞、自旋或者先自旋再阻塞）
+                    parkNanos = 0;
+                    int eventNums = waitStrategy.await(this);
+                    long handleStart = System.nanoTime();
+                    metrics.recordWait(handleStart - selectStart - parkNanos, parkNanos);
                     if (eventNums > 0) {
                         // 获取到就绪事件的集合
                         Set<SelectionKey> selectionKeys = selector.selectedKeys();
@@ -66,23 +234,30 @@ public class NIOServerV3 {
                             iterator.remove();
 
                             try {
-                                // 判断事件是否感兴趣
-                                if (key.isAcceptable() || key.isReadable()) {
-                                    // 获取SelectionKey中附加的channel
-                                    SelectableChannel selectableChannel = (SelectableChannel) key.attachment();
-                                    // 将channel设置成非阻塞模式
-                                    selectableChannel.configureBlocking(false);
-                                    // 将channel交给业务方法处理
-                                    handle(selectableChannel);
-                                    if (!selectableChannel.isOpen()) {
+                                // 判断事件是否感兴趣，先处理可写事件，尽快腾出发送队列
+                                if (key.isValid() && key.isWritable()) {
+                                    handleWritable(key);
+                                }
+                                if (key.isValid() && (key.isAcceptable() || key.isReadable())) {
+                                    // 将channel交给业务方法处理（channel在注册之前已经设置成非阻塞模式）
+                                    handle(key);
+                                    if (!key.channel().isOpen()) {
                                         key.cancel();
                                     }
                                 }
                             } catch (Exception e) {
-                                key.cancel();
+                                if (key.attachment() instanceof Connection) {
+                                    ((Connection) key.attachment()).close();
+                                } else {
+                                    key.cancel();
+                                    closeQuietly(key.channel());
+                                }
                             }
                         }
                     }
+                    afterSelect();
+                    metrics.recordLoop(selectStart - loopStart, handleStart - selectStart,
+                            System.nanoTime() - handleStart, eventNums, tasks);
 
                 } catch (IOException exception) {
                     exception.printStackTrace();
@@ -90,122 +265,637 @@ public class NIOServerV3 {
             }
         }
 
-        public void doStart() {
+        /**
+         * acceptor和其他I/O线程（转发分片请求时）都可能启动同一个I/O线程，需要同步
+         */
+        public synchronized void doStart() {
             if (!running) {
                 running = true;
                 start();
             }
         }
 
-        public SelectionKey register(SelectableChannel selectableChannel) throws Exception {
+        @Override
+        public int selectNow() throws IOException {
+            return selector.selectNow();
+        }
+
+        @Override
+        public boolean hasPendingWork() {
+            return !taskQueue.isEmpty() || timer.nanosUntilNextExpiry() == 0;
+        }
+
+        @Override
+        public int park() throws IOException {
+            long start = System.nanoTime();
+            // 先声明即将阻塞，再检查队列：提交方入队后如果看到parked为true就会唤醒selector，不会丢失唤醒
+            parked.set(true);
+            int eventNums;
+            if (taskQueue.isEmpty()) {
+                // 阻塞的方式等待channel上感兴趣的事件就绪，有新任务提交时会被唤醒；
+                // 有定时任务时最多等到最早的定时任务到期
+                eventNums = selector.select(selectTimeoutMillis());
+            } else {
+                eventNums = selector.selectNow();
+            }
+            boolean woken = !parked.get();
+            parked.lazySet(false);
+            long elapsed = System.nanoTime() - start;
+            parkNanos += elapsed;
+            checkPrematureSelect(eventNums, woken, elapsed);
+            return eventNums;
+        }
+
+        /**
+         * 检测JDK epoll空轮询bug：select不阻塞、一直返回0，reactor线程空转占满一个核却什么都不做。
+         * 连续过早返回的次数超过阈值后重建selector
+         */
+        private void checkPrematureSelect(int eventNums, boolean woken, long elapsedNanos) throws IOException {
+            int threshold = config.getSelectorAutoRebuildThreshold();
+            if (threshold <= 0) {
+                return;
+            }
+            if (eventNums > 0 || woken || Thread.interrupted() || !taskQueue.isEmpty()
+                    || elapsedNanos >= TimeUnit.MILLISECONDS.toNanos(1)) {
+                // 正常返回：有事件、被新任务唤醒，或者至少阻塞了1毫秒（select的超时精度）
+                prematureSelects = 0;
+                return;
+            }
+            metrics.prematureSelect();
+            if (++prematureSelects >= threshold) {
+                System.err.println(getName() + ": select returned prematurely " + prematureSelects
+                        + " times in a row, rebuilding selector");
+                prematureSelects = 0;
+                rebuildSelector();
+            }
+        }
+
+        /**
+         * 用新的selector替换当前的selector：所有有效的key按原来的关注事件和attachment注册到新selector上，
+         * 连接持有的key一并替换，然后关闭旧的selector。只能在本线程中调用
+         */
+        void rebuildSelector() throws IOException {
+            Selector oldSelector = selector;
+            Selector newSelector;
+            try {
+                newSelector = Selector.open();
+            } catch (IOException ex) {
+                System.err.println(getName() + ": failed to open a new selector, keep using the old one: " + ex);
+                return;
+            }
+            int migrated = 0;
+            for (SelectionKey key : oldSelector.keys()) {
+                if (!key.isValid() || key.channel().keyFor(newSelector) != null) {
+                    continue;
+                }
+                Object attachment = key.attachment();
+                try {
+                    int interestOps = key.interestOps();
+                    key.cancel();
+                    SelectionKey newKey = key.channel().register(newSelector, interestOps, attachment);
+                    if (attachment instanceof Connection) {
+                        ((Connection) attachment).key = newKey;
+                    }
+                    migrated++;
+                } catch (IOException | CancelledKeyException ex) {
+                    if (attachment instanceof Connection) {
+                        ((Connection) attachment).close();
+                    } else {
+                        closeQuietly(key.channel());
+                    }
+                }
+            }
+            selector = newSelector;
+            try {
+                oldSelector.close();
+            } catch (IOException ignored) {
+            }
+            metrics.selectorRebuilt();
+            System.err.println(getName() + ": selector rebuilt, migrated " + migrated + " channels");
+        }
+
+        private long selectTimeoutMillis() {
+            long nanos = timer.nanosUntilNextExpiry();
+            if (nanos < 0) {
+                return 1000;
+            }
+            // select(0)表示无限等待，所以至少等1毫秒
+            return Math.max(1, TimeUnit.NANOSECONDS.toMillis(nanos + 999_999));
+        }
+
+        /**
+         * @return 执行的任务数
+         */
+        private int runAllTasks() {
+            int count = 0;
+            Runnable task;
+            while ((task = taskQueue.poll()) != null) {
+                count++;
+                try {
+                    task.run();
+                } catch (Throwable t) {
+                    t.printStackTrace();
+                }
+            }
+            return count;
+        }
+
+        void closeQuietly(SelectableChannel channel) {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+        }
+
+        /**
+         * 提交任务到reactor线程执行（例如业务线程把响应交回I/O线程），如果reactor线程阻塞在select上则唤醒它
+         */
+        public void execute(Runnable task) {
+            metrics.taskSubmitted();
+            taskQueue.offer(task);
+            // 多个线程同时提交时只有一个能把parked从true改成false，只唤醒一次
+            if (Thread.currentThread() != this && parked.compareAndSet(true, false)) {
+                selector.wakeup();
+            }
+        }
+
+        /**
+         * 异步注册channel，调用方不需要等待注册完成
+         *
+         * @param interestOps 注册完成后关注的事件
+         * @param initializer 在reactor线程中、开始关注事件之前执行，用来挂上attachment等初始化操作
+         * @return 注册完成（或失败）时完成的future，只有启动阶段需要等待它
+         */
+        public CompletableFuture<SelectionKey> register(SelectableChannel selectableChannel, int interestOps,
+                                                        Consumer<SelectionKey> initializer) {
             // 为什么register要以任务提交的形式，让reactor线程去处理？
             // 因为线程在执行channel注册到selector的过程中，会和调用selector.select()方法的线程争用同一把锁
             // 而select()方法实在eventLoop中通过while循环调用的，争抢的可能性很高，为了让register能更快的执行，就放到同一个线程来处理
-            FutureTask<SelectionKey> futureTask = new FutureTask(() -> selectableChannel.register(selector, 0, selectableChannel));
-            taskQueue.put(futureTask);
-            return futureTask.get();
+            CompletableFuture<SelectionKey> future = new CompletableFuture<>();
+            execute(() -> {
+                try {
+                    future.complete(registerNow(selectableChannel, interestOps, initializer));
+                } catch (Throwable t) {
+                    closeQuietly(selectableChannel);
+                    future.completeExceptionally(t);
+                }
+            });
+            return future;
+        }
+
+        /**
+         * 在本线程中立即注册，只能在本线程中调用
+         */
+        SelectionKey registerNow(SelectableChannel selectableChannel, int interestOps,
+                                 Consumer<SelectionKey> initializer) throws IOException {
+            SelectionKey key = selectableChannel.register(selector, 0, selectableChannel);
+            initializer.accept(key);
+            key.interestOps(interestOps);
+            return key;
         }
     }
 
     private void bind() throws IOException {
-        //  1、 正式绑定端口，对外服务
-        this.serverSocketChannel.bind(new InetSocketAddress(8089));
-        System.out.println("启动完成，端口8080");
+        List<InetSocketAddress> addresses = config.getListenAddresses();
+        StringJoiner ports = new StringJoiner(",");
+        for (int i = 0; i < serverSocketChannels.length; i++) {
+            ServerSocketChannel serverSocketChannel = serverSocketChannels[i];
+            //  1、 正式绑定端口，对外服务。backlog太小时连接突发会被内核丢弃SYN，客户端要等1秒以上重传
+            serverSocketChannel.bind(addresses.get(i), config.getAcceptBacklog());
+            //  2、 绑定完成后再关注Accept事件（未绑定的ServerSocketChannel在Linux上会被select判定为就绪）
+            ReactorThread acceptor = acceptorReactorThreads[i];
+            // 执行时acceptor可能已经重建过selector，按channel重新找key
+            acceptor.execute(() -> serverSocketChannel.keyFor(acceptor.selector).interestOps(SelectionKey.OP_ACCEPT));
+            ports.add(String.valueOf(((InetSocketAddress) serverSocketChannel.getLocalAddress()).getPort()));
+        }
+        System.out.println("启动完成，端口" + ports);
+    }
+
+    /**
+     * 创建线程组、注册ServerSocketChannel并绑定端口
+     */
+    public void start() throws Exception {
+        // 创建main、sub线程组
+        newGroup();
+        // 创建 ServerSocketChannel，并将它注册到mainAcceptor线程的selector上
+        initAndRegister();
+        // 为ServerSocketChannel绑定端口
+        bind();
+    }
+
+    /**
+     * I/O reactor线程数，按线程分片的服务（例如{@link KvService}）据此划分分片
+     */
+    public int ioThreadCount() {
+        return ioReactorThreads.length;
+    }
+
+    /**
+     * @return 当前线程在I/O reactor线程中的下标，不是I/O线程时返回-1
+     */
+    public int currentIoThreadIndex() {
+        Thread current = Thread.currentThread();
+        for (int i = 0; i < ioReactorThreads.length; i++) {
+            if (ioReactorThreads[i] == current) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 把任务提交给指定的I/O reactor线程执行，newGroup之后可用
+     */
+    public void executeOnIoThread(int index, Runnable task) {
+        ReactorThread ioThread = ioReactorThreads[index];
+        ioThread.doStart();
+        ioThread.execute(task);
     }
 
     private void initAndRegister() {
         try {
-            //创建ServerSocketChannel服务端socket通道
-            this.serverSocketChannel = ServerSocketChannel.open();
-            // 设置为非阻塞模式
-            this.serverSocketChannel.configureBlocking(false);
-
-            //将ServerSocketChannel绑定到acceptor线程的selector上
-            Random random = new Random();
-            int i = random.nextInt(this.acceptorReactorThreads.length);
-            this.acceptorReactorThreads[i].doStart();
-            SelectionKey selectionKey = this.acceptorReactorThreads[i].register(serverSocketChannel);
-            selectionKey.interestOps(SelectionKey.OP_ACCEPT);
+            this.serverSocketChannels = new ServerSocketChannel[acceptorReactorThreads.length];
+            for (int i = 0; i < serverSocketChannels.length; i++) {
+                //创建ServerSocketChannel服务端socket通道
+                ServerSocketChannel serverSocketChannel = ServerSocketChannel.open();
+                // 设置为非阻塞模式
+                serverSocketChannel.configureBlocking(false);
+                // 新连接继承监听socket的接收缓冲区，必须在listen之前设置，握手时才能协商出足够大的窗口扩大因子
+                if (config.getSocketReceiveBufferSize() > 0) {
+                    serverSocketChannel.setOption(StandardSocketOptions.SO_RCVBUF, config.getSocketReceiveBufferSize());
+                }
+                this.serverSocketChannels[i] = serverSocketChannel;
+
+                //将ServerSocketChannel绑定到对应acceptor线程的selector上
+                ReactorThread acceptor = this.acceptorReactorThreads[i];
+                acceptor.doStart();
+                // 启动阶段等待注册完成，attachment记录所属的acceptor线程
+                acceptor.register(serverSocketChannel, 0, key -> key.attach(acceptor)).get();
+            }
         } catch (Exception ex) {
             ex.printStackTrace();
         }
     }
 
+    /**
+     * 在I/O线程中设置新连接的socket选项并注册，这些系统调用不占用acceptor线程
+     */
+    private void registerConnection(ReactorThread workEventLoop, SocketChannel socketChannel) {
+        // 已经创建的Connection，初始化pipeline失败时由它负责关闭
+        Connection[] created = new Connection[1];
+        try {
+            AccessLog.DEFAULT.connect(socketChannel.getRemoteAddress());
+            // 将socketChannel设置为非阻塞模式
+            socketChannel.configureBlocking(false);
+            // 响应往往分几次write写出（gathering write的缓冲区个数有上限、跨线程完成的响应分批到达），
+            // 开着Nagle算法时后面的小包要等前面的ACK，碰上对端的延迟确认就会卡几十毫秒
+            socketChannel.setOption(StandardSocketOptions.TCP_NODELAY, config.isTcpNoDelay());
+            // SO_RCVBUF已经从监听socket继承
+            if (config.getSocketSendBufferSize() > 0) {
+                socketChannel.setOption(StandardSocketOptions.SO_SNDBUF, config.getSocketSendBufferSize());
+            }
+            // 每个连接一个上下文和一条pipeline，保存解码器等跨多次read的状态
+            workEventLoop.registerNow(socketChannel, SelectionKey.OP_READ, selectionKey -> {
+                Connection connection = new Connection(socketChannel, selectionKey, config, workEventLoop.load,
+                        workEventLoop.metrics, workEventLoop.timer);
+                created[0] = connection;
+                connection.pipeline()
+                        .addLast("decoder", new HttpRequestDecodeHandler(connection.decoder))
+                        .addLast("encoder", new HttpResponseEncodeHandler());
+                if (workEventLoop.responseCache != null) {
+                    connection.pipeline().addLast("cache", new ResponseCacheHandler(workEventLoop.responseCache));
+                }
+                pipelineInitializer.accept(connection.pipeline());
+                selectionKey.attach(connection);
+                if (workEventLoop.capture != null) {
+                    connection.capture(workEventLoop.capture);
+                }
+            });
+        } catch (Throwable t) {
+            // 单个连接出错只关闭这个连接，不影响同一批的其他连接
+            if (created[0] != null) {
+                // Connection已经调度了超时检查，由close()取消定时任务并减少连接数，只减一次
+                created[0].close();
+            } else {
+                workEventLoop.closeQuietly(socketChannel);
+                workEventLoop.load.connectionClosed();
+            }
+        }
+    }
+
     private void newGroup() throws Exception {
-        //创建acceptor线程，负责处理客户端的连接
+        //创建acceptor线程，负责处理客户端的连接，每个监听地址一个
+        this.acceptorReactorThreads = new ReactorThread[config.getListenAddresses().size()];
         for (int i = 0; i < acceptorReactorThreads.length; i++) {
-            this.acceptorReactorThreads[i] = new ReactorThread() {
-                AtomicInteger incr = new AtomicInteger();
+            this.acceptorReactorThreads[i] = new ReactorThread("nio-acceptor-" + i) {
+
+                /**
+                 * 新连接的速率限制，为null表示不限制
+                 */
+                private final TokenBucket acceptLimiter = config.getAcceptRatePerSecond() > 0
+                        ? new TokenBucket(config.getAcceptRatePerSecond(), config.getAcceptBurst()) : null;
+
+                /**
+                 * 本次Accept事件中分配给各个I/O线程的连接，与ioReactorThreads下标一一对应，事件处理完后每个I/O线程提交一次
+                 */
+                private final SocketChannel[][] pending = new SocketChannel[ioReactorThreads.length][];
+
+                private final int[] pendingCounts = new int[ioReactorThreads.length];
 
                 @Override
-                public void handle(SelectableChannel channel) throws Exception {
-                    // 只做socketChannel分发，不做具体的数据读取
-                    ServerSocketChannel server = (ServerSocketChannel) channel;
-                    SocketChannel socketChannel = server.accept();
-                    // 将socketChannel设置为非阻塞模式
-                    socketChannel.configureBlocking(false);
-                    // 收到客户端连接建立通知后，分发给I/O线程继续去读取数据
-                    ReactorThread workEventLoop = ioReactorThreads[incr.getAndIncrement()];
-                    workEventLoop.doStart();
-                    SelectionKey selectionKey = workEventLoop.register(socketChannel);
-                    selectionKey.interestOps(SelectionKey.OP_READ);
-                    System.out.println(String.format("%s 接收到新连接:%s", Thread.currentThread(), socketChannel.getRemoteAddress()));
+                public void handle(SelectionKey key) throws Exception {
+                    // 只做socketChannel分发，不做具体的数据读取。
+                    // 一次事件连续accept到内核队列为空或者达到上限，连接突发时不必每个连接都经过一轮select
+                    ServerSocketChannel server = (ServerSocketChannel) key.channel();
+                    int accepted = 0;
+                    try {
+                        for (int n = config.getMaxAcceptsPerLoop(); n > 0; n--) {
+                            if (acceptLimiter != null && !acceptLimiter.tryAcquire(System.nanoTime())) {
+                                // 超过accept速率：暂停关注Accept事件，新连接留在内核的backlog中，等有令牌了再继续
+                                metrics.acceptThrottled();
+                                pauseAccept(key, acceptLimiter.nanosUntilAvailable(System.nanoTime()));
+                                return;
+                            }
+                            SocketChannel socketChannel;
+                            try {
+                                socketChannel = server.accept();
+                            } catch (IOException ex) {
+                                // 通常是文件描述符用完了：不能关闭ServerSocketChannel，暂停一会儿再accept，避免空转
+                                System.err.println(getName() + ": accept failed, " + ex);
+                                pauseAccept(key, TimeUnit.MILLISECONDS.toNanos(100));
+                                return;
+                            }
+                            if (socketChannel == null) {
+                                return;
+                            }
+                            if (config.getMaxConnections() > 0 && activeConnections() >= config.getMaxConnections()) {
+                                // 连接数已满：尽力写出503后立即关闭，不分配给I/O线程
+                                metrics.connectionRejected();
+                                reject(socketChannel);
+                                continue;
+                            }
+                            // 收到客户端连接建立通知后，按分配策略选一个I/O线程继续去读取数据；
+                            // 在acceptor线程中计数，注册任务还没执行时连接数上限和分配策略就能看到这个连接
+                            int index = config.getBalancer().select(ioReactorLoads);
+                            ioReactorLoads[index].connectionOpened();
+                            addPending(index, socketChannel);
+                            accepted++;
+                        }
+                    } finally {
+                        dispatchPending();
+                        metrics.acceptBatch(accepted);
+                    }
+                }
+
+                private void addPending(int index, SocketChannel socketChannel) {
+                    SocketChannel[] channels = pending[index];
+                    if (channels == null || pendingCounts[index] == channels.length) {
+                        channels = pending[index] = Arrays.copyOf(channels == null ? new SocketChannel[0] : channels,
+                                Math.max(8, pendingCounts[index] * 2));
+                    }
+                    channels[pendingCounts[index]++] = socketChannel;
+                }
+
+                /**
+                 * 每个I/O线程只提交一个注册任务（只唤醒一次），acceptor线程不等待注册完成
+                 */
+                private void dispatchPending() {
+                    for (int index = 0; index < pendingCounts.length; index++) {
+                        int count = pendingCounts[index];
+                        if (count == 0) {
+                            continue;
+                        }
+                        SocketChannel[] channels = Arrays.copyOf(pending[index], count);
+                        Arrays.fill(pending[index], 0, count, null);
+                        pendingCounts[index] = 0;
+                        ReactorThread workEventLoop = ioReactorThreads[index];
+                        workEventLoop.doStart();
+                        workEventLoop.execute(() -> {
+                            for (SocketChannel socketChannel : channels) {
+                                registerConnection(workEventLoop, socketChannel);
+                            }
+                        });
+                    }
+                }
+
+                private void pauseAccept(SelectionKey key, long delayNanos) {
+                    key.interestOps(0);
+                    timer.schedule(() -> {
+                        // 等待期间selector可能被重建过，按channel重新找key
+                        SelectionKey current = key.channel().keyFor(selector);
+                        if (current != null && current.isValid()) {
+                            current.interestOps(SelectionKey.OP_ACCEPT);
+                        }
+                    }, delayNanos, TimeUnit.NANOSECONDS);
+                }
+
+                private void reject(SocketChannel socketChannel) {
+                    try {
+                        socketChannel.configureBlocking(false);
+                        socketChannel.write(SERVICE_UNAVAILABLE.encoded(false));
+                    } catch (IOException ignored) {
+                    }
+                    closeQuietly(socketChannel);
                 }
             };
         }
 
+        // 启用录制时每个I/O线程写自己的一组分段文件
+        Path captureDirectory = config.getCaptureDirectory() == null ? null
+                : TrafficCapture.createRunDirectory(Paths.get(config.getCaptureDirectory()));
+
         // 创建IO线程，负责处理客户端连接以后socketchannel的读写
         for (int i = 0; i < ioReactorThreads.length; i++) {
-            this.ioReactorThreads[i] = new ReactorThread() {
+            this.ioReactorThreads[i] = new ReactorThread("nio-io-" + i, config.getWaitStrategy()) {
+                /**
+                 * 因业务线程池队列已满而暂停读取的连接，业务线程池有空闲后按顺序重新提交
+                 */
+                private final ArrayDeque<Connection> stalledConnections = new ArrayDeque<>();
+
                 @Override
-                public void handle(SelectableChannel channel) {
+                public void handle(SelectionKey key) throws IOException {
+                    Connection connection = (Connection) key.attachment();
                     try {
-                        SocketChannel socketChannel = (SocketChannel) channel;
-                        ByteBuffer byteBuffer = ByteBuffer.allocate(1024);
-                        //读取channel中的数据
-                        while (channel.isOpen() && socketChannel.read(byteBuffer) != -1) {
-                            // 长连接情况下,需要手动判断数据有没有读取结束 (此处做一个简单的判断: 超过0字节就认为请求结束了)
-                            if (byteBuffer.position() > 0) {
-                                break;
+                        //读取channel中的数据交给pipeline解码，半包数据留在解码器中，等下一次可读事件继续解码。
+                        // 缓冲区被读满说明还有数据，继续读，但一次事件最多读readBudgetBytes，剩下的等下一轮select
+                        int budget = config.getReadBudgetBytes();
+                        while (true) {
+                            int readBytes = connection.read();
+                            if (readBytes == -1) {
+                                // 对端关闭了输出，已经在处理中的请求响应完再关闭
+                                connection.shutdownInput();
+                                connection.writeCompletedResponses();
+                                return;
+                            }
+                            if (readBytes == 0) {
+                                return;
+                            }
+                            dispatch(connection);
+                            writeResponses(connection);
+                            budget -= readBytes;
+                            if (budget <= 0 || !connection.canReadMore()) {
+                                return;
                             }
                         }
-                        //如果缓冲区为空，则不执行后面的逻辑
-                        if (byteBuffer.position() == 0) {
-                            return;
-                        }
-                        //缓冲区切换为读模式
-                        byteBuffer.flip();
-                        byte[] content = new byte[byteBuffer.limit()];
-                        byteBuffer.get(content);
-                        System.out.println(String.format("%s 接收到数据：%s", Thread.currentThread(), new String(content)));
-
-                        // TODO 业务操作 数据库、接口...
-                        workerThreadPool.submit(() -> {
-                        });
+                    } catch (IOException ex) {
+                        connection.close();
+                        throw ex;
+                    }
+                }
 
-                        //响应客户端
-                        String response = "HTTP/1.1 200 OK\r\n" +
-                                "Content-Length: 11\r\n\r\n" +
-                                "Hello World";
-                        ByteBuffer buffer = ByteBuffer.wrap(response.getBytes(StandardCharsets.UTF_8));
-                        while (buffer.hasRemaining()) {
-                            socketChannel.write(buffer);
+                @Override
+                public void handleWritable(SelectionKey key) throws IOException {
+                    Connection connection = (Connection) key.attachment();
+                    try {
+                        boolean writable = connection.isWritable();
+                        connection.forceFlush();
+                        if (!writable && connection.isWritable() && !connection.isClosed()) {
+                            // 降到低水位以下，继续解码因发送队列积压而没有解码的请求
+                            writeResponses(connection);
                         }
                     } catch (IOException ex) {
+                        connection.close();
+                        throw ex;
+                    }
+                }
+
+                @Override
+                protected void afterSelect() {
+                    retryStalled();
+                }
+
+                @Override
+                protected void workerAvailable() {
+                    retryStalled();
+                }
+
+                /**
+                 * 按顺序把请求提交给业务线程池，队列满时暂停读取该连接，等待重试
+                 *
+                 * @return 是否全部提交成功
+                 */
+                private boolean dispatch(Connection connection) {
+                    HttpExchange pending;
+                    while ((pending = connection.peekUnsubmitted()) != null) {
+                        HttpExchange task = pending;
+                        try {
+                            workerThreadPool.execute(() -> process(connection, task));
+                        } catch (RejectedExecutionException ex) {
+                            if (config.isShedWhenWorkerBusy()) {
+                                // 业务线程池已满，直接响应预先编码好的503，不排队等待
+                                metrics.requestShed();
+                                connection.pollUnsubmitted();
+                                task.response(SERVICE_UNAVAILABLE);
+                                continue;
+                            }
+                            if (!connection.isReadSuspended(Connection.SUSPEND_WORKER_BUSY)) {
+                                connection.suspendRead(Connection.SUSPEND_WORKER_BUSY);
+                                stalledConnections.addLast(connection);
+                                waitingForWorker = true;
+                            }
+                            return false;
+                        }
+                        connection.pollUnsubmitted();
+                    }
+                    connection.resumeRead(Connection.SUSPEND_WORKER_BUSY);
+                    return true;
+                }
+
+                /**
+                 * 在业务线程中执行，处理完把响应交回当前I/O线程写出
+                 */
+                private void process(Connection connection, HttpExchange exchange) {
+                    HttpResponse response;
+                    long start = System.nanoTime();
+                    try {
+                        // 业务处理器（路由、静态文件、压缩等）可以阻塞，占用的是业务线程，I/O线程继续处理其他连接
+                        response = handler.handle(exchange.request());
+                        if (response == null) {
+                            response = HttpResponse.error(500, "handler returned no response");
+                        }
+                    } catch (Throwable ex) {
                         ex.printStackTrace();
+                        response = HttpResponse.error(500, String.valueOf(ex.getMessage()));
+                    }
+                    long handlerNanos = System.nanoTime() - start;
+                    HttpResponse result = response;
+                    execute(() -> complete(connection, exchange, result, handlerNanos));
+                    // 业务线程空出来了，通知其他因业务线程池已满而暂停读取的I/O线程
+                    for (ReactorThread reactor : ioReactorThreads) {
+                        reactor.notifyWorkerAvailable();
+                    }
+                }
+
+                /**
+                 * 在I/O线程中执行：填入响应，按请求顺序写出已就绪的响应
+                 */
+                private void complete(Connection connection, HttpExchange exchange, HttpResponse response,
+                                      long handlerNanos) {
+                    // 直方图只由I/O线程记录
+                    metrics.handlerCompleted(handlerNanos);
+                    exchange.response(response);
+                    if (!connection.isClosed()) {
+                        try {
+                            writeResponses(connection);
+                        } catch (IOException ex) {
+                            connection.close();
+                        }
+                    }
+                    // 业务线程池腾出了空间，重试之前被拒绝的连接
+                    retryStalled();
+                }
+
+                /**
+                 * 写出已就绪的响应；处理中的请求降到pipelining上限以下、且发送队列低于高水位后恢复读取，继续解码已经读到的请求，
+                 * 发送队列积压时不再产生新的响应。
+                 * 缓存命中的请求不经过业务线程池、解码后马上就能写出，所以要循环到不再暂停为止
+                 */
+                private void writeResponses(Connection connection) throws IOException {
+                    connection.writeCompletedResponses();
+                    while (connection.isReadSuspended(Connection.SUSPEND_PIPELINE_FULL) && !connection.isClosed()
+                            && connection.inflightCount() < config.getMaxPipelinedRequests()
+                            && connection.isWritable()) {
+                        connection.resumeRead(Connection.SUSPEND_PIPELINE_FULL);
+                        // 解码器中可能还有已经读到但没有解码的请求
+                        connection.pipeline().fireChannelReadResumed();
+                        dispatch(connection);
+                        connection.writeCompletedResponses();
                     }
                 }
+
+                private void retryStalled() {
+                    Connection connection;
+                    while ((connection = stalledConnections.peekFirst()) != null) {
+                        if (!connection.isClosed() && !dispatch(connection)) {
+                            return;
+                        }
+                        stalledConnections.pollFirst();
+                    }
+                    waitingForWorker = false;
+                }
             };
+            this.ioReactorLoads[i] = this.ioReactorThreads[i].load;
+            if (captureDirectory != null) {
+                this.ioReactorThreads[i].capture = new TrafficCapture(captureDirectory, ioReactorThreads[i].getName(),
+                        config.getCaptureSegmentBytes(), config.getCaptureMaxSegments());
+            }
         }
+
+        List<ReactorMetrics> reactorMetrics = new ArrayList<>();
+        for (ReactorThread reactor : acceptorReactorThreads) {
+            reactorMetrics.add(reactor.metrics);
+        }
+        for (ReactorThread reactor : ioReactorThreads) {
+            reactorMetrics.add(reactor.metrics);
+        }
+        this.metrics = new ServerMetrics(reactorMetrics, workerThreadPool);
     }
 
     public static void main(String[] args) throws Exception {
-        NIOServerV3 nioServerV3 = new NIOServerV3();
-        // 创建main、sub线程组
-        nioServerV3.newGroup();
-        // 创建 ServerSocketChannel，并将它注册到mainAcceptor线程的selector上
-        nioServerV3.initAndRegister();
-        // 为ServerSocketChannel绑定端口
-        nioServerV3.bind();
+        // -Dnio.staticRoot=目录 时作为静态文件服务器
+        String staticRoot = System.getProperty("nio.staticRoot");
+        NIOServerV3 nioServerV3 = staticRoot == null ? new NIOServerV3()
+                : new NIOServerV3(new ServerConfig(), new StaticFileHandler(Paths.get(staticRoot)));
+        nioServerV3.start();
     }
 }
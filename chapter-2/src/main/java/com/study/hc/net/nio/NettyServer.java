@@ -0,0 +1,562 @@
+package com.study.hc.net.nio;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollMode;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.timeout.IdleState;
+import io.netty.handler.timeout.IdleStateEvent;
+import io.netty.handler.timeout.IdleStateHandler;
+import io.netty.handler.timeout.WriteTimeoutHandler;
+import io.netty.util.AbstractReferenceCounted;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.EventExecutor;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 基于Netty的服务端，和{@link NIOServerV3}使用同一套{@link HttpHandler}、{@link HttpRequestDecoder}、{@link HttpResponseEncoder}
+ * 和同一个{@link ServerConfig}（监听地址、backlog、socket选项、超时、响应压缩、响应缓存），
+ * 对外的接口（包括指标接口、静态文件）完全一致，可以直接替换，也可以作为自研reactor的对照
+ * <p>
+ * Linux上有native库时使用epoll（边缘触发），否则回退到JDK NIO；-Dnio.netty.transport=nio 强制使用NIO。
+ * 读写都用池化的ByteBuf，handler同样在业务线程池中执行，同一连接上的响应按请求顺序写出，
+ * 业务线程池满、流水线请求过多、发送缓冲区超过高水位时暂停读取（autoRead=false），和NIOServerV3的背压方式一致
+ *
+ * @author chensicong
+ * @date 2026-10-18 18:00
+ **/
+public class NettyServer {
+
+    private final ServerConfig config;
+
+    private final HttpHandler handler;
+
+    private final ThreadPoolExecutor workerThreadPool;
+
+    private final boolean epoll;
+
+    private EventLoopGroup bossGroup;
+
+    private EventLoopGroup workerGroup;
+
+    /**
+     * I/O线程到其指标的映射，启动后只读
+     */
+    private final Map<EventExecutor, ReactorMetrics> loopMetrics = new IdentityHashMap<>();
+
+    /**
+     * I/O线程到其响应缓存的映射，和NIOServerV3一样每个I/O线程一份，没有启用时为空
+     */
+    private final Map<EventExecutor, ResponseCache> loopCaches = new IdentityHashMap<>();
+
+    private ServerMetrics metrics;
+
+    private final List<Channel> serverChannels = new ArrayList<>();
+
+    public NettyServer() {
+        this(new ServerConfig(), request -> HttpResponse.ok("Hello World"));
+    }
+
+    public NettyServer(ServerConfig config, HttpHandler handler) {
+        this.config = config;
+        HttpHandler withMetrics = ServerMetrics.withEndpoint(config.getMetricsPath(), this::metrics, handler);
+        // 压缩在业务线程中进行，不占用I/O线程
+        this.handler = config.isCompression() ? new CompressionHandler(withMetrics, config.getCompressionLevel(),
+                config.getCompressionMinBytes(), config.getCompressionCacheMaxBytes()) : withMetrics;
+        this.epoll = Epoll.isAvailable() && !"nio".equals(System.getProperty("nio.netty.transport"));
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.workerThreadPool = new ThreadPoolExecutor(config.getWorkerThreads(), config.getWorkerThreads(),
+                0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(config.getWorkerQueueCapacity()),
+                r -> new Thread(r, "netty-worker-" + threadIndex.incrementAndGet()));
+    }
+
+    /**
+     * 运行指标，bind之后可用
+     */
+    public ServerMetrics metrics() {
+        return metrics;
+    }
+
+    public boolean isEpoll() {
+        return epoll;
+    }
+
+    /**
+     * 绑定{@link ServerConfig#getListenAddresses()}中的所有地址
+     */
+    public void bind() throws InterruptedException {
+        Class<? extends ServerChannel> channelClass;
+        if (epoll) {
+            bossGroup = new EpollEventLoopGroup(1, new DefaultThreadFactory("netty-acceptor"));
+            workerGroup = new EpollEventLoopGroup(config.getIoThreads(), new DefaultThreadFactory("netty-io"));
+            channelClass = EpollServerSocketChannel.class;
+        } else {
+            bossGroup = new NioEventLoopGroup(1, new DefaultThreadFactory("netty-acceptor"));
+            workerGroup = new NioEventLoopGroup(config.getIoThreads(), new DefaultThreadFactory("netty-io"));
+            channelClass = NioServerSocketChannel.class;
+        }
+        List<ReactorMetrics> reactorMetrics = new ArrayList<>();
+        int index = 0;
+        for (EventExecutor loop : workerGroup) {
+            ReactorMetrics loopMetric = new ReactorMetrics("netty-io-" + index++, new ReactorLoad());
+            loopMetrics.put(loop, loopMetric);
+            reactorMetrics.add(loopMetric);
+            if (config.getResponseCacheMaxBytes() > 0) {
+                loopCaches.put(loop, new ResponseCache(config.getResponseCacheMaxBytes(),
+                        config.getResponseCacheMaxEntryBytes(), config.getResponseCacheTtlMillis()));
+            }
+        }
+        metrics = new ServerMetrics(reactorMetrics, workerThreadPool);
+
+        ServerBootstrap bootstrap = new ServerBootstrap()
+                .group(bossGroup, workerGroup)
+                .channel(channelClass)
+                .option(ChannelOption.SO_BACKLOG, config.getAcceptBacklog())
+                .option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+                .childOption(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+                .childOption(ChannelOption.TCP_NODELAY, config.isTcpNoDelay())
+                .childOption(ChannelOption.WRITE_BUFFER_WATER_MARK, new WriteBufferWaterMark(
+                        config.getWriteBufferLowWaterMark(), config.getWriteBufferHighWaterMark()))
+                .childHandler(new ChannelInitializer<Channel>() {
+                    @Override
+                    protected void initChannel(Channel ch) {
+                        long readTimeout = config.getReadTimeoutMillis();
+                        long idleTimeout = config.getIdleTimeoutMillis();
+                        if (readTimeout > 0 || idleTimeout > 0) {
+                            ch.pipeline().addLast(new IdleStateHandler(readTimeout, 0, idleTimeout, TimeUnit.MILLISECONDS));
+                        }
+                        if (config.getWriteTimeoutMillis() > 0) {
+                            ch.pipeline().addLast(new WriteTimeoutHandler(config.getWriteTimeoutMillis(), TimeUnit.MILLISECONDS));
+                        }
+                        ch.pipeline().addLast(new HttpConnectionHandler(loopMetrics.get(ch.eventLoop()),
+                                loopCaches.get(ch.eventLoop())));
+                    }
+                });
+        if (epoll) {
+            bootstrap.childOption(EpollChannelOption.EPOLL_MODE, EpollMode.EDGE_TRIGGERED);
+        }
+        if (config.getSocketReceiveBufferSize() > 0) {
+            // 设置在监听socket上，accept出来的连接继承，大于64KB的窗口需要在握手前设置
+            bootstrap.option(ChannelOption.SO_RCVBUF, config.getSocketReceiveBufferSize());
+        }
+        if (config.getSocketSendBufferSize() > 0) {
+            bootstrap.childOption(ChannelOption.SO_SNDBUF, config.getSocketSendBufferSize());
+        }
+        StringJoiner ports = new StringJoiner(",");
+        for (InetSocketAddress address : config.getListenAddresses()) {
+            Channel channel = bootstrap.bind(address).sync().channel();
+            serverChannels.add(channel);
+            ports.add(String.valueOf(((InetSocketAddress) channel.localAddress()).getPort()));
+        }
+        System.out.println("启动完成，端口" + ports + (epoll ? "（epoll）" : "（nio）"));
+    }
+
+    public void close() {
+        for (Channel channel : serverChannels) {
+            channel.close().syncUninterruptibly();
+        }
+        bossGroup.shutdownGracefully();
+        workerGroup.shutdownGracefully();
+        workerThreadPool.shutdown();
+    }
+
+    /**
+     * 一个连接的处理器，除业务线程中的handler调用外，所有方法都在该连接的I/O线程中执行
+     */
+    private final class HttpConnectionHandler extends ChannelInboundHandlerAdapter {
+
+        private final ReactorMetrics metrics;
+
+        /**
+         * 所属I/O线程的响应缓存，没有启用时为null
+         */
+        private final ResponseCache cache;
+
+        private final HttpRequestDecoder decoder = new HttpRequestDecoder();
+
+        /**
+         * 已经解码、还未写出响应的请求，按到达顺序排列
+         */
+        private final ArrayDeque<Pending> inflight = new ArrayDeque<>();
+
+        /**
+         * 还未提交给业务线程池的请求
+         */
+        private final ArrayDeque<Pending> unsubmitted = new ArrayDeque<>();
+
+        /**
+         * 未解码完的半包数据
+         */
+        private ByteBuf cumulation;
+
+        private boolean inputClosed;
+
+        private boolean retryScheduled;
+
+        HttpConnectionHandler(ReactorMetrics metrics, ResponseCache cache) {
+            this.metrics = metrics;
+            this.cache = cache;
+        }
+
+        @Override
+        public void channelActive(ChannelHandlerContext ctx) {
+            metrics.load().connectionOpened();
+            AccessLog.DEFAULT.connect(ctx.channel().remoteAddress());
+            ctx.fireChannelActive();
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) {
+            metrics.load().connectionClosed();
+            inflight.clear();
+            unsubmitted.clear();
+            releaseCumulation();
+            ctx.fireChannelInactive();
+        }
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            ByteBuf in = (ByteBuf) msg;
+            metrics.bytesRead(in.readableBytes());
+            if (inputClosed) {
+                in.release();
+                return;
+            }
+            cumulation = cumulation == null ? in : ByteToMessageDecoder.MERGE_CUMULATOR.cumulate(ctx.alloc(), cumulation, in);
+            // 池化的堆外ByteBuf转换成ByteBuffer视图不需要拷贝，解码器直接在上面解析
+            ByteBuffer buffer = cumulation.nioBuffer();
+            try {
+                HttpRequest request;
+                while (!inputClosed && (request = decoder.decode(buffer)) != null) {
+                    enqueue(request);
+                }
+            } catch (HttpDecodeException ex) {
+                // 请求不合法，响应错误码后关闭连接
+                enqueueError(HttpResponse.error(ex.status(), ex.getMessage()));
+            }
+            cumulation.skipBytes(buffer.position());
+            if (inputClosed || !cumulation.isReadable()) {
+                releaseCumulation();
+            }
+            dispatch(ctx);
+            writeCompletedResponses(ctx);
+        }
+
+        @Override
+        public void channelWritabilityChanged(ChannelHandlerContext ctx) {
+            updateAutoRead(ctx);
+            ctx.fireChannelWritabilityChanged();
+        }
+
+        @Override
+        public void userEventTriggered(ChannelHandlerContext ctx, Object evt) {
+            if (!(evt instanceof IdleStateEvent)) {
+                ctx.fireUserEventTriggered(evt);
+                return;
+            }
+            IdleState state = ((IdleStateEvent) evt).state();
+            if (state == IdleState.READER_IDLE && decoder.isDecoding() && !inputClosed) {
+                // 请求只收到一部分，对端迟迟不发剩余数据
+                enqueueError(HttpResponse.error(408, "request timeout"));
+                releaseCumulation();
+                writeCompletedResponses(ctx);
+            } else if (state == IdleState.ALL_IDLE && inflight.isEmpty()) {
+                ctx.close();
+            }
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            // 对端重置、写超时等，直接关闭连接
+            ctx.close();
+        }
+
+        private void enqueue(HttpRequest request) {
+            Pending pending = new Pending(request, request.isKeepAlive());
+            inflight.addLast(pending);
+            HttpResponse cached = cache == null ? null : cache.get(request);
+            if (cached != null) {
+                // 缓存命中，不提交给业务线程池，轮到它时直接写出
+                pending.response = cached;
+            } else {
+                unsubmitted.addLast(pending);
+            }
+            if (!pending.keepAlive) {
+                // 短连接：这个请求之后的数据都不再处理
+                inputClosed = true;
+            }
+        }
+
+        private void enqueueError(HttpResponse response) {
+            Pending pending = new Pending(null, false);
+            pending.response = response;
+            inflight.addLast(pending);
+            inputClosed = true;
+        }
+
+        /**
+         * 按顺序把请求提交给业务线程池，队列满时暂停读取，稍后在I/O线程中重试
+         */
+        private void dispatch(ChannelHandlerContext ctx) {
+            Pending pending;
+            while ((pending = unsubmitted.peekFirst()) != null) {
+                Pending task = pending;
+                try {
+                    workerThreadPool.execute(() -> process(ctx, task));
+                } catch (RejectedExecutionException ex) {
+                    if (!retryScheduled) {
+                        retryScheduled = true;
+                        ctx.executor().schedule(() -> {
+                            retryScheduled = false;
+                            if (ctx.channel().isActive()) {
+                                dispatch(ctx);
+                            }
+                        }, 1, TimeUnit.MILLISECONDS);
+                    }
+                    break;
+                }
+                unsubmitted.pollFirst();
+            }
+            updateAutoRead(ctx);
+        }
+
+        /**
+         * 在业务线程中执行，处理完把响应交回I/O线程写出
+         */
+        private void process(ChannelHandlerContext ctx, Pending pending) {
+            HttpResponse response;
+            long start = System.nanoTime();
+            try {
+                response = handler.handle(pending.request);
+                if (response == null) {
+                    response = HttpResponse.error(500, "handler returned no response");
+                }
+            } catch (Throwable ex) {
+                ex.printStackTrace();
+                response = HttpResponse.error(500, String.valueOf(ex.getMessage()));
+            }
+            long handlerNanos = System.nanoTime() - start;
+            HttpResponse result = response;
+            ctx.executor().execute(() -> {
+                // 直方图只由event loop线程记录
+                metrics.handlerCompleted(handlerNanos);
+                pending.response = result;
+                if (ctx.channel().isActive()) {
+                    writeCompletedResponses(ctx);
+                }
+            });
+        }
+
+        /**
+         * 按请求顺序写出所有已就绪的响应（遇到第一个未就绪的响应就停止），然后flush
+         */
+        private void writeCompletedResponses(ChannelHandlerContext ctx) {
+            Pending head;
+            boolean written = false;
+            while ((head = inflight.peekFirst()) != null && head.response != null) {
+                inflight.pollFirst();
+                HttpResponse response = head.response;
+                long latency = System.nanoTime() - head.startNanos;
+                if (head.request != null) {
+                    metrics.requestCompleted(latency);
+                    AccessLog.DEFAULT.request(ctx.channel().remoteAddress(), head.request.method(), head.request.uri(),
+                            response.status(), response.contentLength(), latency);
+                } else {
+                    AccessLog.DEFAULT.request(ctx.channel().remoteAddress(), null, null, response.status(),
+                            response.contentLength(), latency);
+                }
+                if (cache != null && head.request != null) {
+                    cache.put(head.request, response);
+                }
+                write(ctx, response, head.keepAlive, head.request != null && "HEAD".equals(head.request.method()));
+                written = true;
+                if (!head.keepAlive) {
+                    inflight.clear();
+                    unsubmitted.clear();
+                    ctx.writeAndFlush(Unpooled.EMPTY_BUFFER).addListener(ChannelFutureListener.CLOSE);
+                    return;
+                }
+            }
+            if (written) {
+                ctx.flush();
+            }
+            updateAutoRead(ctx);
+        }
+
+        /**
+         * @param headOnly HEAD请求，只写出响应头
+         */
+        private void write(ChannelHandlerContext ctx, HttpResponse response, boolean keepAlive, boolean headOnly) {
+            ByteBuffer encoded = response.encoded(keepAlive, headOnly);
+            if (encoded != null) {
+                // 预先编码的响应（包括缓存的），写出只读视图
+                metrics.bytesWritten(encoded.remaining());
+                ctx.write(Unpooled.wrappedBuffer(encoded), ctx.voidPromise());
+                return;
+            }
+            ByteBuf header = ctx.alloc().directBuffer(HttpResponseEncoder.maxEncodedLength(response));
+            ByteBuffer view = header.internalNioBuffer(0, header.writableBytes());
+            int start = view.position();
+            HttpResponseEncoder.encode(response, keepAlive, headOnly, view);
+            header.writerIndex(view.position() - start);
+            metrics.bytesWritten(header.readableBytes());
+            ctx.write(header, ctx.voidPromise());
+            if (headOnly) {
+                return;
+            }
+            if (response.bodyBuffer() != null) {
+                // 共享的缓冲区，每次写出用一个只读副本，互不影响position
+                ByteBuf body = Unpooled.wrappedBuffer(response.bodyBuffer().asReadOnlyBuffer());
+                metrics.bytesWritten(body.readableBytes());
+                ctx.write(body, ctx.voidPromise());
+            } else if (response.bodyFile() != null) {
+                metrics.bytesWritten(response.bodyFile().count());
+                ctx.write(new NettyFileRegion(response.bodyFile()), ctx.voidPromise());
+            }
+        }
+
+        /**
+         * 业务线程池有积压、处理中的请求太多或者发送缓冲区超过高水位时不再读取新的数据
+         */
+        private void updateAutoRead(ChannelHandlerContext ctx) {
+            boolean autoRead = !inputClosed && unsubmitted.isEmpty()
+                    && inflight.size() < config.getMaxPipelinedRequests() && ctx.channel().isWritable();
+            if (ctx.channel().config().isAutoRead() != autoRead) {
+                ctx.channel().config().setAutoRead(autoRead);
+            }
+        }
+
+        private void releaseCumulation() {
+            if (cumulation != null) {
+                cumulation.release();
+                cumulation = null;
+            }
+        }
+    }
+
+    private static final class Pending {
+
+        final HttpRequest request;
+
+        final boolean keepAlive;
+
+        final long startNanos = System.nanoTime();
+
+        /**
+         * 由业务线程设置，之后在I/O线程中读取（经过任务提交，不需要volatile）
+         */
+        HttpResponse response;
+
+        Pending(HttpRequest request, boolean keepAlive) {
+            this.request = request;
+            this.keepAlive = keepAlive;
+        }
+    }
+
+    /**
+     * 把{@link FileRegion}适配成Netty的FileRegion，epoll和NIO传输都会调用transferTo直接发送文件内容，
+     * 连接关闭、消息被丢弃时release关闭文件
+     */
+    private static final class NettyFileRegion extends AbstractReferenceCounted implements io.netty.channel.FileRegion {
+
+        private final FileRegion region;
+
+        NettyFileRegion(FileRegion region) {
+            this.region = region;
+        }
+
+        @Override
+        public long position() {
+            return 0;
+        }
+
+        @Override
+        @Deprecated
+        public long transfered() {
+            return transferred();
+        }
+
+        @Override
+        public long transferred() {
+            return region.count() - region.remaining();
+        }
+
+        @Override
+        public long count() {
+            return region.count();
+        }
+
+        @Override
+        public long transferTo(WritableByteChannel target, long position) throws IOException {
+            return region.transferTo(target);
+        }
+
+        @Override
+        protected void deallocate() {
+            region.close();
+        }
+
+        @Override
+        public NettyFileRegion retain() {
+            super.retain();
+            return this;
+        }
+
+        @Override
+        public NettyFileRegion retain(int increment) {
+            super.retain(increment);
+            return this;
+        }
+
+        @Override
+        public NettyFileRegion touch() {
+            return this;
+        }
+
+        @Override
+        public NettyFileRegion touch(Object hint) {
+            return this;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        // -Dnio.staticRoot=目录 时作为静态文件服务器
+        String staticRoot = System.getProperty("nio.staticRoot");
+        NettyServer server = staticRoot == null ? new NettyServer()
+                : new NettyServer(new ServerConfig(), new StaticFileHandler(Paths.get(staticRoot)));
+        server.bind();
+    }
+}
@@ -0,0 +1,127 @@
+package com.study.hc.net.nio;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 路由匹配出的路径参数：只记录每个参数在请求行字节中的起止位置，不创建String。
+ * 需要字符串时调用{@link #get}，数字参数可以用{@link #getLong}直接从字节解析
+ * <p>
+ * 每个业务线程复用同一个实例，只在{@link RouteHandler#handle}调用期间有效。取到的是原始字节，没有做百分号解码
+ *
+ * @author chensicong
+ * @date 2026-10-19 01:00
+ **/
+public final class PathParams {
+
+    /**
+     * 一个路由最多的参数个数
+     */
+    static final int MAX_PARAMS = 16;
+
+    private final int[] starts = new int[MAX_PARAMS];
+
+    private final int[] ends = new int[MAX_PARAMS];
+
+    private byte[] bytes;
+
+    private String[] names;
+
+    private int size;
+
+    void reset(byte[] bytes) {
+        this.bytes = bytes;
+        this.names = null;
+        this.size = 0;
+    }
+
+    void push(int start, int end) {
+        starts[size] = start;
+        ends[size] = end;
+        size++;
+    }
+
+    void pop() {
+        size--;
+    }
+
+    void names(String[] names) {
+        this.names = names;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public String name(int index) {
+        return names[index];
+    }
+
+    /**
+     * @return 参数的下标，不存在时返回-1
+     */
+    public int indexOf(String name) {
+        for (int i = 0; i < size; i++) {
+            if (names[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 参数所在的字节数组，范围是[{@link #start(int)}, {@link #end(int)})，调用方不能修改
+     */
+    public byte[] bytes() {
+        return bytes;
+    }
+
+    public int start(int index) {
+        return starts[index];
+    }
+
+    public int end(int index) {
+        return ends[index];
+    }
+
+    /**
+     * @return 参数值，不存在时返回null
+     */
+    public String get(String name) {
+        int index = indexOf(name);
+        return index < 0 ? null : new String(bytes, starts[index], ends[index] - starts[index], StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * 按十进制整数解析参数，不创建String
+     *
+     * @throws NumberFormatException 参数不存在、不是整数或者超出long的范围
+     */
+    public long getLong(String name) {
+        int index = indexOf(name);
+        if (index < 0) {
+            throw new NumberFormatException("no such path parameter: " + name);
+        }
+        int start = starts[index];
+        int end = ends[index];
+        boolean negative = start < end && bytes[start] == '-';
+        int i = negative ? start + 1 : start;
+        if (i == end) {
+            throw new NumberFormatException("invalid number in path parameter: " + name);
+        }
+        // 和Long.parseLong一样按负数累加，负数的范围比正数大1
+        long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        long multiplyMin = limit / 10;
+        long value = 0;
+        for (; i < end; i++) {
+            int digit = bytes[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("invalid number in path parameter: " + name);
+            }
+            if (value < multiplyMin || value * 10 < limit + digit) {
+                throw new NumberFormatException("number out of range in path parameter: " + name);
+            }
+            value = value * 10 - digit;
+        }
+        return negative ? value : -value;
+    }
+}
@@ -0,0 +1,43 @@
+package com.study.hc.net.nio;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * I/O reactor线程的负载计数，由reactor线程自己更新，acceptor线程读取后决定新连接分配给谁
+ *
+ * @author chensicong
+ * @date 2026-10-17 22:30
+ **/
+public class ReactorLoad {
+
+    /**
+     * 当前负责的连接数
+     */
+    private final AtomicInteger activeConnections = new AtomicInteger();
+
+    /**
+     * 所有连接待发送的字节数之和，只有reactor线程自己写，用lazySet避免不必要的内存屏障
+     */
+    private final AtomicLong pendingOutboundBytes = new AtomicLong();
+
+    void connectionOpened() {
+        activeConnections.incrementAndGet();
+    }
+
+    void connectionClosed() {
+        activeConnections.decrementAndGet();
+    }
+
+    void addPendingOutboundBytes(long delta) {
+        pendingOutboundBytes.lazySet(pendingOutboundBytes.get() + delta);
+    }
+
+    public int activeConnections() {
+        return activeConnections.get();
+    }
+
+    public long pendingOutboundBytes() {
+        return pendingOutboundBytes.get();
+    }
+}
@@ -0,0 +1,338 @@
+package com.study.hc.net.nio;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个reactor线程的运行指标
+ * <p>
+ * 计数和直方图只由所属reactor线程更新，计数用lazySet写入，直方图是普通字段，热路径上没有锁也没有额外的内存屏障；
+ * 只有任务提交数由其他线程更新，用LongAdder记录。业务处理耗时在业务线程中测量，响应交回I/O线程时再记录。
+ * 其他线程随时可以读取，读到的是近似值，直方图先复制快照再读取。
+ *
+ * @author chensicong
+ * @date 2026-10-18 11:00
+ **/
+public class ReactorMetrics {
+
+    private final String name;
+
+    private final ReactorLoad load;
+
+    /**
+     * 每轮循环中除select等待以外的耗时（执行任务 + 处理就绪事件），持续偏高说明该reactor线程饱和
+     */
+    private final Histogram loopBusyNanos = new Histogram();
+
+    /**
+     * 每轮select阻塞等待的耗时
+     */
+    private final Histogram selectNanos = new Histogram();
+
+    /**
+     * 每轮等待中自旋（selectNow轮询）的耗时和阻塞在select上的耗时，两者之和就是selectNanos；
+     * 自旋的时间越多，事件到达后处理得越快，但占用的CPU也越多
+     */
+    private final Histogram spinNanos = new Histogram();
+
+    private final Histogram parkNanos = new Histogram();
+
+    /**
+     * 每轮执行任务队列和到期定时任务的耗时
+     */
+    private final Histogram taskDrainNanos = new Histogram();
+
+    /**
+     * 每轮处理就绪事件（handle）的耗时
+     */
+    private final Histogram handleNanos = new Histogram();
+
+    /**
+     * 每轮select返回的就绪key数
+     */
+    private final Histogram selectedKeys = new Histogram();
+
+    /**
+     * 请求从解码完成到响应进入发送队列的耗时
+     */
+    private final Histogram requestLatencyNanos = new Histogram();
+
+    /**
+     * 业务线程中handler的执行耗时
+     */
+    private final Histogram handlerNanos = new Histogram();
+
+    /**
+     * acceptor线程每次Accept事件接受的连接数，经常达到maxAcceptsPerLoop说明连接突发超过了单个acceptor的处理能力
+     */
+    private final Histogram acceptBatch = new Histogram();
+
+    private final AtomicLong loopIterations = new AtomicLong();
+
+    private final AtomicLong busyNanosTotal = new AtomicLong();
+
+    private final AtomicLong selectNanosTotal = new AtomicLong();
+
+    private final AtomicLong spinNanosTotal = new AtomicLong();
+
+    private final AtomicLong parkNanosTotal = new AtomicLong();
+
+    private final AtomicLong parks = new AtomicLong();
+
+    /**
+     * 过早返回的空select次数、selector重建次数，用来发现epoll空轮询
+     */
+    private final AtomicLong prematureSelects = new AtomicLong();
+
+    private final AtomicLong selectorRebuilds = new AtomicLong();
+
+    private final LongAdder tasksSubmitted = new LongAdder();
+
+    private final AtomicLong tasksExecuted = new AtomicLong();
+
+    private final AtomicLong bytesRead = new AtomicLong();
+
+    private final AtomicLong bytesWritten = new AtomicLong();
+
+    private final AtomicLong requests = new AtomicLong();
+
+    /**
+     * acceptor线程接受并分配给I/O线程的连接数
+     */
+    private final AtomicLong connectionsAccepted = new AtomicLong();
+
+    /**
+     * 过载保护：超过连接数上限被拒绝的连接、因accept限流暂停的次数、业务线程池已满直接响应503的请求
+     */
+    private final AtomicLong connectionsRejected = new AtomicLong();
+
+    private final AtomicLong acceptsThrottled = new AtomicLong();
+
+    private final AtomicLong requestsShed = new AtomicLong();
+
+    public ReactorMetrics(String name, ReactorLoad load) {
+        this.name = name;
+        this.load = load;
+    }
+
+    /**
+     * 由reactor线程在每轮循环结束时调用
+     */
+    void recordLoop(long drainNanos, long selectNanos, long handleNanos, int selectedKeys, int tasks) {
+        this.taskDrainNanos.record(drainNanos);
+        this.selectNanos.record(selectNanos);
+        this.handleNanos.record(handleNanos);
+        this.loopBusyNanos.record(drainNanos + handleNanos);
+        this.selectedKeys.record(selectedKeys);
+        increment(loopIterations, 1);
+        increment(busyNanosTotal, drainNanos + handleNanos);
+        increment(selectNanosTotal, selectNanos);
+        increment(tasksExecuted, tasks);
+    }
+
+    /**
+     * 由reactor线程在每轮等待结束后调用
+     */
+    void recordWait(long spinNanos, long parkNanos) {
+        if (spinNanos > 0) {
+            this.spinNanos.record(spinNanos);
+            increment(spinNanosTotal, spinNanos);
+        }
+        if (parkNanos > 0) {
+            this.parkNanos.record(parkNanos);
+            increment(parkNanosTotal, parkNanos);
+            increment(parks, 1);
+        }
+    }
+
+    void prematureSelect() {
+        increment(prematureSelects, 1);
+    }
+
+    void selectorRebuilt() {
+        increment(selectorRebuilds, 1);
+    }
+
+    /**
+     * 任意线程提交任务时调用
+     */
+    void taskSubmitted() {
+        tasksSubmitted.increment();
+    }
+
+    void bytesRead(long bytes) {
+        increment(bytesRead, bytes);
+    }
+
+    void bytesWritten(long bytes) {
+        increment(bytesWritten, bytes);
+    }
+
+    void requestCompleted(long latencyNanos) {
+        increment(requests, 1);
+        requestLatencyNanos.record(latencyNanos);
+    }
+
+    /**
+     * acceptor线程每次Accept事件结束时调用
+     */
+    void acceptBatch(int accepted) {
+        if (accepted > 0) {
+            acceptBatch.record(accepted);
+            increment(connectionsAccepted, accepted);
+        }
+    }
+
+    void connectionRejected() {
+        increment(connectionsRejected, 1);
+    }
+
+    void acceptThrottled() {
+        increment(acceptsThrottled, 1);
+    }
+
+    void requestShed() {
+        increment(requestsShed, 1);
+    }
+
+    /**
+     * 由I/O线程在收到业务线程交回的响应时调用，nanos是业务线程中测量的handler耗时
+     */
+    void handlerCompleted(long nanos) {
+        handlerNanos.record(nanos);
+    }
+
+    /**
+     * 只有一个线程写，不需要CAS
+     */
+    private static void increment(AtomicLong counter, long delta) {
+        counter.lazySet(counter.get() + delta);
+    }
+
+    public String name() {
+        return name;
+    }
+
+    ReactorLoad load() {
+        return load;
+    }
+
+    public int activeConnections() {
+        return load.activeConnections();
+    }
+
+    public long pendingOutboundBytes() {
+        return load.pendingOutboundBytes();
+    }
+
+    /**
+     * 任务队列中等待执行的任务数（近似值）
+     */
+    public long taskQueueDepth() {
+        return Math.max(0, tasksSubmitted.sum() - tasksExecuted.get());
+    }
+
+    public long loopIterations() {
+        return loopIterations.get();
+    }
+
+    /**
+     * 启动以来忙碌时间占比（不在select中等待的时间，自旋等待也算作等待），接近1说明该reactor线程已经饱和
+     */
+    public double utilization() {
+        long busy = busyNanosTotal.get();
+        long total = busy + selectNanosTotal.get();
+        return total == 0 ? 0 : (double) busy / total;
+    }
+
+    public long bytesRead() {
+        return bytesRead.get();
+    }
+
+    public long bytesWritten() {
+        return bytesWritten.get();
+    }
+
+    public long requests() {
+        return requests.get();
+    }
+
+    public long connectionsAccepted() {
+        return connectionsAccepted.get();
+    }
+
+    public long connectionsRejected() {
+        return connectionsRejected.get();
+    }
+
+    public long acceptsThrottled() {
+        return acceptsThrottled.get();
+    }
+
+    public long requestsShed() {
+        return requestsShed.get();
+    }
+
+    public long spinNanosTotal() {
+        return spinNanosTotal.get();
+    }
+
+    public long parkNanosTotal() {
+        return parkNanosTotal.get();
+    }
+
+    /**
+     * 阻塞在select上的次数
+     */
+    public long parks() {
+        return parks.get();
+    }
+
+    public long prematureSelects() {
+        return prematureSelects.get();
+    }
+
+    public long selectorRebuilds() {
+        return selectorRebuilds.get();
+    }
+
+    public Histogram spinNanos() {
+        return spinNanos;
+    }
+
+    public Histogram parkNanos() {
+        return parkNanos;
+    }
+
+    public Histogram loopBusyNanos() {
+        return loopBusyNanos;
+    }
+
+    public Histogram selectNanos() {
+        return selectNanos;
+    }
+
+    public Histogram taskDrainNanos() {
+        return taskDrainNanos;
+    }
+
+    public Histogram handleNanos() {
+        return handleNanos;
+    }
+
+    public Histogram selectedKeys() {
+        return selectedKeys;
+    }
+
+    public Histogram requestLatencyNanos() {
+        return requestLatencyNanos;
+    }
+
+    public Histogram handlerNanos() {
+        return handlerNanos;
+    }
+
+    public Histogram acceptBatch() {
+        return acceptBatch;
+    }
+}
@@ -0,0 +1,175 @@
+package com.study.hc.net.nio;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 响应缓存：按请求方法、路径和Accept-Encoding缓存完整编码好的响应（{@link HttpResponse#preEncode()}），
+ * 命中时不经过业务线程池，写出的只是只读堆外缓冲区的duplicate
+ * <p>
+ * 每个I/O线程一份，只由所属线程访问，不加锁；按TTL过期，按总字节数做LRU淘汰。
+ * 带有条件请求、Range、Cookie、Authorization等头的请求不走缓存；
+ * 只缓存200响应，响应带有Set-Cookie或Cache-Control: no-store/no-cache/private时不缓存，文件形式的响应体也不缓存
+ *
+ * @author chensicong
+ * @date 2026-10-18 22:00
+ **/
+public final class ResponseCache {
+
+    private static final String[] BYPASS_HEADERS = {
+            "authorization", "cookie", "range", "if-range", "if-none-match", "if-modified-since"};
+
+    private final long capacity;
+
+    private final int maxEntryBytes;
+
+    private final long ttlNanos;
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+
+    private long totalBytes;
+
+    private long hits;
+
+    private long misses;
+
+    /**
+     * @param capacity      所有缓存响应（两种Connection形式都算）的总字节数上限
+     * @param maxEntryBytes 单个编码后响应的字节数上限
+     * @param ttlMillis     缓存的有效期
+     */
+    public ResponseCache(long capacity, int maxEntryBytes, long ttlMillis) {
+        this.capacity = capacity;
+        this.maxEntryBytes = maxEntryBytes;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+    }
+
+    /**
+     * @return 未过期的缓存响应，没有命中或者请求不能走缓存时返回null
+     */
+    public HttpResponse get(HttpRequest request) {
+        String key = key(request);
+        if (key == null) {
+            return null;
+        }
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        if (System.nanoTime() - entry.expiresNanos > 0) {
+            remove(key);
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.response;
+    }
+
+    /**
+     * 响应可以缓存时预先编码并放入缓存
+     *
+     * @return 是否放入了缓存
+     */
+    public boolean put(HttpRequest request, HttpResponse response) {
+        String key = key(request);
+        if (key == null || !isCacheable(response) || response.contentLength() > maxEntryBytes) {
+            return false;
+        }
+        response.preEncode();
+        long size = response.encodedLength();
+        if (size > maxEntryBytes || size * 2 > capacity) {
+            return false;
+        }
+        remove(key);
+        entries.put(key, new Entry(response, size * 2, System.nanoTime() + ttlNanos));
+        totalBytes += size * 2;
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (totalBytes > capacity && iterator.hasNext()) {
+            totalBytes -= iterator.next().bytes;
+            iterator.remove();
+        }
+        return true;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public long totalBytes() {
+        return totalBytes;
+    }
+
+    public long hitCount() {
+        return hits;
+    }
+
+    public long missCount() {
+        return misses;
+    }
+
+    private void remove(String key) {
+        Entry previous = entries.remove(key);
+        if (previous != null) {
+            totalBytes -= previous.bytes;
+        }
+    }
+
+    /**
+     * 缓存的key，请求不能走缓存时返回null
+     */
+    private static String key(HttpRequest request) {
+        String method = request.method();
+        if (!"GET".equals(method) && !"HEAD".equals(method)) {
+            return null;
+        }
+        for (String name : BYPASS_HEADERS) {
+            if (request.header(name) != null) {
+                return null;
+            }
+        }
+        String cacheControl = request.header("cache-control");
+        if (cacheControl != null && cacheControl.toLowerCase(Locale.ROOT).contains("no-cache")) {
+            return null;
+        }
+        String acceptEncoding = request.header("accept-encoding");
+        return acceptEncoding == null ? method + ' ' + request.uri() : method + ' ' + request.uri() + '\n' + acceptEncoding;
+    }
+
+    private static boolean isCacheable(HttpResponse response) {
+        if (response.status() != 200 || response.bodyFile() != null || response.isPreEncoded()) {
+            return false;
+        }
+        for (Map.Entry<String, String> header : response.headers().entrySet()) {
+            String name = header.getKey();
+            if (name.equalsIgnoreCase("Set-Cookie")) {
+                return false;
+            }
+            if (name.equalsIgnoreCase("Cache-Control")) {
+                String value = header.getValue().toLowerCase(Locale.ROOT);
+                if (value.contains("no-store") || value.contains("no-cache") || value.contains("private")) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static final class Entry {
+
+        final HttpResponse response;
+
+        final long bytes;
+
+        final long expiresNanos;
+
+        Entry(HttpResponse response, long bytes, long expiresNanos) {
+            this.response = response;
+            this.bytes = bytes;
+            this.expiresNanos = expiresNanos;
+        }
+    }
+}
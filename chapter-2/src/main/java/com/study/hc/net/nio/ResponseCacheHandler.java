@@ -0,0 +1,46 @@
+package com.study.hc.net.nio;
+
+/**
+ * 响应缓存处理器，放在解码器之后：入站时缓存命中的请求直接带着缓存的响应交给连接排队，不再提交给业务线程池；
+ * 出站时把业务线程生成的可缓存响应放入缓存
+ *
+ * @author chensicong
+ * @date 2026-10-18 22:00
+ **/
+public class ResponseCacheHandler implements ChannelInboundHandler, ChannelOutboundHandler {
+
+    private final ResponseCache cache;
+
+    /**
+     * @param cache 所属I/O线程的缓存，同一个I/O线程上的连接共用
+     */
+    public ResponseCacheHandler(ResponseCache cache) {
+        this.cache = cache;
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+        if (msg instanceof HttpRequest) {
+            HttpRequest request = (HttpRequest) msg;
+            HttpResponse cached = cache.get(request);
+            if (cached != null) {
+                HttpExchange exchange = new HttpExchange(request, request.isKeepAlive());
+                exchange.response(cached);
+                ctx.fireChannelRead(exchange);
+                return;
+            }
+        }
+        ctx.fireChannelRead(msg);
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (msg instanceof HttpExchange) {
+            HttpExchange exchange = (HttpExchange) msg;
+            if (exchange.request() != null) {
+                cache.put(exchange.request(), exchange.response());
+            }
+        }
+        ctx.write(msg);
+    }
+}
@@ -0,0 +1,16 @@
+package com.study.hc.net.nio;
+
+/**
+ * {@link HttpRouter}中一个路由的处理逻辑，和{@link HttpHandler}一样在业务线程池中执行
+ *
+ * @author chensicong
+ * @date 2026-10-19 01:00
+ **/
+@FunctionalInterface
+public interface RouteHandler {
+
+    /**
+     * @param params 路径参数，只在本次调用期间有效，不能保存到其他地方或者交给其他线程
+     */
+    HttpResponse handle(HttpRequest request, PathParams params) throws Exception;
+}
@@ -0,0 +1,569 @@
+package com.study.hc.net.nio;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * {@link NIOServerV3} 的配置项，默认值可以通过 -Dnio.xxx 启动参数覆盖
+ *
+ * @author chensicong
+ * @date 2026-10-17 20:40
+ **/
+public class ServerConfig {
+
+    /**
+     * 监听端口，0表示由系统分配
+     */
+    private int port = Integer.getInteger("nio.port", 8089);
+
+    /**
+     * 新连接是否关闭Nagle算法（TCP_NODELAY）
+     */
+    private boolean tcpNoDelay = Boolean.parseBoolean(System.getProperty("nio.tcpNoDelay", "true"));
+
+    /**
+     * 监听地址，逗号分隔的[host:]port列表，每个地址一个acceptor线程；为空时只监听{@link #port}
+     */
+    private List<InetSocketAddress> listenAddresses = parseAddresses(System.getProperty("nio.listen", ""));
+
+    /**
+     * 内核中已完成握手、等待accept的连接队列长度（listen的backlog），实际值还受net.core.somaxconn限制
+     */
+    private int acceptBacklog = Integer.getInteger("nio.acceptBacklog", 1024);
+
+    /**
+     * 一次Accept事件中最多连续accept的连接数，连接突发时不必每个连接都回到select
+     */
+    private int maxAcceptsPerLoop = Integer.getInteger("nio.maxAcceptsPerLoop", 64);
+
+    /**
+     * 新连接的SO_RCVBUF、SO_SNDBUF，0表示使用系统默认值。
+     * SO_RCVBUF设置在监听socket上由新连接继承，超过64KB时必须在握手之前设置，窗口扩大因子才会生效
+     */
+    private int socketReceiveBufferSize = Integer.getInteger("nio.soRcvBuf", 0);
+
+    private int socketSendBufferSize = Integer.getInteger("nio.soSndBuf", 0);
+
+    /**
+     * I/O reactor线程数，默认等于CPU核数
+     */
+    private int ioThreads = Integer.getInteger("nio.ioThreads", Runtime.getRuntime().availableProcessors());
+
+    /**
+     * 新连接分配给I/O reactor线程的策略
+     */
+    private ConnectionBalancer balancer = ConnectionBalancer.of(System.getProperty("nio.balancer", "round-robin"));
+
+    /**
+     * I/O reactor线程没有就绪事件时的等待策略，acceptor线程总是阻塞等待
+     */
+    private WaitStrategy waitStrategy = WaitStrategy.of(System.getProperty("nio.waitStrategy", "select"));
+
+    /**
+     * 连续过早返回的空select超过该次数时认为遇到了epoll空轮询，重建selector，0表示不检测
+     */
+    private int selectorAutoRebuildThreshold = Integer.getInteger("nio.selectorAutoRebuildThreshold", 512);
+
+    /**
+     * 连接待发送数据超过高水位后变为不可写，生产者应暂停产生新的响应
+     */
+    private int writeBufferHighWaterMark = Integer.getInteger("nio.writeBufferHighWaterMark", 64 * 1024);
+
+    /**
+     * 待发送数据降到低水位以下后恢复可写
+     */
+    private int writeBufferLowWaterMark = Integer.getInteger("nio.writeBufferLowWaterMark", 32 * 1024);
+
+    /**
+     * 业务线程数
+     */
+    private int workerThreads = Integer.getInteger("nio.workerThreads", 10);
+
+    /**
+     * 业务线程池队列容量，队列满了以后按{@link #shedWhenWorkerBusy}暂停读取或者直接拒绝新的请求
+     */
+    private int workerQueueCapacity = Integer.getInteger("nio.workerQueueCapacity", 1024);
+
+    /**
+     * 业务线程池队列满时的处理方式：false表示暂停读取该连接，等业务线程空闲后再提交；
+     * true表示直接响应预先编码好的503（过载时快速失败，已接纳的请求延迟不受影响）
+     */
+    private boolean shedWhenWorkerBusy = Boolean.getBoolean("nio.shedWhenWorkerBusy");
+
+    /**
+     * 同时保持的连接数上限，超过后新连接直接响应503并关闭，0表示不限制
+     */
+    private int maxConnections = Integer.getInteger("nio.maxConnections", 0);
+
+    /**
+     * 每秒最多接受的新连接数（令牌桶），超过后暂停accept，新连接留在内核的backlog中，0表示不限制
+     */
+    private int acceptRatePerSecond = Integer.getInteger("nio.acceptRatePerSecond", 0);
+
+    /**
+     * 令牌桶容量，允许的突发连接数
+     */
+    private int acceptBurst = Integer.getInteger("nio.acceptBurst", 128);
+
+    /**
+     * 单个连接上同时在处理中的请求数上限（pipelining深度），达到上限后暂停读取该连接
+     */
+    private int maxPipelinedRequests = Integer.getInteger("nio.maxPipelinedRequests", 16);
+
+    /**
+     * 连接空闲（没有读写、也没有处理中的请求）超过该时间则关闭，0表示不限制
+     */
+    private long idleTimeoutMillis = Long.getLong("nio.idleTimeoutMillis", 60_000L);
+
+    /**
+     * 读到半个请求后超过该时间没有新数据则响应408并关闭，0表示不限制
+     */
+    private long readTimeoutMillis = Long.getLong("nio.readTimeoutMillis", 30_000L);
+
+    /**
+     * 有待发送数据但超过该时间一个字节都写不出去则关闭，0表示不限制
+     */
+    private long writeTimeoutMillis = Long.getLong("nio.writeTimeoutMillis", 30_000L);
+
+    /**
+     * 连接读缓冲区的最小、初始、最大大小，实际大小根据最近的读取量在[min, max]之间自适应调整
+     */
+    private int minReceiveBufferSize = Integer.getInteger("nio.minReceiveBufferSize", 512);
+
+    private int initialReceiveBufferSize = Integer.getInteger("nio.initialReceiveBufferSize", 1024);
+
+    private int maxReceiveBufferSize = Integer.getInteger("nio.maxReceiveBufferSize", 64 * 1024);
+
+    /**
+     * 一次可读事件中最多从一个连接读取的字节数，读满后先处理其他连接，避免一个连接独占reactor线程
+     */
+    private int readBudgetBytes = Integer.getInteger("nio.readBudgetBytes", 64 * 1024);
+
+    /**
+     * 响应缓存（{@link ResponseCache}）的总字节数上限，每个I/O线程一份，0表示不启用
+     */
+    private long responseCacheMaxBytes = Long.getLong("nio.responseCacheMaxBytes", 0L);
+
+    /**
+     * 单个编码后的响应超过该大小不缓存
+     */
+    private int responseCacheMaxEntryBytes = Integer.getInteger("nio.responseCacheMaxEntryBytes", 64 * 1024);
+
+    /**
+     * 缓存的响应的有效期
+     */
+    private long responseCacheTtlMillis = Long.getLong("nio.responseCacheTtlMillis", 1000L);
+
+    /**
+     * 是否按Accept-Encoding压缩文本类响应（{@link CompressionHandler}）
+     */
+    private boolean compression = Boolean.parseBoolean(System.getProperty("nio.compression", "true"));
+
+    /**
+     * 压缩级别0~9，级别越高压缩率越高、CPU开销越大
+     */
+    private int compressionLevel = Integer.getInteger("nio.compressionLevel", 6);
+
+    /**
+     * 响应体小于该大小时不压缩
+     */
+    private int compressionMinBytes = Integer.getInteger("nio.compressionMinBytes", 1024);
+
+    /**
+     * 可复用响应体（静态文件等）的压缩版本缓存的总字节数上限
+     */
+    private long compressionCacheMaxBytes = Long.getLong("nio.compressionCacheMaxBytes", 32 * 1024 * 1024L);
+
+    /**
+     * 录制请求流量（{@link TrafficCapture}）的目录，每次启动在其下新建一个子目录，为空表示不录制
+     */
+    private String captureDirectory = System.getProperty("nio.capture.dir");
+
+    /**
+     * 录制文件每个分段的大小
+     */
+    private int captureSegmentBytes = Integer.getInteger("nio.capture.segmentBytes", 64 * 1024 * 1024);
+
+    /**
+     * 每个I/O线程最多的分段数，写满后不再录制
+     */
+    private int captureMaxSegments = Integer.getInteger("nio.capture.maxSegments", 16);
+
+    /**
+     * 获取指标的HTTP路径，为空表示不开放
+     */
+    private String metricsPath = System.getProperty("nio.metricsPath", "/metrics");
+
+    public int getPort() {
+        return port;
+    }
+
+    public ServerConfig setPort(int port) {
+        this.port = port;
+        return this;
+    }
+
+    public boolean isTcpNoDelay() {
+        return tcpNoDelay;
+    }
+
+    public ServerConfig setTcpNoDelay(boolean tcpNoDelay) {
+        this.tcpNoDelay = tcpNoDelay;
+        return this;
+    }
+
+    /**
+     * @return 所有监听地址，没有配置{@link #listenAddresses}时只有{@link #port}一个
+     */
+    public List<InetSocketAddress> getListenAddresses() {
+        return listenAddresses.isEmpty() ? Collections.singletonList(new InetSocketAddress(port)) : listenAddresses;
+    }
+
+    public ServerConfig setListenAddresses(List<InetSocketAddress> listenAddresses) {
+        this.listenAddresses = listenAddresses;
+        return this;
+    }
+
+    public int getAcceptBacklog() {
+        return acceptBacklog;
+    }
+
+    public ServerConfig setAcceptBacklog(int acceptBacklog) {
+        this.acceptBacklog = acceptBacklog;
+        return this;
+    }
+
+    public int getMaxAcceptsPerLoop() {
+        return maxAcceptsPerLoop;
+    }
+
+    public ServerConfig setMaxAcceptsPerLoop(int maxAcceptsPerLoop) {
+        this.maxAcceptsPerLoop = maxAcceptsPerLoop;
+        return this;
+    }
+
+    public int getSocketReceiveBufferSize() {
+        return socketReceiveBufferSize;
+    }
+
+    public ServerConfig setSocketReceiveBufferSize(int socketReceiveBufferSize) {
+        this.socketReceiveBufferSize = socketReceiveBufferSize;
+        return this;
+    }
+
+    public int getSocketSendBufferSize() {
+        return socketSendBufferSize;
+    }
+
+    public ServerConfig setSocketSendBufferSize(int socketSendBufferSize) {
+        this.socketSendBufferSize = socketSendBufferSize;
+        return this;
+    }
+
+    public int getIoThreads() {
+        return ioThreads;
+    }
+
+    public ServerConfig setIoThreads(int ioThreads) {
+        this.ioThreads = ioThreads;
+        return this;
+    }
+
+    public ConnectionBalancer getBalancer() {
+        return balancer;
+    }
+
+    public ServerConfig setBalancer(ConnectionBalancer balancer) {
+        this.balancer = balancer;
+        return this;
+    }
+
+    public WaitStrategy getWaitStrategy() {
+        return waitStrategy;
+    }
+
+    public ServerConfig setWaitStrategy(WaitStrategy waitStrategy) {
+        this.waitStrategy = waitStrategy;
+        return this;
+    }
+
+    public int getSelectorAutoRebuildThreshold() {
+        return selectorAutoRebuildThreshold;
+    }
+
+    public ServerConfig setSelectorAutoRebuildThreshold(int selectorAutoRebuildThreshold) {
+        this.selectorAutoRebuildThreshold = selectorAutoRebuildThreshold;
+        return this;
+    }
+
+    public int getWriteBufferHighWaterMark() {
+        return writeBufferHighWaterMark;
+    }
+
+    public ServerConfig setWriteBufferHighWaterMark(int writeBufferHighWaterMark) {
+        this.writeBufferHighWaterMark = writeBufferHighWaterMark;
+        return this;
+    }
+
+    public int getWriteBufferLowWaterMark() {
+        return writeBufferLowWaterMark;
+    }
+
+    public ServerConfig setWriteBufferLowWaterMark(int writeBufferLowWaterMark) {
+        this.writeBufferLowWaterMark = writeBufferLowWaterMark;
+        return this;
+    }
+
+    public int getWorkerThreads() {
+        return workerThreads;
+    }
+
+    public ServerConfig setWorkerThreads(int workerThreads) {
+        this.workerThreads = workerThreads;
+        return this;
+    }
+
+    public int getWorkerQueueCapacity() {
+        return workerQueueCapacity;
+    }
+
+    public ServerConfig setWorkerQueueCapacity(int workerQueueCapacity) {
+        this.workerQueueCapacity = workerQueueCapacity;
+        return this;
+    }
+
+    public boolean isShedWhenWorkerBusy() {
+        return shedWhenWorkerBusy;
+    }
+
+    public ServerConfig setShedWhenWorkerBusy(boolean shedWhenWorkerBusy) {
+        this.shedWhenWorkerBusy = shedWhenWorkerBusy;
+        return this;
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public ServerConfig setMaxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+        return this;
+    }
+
+    public int getAcceptRatePerSecond() {
+        return acceptRatePerSecond;
+    }
+
+    public ServerConfig setAcceptRatePerSecond(int acceptRatePerSecond) {
+        this.acceptRatePerSecond = acceptRatePerSecond;
+        return this;
+    }
+
+    public int getAcceptBurst() {
+        return acceptBurst;
+    }
+
+    public ServerConfig setAcceptBurst(int acceptBurst) {
+        this.acceptBurst = acceptBurst;
+        return this;
+    }
+
+    public int getMaxPipelinedRequests() {
+        return maxPipelinedRequests;
+    }
+
+    public ServerConfig setMaxPipelinedRequests(int maxPipelinedRequests) {
+        this.maxPipelinedRequests = maxPipelinedRequests;
+        return this;
+    }
+
+    public long getIdleTimeoutMillis() {
+        return idleTimeoutMillis;
+    }
+
+    public ServerConfig setIdleTimeoutMillis(long idleTimeoutMillis) {
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        return this;
+    }
+
+    public long getReadTimeoutMillis() {
+        return readTimeoutMillis;
+    }
+
+    public ServerConfig setReadTimeoutMillis(long readTimeoutMillis) {
+        this.readTimeoutMillis = readTimeoutMillis;
+        return this;
+    }
+
+    public long getWriteTimeoutMillis() {
+        return writeTimeoutMillis;
+    }
+
+    public ServerConfig setWriteTimeoutMillis(long writeTimeoutMillis) {
+        this.writeTimeoutMillis = writeTimeoutMillis;
+        return this;
+    }
+
+    public int getMinReceiveBufferSize() {
+        return minReceiveBufferSize;
+    }
+
+    public ServerConfig setMinReceiveBufferSize(int minReceiveBufferSize) {
+        this.minReceiveBufferSize = minReceiveBufferSize;
+        return this;
+    }
+
+    public int getInitialReceiveBufferSize() {
+        return initialReceiveBufferSize;
+    }
+
+    public ServerConfig setInitialReceiveBufferSize(int initialReceiveBufferSize) {
+        this.initialReceiveBufferSize = initialReceiveBufferSize;
+        return this;
+    }
+
+    public int getMaxReceiveBufferSize() {
+        return maxReceiveBufferSize;
+    }
+
+    public ServerConfig setMaxReceiveBufferSize(int maxReceiveBufferSize) {
+        this.maxReceiveBufferSize = maxReceiveBufferSize;
+        return this;
+    }
+
+    public int getReadBudgetBytes() {
+        return readBudgetBytes;
+    }
+
+    public ServerConfig setReadBudgetBytes(int readBudgetBytes) {
+        this.readBudgetBytes = readBudgetBytes;
+        return this;
+    }
+
+    public long getResponseCacheMaxBytes() {
+        return responseCacheMaxBytes;
+    }
+
+    public ServerConfig setResponseCacheMaxBytes(long responseCacheMaxBytes) {
+        this.responseCacheMaxBytes = responseCacheMaxBytes;
+        return this;
+    }
+
+    public int getResponseCacheMaxEntryBytes() {
+        return responseCacheMaxEntryBytes;
+    }
+
+    public ServerConfig setResponseCacheMaxEntryBytes(int responseCacheMaxEntryBytes) {
+        this.responseCacheMaxEntryBytes = responseCacheMaxEntryBytes;
+        return this;
+    }
+
+    public long getResponseCacheTtlMillis() {
+        return responseCacheTtlMillis;
+    }
+
+    public ServerConfig setResponseCacheTtlMillis(long responseCacheTtlMillis) {
+        this.responseCacheTtlMillis = responseCacheTtlMillis;
+        return this;
+    }
+
+    public boolean isCompression() {
+        return compression;
+    }
+
+    public ServerConfig setCompression(boolean compression) {
+        this.compression = compression;
+        return this;
+    }
+
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    public ServerConfig setCompressionLevel(int compressionLevel) {
+        this.compressionLevel = compressionLevel;
+        return this;
+    }
+
+    public int getCompressionMinBytes() {
+        return compressionMinBytes;
+    }
+
+    public ServerConfig setCompressionMinBytes(int compressionMinBytes) {
+        this.compressionMinBytes = compressionMinBytes;
+        return this;
+    }
+
+    public long getCompressionCacheMaxBytes() {
+        return compressionCacheMaxBytes;
+    }
+
+    public ServerConfig setCompressionCacheMaxBytes(long compressionCacheMaxBytes) {
+        this.compressionCacheMaxBytes = compressionCacheMaxBytes;
+        return this;
+    }
+
+    public String getCaptureDirectory() {
+        return captureDirectory;
+    }
+
+    public ServerConfig setCaptureDirectory(String captureDirectory) {
+        this.captureDirectory = captureDirectory;
+        return this;
+    }
+
+    public int getCaptureSegmentBytes() {
+        return captureSegmentBytes;
+    }
+
+    public ServerConfig setCaptureSegmentBytes(int captureSegmentBytes) {
+        this.captureSegmentBytes = captureSegmentBytes;
+        return this;
+    }
+
+    public int getCaptureMaxSegments() {
+        return captureMaxSegments;
+    }
+
+    public ServerConfig setCaptureMaxSegments(int captureMaxSegments) {
+        this.captureMaxSegments = captureMaxSegments;
+        return this;
+    }
+
+    public String getMetricsPath() {
+        return metricsPath;
+    }
+
+    public ServerConfig setMetricsPath(String metricsPath) {
+        this.metricsPath = metricsPath;
+        return this;
+    }
+
+    /**
+     * 解析逗号分隔的[host:]port列表，IPv6地址写成[::1]:8089
+     */
+    static List<InetSocketAddress> parseAddresses(String value) {
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        for (String item : value.split(",")) {
+            item = item.trim();
+            if (item.isEmpty()) {
+                continue;
+            }
+            int colon = item.lastIndexOf(':');
+            int port = Integer.parseInt(item.substring(colon + 1));
+            if (colon < 0) {
+                addresses.add(new InetSocketAddress(port));
+                continue;
+            }
+            String host = item.substring(0, colon);
+            if (host.startsWith("[") && host.endsWith("]")) {
+                host = host.substring(1, host.length() - 1);
+            }
+            addresses.add(host.isEmpty() || host.equals("*") ? new InetSocketAddress(port)
+                    : new InetSocketAddress(host, port));
+        }
+        return addresses;
+    }
+}
@@ -0,0 +1,131 @@
+package com.study.hc.net.nio;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.function.Supplier;
+
+/**
+ * {@link NIOServerV3}、{@link NettyServer}的指标入口：进程内通过{@link NIOServerV3#metrics()}获取，
+ * 也可以通过HTTP请求{@link ServerConfig#getMetricsPath()}获取文本格式（Prometheus格式）
+ *
+ * @author chensicong
+ * @date 2026-10-18 11:00
+ **/
+public class ServerMetrics {
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private final List<ReactorMetrics> reactors;
+
+    private final ThreadPoolExecutor workerThreadPool;
+
+    ServerMetrics(List<ReactorMetrics> reactors, ThreadPoolExecutor workerThreadPool) {
+        this.reactors = Collections.unmodifiableList(reactors);
+        this.workerThreadPool = workerThreadPool;
+    }
+
+    /**
+     * 请求路径为metricsPath时返回指标文本，其他请求交给业务handler；metricsPath为空时直接返回handler
+     */
+    static HttpHandler withEndpoint(String metricsPath, Supplier<ServerMetrics> metrics, HttpHandler handler) {
+        if (metricsPath == null || metricsPath.isEmpty()) {
+            return handler;
+        }
+        return request -> {
+            if (request.pathEquals(metricsPath)) {
+                return new HttpResponse(200).header("Content-Type", "text/plain; version=0.0.4; charset=utf-8")
+                        .header("Cache-Control", "no-store")
+                        .body(metrics.get().toText());
+            }
+            return handler.handle(request);
+        };
+    }
+
+    /**
+     * 所有reactor线程（acceptor和I/O线程）的指标
+     */
+    public List<ReactorMetrics> reactors() {
+        return reactors;
+    }
+
+    /**
+     * 汇总所有reactor线程的请求耗时
+     */
+    public Histogram requestLatencyNanos() {
+        Histogram total = new Histogram();
+        for (ReactorMetrics reactor : reactors) {
+            total.add(reactor.requestLatencyNanos());
+        }
+        return total;
+    }
+
+    public int workerActiveCount() {
+        return workerThreadPool.getActiveCount();
+    }
+
+    public int workerQueueSize() {
+        return workerThreadPool.getQueue().size();
+    }
+
+    public String toText() {
+        StringBuilder out = new StringBuilder(8192);
+        out.append("nio_worker_active_threads ").append(workerActiveCount()).append('\n');
+        out.append("nio_worker_queue_size ").append(workerQueueSize()).append('\n');
+        out.append("nio_buffer_pool_hits_total ").append(BufferPool.DEFAULT.hitCount()).append('\n');
+        out.append("nio_buffer_pool_misses_total ").append(BufferPool.DEFAULT.missCount()).append('\n');
+        out.append("nio_access_log_written_total ").append(AccessLog.DEFAULT.writtenCount()).append('\n');
+        out.append("nio_access_log_dropped_total ").append(AccessLog.DEFAULT.droppedCount()).append('\n');
+        for (ReactorMetrics reactor : reactors) {
+            String label = "{reactor=\"" + reactor.name() + "\"}";
+            gauge(out, "nio_reactor_active_connections", label, reactor.activeConnections());
+            gauge(out, "nio_reactor_pending_outbound_bytes", label, reactor.pendingOutboundBytes());
+            gauge(out, "nio_reactor_task_queue_depth", label, reactor.taskQueueDepth());
+            gauge(out, "nio_reactor_loop_iterations_total", label, reactor.loopIterations());
+            out.append("nio_reactor_utilization").append(label).append(' ')
+                    .append(String.format(Locale.ROOT, "%.4f", reactor.utilization())).append('\n');
+            gauge(out, "nio_reactor_spin_nanos_total", label, reactor.spinNanosTotal());
+            gauge(out, "nio_reactor_park_nanos_total", label, reactor.parkNanosTotal());
+            gauge(out, "nio_reactor_parks_total", label, reactor.parks());
+            gauge(out, "nio_reactor_premature_selects_total", label, reactor.prematureSelects());
+            gauge(out, "nio_reactor_selector_rebuilds_total", label, reactor.selectorRebuilds());
+            gauge(out, "nio_reactor_bytes_read_total", label, reactor.bytesRead());
+            gauge(out, "nio_reactor_bytes_written_total", label, reactor.bytesWritten());
+            gauge(out, "nio_reactor_requests_total", label, reactor.requests());
+            gauge(out, "nio_reactor_connections_accepted_total", label, reactor.connectionsAccepted());
+            gauge(out, "nio_reactor_connections_rejected_total", label, reactor.connectionsRejected());
+            gauge(out, "nio_reactor_accepts_throttled_total", label, reactor.acceptsThrottled());
+            gauge(out, "nio_reactor_requests_shed_total", label, reactor.requestsShed());
+            histogram(out, "nio_reactor_loop_busy_nanos", reactor.name(), reactor.loopBusyNanos());
+            histogram(out, "nio_reactor_select_nanos", reactor.name(), reactor.selectNanos());
+            histogram(out, "nio_reactor_spin_nanos", reactor.name(), reactor.spinNanos());
+            histogram(out, "nio_reactor_park_nanos", reactor.name(), reactor.parkNanos());
+            histogram(out, "nio_reactor_task_drain_nanos", reactor.name(), reactor.taskDrainNanos());
+            histogram(out, "nio_reactor_handle_nanos", reactor.name(), reactor.handleNanos());
+            histogram(out, "nio_reactor_selected_keys", reactor.name(), reactor.selectedKeys());
+            histogram(out, "nio_reactor_request_latency_nanos", reactor.name(), reactor.requestLatencyNanos());
+            histogram(out, "nio_reactor_handler_nanos", reactor.name(), reactor.handlerNanos());
+            histogram(out, "nio_reactor_accept_batch", reactor.name(), reactor.acceptBatch());
+        }
+        return out.toString();
+    }
+
+    private static void gauge(StringBuilder out, String name, String label, long value) {
+        out.append(name).append(label).append(' ').append(value).append('\n');
+    }
+
+    private static void histogram(StringBuilder out, String name, String reactor, Histogram live) {
+        Histogram histogram = live.snapshot();
+        if (histogram.count() == 0) {
+            return;
+        }
+        for (double quantile : QUANTILES) {
+            out.append(name).append("{reactor=\"").append(reactor).append("\",quantile=\"").append(quantile)
+                    .append("\"} ").append(histogram.percentile(quantile)).append('\n');
+        }
+        gauge(out, name + "_max", "{reactor=\"" + reactor + "\"}", histogram.max());
+        gauge(out, name + "_sum", "{reactor=\"" + reactor + "\"}", histogram.sum());
+        gauge(out, name + "_count", "{reactor=\"" + reactor + "\"}", histogram.count());
+    }
+}
@@ -0,0 +1,356 @@
+package com.study.hc.net.nio;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 静态文件处理器，把root目录下的文件作为HTTP资源返回
+ * <p>
+ * 小文件读入堆外缓冲区后缓存起来（按总字节数做LRU淘汰），每次响应直接写出缓冲区的只读副本，不再读磁盘也不拷贝；
+ * 大文件用{@link FileRegion}发送，由内核sendfile从page cache直接写到socket。
+ * 缓存没有用mmap：映射的文件被截断后再访问会直接导致JVM崩溃，而且Java 8没有办法主动解除映射。
+ * <p>
+ * 支持ETag/If-None-Match、Last-Modified/If-Modified-Since条件请求，以及单个区间的Range请求（多区间时返回完整内容）。
+ * HEAD和GET生成同样的响应，由编码器只写出响应头。
+ *
+ * @author chensicong
+ * @date 2026-10-18 09:30
+ **/
+public class StaticFileHandler implements HttpHandler {
+
+    private static final long[] UNSATISFIABLE = new long[0];
+
+    private static final Map<String, String> CONTENT_TYPES = new HashMap<>();
+
+    static {
+        CONTENT_TYPES.put("html", "text/html; charset=utf-8");
+        CONTENT_TYPES.put("htm", "text/html; charset=utf-8");
+        CONTENT_TYPES.put("css", "text/css; charset=utf-8");
+        CONTENT_TYPES.put("js", "application/javascript; charset=utf-8");
+        CONTENT_TYPES.put("json", "application/json; charset=utf-8");
+        CONTENT_TYPES.put("txt", "text/plain; charset=utf-8");
+        CONTENT_TYPES.put("xml", "application/xml; charset=utf-8");
+        CONTENT_TYPES.put("svg", "image/svg+xml");
+        CONTENT_TYPES.put("png", "image/png");
+        CONTENT_TYPES.put("jpg", "image/jpeg");
+        CONTENT_TYPES.put("jpeg", "image/jpeg");
+        CONTENT_TYPES.put("gif", "image/gif");
+        CONTENT_TYPES.put("ico", "image/x-icon");
+        CONTENT_TYPES.put("pdf", "application/pdf");
+        CONTENT_TYPES.put("wasm", "application/wasm");
+    }
+
+    private final Path root;
+
+    /**
+     * 不超过该大小的文件才缓存
+     */
+    private final long cacheMaxFileSize;
+
+    private final FileCache cache;
+
+    public StaticFileHandler(Path root) {
+        this(root, Long.getLong("nio.static.cacheMaxFileSize", 256 * 1024L),
+                Long.getLong("nio.static.cacheCapacity", 32 * 1024 * 1024L));
+    }
+
+    /**
+     * @param cacheMaxFileSize 不超过该大小的文件读入内存缓存
+     * @param cacheCapacity    缓存总字节数上限
+     */
+    public StaticFileHandler(Path root, long cacheMaxFileSize, long cacheCapacity) {
+        this.root = root.toAbsolutePath().normalize();
+        this.cacheMaxFileSize = cacheMaxFileSize;
+        this.cache = new FileCache(cacheCapacity);
+    }
+
+    @Override
+    public HttpResponse handle(HttpRequest request) throws Exception {
+        if (!"GET".equals(request.method()) && !"HEAD".equals(request.method())) {
+            return HttpResponse.error(405, "method not allowed").header("Allow", "GET, HEAD");
+        }
+        Path path;
+        try {
+            path = resolve(request.uri());
+        } catch (IllegalArgumentException e) {
+            // 不完整或者非法的%转义
+            return HttpResponse.error(400, "bad request");
+        }
+        if (path == null) {
+            return HttpResponse.error(403, "forbidden");
+        }
+        if (Files.isDirectory(path)) {
+            path = path.resolve("index.html");
+        }
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return HttpResponse.error(404, "not found");
+        }
+        if (!attributes.isRegularFile()) {
+            return HttpResponse.error(404, "not found");
+        }
+
+        long size = attributes.size();
+        long lastModified = attributes.lastModifiedTime().toMillis();
+        String etag = "\"" + Long.toHexString(size) + "-" + Long.toHexString(lastModified) + "\"";
+        String lastModifiedDate = HttpDate.FORMAT.format(Instant.ofEpochMilli(lastModified));
+
+        if (notModified(request, etag, lastModified)) {
+            return new HttpResponse(304).header("ETag", etag).header("Last-Modified", lastModifiedDate);
+        }
+
+        long start = 0;
+        long end = size - 1;
+        int status = 200;
+        String range = request.header("range");
+        if (range != null && ifRangeMatches(request.header("if-range"), etag, lastModified)) {
+            long[] bounds = parseRange(range, size);
+            if (bounds == UNSATISFIABLE) {
+                return HttpResponse.error(416, "range not satisfiable").header("Content-Range", "bytes */" + size);
+            }
+            if (bounds != null) {
+                start = bounds[0];
+                end = bounds[1];
+                status = 206;
+            }
+        }
+
+        HttpResponse response = new HttpResponse(status)
+                .header("Content-Type", contentType(path))
+                .header("Last-Modified", lastModifiedDate)
+                .header("ETag", etag)
+                .header("Accept-Ranges", "bytes");
+        if (status == 206) {
+            response.header("Content-Range", "bytes " + start + "-" + end + "/" + size);
+        }
+        long length = end - start + 1;
+        ByteBuffer content = size <= cacheMaxFileSize ? cache.get(path, size, lastModified) : null;
+        if (content != null) {
+            ByteBuffer body = content.duplicate();
+            body.position((int) start).limit((int) (start + length));
+            response.body(body.slice());
+        } else {
+            response.body(new FileRegion(path, start, length));
+        }
+        return response;
+    }
+
+    /**
+     * 把请求路径映射到root下的文件，路径跳出root时返回null
+     *
+     * @throws IllegalArgumentException 路径中有非法的%转义
+     */
+    private Path resolve(String uri) throws UnsupportedEncodingException {
+        int end = uri.length();
+        for (int i = 0; i < uri.length(); i++) {
+            char c = uri.charAt(i);
+            if (c == '?' || c == '#') {
+                end = i;
+                break;
+            }
+        }
+        String path = uri.substring(0, end);
+        if (!path.startsWith("/")) {
+            return null;
+        }
+        // URLDecoder按表单格式解码，会把'+'变成空格，路径中的'+'要保留
+        path = URLDecoder.decode(path.replace("+", "%2B"), "UTF-8");
+        if (path.indexOf('\0') >= 0) {
+            return null;
+        }
+        Path resolved = root.resolve(path.substring(1)).normalize();
+        return resolved.startsWith(root) ? resolved : null;
+    }
+
+    private static boolean notModified(HttpRequest request, String etag, long lastModified) {
+        String ifNoneMatch = request.header("if-none-match");
+        if (ifNoneMatch != null) {
+            // 有If-None-Match时忽略If-Modified-Since
+            if ("*".equals(ifNoneMatch.trim())) {
+                return true;
+            }
+            for (String tag : ifNoneMatch.split(",")) {
+                tag = tag.trim();
+                if (tag.startsWith("W/")) {
+                    tag = tag.substring(2);
+                }
+                if (tag.equals(etag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        long since = parseDate(request.header("if-modified-since"));
+        // HTTP日期只精确到秒
+        return since >= 0 && lastModified / 1000 <= since / 1000;
+    }
+
+    private static boolean ifRangeMatches(String ifRange, String etag, long lastModified) {
+        if (ifRange == null) {
+            return true;
+        }
+        ifRange = ifRange.trim();
+        if (ifRange.startsWith("\"")) {
+            return ifRange.equals(etag);
+        }
+        long date = parseDate(ifRange);
+        return date >= 0 && lastModified / 1000 == date / 1000;
+    }
+
+    private static long parseDate(String value) {
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return ZonedDateTime.parse(value.trim(), HttpDate.FORMAT).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * 解析"bytes=start-end"形式的单个区间
+     *
+     * @return {start, end}（都包含）；格式不支持或多个区间时返回null，按完整内容响应；区间超出文件时返回UNSATISFIABLE
+     */
+    static long[] parseRange(String range, long size) {
+        range = range.trim();
+        if (!range.startsWith("bytes=")) {
+            return null;
+        }
+        String spec = range.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0 || spec.indexOf(',') >= 0) {
+            return null;
+        }
+        String first = spec.substring(0, dash).trim();
+        String last = spec.substring(dash + 1).trim();
+        try {
+            long start;
+            long end;
+            if (first.isEmpty()) {
+                // bytes=-n 表示最后n个字节
+                long suffix = Long.parseLong(last);
+                if (suffix <= 0 || size == 0) {
+                    return UNSATISFIABLE;
+                }
+                start = Math.max(0, size - suffix);
+                end = size - 1;
+            } else {
+                start = Long.parseLong(first);
+                end = last.isEmpty() ? size - 1 : Math.min(Long.parseLong(last), size - 1);
+                if (start >= size) {
+                    return UNSATISFIABLE;
+                }
+                if (end < start) {
+                    return null;
+                }
+            }
+            return new long[]{start, end};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static String contentType(Path path) {
+        String name = path.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String type = dot < 0 ? null : CONTENT_TYPES.get(name.substring(dot + 1).toLowerCase(Locale.ROOT));
+        return type == null ? "application/octet-stream" : type;
+    }
+
+    /**
+     * 小文件内容缓存，按总字节数做LRU淘汰；会被多个业务线程同时访问，用synchronized保护
+     */
+    private static final class FileCache {
+
+        private final long capacity;
+
+        private final LinkedHashMap<Path, CachedFile> files = new LinkedHashMap<>(16, 0.75f, true);
+
+        private long totalBytes;
+
+        FileCache(long capacity) {
+            this.capacity = capacity;
+        }
+
+        /**
+         * @return 文件内容的只读缓冲区，文件在读取过程中被修改时返回null
+         */
+        ByteBuffer get(Path path, long size, long lastModified) throws IOException {
+            synchronized (this) {
+                CachedFile cached = files.get(path);
+                if (cached != null && cached.size == size && cached.lastModified == lastModified) {
+                    return cached.content;
+                }
+            }
+            // 读文件不持有锁，同一个文件被并发加载时后放入的覆盖先放入的
+            ByteBuffer content = load(path, size);
+            if (content == null || size > capacity) {
+                return content;
+            }
+            synchronized (this) {
+                CachedFile previous = files.put(path, new CachedFile(size, lastModified, content));
+                if (previous != null) {
+                    totalBytes -= previous.size;
+                }
+                totalBytes += size;
+                Iterator<CachedFile> iterator = files.values().iterator();
+                while (totalBytes > capacity && iterator.hasNext()) {
+                    totalBytes -= iterator.next().size;
+                    iterator.remove();
+                }
+            }
+            return content;
+        }
+
+        private static ByteBuffer load(Path path, long size) throws IOException {
+            ByteBuffer content = ByteBuffer.allocateDirect((int) size);
+            try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ)) {
+                while (content.hasRemaining()) {
+                    if (file.read(content) < 0) {
+                        return null;
+                    }
+                }
+                if (file.size() != size) {
+                    return null;
+                }
+            }
+            content.flip();
+            return content.asReadOnlyBuffer();
+        }
+    }
+
+    private static final class CachedFile {
+
+        final long size;
+
+        final long lastModified;
+
+        final ByteBuffer content;
+
+        CachedFile(long size, long lastModified, ByteBuffer content) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.content = content;
+        }
+    }
+}
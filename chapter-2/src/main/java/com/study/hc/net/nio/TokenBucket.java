@@ -0,0 +1,58 @@
+package com.study.hc.net.nio;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 令牌桶限流：按固定速率生成令牌，桶里最多攒burst个，允许短时间的突发，长期速率不超过permitsPerSecond。
+ * 令牌在取用时按经过的时间一次性补足，不需要定时任务。只由一个线程（acceptor）访问，不做同步
+ *
+ * @author chensicong
+ * @date 2026-10-18 21:00
+ **/
+class TokenBucket {
+
+    private final double permitsPerNano;
+
+    private final double burst;
+
+    private double tokens;
+
+    private long lastRefillNanos;
+
+    TokenBucket(double permitsPerSecond, int burst) {
+        this.permitsPerNano = permitsPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.burst = Math.max(1, burst);
+        this.tokens = this.burst;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    /**
+     * 取一个令牌
+     *
+     * @return 没有令牌时返回false，不等待
+     */
+    boolean tryAcquire(long nowNanos) {
+        refill(nowNanos);
+        if (tokens < 1) {
+            return false;
+        }
+        tokens -= 1;
+        return true;
+    }
+
+    /**
+     * 距离下一个令牌生成还需要的时间
+     */
+    long nanosUntilAvailable(long nowNanos) {
+        refill(nowNanos);
+        return tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) / permitsPerNano);
+    }
+
+    private void refill(long nowNanos) {
+        long elapsed = nowNanos - lastRefillNanos;
+        if (elapsed > 0) {
+            tokens = Math.min(burst, tokens + elapsed * permitsPerNano);
+            lastRefillNanos = nowNanos;
+        }
+    }
+}
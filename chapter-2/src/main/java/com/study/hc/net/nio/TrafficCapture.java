@@ -0,0 +1,235 @@
+package com.study.hc.net.nio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 流量录制：把I/O线程读到的原始请求字节连同连接ID和纳秒时间戳追加到内存映射的分段文件中，
+ * 用{@link TrafficReplay}按原来的节奏重放，用真实的请求组合做性能对比
+ * <p>
+ * 每个I/O线程一个实例、一组分段文件，只由所属线程写入，不加锁；追加一条记录只是往映射的内存里拷贝字节，没有系统调用。
+ * 下一个分段由后台线程提前创建、映射并逐页触碰（缺页中断和分配磁盘块都发生在后台线程），
+ * 写满时只是切换到已经准备好的分段；还没准备好或者分段数达到上限时丢弃记录并计数，永远不阻塞I/O线程。
+ * 脏页由内核写回，进程退出（包括被kill）后已经写入映射内存的记录也不会丢；Java 8没有办法主动解除映射，写满的分段等GC回收。
+ * <p>
+ * 文件格式（字节序为大端）：分段头16字节 = magic(4) 版本(4) 录制开始的时间戳毫秒(8)；
+ * 之后是按8字节对齐的记录，记录头32字节 = 记录长度(4，含头和对齐填充，0表示分段结束) 数据长度(4)
+ * 连接ID(8) 相对录制开始的纳秒(8) 类型(1) 保留(7)，后面跟数据
+ *
+ * @author chensicong
+ * @date 2026-10-19 03:00
+ **/
+final class TrafficCapture {
+
+    static final int MAGIC = 0x4e434150;
+
+    static final int VERSION = 1;
+
+    static final int SEGMENT_HEADER_SIZE = 16;
+
+    static final int RECORD_HEADER_SIZE = 32;
+
+    /**
+     * 记录类型：连接建立、读到数据、连接关闭
+     */
+    static final byte OPEN = 1;
+
+    static final byte DATA = 2;
+
+    static final byte CLOSE = 3;
+
+    static final String FILE_SUFFIX = ".cap";
+
+    private static final int PAGE_SIZE = 4096;
+
+    /**
+     * 时间戳的起点，所有I/O线程共用，重放时不同线程上的连接可以按同一个时间轴排列
+     */
+    private static final long START_NANOS = System.nanoTime();
+
+    private static final long START_MILLIS = System.currentTimeMillis();
+
+    private static final AtomicLong CONNECTION_IDS = new AtomicLong();
+
+    /**
+     * 所有实例共用的后台线程，负责创建下一个分段
+     */
+    private static final ExecutorService PREPARER = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "nio-capture");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Path directory;
+
+    private final String name;
+
+    private final int segmentSize;
+
+    private final int maxSegments;
+
+    /**
+     * 正在写入的分段，只由所属I/O线程访问
+     */
+    private MappedByteBuffer current;
+
+    /**
+     * 后台线程准备好的下一个分段
+     */
+    private volatile MappedByteBuffer next;
+
+    private final AtomicBoolean preparing = new AtomicBoolean();
+
+    /**
+     * 已经创建的分段数，只由后台线程（和构造方法）更新
+     */
+    private volatile int segments;
+
+    private final AtomicLong capturedBytes = new AtomicLong();
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * 同步创建第一个分段，并在后台准备第二个
+     *
+     * @param directory 本次录制的目录，见{@link #createRunDirectory(Path)}
+     * @param name      分段文件名前缀，一般是I/O线程名
+     */
+    TrafficCapture(Path directory, String name, int segmentSize, int maxSegments) throws IOException {
+        this.directory = directory;
+        this.name = name;
+        this.segmentSize = segmentSize;
+        this.maxSegments = maxSegments;
+        this.current = createSegment();
+        prepareNext();
+    }
+
+    /**
+     * 在root下为本次录制新建一个以启动时间命名的目录，重放时指定这个目录
+     */
+    static Path createRunDirectory(Path root) throws IOException {
+        Path directory = root.resolve(new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date(START_MILLIS)));
+        Files.createDirectories(directory);
+        System.out.println("录制请求到" + directory.toAbsolutePath());
+        return directory;
+    }
+
+    /**
+     * 为新连接分配ID并记录连接建立
+     */
+    long opened() {
+        long id = CONNECTION_IDS.incrementAndGet();
+        append(OPEN, id, null);
+        return id;
+    }
+
+    /**
+     * 记录读到的数据，不改变缓冲区的position
+     */
+    void data(long connectionId, ByteBuffer data) {
+        append(DATA, connectionId, data);
+    }
+
+    void closed(long connectionId) {
+        append(CLOSE, connectionId, null);
+    }
+
+    private void append(byte type, long connectionId, ByteBuffer data) {
+        int length = data == null ? 0 : data.remaining();
+        int recordLength = (RECORD_HEADER_SIZE + length + 7) & ~7;
+        MappedByteBuffer segment = current;
+        if (segment.remaining() < recordLength) {
+            if (recordLength > segmentSize - SEGMENT_HEADER_SIZE) {
+                drop();
+                return;
+            }
+            segment = next;
+            if (segment == null) {
+                // 下一个分段还没准备好（或者已经达到上限），丢弃记录而不是等待
+                drop();
+                prepareNext();
+                return;
+            }
+            next = null;
+            current = segment;
+            prepareNext();
+        }
+        int position = segment.position();
+        segment.putInt(position + 4, length);
+        segment.putLong(position + 8, connectionId);
+        segment.putLong(position + 16, System.nanoTime() - START_NANOS);
+        segment.put(position + 24, type);
+        if (data != null) {
+            int dataPosition = data.position();
+            segment.position(position + RECORD_HEADER_SIZE);
+            segment.put(data);
+            data.position(dataPosition);
+        }
+        // 记录长度最后写，录制过程中读取文件的进程看到非0的长度时记录已经完整
+        segment.putInt(position, recordLength);
+        segment.position(position + recordLength);
+        capturedBytes.lazySet(capturedBytes.get() + length);
+    }
+
+    private void drop() {
+        dropped.lazySet(dropped.get() + 1);
+    }
+
+    private void prepareNext() {
+        if (next != null || segments >= maxSegments || !preparing.compareAndSet(false, true)) {
+            return;
+        }
+        PREPARER.execute(() -> {
+            try {
+                next = createSegment();
+            } catch (IOException ex) {
+                System.err.println(name + ": failed to create capture segment, " + ex);
+            } finally {
+                preparing.set(false);
+            }
+        });
+    }
+
+    private MappedByteBuffer createSegment() throws IOException {
+        int index = segments + 1;
+        Path file = directory.resolve(String.format("%s-%05d%s", name, index, FILE_SUFFIX));
+        MappedByteBuffer segment;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            // 映射超出文件大小时文件自动扩展；关闭channel不影响已经建立的映射
+            segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+        for (int i = 0; i < segmentSize; i += PAGE_SIZE) {
+            segment.put(i, (byte) 0);
+        }
+        segment.putInt(0, MAGIC).putInt(4, VERSION).putLong(8, START_MILLIS);
+        segment.position(SEGMENT_HEADER_SIZE);
+        segments = index;
+        return segment;
+    }
+
+    /**
+     * 已录制的数据字节数（不含记录头）
+     */
+    long capturedBytes() {
+        return capturedBytes.get();
+    }
+
+    /**
+     * 因分段没有准备好或者已达上限而丢弃的记录数
+     */
+    long droppedCount() {
+        return dropped.get();
+    }
+}
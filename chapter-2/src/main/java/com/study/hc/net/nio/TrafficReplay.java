@@ -0,0 +1,605 @@
+package com.study.hc.net.nio;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 重放{@link TrafficCapture}录制的请求流量，用真实的请求组合压测服务端
+ * <p>
+ * 映射录制目录下的所有分段文件，每个录制的连接重放为一个新连接：连接建立、每次读到的数据、连接关闭都按录制时的时间点发生，
+ * 同一个连接内的数据严格按原来的顺序发送。--speed=1按原来的节奏，2表示两倍速，0表示不等待、所有数据尽快发出。
+ * 发送的是映射文件的切片，不拷贝到堆上；录制中的连接关闭重放为关闭输出（半关闭），服务端写完处理中的响应后关闭连接。
+ * 和{@link NIOClient}一样，连接平均分布在若干个客户端reactor线程上，每个线程一个Selector，全部非阻塞。
+ * <p>
+ * 统计响应数、非2xx响应数、错误数，以及数据实际发出的时间比计划晚了多少（调度延迟，持续偏大说明重放端跟不上，节奏已经失真）。
+ * 用法：TrafficReplay --dir=录制目录 [--host=localhost --port=8089 --speed=1 --threads=2 --timeout=30]
+ *
+ * @author chensicong
+ * @date 2026-10-19 03:00
+ **/
+public class TrafficReplay {
+
+    private final InetSocketAddress address;
+
+    private final List<CapturedConnection> connections;
+
+    /**
+     * 重放速度倍数，0表示尽快发送
+     */
+    private final double speed;
+
+    private final int threads;
+
+    /**
+     * 最后一个事件之后最多再等待多久（服务端还没有关闭的连接直接放弃）
+     */
+    private final long timeoutNanos;
+
+    /**
+     * 录制中第一个和最后一个事件的时间
+     */
+    private final long firstNanos;
+
+    private final long lastNanos;
+
+    private long startNanos;
+
+    public TrafficReplay(InetSocketAddress address, List<CapturedConnection> connections, double speed, int threads,
+                         long timeoutSeconds) {
+        this.address = address;
+        this.connections = connections;
+        this.speed = speed;
+        this.threads = Math.max(1, Math.min(threads, connections.size()));
+        this.timeoutNanos = TimeUnit.SECONDS.toNanos(timeoutSeconds);
+        long first = Long.MAX_VALUE;
+        long last = 0;
+        for (CapturedConnection connection : connections) {
+            first = Math.min(first, connection.openNanos);
+            last = Math.max(last, connection.endNanos());
+        }
+        this.firstNanos = connections.isEmpty() ? 0 : first;
+        this.lastNanos = connections.isEmpty() ? 0 : last;
+    }
+
+    public static void main(String[] args) throws Exception {
+        String dir = option(args, "dir", null);
+        if (dir == null) {
+            System.err.println("usage: TrafficReplay --dir=capture-directory [--host=localhost --port=8089 "
+                    + "--speed=1 --threads=2 --timeout=30]");
+            System.exit(1);
+        }
+        List<CapturedConnection> connections = load(Paths.get(dir));
+        InetSocketAddress address = new InetSocketAddress(option(args, "host", "localhost"),
+                Integer.parseInt(option(args, "port", "8089")));
+        new TrafficReplay(address, connections, Double.parseDouble(option(args, "speed", "1")),
+                Integer.parseInt(option(args, "threads", "2")),
+                Long.parseLong(option(args, "timeout", "30"))).run();
+    }
+
+    private static String option(String[] args, String name, String defaultValue) {
+        String prefix = "--" + name + "=";
+        for (String arg : args) {
+            if (arg.startsWith(prefix)) {
+                return arg.substring(prefix.length());
+            }
+        }
+        return defaultValue;
+    }
+
+    /**
+     * 读取录制目录下的所有分段，按连接归类。同一个I/O线程的分段按文件名顺序读取，
+     * 一个连接的记录都在同一个I/O线程的分段中，所以读出来就是原来的顺序
+     *
+     * @return 按连接建立时间排序的连接
+     */
+    public static List<CapturedConnection> load(Path directory) throws IOException {
+        List<Path> files;
+        try (Stream<Path> list = Files.list(directory)) {
+            files = list.filter(file -> file.getFileName().toString().endsWith(TrafficCapture.FILE_SUFFIX))
+                    .sorted().collect(Collectors.toList());
+        }
+        Map<Long, CapturedConnection> byId = new HashMap<>();
+        for (Path file : files) {
+            MappedByteBuffer segment;
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            if (segment.limit() < TrafficCapture.SEGMENT_HEADER_SIZE || segment.getInt(0) != TrafficCapture.MAGIC
+                    || segment.getInt(4) != TrafficCapture.VERSION) {
+                throw new IOException("not a capture segment: " + file);
+            }
+            int position = TrafficCapture.SEGMENT_HEADER_SIZE;
+            while (position + TrafficCapture.RECORD_HEADER_SIZE <= segment.limit()) {
+                int recordLength = segment.getInt(position);
+                if (recordLength == 0) {
+                    break;
+                }
+                int length = segment.getInt(position + 4);
+                long id = segment.getLong(position + 8);
+                long nanos = segment.getLong(position + 16);
+                byte type = segment.get(position + 24);
+                CapturedConnection connection = byId.computeIfAbsent(id, CapturedConnection::new);
+                if (type == TrafficCapture.OPEN) {
+                    connection.openNanos = nanos;
+                } else if (type == TrafficCapture.DATA) {
+                    ByteBuffer data = segment.duplicate();
+                    data.position(position + TrafficCapture.RECORD_HEADER_SIZE)
+                            .limit(position + TrafficCapture.RECORD_HEADER_SIZE + length);
+                    connection.add(nanos, data.slice());
+                } else if (type == TrafficCapture.CLOSE) {
+                    connection.closeNanos = nanos;
+                }
+                position += recordLength;
+            }
+        }
+        List<CapturedConnection> connections = new ArrayList<>();
+        for (CapturedConnection connection : byId.values()) {
+            if (connection.openNanos < 0) {
+                // 建立连接的记录被丢弃了（分段没准备好），从第一次读到数据开始重放
+                if (connection.count == 0) {
+                    continue;
+                }
+                connection.openNanos = connection.times[0];
+            }
+            connections.add(connection);
+        }
+        connections.sort(Comparator.comparingLong(connection -> connection.openNanos));
+        return connections;
+    }
+
+    public void run() throws Exception {
+        startNanos = System.nanoTime();
+        long deadline = at(lastNanos) + timeoutNanos;
+        List<ReplayReactor> reactors = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            reactors.add(new ReplayReactor("nio-replay-" + i, deadline));
+        }
+        long chunks = 0;
+        long bytes = 0;
+        for (int i = 0; i < connections.size(); i++) {
+            CapturedConnection captured = connections.get(i);
+            reactors.get(i % threads).add(new ReplayConnection(captured));
+            chunks += captured.count;
+            for (int j = 0; j < captured.count; j++) {
+                bytes += captured.data[j].remaining();
+            }
+        }
+        for (ReplayReactor reactor : reactors) {
+            reactor.start();
+        }
+        Histogram lag = new Histogram();
+        long responses = 0;
+        long non2xx = 0;
+        long errors = 0;
+        long unfinished = 0;
+        for (ReplayReactor reactor : reactors) {
+            reactor.join();
+            lag.add(reactor.lag);
+            responses += reactor.responses;
+            non2xx += reactor.non2xx;
+            errors += reactor.errors;
+            unfinished += reactor.active;
+        }
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        System.out.println(String.format(Locale.ROOT, "%s  %s  connections=%d chunks=%d bytes=%d captured=%.1fs",
+                address, speed > 0 ? "speed=" + speed : "as-fast-as-possible", connections.size(), chunks, bytes,
+                (lastNanos - firstNanos) / 1e9));
+        System.out.println(String.format(Locale.ROOT,
+                "responses=%d non-2xx=%d errors=%d unfinished=%d elapsed=%.2fs throughput=%.0f resp/s",
+                responses, non2xx, errors, unfinished, seconds, responses / seconds));
+        if (speed > 0) {
+            System.out.println(String.format(Locale.ROOT, "schedule lag(us) p50=%d p99=%d p999=%d max=%d",
+                    micros(lag.percentile(0.5)), micros(lag.percentile(0.99)), micros(lag.percentile(0.999)),
+                    micros(lag.max())));
+        }
+    }
+
+    private static long micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+
+    /**
+     * 录制时间对应的重放时间
+     */
+    private long at(long capturedNanos) {
+        return speed > 0 ? startNanos + (long) ((capturedNanos - firstNanos) / speed) : startNanos;
+    }
+
+    /**
+     * 录制中的一个连接：建立、关闭的时间和按顺序读到的数据（映射文件的切片）
+     */
+    public static final class CapturedConnection {
+
+        final long id;
+
+        long openNanos = -1;
+
+        long closeNanos = -1;
+
+        long[] times = new long[8];
+
+        ByteBuffer[] data = new ByteBuffer[8];
+
+        int count;
+
+        CapturedConnection(long id) {
+            this.id = id;
+        }
+
+        void add(long nanos, ByteBuffer chunk) {
+            if (count == times.length) {
+                times = Arrays.copyOf(times, count * 2);
+                data = Arrays.copyOf(data, count * 2);
+            }
+            times[count] = nanos;
+            data[count++] = chunk;
+        }
+
+        /**
+         * 最后一个事件的时间，没有录到关闭时按最后一次读到数据的时间
+         */
+        long endNanos() {
+            if (closeNanos >= 0) {
+                return closeNanos;
+            }
+            return count > 0 ? times[count - 1] : openNanos;
+        }
+    }
+
+    /**
+     * 客户端reactor线程，按计划时间驱动一部分连接，计划时间最早的连接排在优先队列的队头
+     */
+    private final class ReplayReactor extends Thread {
+
+        private final Selector selector;
+
+        private final List<ReplayConnection> connections = new ArrayList<>();
+
+        private final PriorityQueue<ReplayConnection> timers = new PriorityQueue<>(
+                Comparator.comparingLong(connection -> connection.due));
+
+        private final long deadline;
+
+        /**
+         * 只由本线程写，结束后由主线程汇总
+         */
+        final Histogram lag = new Histogram();
+
+        long responses;
+
+        long non2xx;
+
+        long errors;
+
+        /**
+         * 还没有结束的连接数
+         */
+        int active;
+
+        ReplayReactor(String name, long deadline) throws IOException {
+            super(name);
+            this.selector = Selector.open();
+            this.deadline = deadline;
+        }
+
+        void add(ReplayConnection connection) {
+            connection.reactor = this;
+            connections.add(connection);
+            active++;
+        }
+
+        @Override
+        public void run() {
+            for (ReplayConnection connection : connections) {
+                connection.schedule();
+            }
+            try {
+                long now;
+                while (active > 0 && (now = System.nanoTime()) < deadline) {
+                    ReplayConnection next;
+                    while ((next = timers.peek()) != null && next.due <= now) {
+                        timers.poll();
+                        next.queued = false;
+                        next.advance(now);
+                    }
+                    long nextDue = next == null ? deadline : Math.min(next.due, deadline);
+                    long waitNanos = Math.min(nextDue - now, TimeUnit.MILLISECONDS.toNanos(100));
+                    // select的超时精度只有毫秒，下一个事件不到1毫秒时不阻塞，保证按时发送
+                    int ready = waitNanos < TimeUnit.MILLISECONDS.toNanos(1)
+                            ? selector.selectNow() : selector.select(TimeUnit.NANOSECONDS.toMillis(waitNanos));
+                    if (ready == 0) {
+                        continue;
+                    }
+                    Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+                    while (iterator.hasNext()) {
+                        SelectionKey key = iterator.next();
+                        iterator.remove();
+                        ReplayConnection connection = (ReplayConnection) key.attachment();
+                        try {
+                            if (key.isConnectable()) {
+                                connection.finishConnect();
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                connection.flush();
+                                connection.advance(System.nanoTime());
+                            }
+                            if (key.isValid() && key.isReadable()) {
+                                connection.read();
+                            }
+                        } catch (IOException ex) {
+                            connection.fail();
+                        }
+                    }
+                }
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            } finally {
+                for (ReplayConnection connection : connections) {
+                    connection.close();
+                }
+                try {
+                    selector.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * 重放一个录制的连接，只在所属的ReplayReactor线程中访问
+     */
+    private final class ReplayConnection {
+
+        private final CapturedConnection captured;
+
+        private ReplayReactor reactor;
+
+        private SocketChannel channel;
+
+        private SelectionKey key;
+
+        private boolean connected;
+
+        /**
+         * 下一个要发送的数据块
+         */
+        private int index;
+
+        private final ArrayDeque<ByteBuffer> out = new ArrayDeque<>();
+
+        private boolean outputShutdown;
+
+        private boolean done;
+
+        /**
+         * 在计划队列中的时间，queued为false时无效
+         */
+        long due;
+
+        boolean queued;
+
+        private ByteBuffer in;
+
+        /**
+         * 正在跳过的响应体剩余字节数，-1表示正在读响应头
+         */
+        private long bodyRemaining = -1;
+
+        ReplayConnection(CapturedConnection captured) {
+            this.captured = captured;
+        }
+
+        /**
+         * 下一个事件的计划时间，在等待连接建立、等待写出或者等待服务端关闭时没有计划事件
+         */
+        private long nextDue() {
+            if (done) {
+                return Long.MAX_VALUE;
+            }
+            if (channel == null) {
+                return at(captured.openNanos);
+            }
+            if (!connected) {
+                return Long.MAX_VALUE;
+            }
+            if (index < captured.count) {
+                return at(captured.times[index]);
+            }
+            if (!outputShutdown && out.isEmpty()) {
+                return at(captured.endNanos());
+            }
+            return Long.MAX_VALUE;
+        }
+
+        void schedule() {
+            long next = nextDue();
+            if (!queued && next != Long.MAX_VALUE) {
+                due = next;
+                queued = true;
+                reactor.timers.add(this);
+            }
+        }
+
+        /**
+         * 执行计划时间已到的事件：建立连接、发送数据、关闭输出
+         */
+        void advance(long now) {
+            if (done) {
+                return;
+            }
+            try {
+                if (channel == null) {
+                    connect();
+                } else if (connected) {
+                    while (index < captured.count && at(captured.times[index]) <= now) {
+                        reactor.lag.record(now - at(captured.times[index]));
+                        out.addLast(captured.data[index++].duplicate());
+                    }
+                    flush();
+                    if (index == captured.count && out.isEmpty() && !outputShutdown && at(captured.endNanos()) <= now) {
+                        channel.shutdownOutput();
+                        outputShutdown = true;
+                    }
+                }
+            } catch (IOException ex) {
+                fail();
+                return;
+            }
+            schedule();
+        }
+
+        private void connect() throws IOException {
+            channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            in = BufferPool.DEFAULT.acquire(BufferPool.MAX_SIZE);
+            if (channel.connect(address)) {
+                key = channel.register(reactor.selector, SelectionKey.OP_READ, this);
+                connected = true;
+            } else {
+                key = channel.register(reactor.selector, SelectionKey.OP_CONNECT, this);
+            }
+        }
+
+        void finishConnect() throws IOException {
+            if (channel.finishConnect()) {
+                key.interestOps(SelectionKey.OP_READ);
+                connected = true;
+                advance(System.nanoTime());
+            }
+        }
+
+        void flush() throws IOException {
+            ByteBuffer buffer;
+            while ((buffer = out.peekFirst()) != null) {
+                channel.write(buffer);
+                if (buffer.hasRemaining()) {
+                    break;
+                }
+                out.pollFirst();
+            }
+            int ops = out.isEmpty() ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE;
+            if (key.interestOps() != ops) {
+                key.interestOps(ops);
+            }
+        }
+
+        void read() throws IOException {
+            int n = channel.read(in);
+            if (n < 0) {
+                // 服务端关闭了连接，还有没发出去的数据时算作错误
+                if (index < captured.count || !out.isEmpty()) {
+                    reactor.errors++;
+                }
+                finish();
+                return;
+            }
+            in.flip();
+            while (in.hasRemaining()) {
+                if (bodyRemaining < 0) {
+                    if (!parseHeader()) {
+                        break;
+                    }
+                } else {
+                    int skip = (int) Math.min(bodyRemaining, in.remaining());
+                    in.position(in.position() + skip);
+                    bodyRemaining -= skip;
+                }
+                if (bodyRemaining == 0) {
+                    bodyRemaining = -1;
+                    reactor.responses++;
+                }
+            }
+            in.compact();
+            if (!in.hasRemaining()) {
+                throw new IOException("response header too large");
+            }
+        }
+
+        /**
+         * 解析响应头，取出状态码和Content-Length，响应头不完整时返回false
+         */
+        private boolean parseHeader() throws IOException {
+            int start = in.position();
+            int limit = in.limit();
+            for (int i = start; i + 3 < limit; i++) {
+                if (in.get(i) == '\r' && in.get(i + 1) == '\n' && in.get(i + 2) == '\r' && in.get(i + 3) == '\n') {
+                    byte[] header = new byte[i - start];
+                    in.get(header);
+                    in.position(i + 4);
+                    String[] lines = new String(header, StandardCharsets.US_ASCII).split("\r\n");
+                    int status = Integer.parseInt(lines[0].substring(9, 12));
+                    if (status / 100 != 2) {
+                        reactor.non2xx++;
+                    }
+                    bodyRemaining = status == 304 || status == 204 ? 0 : -1;
+                    for (int j = 1; j < lines.length && bodyRemaining < 0; j++) {
+                        int colon = lines[j].indexOf(':');
+                        if (colon > 0 && lines[j].substring(0, colon).trim().equalsIgnoreCase("content-length")) {
+                            bodyRemaining = Long.parseLong(lines[j].substring(colon + 1).trim());
+                        }
+                    }
+                    if (bodyRemaining < 0) {
+                        throw new IOException("response without Content-Length");
+                    }
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void fail() {
+            reactor.errors++;
+            finish();
+        }
+
+        private void finish() {
+            if (!done) {
+                done = true;
+                reactor.active--;
+            }
+            close();
+        }
+
+        void close() {
+            if (key != null) {
+                key.cancel();
+                key = null;
+            }
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                }
+            }
+            if (in != null) {
+                BufferPool.DEFAULT.release(in);
+                in = null;
+            }
+        }
+    }
+}
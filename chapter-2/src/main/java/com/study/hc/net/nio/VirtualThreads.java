@@ -0,0 +1,41 @@
+package com.study.hc.net.nio;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * 判断当前线程是不是虚拟线程。本模块按Java 8编译，Thread.isVirtual()（JDK 21）只能通过MethodHandle调用，老版本JDK上恒为false
+ * <p>
+ * 虚拟线程数量多、生命周期短，按线程分配的资源（{@link BufferPool}的线程本地缓存、{@link AccessLog}的环形缓冲区）
+ * 会随着线程结束被丢掉，虚拟线程需要改用共享的版本
+ *
+ * @author chensicong
+ * @date 2026-10-18 17:00
+ **/
+final class VirtualThreads {
+
+    private static final MethodHandle IS_VIRTUAL = findIsVirtual();
+
+    private VirtualThreads() {
+    }
+
+    static boolean isVirtual(Thread thread) {
+        if (IS_VIRTUAL == null) {
+            return false;
+        }
+        try {
+            return (boolean) IS_VIRTUAL.invokeExact(thread);
+        } catch (Throwable t) {
+            return false;
+        }
+    }
+
+    private static MethodHandle findIsVirtual() {
+        try {
+            return MethodHandles.publicLookup().findVirtual(Thread.class, "isVirtual", MethodType.methodType(boolean.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            return null;
+        }
+    }
+}
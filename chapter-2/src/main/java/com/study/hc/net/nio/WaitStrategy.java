@@ -0,0 +1,121 @@
+package com.study.hc.net.nio;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * I/O reactor线程没有就绪事件时的等待策略
+ * <p>
+ * 通过 -Dnio.waitStrategy 选择：
+ * <ul>
+ * <li>select（默认）：阻塞在select上，有事件或新任务时被唤醒。不占CPU，但每次唤醒都有系统调用和线程调度的延迟</li>
+ * <li>busy-spin：一直用selectNow轮询，从不阻塞，事件到达后马上处理、提交任务也不需要唤醒；每个I/O线程独占一个核</li>
+ * <li>spin-then-park：先自旋一段时间（-Dnio.spinIterations次或-Dnio.spinMicros微秒，先到为准），
+ * 还是没有事件再阻塞。请求密集时接近busy-spin的延迟，空闲时不浪费CPU</li>
+ * </ul>
+ * 策略对象是无状态的，可以被多个reactor线程共用
+ *
+ * @author chensicong
+ * @date 2026-10-18 23:00
+ **/
+public interface WaitStrategy {
+
+    /**
+     * 等待直到有就绪事件、新任务或者到期的定时任务
+     *
+     * @return 就绪的key数
+     */
+    int await(Loop loop) throws IOException;
+
+    static WaitStrategy of(String name) {
+        switch (name) {
+            case "select":
+                return new Blocking();
+            case "busy-spin":
+                return new BusySpin();
+            case "spin-then-park":
+                return new SpinThenPark(Integer.getInteger("nio.spinIterations", 10_000),
+                        TimeUnit.MICROSECONDS.toNanos(Long.getLong("nio.spinMicros", 50L)));
+            default:
+                throw new IllegalArgumentException("unknown wait strategy: " + name);
+        }
+    }
+
+    /**
+     * reactor线程提供给等待策略的操作
+     */
+    interface Loop {
+
+        /**
+         * 不阻塞地检查一次就绪事件
+         */
+        int selectNow() throws IOException;
+
+        /**
+         * 任务队列中有任务，或者有到期的定时任务
+         */
+        boolean hasPendingWork();
+
+        /**
+         * 阻塞在select上，直到有就绪事件、被新提交的任务唤醒，或者最早的定时任务到期
+         */
+        int park() throws IOException;
+    }
+
+    /**
+     * 直接阻塞
+     */
+    final class Blocking implements WaitStrategy {
+
+        @Override
+        public int await(Loop loop) throws IOException {
+            return loop.park();
+        }
+    }
+
+    /**
+     * 一直轮询，不阻塞
+     */
+    final class BusySpin implements WaitStrategy {
+
+        @Override
+        public int await(Loop loop) throws IOException {
+            while (true) {
+                int selected = loop.selectNow();
+                if (selected > 0 || loop.hasPendingWork()) {
+                    return selected;
+                }
+            }
+        }
+    }
+
+    /**
+     * 先自旋，超过次数或时间后阻塞
+     */
+    final class SpinThenPark implements WaitStrategy {
+
+        private final int maxSpins;
+
+        private final long maxSpinNanos;
+
+        public SpinThenPark(int maxSpins, long maxSpinNanos) {
+            this.maxSpins = maxSpins;
+            this.maxSpinNanos = maxSpinNanos;
+        }
+
+        @Override
+        public int await(Loop loop) throws IOException {
+            long deadline = System.nanoTime() + maxSpinNanos;
+            for (int spins = 0; spins < maxSpins; spins++) {
+                int selected = loop.selectNow();
+                if (selected > 0 || loop.hasPendingWork()) {
+                    return selected;
+                }
+                if (System.nanoTime() - deadline >= 0) {
+                    break;
+                }
+            }
+            return loop.park();
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.study.hc.net.nio;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 压缩结果用JDK的GZIPInputStream（会校验gzip头、CRC32和原始长度）和InflaterInputStream（zlib）解压后和原文一致，
+ * 覆盖byte[]、堆外缓冲区和文件三种输入，以及超过64KB、需要分多次压缩和扩容输出缓冲区的内容
+ *
+ * @author chensicong
+ * @date 2026-10-19 04:00
+ **/
+public class CompressorTest {
+
+    private static final int[] SIZES = {0, 1, 100, 64 * 1024 - 1, 64 * 1024, 64 * 1024 + 1, 300_000};
+
+    @Test
+    public void byteArray() throws IOException {
+        for (ContentEncoding encoding : ContentEncoding.values()) {
+            for (int size : SIZES) {
+                for (byte[] content : new byte[][]{text(size), random(size)}) {
+                    byte[] compressed = Compressor.compress(encoding, Deflater.DEFAULT_COMPRESSION, content);
+                    assertArrayEquals(encoding + " " + size, content, decompress(encoding, compressed));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void directBuffer() throws IOException {
+        for (ContentEncoding encoding : ContentEncoding.values()) {
+            for (int size : SIZES) {
+                byte[] content = text(size);
+                // 只压缩position到limit之间的部分，前后各留一些不相关的字节
+                ByteBuffer buffer = ByteBuffer.allocateDirect(size + 20);
+                buffer.put(new byte[10]).put(content).put(new byte[10]);
+                buffer.position(10).limit(10 + size);
+                ByteBuffer compressed = Compressor.compress(encoding, Deflater.BEST_SPEED, buffer);
+                assertEquals(10, buffer.position());
+                assertTrue(compressed.isReadOnly());
+                byte[] bytes = new byte[compressed.remaining()];
+                compressed.duplicate().get(bytes);
+                assertArrayEquals(encoding + " " + size, content, decompress(encoding, bytes));
+            }
+        }
+    }
+
+    @Test
+    public void fileRange() throws IOException {
+        Path file = Files.createTempFile("compressor-test", ".txt");
+        try {
+            byte[] content = text(500_000);
+            Files.write(file, content);
+            for (ContentEncoding encoding : ContentEncoding.values()) {
+                for (int size : SIZES) {
+                    int position = 12345;
+                    ByteBuffer compressed = Compressor.compress(encoding, 6, file, position, size);
+                    byte[] bytes = new byte[compressed.remaining()];
+                    compressed.duplicate().get(bytes);
+                    byte[] expected = new byte[size];
+                    System.arraycopy(content, position, expected, 0, size);
+                    assertArrayEquals(encoding + " " + size, expected, decompress(encoding, bytes));
+                }
+                // 文件比预期的短
+                assertNull(Compressor.compress(encoding, 6, file, content.length - 10, 100));
+                // 之后同一个线程的压缩不受影响
+                byte[] small = text(1000);
+                assertArrayEquals(small, decompress(encoding, Compressor.compress(encoding, 6, small)));
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void gzipHeader() {
+        byte[] compressed = Compressor.compress(ContentEncoding.GZIP, 6, text(10));
+        assertEquals(0x1f, compressed[0] & 0xff);
+        assertEquals(0x8b, compressed[1] & 0xff);
+        assertEquals(Deflater.DEFLATED, compressed[2]);
+        // 尾部最后4字节是原始长度（小端）
+        int n = compressed.length;
+        assertEquals(10, (compressed[n - 4] & 0xff) | (compressed[n - 3] & 0xff) << 8
+                | (compressed[n - 2] & 0xff) << 16 | (compressed[n - 1] & 0xff) << 24);
+    }
+
+    private static byte[] decompress(ContentEncoding encoding, byte[] compressed) throws IOException {
+        ByteArrayInputStream in = new ByteArrayInputStream(compressed);
+        try (InputStream inflater = encoding == ContentEncoding.GZIP ? new GZIPInputStream(in)
+                : new InflaterInputStream(in)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = inflater.read(buffer)) > 0) {
+                out.write(buffer, 0, n);
+            }
+            // 解压后不应该还有多余的数据
+            assertEquals(-1, in.read());
+            return out.toByteArray();
+        }
+    }
+
+    private static byte[] text(int size) {
+        byte[] line = "The quick brown fox jumps over the lazy dog 0123456789\n".getBytes(StandardCharsets.US_ASCII);
+        byte[] content = new byte[size];
+        for (int i = 0; i < size; i++) {
+            content[i] = line[(i + i / 997) % line.length];
+        }
+        return content;
+    }
+
+    private static byte[] random(int size) {
+        byte[] content = new byte[size];
+        new Random(size).nextBytes(content);
+        return content;
+    }
+}
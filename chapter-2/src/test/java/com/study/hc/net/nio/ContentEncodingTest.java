@@ -0,0 +1,66 @@
+package com.study.hc.net.nio;
+
+import org.junit.Test;
+
+import static com.study.hc.net.nio.ContentEncoding.DEFLATE;
+import static com.study.hc.net.nio.ContentEncoding.GZIP;
+import static com.study.hc.net.nio.ContentEncoding.negotiate;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Accept-Encoding协商：q值、q=0、"*"、gzip和deflate同分，以及不合法的q值
+ *
+ * @author chensicong
+ * @date 2026-10-19 04:00
+ **/
+public class ContentEncodingTest {
+
+    @Test
+    public void simple() {
+        assertNull(negotiate(null));
+        assertNull(negotiate(""));
+        assertNull(negotiate("identity"));
+        assertNull(negotiate("br"));
+        assertEquals(GZIP, negotiate("gzip"));
+        assertEquals(GZIP, negotiate("x-gzip"));
+        assertEquals(DEFLATE, negotiate("deflate"));
+        assertEquals(GZIP, negotiate("br, GZIP;Q=0.8, deflate;q=0.7"));
+    }
+
+    @Test
+    public void tiePrefersGzip() {
+        assertEquals(GZIP, negotiate("deflate, gzip"));
+        assertEquals(GZIP, negotiate("deflate;q=0.5, gzip;q=0.5"));
+        assertEquals(DEFLATE, negotiate("deflate;q=0.6, gzip;q=0.5"));
+    }
+
+    @Test
+    public void zeroMeansNotAcceptable() {
+        assertNull(negotiate("gzip;q=0"));
+        assertNull(negotiate("gzip;q=0, deflate;q=0.000"));
+        assertEquals(DEFLATE, negotiate("gzip;q=0, deflate"));
+        assertEquals(DEFLATE, negotiate("gzip;q=0, *"));
+    }
+
+    @Test
+    public void wildcard() {
+        assertEquals(GZIP, negotiate("*"));
+        assertNull(negotiate("*;q=0"));
+        // 单独列出的格式优先于"*"
+        assertEquals(DEFLATE, negotiate("*;q=0.5, deflate"));
+        assertEquals(GZIP, negotiate("*;q=0, gzip"));
+    }
+
+    @Test
+    public void invalidQuality() {
+        assertNull(negotiate("gzip;q=NaN"));
+        assertNull(negotiate("gzip;q=abc"));
+        assertEquals(DEFLATE, negotiate("gzip;q=Infinity, deflate;q=0.1"));
+        assertEquals(DEFLATE, negotiate("gzip;q=-Infinity, deflate;q=0.1"));
+        assertEquals(DEFLATE, negotiate("gzip;q=-1, deflate;q=0.2"));
+        // 超过1的按1处理，和deflate同分时优先gzip
+        assertEquals(GZIP, negotiate("deflate, gzip;q=2"));
+        assertEquals(DEFLATE, negotiate("deflate, gzip;q=0.5"));
+    }
+}
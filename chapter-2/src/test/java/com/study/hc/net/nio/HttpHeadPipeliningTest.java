@@ -0,0 +1,138 @@
+package com.study.hc.net.nio;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 同一个长连接上先HEAD再GET：HEAD的响应只有响应头（Content-Length是完整响应体的长度），
+ * 紧跟着的必须是GET响应的状态行，而不是HEAD漏写出来的响应体。覆盖byte[]、共享缓冲区、预先编码和文件四种响应体
+ *
+ * @author chensicong
+ * @date 2026-10-19 04:00
+ **/
+public class HttpHeadPipeliningTest {
+
+    private static final String BODY = "hello, pipelined world";
+
+    private static final HttpResponse PRE_ENCODED = HttpResponse.ok(BODY).preEncode();
+
+    private static Path file;
+
+    private static int port;
+
+    @BeforeClass
+    public static void startServer() throws Exception {
+        file = Files.createTempFile("head-test", ".txt");
+        Files.write(file, BODY.getBytes(StandardCharsets.UTF_8));
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        ByteBuffer shared = ByteBuffer.allocateDirect(BODY.length());
+        shared.put(BODY.getBytes(StandardCharsets.UTF_8)).flip();
+        HttpHandler handler = request -> {
+            switch (request.uri()) {
+                case "/buffer":
+                    return new HttpResponse(200).body(shared.duplicate());
+                case "/encoded":
+                    return PRE_ENCODED;
+                case "/file":
+                    return new HttpResponse(200).body(new FileRegion(file, 0, Files.size(file)));
+                default:
+                    return HttpResponse.ok(BODY);
+            }
+        };
+        new NIOServerV3(new ServerConfig().setPort(port).setIoThreads(1), handler).start();
+    }
+
+    @AfterClass
+    public static void deleteFile() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Test(timeout = 10000)
+    public void bytesBody() throws Exception {
+        headThenGet("/bytes");
+    }
+
+    @Test(timeout = 10000)
+    public void bufferBody() throws Exception {
+        headThenGet("/buffer");
+    }
+
+    @Test(timeout = 10000)
+    public void preEncodedBody() throws Exception {
+        headThenGet("/encoded");
+    }
+
+    @Test(timeout = 10000)
+    public void fileBody() throws Exception {
+        headThenGet("/file");
+    }
+
+    private static void headThenGet(String uri) throws Exception {
+        try (Socket socket = new Socket("127.0.0.1", port)) {
+            OutputStream out = socket.getOutputStream();
+            out.write(("HEAD " + uri + " HTTP/1.1\r\nHost: localhost\r\n\r\n"
+                    + "GET " + uri + " HTTP/1.1\r\nHost: localhost\r\n\r\n"
+                    + "HEAD " + uri + " HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+
+            assertEquals(BODY.length(), readHeaders(in));
+            int length = readHeaders(in);
+            assertEquals(BODY.length(), length);
+            byte[] body = new byte[length];
+            in.readFully(body);
+            assertEquals(BODY, new String(body, StandardCharsets.UTF_8));
+            assertEquals(BODY.length(), readHeaders(in));
+            // 最后一个HEAD请求之后服务端关闭连接，不应该再有任何数据
+            assertEquals(-1, in.read());
+        }
+    }
+
+    /**
+     * 读取一个响应的状态行和响应头
+     *
+     * @return Content-Length
+     */
+    private static int readHeaders(DataInputStream in) throws IOException {
+        assertEquals("HTTP/1.1 200 OK", readLine(in));
+        int contentLength = -1;
+        String line;
+        while (!(line = readLine(in)).isEmpty()) {
+            if (line.regionMatches(true, 0, "Content-Length:", 0, 15)) {
+                contentLength = Integer.parseInt(line.substring(15).trim());
+            }
+        }
+        return contentLength;
+    }
+
+    private static String readLine(DataInputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b < 0) {
+                throw new IOException("connection closed");
+            }
+            if (b != '\r') {
+                line.write(b);
+            }
+        }
+        return new String(line.toByteArray(), StandardCharsets.US_ASCII);
+    }
+}
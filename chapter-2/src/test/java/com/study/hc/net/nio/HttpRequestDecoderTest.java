@@ -0,0 +1,167 @@
+package com.study.hc.net.nio;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * 请求解码器：半包（在任意字节处拆分）、粘包（pipelining）、chunked请求体，以及各种不合法的长度和请求头
+ *
+ * @author chensicong
+ * @date 2026-10-19 04:00
+ **/
+public class HttpRequestDecoderTest {
+
+    private static final String FIXED = "POST /submit?a=1 HTTP/1.1\r\nHost: x\r\nContent-Length: 5\r\n\r\nhello";
+
+    private static final String CHUNKED = "PUT /upload HTTP/1.1\r\nHost: x\r\nTransfer-Encoding: chunked\r\n\r\n"
+            + "5;name=value\r\nhello\r\n6 ; ext\r\n world\r\n0\r\nX-Checksum: abc\r\n\r\n";
+
+    private static final String GET = "GET / HTTP/1.1\r\nHost: x\r\n\r\n";
+
+    @Test
+    public void splitAtEveryOffset() throws Exception {
+        byte[] bytes = (FIXED + CHUNKED + GET).getBytes(StandardCharsets.ISO_8859_1);
+        for (int split = 0; split <= bytes.length; split++) {
+            HttpRequestDecoder decoder = new HttpRequestDecoder();
+            List<HttpRequest> requests = new ArrayList<>();
+            decodeAll(decoder, ByteBuffer.wrap(bytes, 0, split).slice(), requests);
+            decodeAll(decoder, ByteBuffer.wrap(bytes, split, bytes.length - split).slice(), requests);
+            assertPipelined(requests);
+            assertFalse(decoder.isDecoding());
+        }
+    }
+
+    @Test
+    public void byteByByteFromDirectBuffers() throws Exception {
+        byte[] bytes = (FIXED + CHUNKED + GET).getBytes(StandardCharsets.ISO_8859_1);
+        HttpRequestDecoder decoder = new HttpRequestDecoder();
+        List<HttpRequest> requests = new ArrayList<>();
+        for (byte b : bytes) {
+            ByteBuffer in = ByteBuffer.allocateDirect(1);
+            in.put(b).flip();
+            decodeAll(decoder, in, requests);
+        }
+        assertPipelined(requests);
+    }
+
+    @Test
+    public void pipelinedInOneBuffer() throws Exception {
+        ByteBuffer in = ByteBuffer.wrap((FIXED + CHUNKED + GET).getBytes(StandardCharsets.ISO_8859_1));
+        HttpRequestDecoder decoder = new HttpRequestDecoder();
+        List<HttpRequest> requests = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            requests.add(decoder.decode(in));
+        }
+        assertEquals(0, in.remaining());
+        assertNull(decoder.decode(in));
+        assertPipelined(requests);
+    }
+
+    @Test
+    public void chunkedWithExtensionsAndTrailers() throws Exception {
+        HttpRequest request = decodeOne("POST / HTTP/1.1\r\nTransfer-Encoding: Chunked\r\n\r\n"
+                + "A;a=1;b=\"x\"\r\n0123456789\r\n1\t;c\r\n!\r\n0;last\r\nX-A: 1\r\nX-B: 2\r\n\r\n");
+        assertEquals("0123456789!", new String(request.body(), StandardCharsets.ISO_8859_1));
+    }
+
+    @Test
+    public void malformedContentLength() {
+        assertRejected(400, "Content-Length: +5\r\n\r\nhello");
+        assertRejected(400, "Content-Length: -1\r\n\r\n");
+        assertRejected(400, "Content-Length: 5a\r\n\r\nhello");
+        assertRejected(400, "Content-Length:\r\n\r\n");
+        assertRejected(400, "Content-Length: 5\r\nContent-Length: 6\r\n\r\nhello!");
+        assertRejected(413, "Content-Length: 8388609\r\n\r\n");
+        assertRejected(413, "Content-Length: 99999999999999999999999\r\n\r\n");
+    }
+
+    @Test
+    public void malformedChunkSize() {
+        assertRejected(400, "Transfer-Encoding: chunked\r\n\r\n+5\r\nhello\r\n0\r\n\r\n");
+        assertRejected(400, "Transfer-Encoding: chunked\r\n\r\n-5\r\nhello\r\n0\r\n\r\n");
+        assertRejected(400, "Transfer-Encoding: chunked\r\n\r\n0x5\r\nhello\r\n0\r\n\r\n");
+        assertRejected(400, "Transfer-Encoding: chunked\r\n\r\n;ext\r\nhello\r\n0\r\n\r\n");
+        assertRejected(400, "Transfer-Encoding: chunked\r\n\r\n5\r\nhello!\r\n0\r\n\r\n");
+        assertRejected(413, "Transfer-Encoding: chunked\r\n\r\n800001\r\n");
+        assertRejected(413, "Transfer-Encoding: chunked\r\n\r\nffffffffffffffffffff\r\n");
+    }
+
+    /**
+     * 先有1字节的chunk，再来一个接近Long.MAX_VALUE的chunk：已有长度加上chunk大小会溢出成负数
+     */
+    @Test
+    public void chunkSizeOverflow() {
+        assertRejected(413, "Transfer-Encoding: chunked\r\n\r\n1\r\na\r\n7fffffffffffffff\r\n");
+        assertRejected(413, "Transfer-Encoding: chunked\r\n\r\n1\r\na\r\n8000000000000000\r\n");
+    }
+
+    @Test
+    public void whitespaceInHeaderName() {
+        assertRejected(400, "Content-Length : 5\r\n\r\nhello");
+        assertRejected(400, "Content-Length\t: 5\r\n\r\nhello");
+        assertRejected(400, " Host: x\r\n\r\n");
+        assertRejected(400, ": x\r\n\r\n");
+    }
+
+    @Test
+    public void onlyChunkedTransferEncoding() {
+        assertRejected(501, "Transfer-Encoding: gzip, chunked\r\n\r\n0\r\n\r\n");
+        assertRejected(501, "Transfer-Encoding: gzip\r\nTransfer-Encoding: chunked\r\n\r\n0\r\n\r\n");
+        assertRejected(501, "Transfer-Encoding: identity\r\n\r\n");
+    }
+
+    private static void assertPipelined(List<HttpRequest> requests) {
+        assertEquals(3, requests.size());
+        HttpRequest fixed = requests.get(0);
+        assertEquals("POST", fixed.method());
+        assertEquals("/submit?a=1", fixed.uri());
+        assertEquals("x", fixed.header("Host"));
+        assertEquals("hello", new String(fixed.body(), StandardCharsets.ISO_8859_1));
+        HttpRequest chunked = requests.get(1);
+        assertEquals("PUT", chunked.method());
+        assertEquals("hello world", new String(chunked.body(), StandardCharsets.ISO_8859_1));
+        HttpRequest get = requests.get(2);
+        assertEquals("GET", get.method());
+        assertEquals("/", get.uri());
+        assertEquals("HTTP/1.1", get.version());
+    }
+
+    private static void decodeAll(HttpRequestDecoder decoder, ByteBuffer in, List<HttpRequest> requests)
+            throws HttpDecodeException {
+        HttpRequest request;
+        while ((request = decoder.decode(in)) != null) {
+            requests.add(request);
+        }
+        assertEquals(0, in.remaining());
+    }
+
+    private static HttpRequest decodeOne(String raw) throws HttpDecodeException {
+        HttpRequest request = new HttpRequestDecoder().decode(ByteBuffer.wrap(raw.getBytes(StandardCharsets.ISO_8859_1)));
+        if (request == null) {
+            fail("请求不完整：" + raw);
+        }
+        return request;
+    }
+
+    /**
+     * @param headers 请求行之后的部分
+     */
+    private static void assertRejected(int status, String headers) {
+        String raw = "POST / HTTP/1.1\r\n" + headers;
+        try {
+            decodeOne(raw);
+            fail("应该被拒绝：" + raw);
+        } catch (HttpDecodeException e) {
+            assertEquals(raw, status, e.status());
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.study.hc.net.nio;
+
+import org.junit.Test;
+
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 路由：静态路径、参数、通配的优先级和回溯，405和Allow头，HEAD回退到GET，absolute-form和查询参数，
+ * 以及匹配结果缓存（命中时的参数和重新匹配一致，落在同一组的路径互相替换后仍然正确）
+ *
+ * @author chensicong
+ * @date 2026-10-19 04:00
+ **/
+public class HttpRouterTest {
+
+    private static final int CACHE_SIZE = 256;
+
+    private final HttpRouter router = new HttpRouter()
+            .get("/users/new", named("new-user"))
+            .get("/users/{id}", named("user"))
+            .get("/users/{id}/orders", named("orders"))
+            .get("/users/{id}/files/{rest*}", named("files"))
+            .get("/{path*}", named("fallback"));
+
+    @Test
+    public void staticOverParamOverWildcard() throws Exception {
+        assertEquals("new-user", call("GET", "/users/new"));
+        assertEquals("user id=42", call("GET", "/users/42"));
+        assertEquals("orders id=42", call("GET", "/users/42/orders"));
+        assertEquals("files id=42 rest=a/b.txt", call("GET", "/users/42/files/a/b.txt"));
+        assertEquals("fallback path=", call("GET", "/"));
+        assertEquals("fallback path=about", call("GET", "/about"));
+    }
+
+    @Test
+    public void backtracking() throws Exception {
+        // 静态节点"new"只匹配了前缀，回到参数
+        assertEquals("user id=newer", call("GET", "/users/newer"));
+        // 静态节点"new"下面没有/orders，回到参数
+        assertEquals("orders id=new", call("GET", "/users/new/orders"));
+        // 参数匹配了一段，后面没有对应的路由，一直回溯到根上的通配
+        assertEquals("fallback path=users/42/unknown", call("GET", "/users/42/unknown"));
+        assertEquals("fallback path=users/", call("GET", "/users/"));
+    }
+
+    @Test
+    public void methodNotAllowed() throws Exception {
+        HttpRouter router = new HttpRouter()
+                .get("/items", named("list"))
+                .post("/items", named("create"))
+                .delete("/items/{id}", named("delete"))
+                .any("/ping", named("ping"));
+        HttpResponse response = router.handle(new HttpRequest("PUT", "/items", "HTTP/1.1"));
+        assertEquals(405, response.status());
+        assertEquals("GET, HEAD, POST", response.headers().get("Allow"));
+
+        response = router.handle(new HttpRequest("GET", "/items/7", "HTTP/1.1"));
+        assertEquals(405, response.status());
+        assertEquals("DELETE", response.headers().get("Allow"));
+
+        assertEquals(404, router.handle(new HttpRequest("GET", "/other", "HTTP/1.1")).status());
+        assertEquals("ping", body(router.handle(new HttpRequest("PATCH", "/ping", "HTTP/1.1"))));
+        assertEquals("ping", body(router.handle(new HttpRequest("BREW", "/ping", "HTTP/1.1"))));
+    }
+
+    @Test
+    public void headFallsBackToGet() throws Exception {
+        assertEquals("user id=42", call("HEAD", "/users/42"));
+        HttpRouter router = new HttpRouter()
+                .get("/a", named("get"))
+                .route("HEAD", "/a", named("head"))
+                .any("/b", named("any"))
+                .get("/b", named("get-b"));
+        assertEquals("head", body(router.handle(new HttpRequest("HEAD", "/a", "HTTP/1.1"))));
+        assertEquals("get", body(router.handle(new HttpRequest("GET", "/a", "HTTP/1.1"))));
+        // 指定了方法的路由优先于不限方法的路由，HEAD先回退到GET
+        assertEquals("get-b", body(router.handle(new HttpRequest("HEAD", "/b", "HTTP/1.1"))));
+        assertEquals("any", body(router.handle(new HttpRequest("POST", "/b", "HTTP/1.1"))));
+    }
+
+    @Test
+    public void absoluteFormAndQuery() throws Exception {
+        assertEquals("user id=42", call("GET", "http://example.com/users/42"));
+        assertEquals("user id=42", call("GET", "http://example.com:8080/users/42?x=/y"));
+        assertEquals("fallback path=", call("GET", "http://example.com"));
+        assertEquals("orders id=7", call("GET", "/users/7/orders?page=2"));
+        assertEquals("fallback path=", call("GET", "/?q=1"));
+    }
+
+    @Test
+    public void cacheHitMatchesFreshMatch() throws Exception {
+        String[] uris = {"/users/42", "/users/new/orders", "/users/123/files/x/y", "/users/42/orders", "/about"};
+        Map<String, String> fresh = new HashMap<>();
+        for (String uri : uris) {
+            // 每次用新的路由，保证是在树上匹配的结果
+            HttpRouter cold = new HttpRouter()
+                    .get("/users/new", named("new-user"))
+                    .get("/users/{id}", named("user"))
+                    .get("/users/{id}/orders", named("orders"))
+                    .get("/users/{id}/files/{rest*}", named("files"))
+                    .get("/{path*}", named("fallback"));
+            fresh.put(uri, body(cold.handle(new HttpRequest("GET", uri, "HTTP/1.1"))));
+        }
+        for (int round = 0; round < 3; round++) {
+            for (String uri : uris) {
+                assertEquals(uri, fresh.get(uri), call("GET", uri));
+            }
+        }
+    }
+
+    /**
+     * 找出落在缓存同一组（两路）中的三个路径，轮流请求：每次写入都会替换掉组里的另一个路径，
+     * 命中时不能把别的路径的路由或参数位置带过来
+     */
+    @Test
+    public void collidingPathsInCache() throws Exception {
+        List<String> colliding = collidingUris(3);
+        assertEquals(3, colliding.size());
+        for (int round = 0; round < 4; round++) {
+            for (String uri : colliding) {
+                String id = uri.substring("/users/".length(), uri.indexOf('/', "/users/".length()));
+                assertEquals("orders id=" + id, call("GET", uri));
+            }
+            // 同一组中参数长度不同的两个路径交替命中
+            assertEquals("orders id=" + idOf(colliding.get(0)), call("GET", colliding.get(0)));
+            assertEquals("orders id=" + idOf(colliding.get(1)), call("GET", colliding.get(1)));
+        }
+    }
+
+    private static String idOf(String uri) {
+        return uri.substring("/users/".length(), uri.indexOf('/', "/users/".length()));
+    }
+
+    private List<String> collidingUris(int count) throws Exception {
+        Method hash = Class.forName(HttpRouter.class.getName() + "$MatchState")
+                .getDeclaredMethod("hash", byte[].class, int.class, int.class, int.class);
+        hash.setAccessible(true);
+        Map<Integer, List<String>> sets = new HashMap<>();
+        StringBuilder id = new StringBuilder();
+        for (int i = 0; i < 100_000; i++) {
+            // 参数长度各不相同，替换后偏移量不同
+            id.setLength(0);
+            id.append(i);
+            for (int j = 0; j < i % 5; j++) {
+                id.append('x');
+            }
+            String uri = "/users/" + id + "/orders";
+            byte[] bytes = uri.getBytes(StandardCharsets.ISO_8859_1);
+            int set = (int) hash.invoke(null, bytes, 0, bytes.length, 0) & (CACHE_SIZE - 2);
+            List<String> uris = sets.computeIfAbsent(set, k -> new ArrayList<>());
+            uris.add(uri);
+            if (uris.size() == count) {
+                return uris;
+            }
+        }
+        return new ArrayList<>();
+    }
+
+    private String call(String method, String uri) throws Exception {
+        HttpResponse response = router.handle(new HttpRequest(method, uri, "HTTP/1.1"));
+        assertTrue(method + " " + uri + " -> " + response.status(), response.status() == 200);
+        return body(response);
+    }
+
+    private static String body(HttpResponse response) {
+        return new String(response.body(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 响应体是路由名和所有参数，例如"user id=42"
+     */
+    private static RouteHandler named(String name) {
+        return (request, params) -> {
+            StringBuilder body = new StringBuilder(name);
+            for (int i = 0; i < params.size(); i++) {
+                body.append(' ').append(params.name(i)).append('=').append(params.get(params.name(i)));
+            }
+            return HttpResponse.ok(body.toString());
+        };
+    }
+}
@@ -0,0 +1,53 @@
+package com.study.hc.net.nio;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * 深度超过{@link KvServerHandler}积压上限（1024）的pipelining：只有一个I/O线程时所有请求都在本地分片执行，
+ * 暂停读取后必须由本地请求写出后的检查恢复，否则连接会一直卡住
+ *
+ * @author chensicong
+ * @date 2026-10-19 04:00
+ **/
+public class KvPipeliningTest {
+
+    private static InetSocketAddress address;
+
+    @BeforeClass
+    public static void startServer() throws Exception {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        KvService kv = new KvService(16L << 20);
+        ServerConfig config = new ServerConfig().setPort(port).setIoThreads(1);
+        NIOServerV3 server = new NIOServerV3(config, request -> HttpResponse.error(404, "not found"), kv);
+        kv.bind(server);
+        server.start();
+        address = new InetSocketAddress("127.0.0.1", port);
+    }
+
+    @Test(timeout = 10000)
+    public void pipelinedGetsBeyondPendingLimit() throws Exception {
+        byte[] key = "pipelined".getBytes(StandardCharsets.UTF_8);
+        byte[] value = "value".getBytes(StandardCharsets.UTF_8);
+        try (KvClient client = new KvClient(address)) {
+            client.set(key, value);
+            int requests = 3000;
+            for (int i = 0; i < requests; i++) {
+                client.sendGet(key);
+            }
+            client.flush();
+            for (int i = 0; i < requests; i++) {
+                assertArrayEquals(value, client.receive());
+            }
+        }
+    }
+}